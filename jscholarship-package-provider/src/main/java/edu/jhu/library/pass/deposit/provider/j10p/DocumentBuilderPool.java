@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of {@link DocumentBuilder}s created from a single {@link DocumentBuilderFactory}.
+ * <p>
+ * Neither {@code DocumentBuilderFactory} nor {@code DocumentBuilder} are guaranteed to be thread-safe, and creating a
+ * builder is expensive relative to creating a document with it.  The pool creates builders one at a time while
+ * holding the lock of the factory, and lends each builder to one thread at a time.  A returned builder is {@link
+ * DocumentBuilder#reset() reset}, and retained if fewer than {@code maxIdle} builders are idle; otherwise it is
+ * discarded.  A borrower is never made to wait: if no builder is idle, a new one is created.
+ * </p>
+ * <p>
+ * The pool may be bound to a {@link MeterRegistry}, reporting the number of idle builders, the number of builders on
+ * loan, and the number of builders created.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class DocumentBuilderPool implements MeterBinder {
+
+    static final String IDLE_GAUGE = "deposit.provider.dom.builders.idle";
+
+    static final String ACTIVE_GAUGE = "deposit.provider.dom.builders.active";
+
+    static final String CREATED_COUNTER = "deposit.provider.dom.builders.created";
+
+    private final DocumentBuilderFactory dbf;
+
+    private final int maxIdle;
+
+    private final ConcurrentLinkedDeque<DocumentBuilder> idle = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicLong created = new AtomicLong();
+
+    /**
+     * Creates a pool of builders from the supplied factory.
+     *
+     * @param dbf the factory used to create builders; it should not be used to create builders outside of the pool
+     * @param maxIdle the maximum number of idle builders retained by the pool
+     */
+    DocumentBuilderPool(DocumentBuilderFactory dbf, int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Maximum idle builders must be a non-negative number: " + maxIdle);
+        }
+        this.dbf = dbf;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Creates a new, empty, {@link Document} using a pooled builder.
+     *
+     * @return the document
+     */
+    Document newDocument() {
+        DocumentBuilder builder = borrow();
+        try {
+            return builder.newDocument();
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * Borrows a builder, which must be returned to the pool using {@link #release(DocumentBuilder)}, and used only by
+     * the borrowing thread until then.
+     *
+     * @return the builder
+     */
+    DocumentBuilder borrow() {
+        active.incrementAndGet();
+        DocumentBuilder builder = idle.pollFirst();
+        if (builder != null) {
+            idleCount.decrementAndGet();
+            return builder;
+        }
+
+        try {
+            synchronized (dbf) {
+                builder = dbf.newDocumentBuilder();
+            }
+        } catch (ParserConfigurationException e) {
+            active.decrementAndGet();
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        created.incrementAndGet();
+        return builder;
+    }
+
+    /**
+     * Returns a borrowed builder to the pool.
+     *
+     * @param builder the builder
+     */
+    void release(DocumentBuilder builder) {
+        active.decrementAndGet();
+        builder.reset();
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offerFirst(builder);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    int idle() {
+        return idleCount.get();
+    }
+
+    int active() {
+        return active.get();
+    }
+
+    long created() {
+        return created.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindTo(registry, Tags.empty());
+    }
+
+    /**
+     * Registers the meters of this pool with the supplied tags.
+     *
+     * @param registry the registry
+     * @param tags the tags applied to each meter
+     */
+    void bindTo(MeterRegistry registry, Tags tags) {
+        Gauge.builder(IDLE_GAUGE, this, DocumentBuilderPool::idle)
+                .description("DocumentBuilders idle in the pool")
+                .tags(tags)
+                .register(registry);
+        Gauge.builder(ACTIVE_GAUGE, this, DocumentBuilderPool::active)
+                .description("DocumentBuilders borrowed from the pool")
+                .tags(tags)
+                .register(registry);
+        FunctionCounter.builder(CREATED_COUNTER, this, DocumentBuilderPool::created)
+                .description("DocumentBuilders created by the pool")
+                .tags(tags)
+                .register(registry);
+    }
+
+}
@@ -37,20 +37,31 @@ import org.dataconservancy.pass.deposit.model.DepositSubmission;
 import org.w3c.dom.Comment;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 import java.io.OutputStream;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsNamespaces;
 import static edu.jhu.library.pass.deposit.provider.j10p.MetsMdType.DC;
 import static edu.jhu.library.pass.deposit.provider.j10p.MetsMdType.OTHER;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DCTERMS_NS;
@@ -76,13 +87,15 @@ import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_NS;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_PROVENANCE;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_QUALIFIER;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.NS_TO_PREFIX_MAP;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.PREFIX_TO_NS_MAP;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XSI_NS;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XSI_NS_PREFIX;
+import static javax.xml.XMLConstants.XMLNS_ATTRIBUTE;
 
 /**
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
-public class DspaceMetadataDomWriter {
+public class DspaceMetadataDomWriter implements DspaceMetadataWriter {
 
     static final String METS_ID = "DSPACE-METS-SWORD";
 
@@ -96,21 +109,127 @@ public class DspaceMetadataDomWriter {
 
     static final String LOCTYPE_URL = "URL";
 
+    /*
+     * Qualified names of the elements of the descriptive metadata records
+     */
+
+    private static final String QN_DC_CONTRIBUTOR = asQname(DC_NS, DC_CONTRIBUTOR);
+
+    private static final String QN_DC_TITLE = asQname(DC_NS, DC_TITLE);
+
+    private static final String QN_DC_DESCRIPTION = asQname(DC_NS, DC_DESCRIPTION);
+
+    private static final String QN_DC_PUBLISHER = asQname(DC_NS, DC_PUBLISHER);
+
+    private static final String QN_DCT_HASVERSION = asQname(DCTERMS_NS, DCT_HASVERSION);
+
+    private static final String QN_DCT_ABSTRACT = asQname(DCTERMS_NS, DCT_ABSTRACT);
+
+    private static final String QN_DCT_BIBLIOCITATION = asQname(DCTERMS_NS, DCT_BIBLIOCITATION);
+
+    private static final String QN_DIM = asQname(DIM_NS, DIM);
+
+    private static final String QN_DIM_FIELD = asQname(DIM_NS, DIM_FIELD);
+
+    /**
+     * The {@code xmlns} attributes declared on the root of each record when every namespace is declared, by the prefix
+     * of the root element.  A root element whose prefix is not present here declares every namespace.
+     */
+    private static final Map<String, Map<String, String>> ROOT_NS_DECLARATIONS = rootNamespaceDeclarations();
+
+    /**
+     * Creates the transformers that serialize unindented documents; not thread-safe, so used while holding its lock
+     */
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+
     /**
      * Package-private for unit testing
      */
     Document metsDocument;
 
-    private DocumentBuilderFactory dbf;
+    private DocumentBuilderPool builders;
 
     private METS mets;
 
     private int authorIndex;
 
+    private MetsIdMinter idMinter;
+
+    /**
+     * The {@code <fileSec>} of the METS document, once it has been created.  Maintained by the writer so that adding
+     * a resource does not search the METS DOM for the {@code <fileSec>}.
+     */
+    private FileSec fileSec;
+
+    /**
+     * Index of {@code <fileGrp>} elements by their {@code USE}, in document order
+     */
+    private final Map<String, FileGrp> fileGrpsByUse = new LinkedHashMap<>();
+
+    /**
+     * Index of {@code <file>} identifiers by the {@code USE} of their {@code <fileGrp>}, in document order
+     */
+    private final Map<String, List<String>> fileIdsByUse = new HashMap<>();
+
+    /**
+     * Index of {@code <file>} elements by their {@code ID}
+     */
+    private final Map<String, File> filesById = new HashMap<>();
+
+    /**
+     * The namespaces declared on the root of each descriptive metadata record
+     */
+    private MetsNamespaces.OPTS namespaces = MetsNamespaces.OPTS.ALL;
+
+    /**
+     * Whether the METS document is indented when it is written
+     */
+    private boolean indent = true;
+
     DspaceMetadataDomWriter(DocumentBuilderFactory dbf) {
+        this(dbf, MetsIdMinter.sequential());
+    }
+
+    /**
+     * Creates a writer that obtains its documents from a builder of its own.
+     *
+     * @param dbf creates the builder used by this writer
+     * @param idMinter mints the identifiers of the METS document
+     */
+    DspaceMetadataDomWriter(DocumentBuilderFactory dbf, MetsIdMinter idMinter) {
+        this(new DocumentBuilderPool(dbf, 1), idMinter);
+    }
+
+    /**
+     * Creates a writer that obtains its documents from a pool of builders that may be shared with other writers.
+     *
+     * @param builders the pool of document builders
+     * @param idMinter mints the identifiers of the METS document
+     */
+    DspaceMetadataDomWriter(DocumentBuilderPool builders, MetsIdMinter idMinter) {
+        this.builders = builders;
+        reset(idMinter);
+    }
+
+    /**
+     * Discards the METS document composed by this writer, including the indexes of its {@code <fileGrp>} and {@code
+     * <file>} elements, and begins a new document with an empty METS root.
+     *
+     * @param idMinter mints the identifiers of the new METS document
+     */
+    @Override
+    public void reset(MetsIdMinter idMinter) {
+        this.idMinter = idMinter;
+        this.namespaces = MetsNamespaces.OPTS.ALL;
+        this.indent = true;
+        this.authorIndex = 0;
+        this.fileSec = null;
+        this.fileGrpsByUse.clear();
+        this.fileIdsByUse.clear();
+        this.filesById.clear();
+
         try {
-            this.dbf = dbf;
-            this.metsDocument = dbf.newDocumentBuilder().newDocument();
+            this.metsDocument = builders.newDocument();
             Element root = metsDocument.createElementNS(Constants.NS_METS, Constants.ELEMENT_METS);
             metsDocument.appendChild(root);
             this.mets = new METS(metsDocument);
@@ -122,7 +241,33 @@ public class DspaceMetadataDomWriter {
         }
     }
 
-    void write(OutputStream out) {
+    @Override
+    public void setNamespaces(MetsNamespaces.OPTS namespaces) {
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * Selects whether the METS document is indented when it is written.  By default the document is indented by
+     * mets-api; otherwise it is serialized without any whitespace between elements.
+     *
+     * @param indent whether to indent the document
+     */
+    void setIndent(boolean indent) {
+        this.indent = indent;
+    }
+
+    @Override
+    public void write(OutputStream out) {
+        if (namespaces == MetsNamespaces.OPTS.ROOT) {
+            Element root = metsDocument.getDocumentElement();
+            PREFIX_TO_NS_MAP.forEach((prefix, ns) -> root.setAttribute(XMLNS_ATTRIBUTE + ":" + prefix, ns));
+        }
+
+        if (!indent) {
+            writeUnindented(out);
+            return;
+        }
+
         METSWrapper wrapper = null;
         try {
             wrapper = new METSWrapper(metsDocument);
@@ -132,24 +277,65 @@ public class DspaceMetadataDomWriter {
         wrapper.write(out);
     }
 
-    void addSubmission(DepositSubmission submission) {
+    private void writeUnindented(OutputStream out) {
+        Transformer transformer;
         try {
-            if (getFileGrpByUse(CONTENT_USE) == null || getFileGrpByUse(CONTENT_USE).getFiles().isEmpty()) {
-                throw new IllegalStateException("No <fileGrp USE=\"" + CONTENT_USE + "\"> element was found, or was" +
-                        " empty.  Resources must be added before submissions.  Has addResource(Resource) been called?");
+            synchronized (TRANSFORMER_FACTORY) {
+                transformer = TRANSFORMER_FACTORY.newTransformer();
             }
-        } catch (METSException e) {
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.setOutputProperty(OutputKeys.INDENT, "no");
+            transformer.transform(new DOMSource(metsDocument), new StreamResult(out));
+        } catch (TransformerException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
+    }
+
+    @Override
+    public void addSubmission(DepositSubmission submission) {
+        List<String> contentFileIds = getFileIdsByUse(CONTENT_USE);
+        if (contentFileIds.isEmpty()) {
+            throw new IllegalStateException("No <fileGrp USE=\"" + CONTENT_USE + "\"> element was found, or was" +
+                    " empty.  Resources must be added before submissions.  Has addResource(Resource) been called?");
+        }
 
         try {
-            mapStructMap(submission, mapDmdSec(submission), mets.getFileSec());
+            mapStructMap(submission, mapDmdSec(submission), contentFileIds);
         } catch (METSException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
     StructMap mapStructMap(DepositSubmission submission, Collection<DmdSec> dmdSec, FileSec fileSec) {
+        List<String> fileIds = new ArrayList<>();
+        try {
+            fileSec.getFileGrpByUse(CONTENT_USE)
+                    .stream()
+                    .flatMap(fileGrp -> {
+                        try {
+                            return fileGrp.getFiles().stream();
+                        } catch (METSException e) {
+                            throw new RuntimeException(e.getMessage(), e);
+                        }
+                    })
+                    .forEach(f -> fileIds.add(f.getID()));
+        } catch (METSException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+
+        return mapStructMap(submission, dmdSec, fileIds);
+    }
+
+    /**
+     * Creates the {@code <structMap>}, containing a single {@code <div>} linked to each of the supplied {@code
+     * <dmdSec>}s, and an {@code <fptr>} for each of the supplied file identifiers, in order.
+     *
+     * @param submission the submission
+     * @param dmdSec the {@code <dmdSec>}s describing the submission
+     * @param fileIds the identifiers of the {@code <file>}s to be linked by the {@code <structMap>}
+     * @return the {@code <structMap>}
+     */
+    StructMap mapStructMap(DepositSubmission submission, Collection<DmdSec> dmdSec, List<String> fileIds) {
         StructMap structMap = null;
         try {
             structMap = this.mets.newStructMap();
@@ -169,30 +355,16 @@ public class DspaceMetadataDomWriter {
         itemDiv.setLabel("DSpace Item Div");
         itemDiv.setDmdID(dmdSec.stream().map(MdSec::getID).collect(Collectors.joining(" ")));
 
-        Div finalItemDiv = itemDiv;
-        try {
-            fileSec.getFileGrpByUse(CONTENT_USE)
-                    .stream()
-                    .flatMap(fileGrp -> {
-                        try {
-                            return fileGrp.getFiles().stream();
-                        } catch (METSException e) {
-                            throw new RuntimeException(e.getMessage(), e);
-                        }
-                    })
-                    .forEach(f -> {
-                        Fptr filePtr = null;
-                        try {
-                            filePtr = finalItemDiv.newFptr();
-                        } catch (METSException e) {
-                            throw new RuntimeException(e.getMessage(), e);
-                        }
-                        filePtr.setID(mintId());
-                        filePtr.setFileID(f.getID());
-                        finalItemDiv.addFptr(filePtr);
-                    });
-        } catch (METSException e) {
-            throw new RuntimeException(e.getMessage(), e);
+        for (String fileId : fileIds) {
+            Fptr filePtr = null;
+            try {
+                filePtr = itemDiv.newFptr();
+            } catch (METSException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            filePtr.setID(mintId());
+            filePtr.setFileID(fileId);
+            itemDiv.addFptr(filePtr);
         }
 
         this.mets.addStructMap(structMap);
@@ -244,9 +416,9 @@ public class DspaceMetadataDomWriter {
         return result;
     }
 
-    private Element createDimMetadataForEmbargo(DepositSubmission submission) {
+    Element createDimMetadataForEmbargo(DepositSubmission submission) {
         Document dimDocument = newDocument();
-        Element dimRoot = newRootElement(dimDocument, DIM_NS, asQname(DIM_NS, DIM));
+        Element dimRoot = newRootElement(dimDocument, DIM_NS, QN_DIM);
         dimDocument.appendChild(dimRoot);
 
         /*
@@ -265,21 +437,21 @@ public class DspaceMetadataDomWriter {
 
 
         // <dim:field mdschema="local" element="embargo" qualifier="terms">
-        Element localEmbargoTerms = dimDocument.createElementNS(DIM_NS, asQname(DIM_NS, DIM_FIELD));
+        Element localEmbargoTerms = dimDocument.createElementNS(DIM_NS, QN_DIM_FIELD);
         localEmbargoTerms.setAttribute(DIM_MDSCHEMA, DIM_MDSCHEMA_LOCAL);
         localEmbargoTerms.setAttribute(DIM_ELEMENT, DIM_EMBARGO);
         localEmbargoTerms.setAttribute(DIM_QUALIFIER, DIM_EMBARGO_TERMS);
         localEmbargoTerms.setTextContent(formattedDate);
 
         // <dim:field mdschema="local" element="embargo" qualifier="lift">
-        Element localEmbargoLift = dimDocument.createElementNS(DIM_NS, asQname(DIM_NS, DIM_FIELD));
+        Element localEmbargoLift = dimDocument.createElementNS(DIM_NS, QN_DIM_FIELD);
         localEmbargoLift.setAttribute(DIM_MDSCHEMA, DIM_MDSCHEMA_LOCAL);
         localEmbargoLift.setAttribute(DIM_ELEMENT, DIM_EMBARGO);
         localEmbargoLift.setAttribute(DIM_QUALIFIER, DIM_EMBARGO_LIFT);
         localEmbargoLift.setTextContent(formattedDate);
 
         // <dim:field mdschema="dc" element="description" qualifier="provenance">
-        Element dcDescProv = dimDocument.createElementNS(DIM_NS, asQname(DIM_NS, DIM_FIELD));
+        Element dcDescProv = dimDocument.createElementNS(DIM_NS, QN_DIM_FIELD);
         dcDescProv.setAttribute(DIM_MDSCHEMA, DIM_MDSCHEMA_DC);
         dcDescProv.setAttribute(DIM_ELEMENT, DIM_DESCRIPTION);
         dcDescProv.setAttribute(DIM_QUALIFIER, DIM_PROVENANCE);
@@ -290,7 +462,7 @@ public class DspaceMetadataDomWriter {
         dimRoot.appendChild(localEmbargoTerms);
         dimRoot.appendChild(dcDescProv);
 
-        return dimRoot;
+        return declareUsedNamespaces(dimRoot);
     }
 
     /**
@@ -325,7 +497,7 @@ public class DspaceMetadataDomWriter {
         nimsMd.getPersons().forEach(p -> {
             // Only include authors, PIs and CoPIs as contributors
             if (p.getType() != DepositMetadata.PERSON_TYPE.submitter) {
-                Element contributor = dcDocument.createElementNS(DC_NS, asQname(DC_NS, DC_CONTRIBUTOR));
+                Element contributor = dcDocument.createElementNS(DC_NS, QN_DC_CONTRIBUTOR);
                 contributor.setTextContent(p.getName());
                 record.appendChild(contributor);
             }
@@ -333,7 +505,7 @@ public class DspaceMetadataDomWriter {
 
         // Attach a <dc:title> for the Manuscript title
         if (manuscriptMd.getTitle() != null) {
-            Element titleElement = dcDocument.createElementNS(DC_NS, asQname(DC_NS, DC_TITLE));
+            Element titleElement = dcDocument.createElementNS(DC_NS, QN_DC_TITLE);
             titleElement.setTextContent(manuscriptMd.getTitle());
             record.appendChild(titleElement);
         } else {
@@ -344,14 +516,14 @@ public class DspaceMetadataDomWriter {
         if (articleMd.getDoi() != null) {
             Comment c = dcDocument.createComment("This DOI points to the published version of the manuscript, available after any embargo period has been satisfied.");
             record.appendChild(c);
-            Element hasVersion = dcDocument.createElementNS(DCTERMS_NS, asQname(DCTERMS_NS, DCT_HASVERSION));
+            Element hasVersion = dcDocument.createElementNS(DCTERMS_NS, QN_DCT_HASVERSION);
             hasVersion.setTextContent(articleMd.getDoi().toString());
             record.appendChild(hasVersion);
         }
 
         // Attach a <dcterms:abstract> for the manuscript, if one was provided
         if (manuscriptMd.getMsAbstract() != null) {
-            Element msAbstractElement = dcDocument.createElementNS(DCTERMS_NS, asQname(DCTERMS_NS, DCT_ABSTRACT));
+            Element msAbstractElement = dcDocument.createElementNS(DCTERMS_NS, QN_DCT_ABSTRACT);
             msAbstractElement.setTextContent(manuscriptMd.getMsAbstract());
             record.appendChild(msAbstractElement);
         }
@@ -366,13 +538,13 @@ public class DspaceMetadataDomWriter {
         // Add a description of the embargo, if one is present
         // "Submission published under an embargo, which will last until yyyy-MM-dd"
         if (articleMd.getEmbargoLiftDate() != null) {
-            Element dcEmbargoDesc = dcDocument.createElementNS(DC_NS, asQname(DC_NS, DC_DESCRIPTION));
+            Element dcEmbargoDesc = dcDocument.createElementNS(DC_NS, QN_DC_DESCRIPTION);
             dcEmbargoDesc.setTextContent(String.format("Submission published under an embargo, which will last until %s",
                     articleMd.getEmbargoLiftDate().format(DateTimeFormatter.ISO_LOCAL_DATE)));
             record.appendChild(dcEmbargoDesc);
         }
 
-        return record;
+        return declareUsedNamespaces(record);
     }
 
     /**
@@ -410,7 +582,7 @@ public class DspaceMetadataDomWriter {
 
         // Attach a <dc:title> for the Manuscript title
         if (manuscriptMd.getTitle() != null) {
-            Element titleElement = dcDocument.createElementNS(DC_NS, asQname(DC_NS, DC_TITLE));
+            Element titleElement = dcDocument.createElementNS(DC_NS, QN_DC_TITLE);
             titleElement.setTextContent(manuscriptMd.getTitle());
             record.appendChild(titleElement);
         } else {
@@ -419,14 +591,14 @@ public class DspaceMetadataDomWriter {
 
         // Attach a <dc:description:abstract> for the manuscript, if one was provided
         if (manuscriptMd.getMsAbstract() != null) {
-            Element msAbstractElement = dcDocument.createElementNS(DCTERMS_NS, asQname(DCTERMS_NS, DCT_ABSTRACT));
+            Element msAbstractElement = dcDocument.createElementNS(DCTERMS_NS, QN_DCT_ABSTRACT);
             msAbstractElement.setTextContent(manuscriptMd.getMsAbstract());
             record.appendChild(msAbstractElement);
         }
 
         // Attach a <dc:publisher> for the journal, if one was provided
         if (journalMd != null && journalMd.getPublisherName() != null) {
-            Element publisher = dcDocument.createElementNS(DC_NS, asQname(DC_NS, DC_PUBLISHER));
+            Element publisher = dcDocument.createElementNS(DC_NS, QN_DC_PUBLISHER);
             publisher.setTextContent(journalMd.getPublisherName());
             record.appendChild(publisher);
         }
@@ -439,7 +611,7 @@ public class DspaceMetadataDomWriter {
         nimsMd.getPersons().forEach(p -> {
             // Only include authorIndex, PIs and CoPIs as contributors
             if (p.getType() != DepositMetadata.PERSON_TYPE.submitter) {
-                Element contributor = dcDocument.createElementNS(DC_NS, asQname(DC_NS, DC_CONTRIBUTOR));
+                Element contributor = dcDocument.createElementNS(DC_NS, QN_DC_CONTRIBUTOR);
                 contributor.setTextContent(p.getName());
                 record.appendChild(contributor);
             }
@@ -482,12 +654,12 @@ public class DspaceMetadataDomWriter {
             citationBldr.append(" " + articleMd.getDoi().toString() + ".");
 
         if (! citationBldr.toString().isEmpty()) {
-            Element citation = dcDocument.createElementNS(DCTERMS_NS, asQname(DCTERMS_NS, DCT_BIBLIOCITATION));
+            Element citation = dcDocument.createElementNS(DCTERMS_NS, QN_DCT_BIBLIOCITATION);
             citation.setTextContent(citationBldr.toString());
             record.appendChild(citation);
         }
 
-        return record;
+        return declareUsedNamespaces(record);
     }
 
     /**
@@ -497,7 +669,8 @@ public class DspaceMetadataDomWriter {
      *
      * @param resource the package resource to be represented in the DOM
      */
-    void addResource(PackageStream.Resource resource) {
+    @Override
+    public void addResource(PackageStream.Resource resource) {
         File resourceFile = null;
         try {
             resourceFile = createFile(CONTENT_USE);
@@ -531,8 +704,9 @@ public class DspaceMetadataDomWriter {
     }
 
     /**
-     * Creates a new element in the supplied document, using the supplied namespace and qualified name.  This method
-     * adds {@code xmlns} attributes for each namespace->prefix mappling in {@link XMLConstants#NS_TO_PREFIX_MAP}
+     * Creates a new element in the supplied document, using the supplied namespace and qualified name.  When {@link
+     * MetsNamespaces.OPTS#ALL all namespaces} are declared by each record, this method adds {@code xmlns} attributes
+     * for each namespace->prefix mappling in {@link XMLConstants#NS_TO_PREFIX_MAP}
      * <p>
      * Package-private for unit testing
      * </p>
@@ -544,46 +718,96 @@ public class DspaceMetadataDomWriter {
      */
     Element newRootElement(Document doc, String namespace, String qualifiedName) {
         Element root = doc.createElementNS(namespace, qualifiedName);
-        root.setAttribute("xmlns:" + XSI_NS_PREFIX, XSI_NS);
-        NS_TO_PREFIX_MAP.keySet().stream().collect(Collectors.toMap(NS_TO_PREFIX_MAP::get, (key) -> key)).entrySet()
-                .stream().filter((entry) -> {
-            // filter out the namespace prefix supplied by the qualifiedName parameter, as the writer will add that
-            // prefix in automatically
-            if (qualifiedName.contains(":")) {
-                String prefix = qualifiedName.substring(0, qualifiedName.indexOf(":"));
-                if (prefix.equals(entry.getKey())) {
-                    return false;
-                }
-            }
-            return true;
-        }).forEach((entry) -> root.setAttribute("xmlns:" + entry.getKey(), entry.getValue()));
+        if (namespaces == MetsNamespaces.OPTS.ALL) {
+            // the namespace prefix supplied by the qualifiedName parameter is not declared, as the writer will add
+            // that prefix in automatically
+            int colon = qualifiedName.indexOf(':');
+            String prefix = colon < 0 ? "" : qualifiedName.substring(0, colon);
+            ROOT_NS_DECLARATIONS.getOrDefault(prefix, ROOT_NS_DECLARATIONS.get("")).forEach(root::setAttribute);
+        }
         return root;
     }
 
     /**
-     * Creates a new {@link Document} from the {@link #dbf DocumentBuilderFactory}
+     * When only the {@link MetsNamespaces.OPTS#MINIMAL used namespaces} are declared, adds an {@code xmlns} attribute
+     * to the root of a completed record for each prefix used by the elements and attributes of the record.  As with
+     * {@link #newRootElement(Document, String, String)}, the prefix of the root itself is left to the writer.
+     *
+     * @param record the root of the record
+     * @return the root of the record
+     */
+    private Element declareUsedNamespaces(Element record) {
+        if (namespaces != MetsNamespaces.OPTS.MINIMAL) {
+            return record;
+        }
+        Map<String, String> used = new TreeMap<>();
+        collectPrefixes(record, used);
+        if (record.getPrefix() != null) {
+            used.remove(record.getPrefix());
+        }
+        used.forEach((prefix, ns) -> record.setAttribute(XMLNS_ATTRIBUTE + ":" + prefix, ns));
+        return record;
+    }
+
+    private static void collectPrefixes(Element element, Map<String, String> used) {
+        if (element.getPrefix() != null) {
+            used.put(element.getPrefix(), element.getNamespaceURI());
+        }
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attr = attributes.item(i);
+            if (attr.getPrefix() != null && !XMLNS_ATTRIBUTE.equals(attr.getPrefix())) {
+                used.put(attr.getPrefix(), attr.getNamespaceURI());
+            }
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                collectPrefixes((Element) child, used);
+            }
+        }
+    }
+
+    /**
+     * Creates a new {@link Document} using a builder borrowed from the {@link #builders pool}
      *
      * @return a new {@link Document}
      */
     private Document newDocument() {
-        Document dcDocument = null;
-        try {
-            DocumentBuilder documentBuilder = dbf.newDocumentBuilder();
-            dcDocument = documentBuilder.newDocument();
-        } catch (ParserConfigurationException e) {
-            throw new RuntimeException(e.getMessage(), e);
-        }
-        return dcDocument;
+        return builders.newDocument();
     }
 
     private File createFile(String use) throws METSException {
         FileGrp fileGrp = getFileGrpByUse(use);
         File file = fileGrp.newFile();
         fileGrp.addFile(file);
-        file.setID(mintId());
+        String id = mintId();
+        file.setID(id);
+        filesById.put(id, file);
+        fileIdsByUse.computeIfAbsent(use, key -> new ArrayList<>()).add(id);
         return file;
     }
 
+    /**
+     * Obtains the {@code <file>} element with the supplied {@code ID}, if it was created by this writer.
+     *
+     * @param id the identifier of the {@code <file>}
+     * @return the {@code File}, or {@code null} if no such {@code <file>} was created by this writer
+     */
+    File getFileById(String id) {
+        return filesById.get(id);
+    }
+
+    /**
+     * Obtains the identifiers of the {@code <file>} elements belonging to the {@code <fileGrp>} with the supplied
+     * {@code USE}, in document order.
+     *
+     * @param use the content use of the {@code <fileGrp>}
+     * @return the identifiers of the files in the group, which may be empty but never {@code null}
+     */
+    List<String> getFileIdsByUse(String use) {
+        return Collections.unmodifiableList(fileIdsByUse.getOrDefault(use, Collections.emptyList()));
+    }
+
     /**
      * Obtains the {@code <fileGrp>} element with a {@code USE} equal to the supplied {@code use} value.  If the element
      * does not exist, it is created and assigned an identifier.
@@ -592,12 +816,12 @@ public class DspaceMetadataDomWriter {
      * @return the {@code FileGrp} with a {@code USE} equal to {@code use}
      */
     private FileGrp getFileGrpByUse(String use) throws METSException {
-        List<FileGrp> fileGroups = getFileSec().getFileGrpByUse(use);
-        if (fileGroups == null || fileGroups.isEmpty()) {
+        FileGrp fileGrp = fileGrpsByUse.get(use);
+        if (fileGrp == null) {
             return createFileGrp(use);
         }
 
-        return fileGroups.get(0);
+        return fileGrp;
     }
 
     /**
@@ -613,6 +837,7 @@ public class DspaceMetadataDomWriter {
         fileSec.addFileGrp(fileGrp);
         fileGrp.setID(mintId());
         fileGrp.setUse(use);
+        fileGrpsByUse.put(use, fileGrp);
         return fileGrp;
     }
 
@@ -623,9 +848,8 @@ public class DspaceMetadataDomWriter {
      * @return the {@code FileSec} for the current METS document
      */
     private FileSec getFileSec() throws METSException {
-        FileSec fileSec = mets.getFileSec();
         if (fileSec == null) {
-            return createFileSec();
+            fileSec = createFileSec();
         }
 
         return fileSec;
@@ -721,8 +945,8 @@ public class DspaceMetadataDomWriter {
      *
      * @return an identifier
      */
-    private static String mintId() {
-        return UUID.randomUUID().toString();
+    private String mintId() {
+        return idMinter.mintId();
     }
 
     /**
@@ -735,12 +959,37 @@ public class DspaceMetadataDomWriter {
      * @throws IllegalStateException if a {@code namespace} for which there is no prefix mapping is encountered
      */
     private static String asQname(String namespace, String elementName) {
-        if (elementName.contains(":")) {
+        if (elementName.indexOf(':') > -1) {
             return elementName;
         }
-        if (!NS_TO_PREFIX_MAP.containsKey(namespace)) {
+        String prefix = NS_TO_PREFIX_MAP.get(namespace);
+        if (prefix == null) {
             throw new IllegalStateException("Missing prefix mapping for namespace '" + namespace + "'");
         }
-        return String.format("%s:%s", NS_TO_PREFIX_MAP.get(namespace), elementName);
+        return prefix + ":" + elementName;
+    }
+
+    /**
+     * Computes the {@code xmlns} attributes declared on the root of a record by {@link #newRootElement(Document,
+     * String, String)}: {@code xsi}, followed by every prefix in {@link XMLConstants#PREFIX_TO_NS_MAP} other than the
+     * prefix of the root element, keyed by the prefix of the root element.  The empty prefix declares every namespace.
+     *
+     * @return the attributes, by root element prefix
+     */
+    private static Map<String, Map<String, String>> rootNamespaceDeclarations() {
+        Map<String, Map<String, String>> declarations = new HashMap<>();
+        List<String> rootPrefixes = new ArrayList<>(PREFIX_TO_NS_MAP.keySet());
+        rootPrefixes.add("");
+        rootPrefixes.forEach(rootPrefix -> {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            attributes.put(XMLNS_ATTRIBUTE + ":" + XSI_NS_PREFIX, XSI_NS);
+            PREFIX_TO_NS_MAP.forEach((prefix, ns) -> {
+                if (!prefix.equals(rootPrefix)) {
+                    attributes.put(XMLNS_ATTRIBUTE + ":" + prefix, ns);
+                }
+            });
+            declarations.put(rootPrefix, Collections.unmodifiableMap(attributes));
+        });
+        return Collections.unmodifiableMap(declarations);
     }
 }
@@ -19,21 +19,184 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsNamespaces;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsProfile;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsWriter;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.option;
 
 /**
+ * Creates the writers of {@code mets.xml}.  The writers created by a factory share a {@link DocumentBuilderPool}, so
+ * that concurrent assemblies neither construct a {@code DocumentBuilder} for every record nor use the shared {@code
+ * DocumentBuilderFactory} concurrently.
+ * <p>
+ * Writers obtained from {@link #newWriter(Map)} may be returned to the factory using {@link
+ * #recycle(DspaceMetadataWriter)} once their document has been written.  Returned writers are retained in a bounded
+ * pool, and {@link DspaceMetadataWriter#reset(MetsIdMinter) reset} before they are handed out again, so that
+ * successive assemblies reuse the writers and their indexes rather than allocating new ones.
+ * </p>
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
 @Component
 public class DspaceMetadataDomWriterFactory {
 
-    private DocumentBuilderFactory dbf;
+    /**
+     * The maximum number of idle builders retained by the pool; more may be created when many writers are busy
+     */
+    static final int MAX_IDLE_BUILDERS = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The maximum number of idle writers of each kind retained for reuse
+     */
+    static final int MAX_IDLE_WRITERS = 2 * Runtime.getRuntime().availableProcessors();
+
+    private DocumentBuilderPool builders;
+
+    private final WriterPool<DspaceMetadataDomWriter> domWriters =
+            new WriterPool<>(minter -> new DspaceMetadataDomWriter(builders, minter));
+
+    private final WriterPool<StreamingDspaceMetadataWriter> streamingWriters =
+            new WriterPool<>(minter -> new StreamingDspaceMetadataWriter(builders, minter));
 
     @Autowired
     public DspaceMetadataDomWriterFactory(DocumentBuilderFactory dbf) {
-        this.dbf = dbf;
+        this.builders = new DocumentBuilderPool(dbf, MAX_IDLE_BUILDERS);
     }
 
     public DspaceMetadataDomWriter newInstance() {
-        return new DspaceMetadataDomWriter(dbf);
+        return new DspaceMetadataDomWriter(builders, MetsIdMinter.sequential());
+    }
+
+    /**
+     * Creates a writer configured by the supplied package options.
+     *
+     * @param packageOptions the package options
+     * @return a new writer
+     * @see DspacePackageOptions
+     */
+    public DspaceMetadataDomWriter newInstance(Map<String, Object> packageOptions) {
+        return configure(new DspaceMetadataDomWriter(builders, MetsIdMinter.forOptions(packageOptions)),
+                packageOptions);
+    }
+
+    /**
+     * Answers the writer selected by the {@link MetsWriter} package option, defaulting to a {@link
+     * DspaceMetadataDomWriter}.  The writer is taken from those {@link #recycle(DspaceMetadataWriter) recycled} by
+     * earlier callers if one is available, and reset; otherwise a new writer is created.
+     *
+     * @param packageOptions the package options
+     * @return a writer with an empty document, used only by the caller until it is recycled
+     */
+    DspaceMetadataWriter newWriter(Map<String, Object> packageOptions) {
+        MetsIdMinter idMinter = MetsIdMinter.forOptions(packageOptions);
+        switch (option(packageOptions, MetsWriter.KEY, MetsWriter.OPTS.class, MetsWriter.OPTS.DOM)) {
+            case STREAMING:
+                return configure(streamingWriters.borrow(idMinter), packageOptions);
+            default:
+                return configure(domWriters.borrow(idMinter), packageOptions);
+        }
+    }
+
+    private static <W extends DspaceMetadataWriter> W configure(W writer, Map<String, Object> packageOptions) {
+        boolean compact = MetsProfile.of(packageOptions) == MetsProfile.OPTS.COMPACT;
+        writer.setNamespaces(option(packageOptions, MetsNamespaces.KEY, MetsNamespaces.OPTS.class,
+                compact ? MetsNamespaces.OPTS.ROOT : MetsNamespaces.OPTS.ALL));
+        if (writer instanceof DspaceMetadataDomWriter) {
+            ((DspaceMetadataDomWriter) writer).setIndent(!compact);
+        }
+        return writer;
+    }
+
+    /**
+     * Returns a writer obtained from {@link #newWriter(Map)} to the factory.  The caller must not use the writer
+     * afterwards.  The writer is retained if fewer than {@link #MAX_IDLE_WRITERS} writers of its kind are idle, and
+     * is otherwise discarded.
+     *
+     * @param writer the writer, which may be {@code null}
+     */
+    void recycle(DspaceMetadataWriter writer) {
+        if (writer instanceof StreamingDspaceMetadataWriter) {
+            streamingWriters.release((StreamingDspaceMetadataWriter) writer);
+        } else if (writer instanceof DspaceMetadataDomWriter) {
+            domWriters.release((DspaceMetadataDomWriter) writer);
+        }
+    }
+
+    /**
+     * Creates a writer that mints METS identifiers using the supplied minter.
+     *
+     * @param idMinter mints the identifiers of the METS document, used only by the returned writer
+     * @return a new writer
+     */
+    public DspaceMetadataDomWriter newInstance(MetsIdMinter idMinter) {
+        return new DspaceMetadataDomWriter(builders, idMinter);
     }
+
+    /**
+     * The pool of document builders shared by the writers created by this factory.
+     *
+     * @return the pool
+     */
+    DocumentBuilderPool builderPool() {
+        return builders;
+    }
+
+    /**
+     * The number of idle {@link DspaceMetadataDomWriter}s.
+     *
+     * @return the number of idle DOM writers
+     */
+    int idleDomWriters() {
+        return domWriters.idleCount.get();
+    }
+
+    /**
+     * The number of idle {@link StreamingDspaceMetadataWriter}s.
+     *
+     * @return the number of idle streaming writers
+     */
+    int idleStreamingWriters() {
+        return streamingWriters.idleCount.get();
+    }
+
+    /**
+     * A bounded pool of idle writers of a single kind.  Writers are reset when they are borrowed, rather than when
+     * they are released, so a writer is always reset by the thread that goes on to use it.
+     */
+    private static class WriterPool<W extends DspaceMetadataWriter> {
+
+        private final Function<MetsIdMinter, W> writerFactory;
+
+        private final ConcurrentLinkedDeque<W> idle = new ConcurrentLinkedDeque<>();
+
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        private WriterPool(Function<MetsIdMinter, W> writerFactory) {
+            this.writerFactory = writerFactory;
+        }
+
+        private W borrow(MetsIdMinter idMinter) {
+            W writer = idle.pollFirst();
+            if (writer == null) {
+                return writerFactory.apply(idMinter);
+            }
+            idleCount.decrementAndGet();
+            writer.reset(idMinter);
+            return writer;
+        }
+
+        private void release(W writer) {
+            if (idleCount.incrementAndGet() <= MAX_IDLE_WRITERS) {
+                idle.offerFirst(writer);
+            } else {
+                idleCount.decrementAndGet();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+
+import java.io.OutputStream;
+
+/**
+ * Composes the DSpace METS SIP document describing a package.  Resources are added first, followed by the submission,
+ * after which the document may be written.  A writer composes a single document at a time, and is not thread-safe;
+ * once {@link #reset(MetsIdMinter) reset} it may compose another.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ * @see DspacePackageOptions.MetsWriter
+ */
+interface DspaceMetadataWriter {
+
+    /**
+     * Add a {@link PackageStream.Resource resource} to the METS document.
+     *
+     * @param resource the package resource to be represented in the document
+     */
+    void addResource(PackageStream.Resource resource);
+
+    /**
+     * Add the descriptive metadata of the submission to the METS document, and link it to the resources that have
+     * been added.
+     *
+     * @param submission the submission
+     * @throws IllegalStateException if no resources have been added
+     */
+    void addSubmission(DepositSubmission submission);
+
+    /**
+     * Select the namespaces declared by the descriptive metadata records of the METS document.  Must be invoked before
+     * the submission is added.
+     *
+     * @param namespaces the namespaces declared by each record
+     */
+    void setNamespaces(DspacePackageOptions.MetsNamespaces.OPTS namespaces);
+
+    /**
+     * Write the METS document to the supplied output stream.  The stream is not closed.
+     *
+     * @param out the output stream
+     */
+    void write(OutputStream out);
+
+    /**
+     * Discard the document composed by this writer, and begin a new, empty, document.  Nothing added to the writer
+     * before it is reset appears in the new document, and every namespace is declared by its records.
+     *
+     * @param idMinter mints the identifiers of the new document
+     */
+    void reset(MetsIdMinter idMinter);
+
+}
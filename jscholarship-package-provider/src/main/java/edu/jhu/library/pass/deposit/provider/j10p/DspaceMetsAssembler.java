@@ -17,6 +17,7 @@
 package edu.jhu.library.pass.deposit.provider.j10p;
 
 import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
 import org.dataconservancy.pass.deposit.assembler.shared.ArchivingPackageStream;
@@ -24,13 +25,24 @@ import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
 import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderFactory;
 import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.provider.support.CustodialPrefetcher;
+import org.dataconservancy.pass.deposit.provider.support.DigestingPackageStream;
+import org.dataconservancy.pass.deposit.provider.support.ObservingResourceBuilderFactory;
+import org.dataconservancy.pass.deposit.provider.support.ReleasingPackageStream;
+import org.dataconservancy.pass.deposit.provider.support.SharedCustodialContent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 import java.util.Map;
 
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsPosition;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.ZipEntryCompression;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.option;
 import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.buildMetadata;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.intOption;
 
 @Component
 public class DspaceMetsAssembler extends AbstractAssembler {
@@ -52,6 +64,8 @@ public class DspaceMetsAssembler extends AbstractAssembler {
      */
     public static final String APPLICATION_ZIP = "application/zip";
 
+    private static final Logger LOG = LoggerFactory.getLogger(DspaceMetsAssembler.class);
+
     private DspaceMetsPackageProviderFactory packageProviderFactory;
 
     @Autowired
@@ -69,7 +83,47 @@ public class DspaceMetsAssembler extends AbstractAssembler {
                                                 Map<String, Object> options) {
         buildMetadata(mb, options);
         DspaceMetsPackageProvider packageProvider = this.packageProviderFactory.newInstance();
-        return new ArchivingPackageStream(submission, custodialResources, mb, rbf, options, packageProvider);
+        // content is read through the cache, if configured, and fetched once for every package of a fan-out assembly
+        custodialResources = SharedCustodialContent.share(packageProviderFactory.resolved(custodialResources), options);
+        if (MetsPosition.of(options) == MetsPosition.OPTS.FIRST) {
+            if (option(options, Archive.KEY, Archive.OPTS.class, null) == Archive.OPTS.ZIP) {
+                // the pre-pass reads the custodial resources in parallel, and the archive pass reads them again, so
+                // reading ahead would fetch each resource twice, and hide a file resource from the FileChannel path
+                if (intOption(options, CustodialPrefetcher.DEPTH_KEY, CustodialPrefetcher.DEFAULT_DEPTH) > 0) {
+                    LOG.warn("Ignoring option {}={}: custodial resources are not read ahead when {}={}",
+                            CustodialPrefetcher.DEPTH_KEY, options.get(CustodialPrefetcher.DEPTH_KEY),
+                            MetsPosition.KEY, MetsPosition.OPTS.FIRST);
+                }
+                PackageStream metsFirst = new MetsFirstPackageStream(submission, custodialResources, mb, rbf,
+                        options, packageProvider, packageProviderFactory.prePassExecutor());
+                return new ReleasingPackageStream(new DigestingPackageStream(metsFirst, mb, options),
+                        packageProvider);
+            }
+            LOG.warn("Ignoring option {}={}: only zip archives may place {} first", MetsPosition.KEY,
+                    MetsPosition.OPTS.FIRST, DspaceMetsPackageProvider.METS_XML);
+        }
+
+        // every entry is deflated when mets.xml is last, so an option selecting stored entries has no effect
+        ZipEntryCompression.OPTS entryCompression = option(options, ZipEntryCompression.KEY,
+                ZipEntryCompression.OPTS.class, null);
+        if (entryCompression != null && entryCompression != ZipEntryCompression.OPTS.DEFLATED) {
+            LOG.warn("Ignoring option {}={}: entries may only be stored uncompressed when {}={}",
+                    ZipEntryCompression.KEY, entryCompression, MetsPosition.KEY, MetsPosition.OPTS.FIRST);
+        }
+
+        // the next custodial resources are fetched while the current one is archived, if the options enable read-ahead
+        CustodialPrefetcher.ReadAhead readAhead = packageProviderFactory.prefetcher().readAhead(custodialResources,
+                options);
+        custodialResources = readAhead.resources();
+
+        // the provider adds each custodial resource to mets.xml as soon as the resource has been written to the package
+        ResourceBuilderFactory observingRbf = new ObservingResourceBuilderFactory(rbf,
+                packageProvider::resourceWritten);
+        PackageStream archive = new ArchivingPackageStream(submission, custodialResources, mb, observingRbf, options,
+                packageProvider);
+        // the package is digested, and its length counted, as it is read: mb describes the package once it is read
+        return new ReleasingPackageStream(new DigestingPackageStream(archive, mb, options), packageProvider,
+                readAhead);
     }
 
 }
@@ -20,66 +20,153 @@ import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
 import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
 import org.dataconservancy.pass.deposit.assembler.shared.PackageProvider;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.Phase;
+import org.dataconservancy.pass.deposit.provider.support.SpillBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URL;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsSpillThreshold;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.bytesOption;
 
 /**
+ * Supplies {@code mets.xml} to the package.  The METS document is buffered by a {@link SpillBuffer}, which is released
+ * when the provider is closed.  The writer that composed the document is recycled to the {@link
+ * DspaceMetadataDomWriterFactory} at the same time.  Each phase of assembly is recorded by the supplied {@link
+ * PackageProviderMetrics}.
+ * <p>
+ * Custodial resources reported to {@link #resourceWritten(Resource)} are added to the METS document as they are
+ * written to the package, leaving only the submission metadata and the serialization of the document to {@link
+ * #finish(DepositSubmission, List)}.  Resources that were never reported are added by {@code finish(...)}.
+ * </p>
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
-public class DspaceMetsPackageProvider implements PackageProvider {
+public class DspaceMetsPackageProvider implements PackageProvider, Closeable {
 
     static final String METS_XML = "mets.xml";
 
     private static final Logger LOG = LoggerFactory.getLogger(DspaceMetsPackageProvider.class);
 
-    private DspaceMetadataDomWriter metsWriter;
+    /**
+     * The writer of the current assembly; taken from the writer factory on start, and recycled on close
+     */
+    private DspaceMetadataWriter metsWriter;
+
+    /**
+     * The writer being used by the thread writing the package, if any; a writer in use when the provider is closed is
+     * recycled once it is no longer in use
+     */
+    private DspaceMetadataWriter writerInUse;
+
+    private boolean closed;
 
     private DspaceMetadataDomWriterFactory metsWriterFactory;
 
+    private long spillThreshold = MetsSpillThreshold.DEFAULT;
+
+    private SpillBuffer metsBuffer;
+
+    private final PackageProviderMetrics metrics;
+
+    private long custodialStart;
+
+    /**
+     * Custodial resources already added to the METS document, by identity
+     */
+    private final Set<Resource> addedResources = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Whether resources are being accepted by {@link #resourceWritten(Resource)}; true between start and finish
+     */
+    private boolean acceptingResources;
+
     public DspaceMetsPackageProvider(DspaceMetadataDomWriterFactory metsWriterFactory) {
+        this(metsWriterFactory, PackageProviderMetrics.noop());
+    }
+
+    public DspaceMetsPackageProvider(DspaceMetadataDomWriterFactory metsWriterFactory,
+                                     PackageProviderMetrics metrics) {
         this.metsWriterFactory = metsWriterFactory;
+        this.metrics = metrics;
     }
 
     @Override
     public void start(DepositSubmission submission, List<DepositFileResource> custodialResources,
                       Map<String, Object> packageOptions) {
-        this.metsWriter = metsWriterFactory.newInstance();
+        metrics.record(Phase.START, () -> {
+            DspaceMetadataWriter writer = metsWriterFactory.newWriter(packageOptions);
+            synchronized (this) {
+                this.metsWriter = writer;
+                this.closed = false;
+            }
+            this.spillThreshold = bytesOption(packageOptions, MetsSpillThreshold.KEY, MetsSpillThreshold.DEFAULT);
+        });
+        metrics.resources(custodialResources.size());
+        addedResources.clear();
+        acceptingResources = true;
+        custodialStart = metrics.start();
+    }
+
+    /**
+     * Adds a custodial resource to the METS document as soon as its content has been written to the package.  Resources
+     * reported before {@code start(...)} or after {@code finish(...)}, such as {@code mets.xml} itself, are ignored.
+     *
+     * @param resource a custodial resource that has been written to the package
+     */
+    public void resourceWritten(Resource resource) {
+        if (!acceptingResources) {
+            return;
+        }
+        DspaceMetadataWriter writer = acquireWriter();
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.addResource(resource);
+            addedResources.add(resource);
+        } finally {
+            releaseWriter(writer);
+        }
     }
 
     @Override
     public String packagePath(DepositFileResource custodialResource) {
-        String candidateName;
-        if (custodialResource.getDepositFile() != null && custodialResource.getDepositFile().getName() != null) {
-            candidateName = custodialResource.getDepositFile().getName();
-        } else {
-            candidateName = custodialResource.getFilename();
-        }
+        return metrics.record(Phase.PACKAGE_PATH, () -> {
+            String candidateName;
+            if (custodialResource.getDepositFile() != null && custodialResource.getDepositFile().getName() != null) {
+                candidateName = custodialResource.getDepositFile().getName();
+            } else {
+                candidateName = custodialResource.getFilename();
+            }
 
-        String packagePath = "data/" + AbstractAssembler.sanitizeFilename(candidateName);
-        LOG.trace("Pathed {} as {}", custodialResource, packagePath);
-        return packagePath;
+            String packagePath = "data/" + AbstractAssembler.sanitizeFilename(candidateName);
+            LOG.trace("Pathed {} as {}", custodialResource, packagePath);
+            return packagePath;
+        });
     }
 
     @Override
     public List<SupplementalResource> finish(DepositSubmission submission, List<Resource> packageResources) {
-        // this is where we compose the METS xml
-        packageResources.forEach(r -> metsWriter.addResource(r));
-        metsWriter.addSubmission(submission);
+        metrics.stop(Phase.CUSTODIAL, custodialStart);
+        acceptingResources = false;
 
-        ByteArrayOutputStream metsOut = new ByteArrayOutputStream();
-        metsWriter.write(metsOut);
-        ByteArrayInputStream metsIn = new ByteArrayInputStream(metsOut.toByteArray());
+        SpillBuffer buffer = metrics.record(Phase.FINISH, () -> writeMets(submission, packageResources));
+        metrics.supplementalBytes(METS_XML, buffer.getLength());
+        InputStream metsIn = buffer.getInputStream();
 
         return Collections.singletonList(new SupplementalResource() {
             @Override
@@ -94,22 +181,22 @@ public class DspaceMetsPackageProvider implements PackageProvider {
 
             @Override
             public URL getURL() throws IOException {
-                throw new IOException("Resource only exists in memory, and has no descriptor.");
+                throw new IOException("Resource is buffered, and has no descriptor.");
             }
 
             @Override
             public URI getURI() throws IOException {
-                throw new IOException("Resource only exists in memory, and has no descriptor.");
+                throw new IOException("Resource is buffered, and has no descriptor.");
             }
 
             @Override
             public File getFile() throws IOException {
-                throw new IOException("Resource only exists in memory, and has no descriptor.");
+                throw new IOException("Resource is buffered, and has no descriptor.");
             }
 
             @Override
             public long contentLength() throws IOException {
-                return metsOut.size();
+                return buffer.getLength();
             }
 
             @Override
@@ -143,4 +230,99 @@ public class DspaceMetsPackageProvider implements PackageProvider {
             }
         });
     }
+
+    /**
+     * The metrics recorded by this provider, which are shared with the package stream writing its package.
+     *
+     * @return the metrics
+     */
+    PackageProviderMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Releases the buffer holding {@code mets.xml}, deleting its temporary file, if any, and recycles the writer of
+     * {@code mets.xml}.  Invoked when the package stream is closed, normally after {@code mets.xml} has been written to
+     * the package.  If the stream is closed while the package is still being written, the writer is recycled by the
+     * writing thread once it is done with it, so that it is never shared by two packages.
+     */
+    @Override
+    public synchronized void close() {
+        releaseBuffer();
+        closed = true;
+        if (metsWriter != null) {
+            if (writerInUse != metsWriter) {
+                metsWriterFactory.recycle(metsWriter);
+            }
+            metsWriter = null;
+        }
+    }
+
+    private SpillBuffer writeMets(DepositSubmission submission, List<Resource> packageResources) {
+        DspaceMetadataWriter writer = acquireWriter();
+        if (writer == null) {
+            throw new IllegalStateException("The package provider has been closed.");
+        }
+
+        try {
+            // custodial resources are normally added as they are written; add any that were not reported
+            packageResources.stream()
+                    .filter(r -> !addedResources.contains(r))
+                    .forEach(writer::addResource);
+            addedResources.clear();
+            writer.addSubmission(submission);
+
+            SpillBuffer buffer = newBuffer();
+            try (OutputStream metsOut = buffer.getOutputStream()) {
+                writer.write(metsOut);
+            } catch (IOException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            return buffer;
+        } finally {
+            releaseWriter(writer);
+        }
+    }
+
+    /**
+     * Answers the writer of the current package, marking it in use, or {@code null} if the provider has been closed.
+     */
+    private synchronized DspaceMetadataWriter acquireWriter() {
+        if (closed || metsWriter == null) {
+            return null;
+        }
+        writerInUse = metsWriter;
+        return writerInUse;
+    }
+
+    /**
+     * Marks the writer no longer in use, recycling it if the provider was closed while it was in use.
+     */
+    private synchronized void releaseWriter(DspaceMetadataWriter writer) {
+        writerInUse = null;
+        if (writer != metsWriter) {
+            metsWriterFactory.recycle(writer);
+        }
+    }
+
+    /**
+     * Allocates the buffer of {@code mets.xml}, unless the provider was closed after the writer was acquired; a buffer
+     * allocated after {@link #close()} would never be released.
+     */
+    private synchronized SpillBuffer newBuffer() {
+        if (closed) {
+            throw new IllegalStateException("The package provider has been closed.");
+        }
+        releaseBuffer();
+        metsBuffer = new SpillBuffer(spillThreshold);
+        return metsBuffer;
+    }
+
+    private synchronized void releaseBuffer() {
+        if (metsBuffer != null) {
+            metsBuffer.close();
+            metsBuffer = null;
+        }
+    }
+
 }
@@ -15,24 +15,101 @@
  */
 package edu.jhu.library.pass.deposit.provider.j10p;
 
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.provider.support.CustodialPrefetcher;
+import org.dataconservancy.pass.deposit.provider.support.CustodialResourceResolver;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics;
+import org.dataconservancy.pass.deposit.provider.support.ProviderExecutors;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
+ * Creates {@link DspaceMetsPackageProvider}s that share the same metrics, and the same bounded executor used to
+ * describe custodial resources when {@code mets.xml} is placed first in the package.  Custodial resources are read
+ * through the {@link CustodialResourceResolver}, if one is configured, and ahead of the archiver through the {@link
+ * CustodialPrefetcher}.  Configured by {@link JscholarshipPackageProviderAutoConfiguration}, which closes the factory,
+ * and its executor, with the application context.
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
-@Component
-class DspaceMetsPackageProviderFactory {
+class DspaceMetsPackageProviderFactory implements AutoCloseable {
+
+    private static final String PRE_PASS_EXECUTOR_NAME = "dspace-mets-pre-pass";
+
+    private static final int PRE_PASS_QUEUE_CAPACITY = 256;
 
     private DspaceMetadataDomWriterFactory domWriterFactory;
 
-    @Autowired
+    private final PackageProviderMetrics metrics;
+
+    private final CustodialResourceResolver resolver;
+
+    private final CustodialPrefetcher prefetcher;
+
+    private final ExecutorService prePassExecutor = ProviderExecutors.newBoundedExecutor(PRE_PASS_EXECUTOR_NAME,
+            Runtime.getRuntime().availableProcessors(), PRE_PASS_QUEUE_CAPACITY);
+
     public DspaceMetsPackageProviderFactory(DspaceMetadataDomWriterFactory domWriterFactory) {
+        this(domWriterFactory, PackageProviderMetrics.noop());
+    }
+
+    public DspaceMetsPackageProviderFactory(DspaceMetadataDomWriterFactory domWriterFactory,
+                                            PackageProviderMetrics metrics) {
+        this(domWriterFactory, metrics, null);
+    }
+
+    public DspaceMetsPackageProviderFactory(DspaceMetadataDomWriterFactory domWriterFactory,
+                                            PackageProviderMetrics metrics, CustodialResourceResolver resolver) {
+        this(domWriterFactory, metrics, resolver,
+                CustodialPrefetcher.open(CustodialPrefetcher.DEFAULT_GLOBAL_MAX_BYTES));
+    }
+
+    public DspaceMetsPackageProviderFactory(DspaceMetadataDomWriterFactory domWriterFactory,
+                                            PackageProviderMetrics metrics, CustodialResourceResolver resolver,
+                                            CustodialPrefetcher prefetcher) {
         this.domWriterFactory = domWriterFactory;
+        this.metrics = metrics;
+        this.resolver = resolver;
+        this.prefetcher = prefetcher;
     }
 
     DspaceMetsPackageProvider newInstance() {
-        return new DspaceMetsPackageProvider(domWriterFactory);
+        return new DspaceMetsPackageProvider(domWriterFactory, metrics);
+    }
+
+    /**
+     * The executor reading custodial resources in the pre-pass of a {@link MetsFirstPackageStream}.
+     *
+     * @return the pre-pass executor
+     */
+    ExecutorService prePassExecutor() {
+        return prePassExecutor;
+    }
+
+    /**
+     * The prefetcher reading custodial resources ahead of the archiver, when a package enables read-ahead.
+     *
+     * @return the prefetcher
+     */
+    CustodialPrefetcher prefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Answers the custodial resources of a package read through the configured {@link CustodialResourceResolver}, or
+     * the resources as they are if none is configured.
+     *
+     * @param resources the custodial resources
+     * @return the resources to assemble into the package
+     */
+    List<DepositFileResource> resolved(List<DepositFileResource> resources) {
+        return resolver == null ? resources : resolver.resolve(resources);
+    }
+
+    @Override
+    public void close() {
+        prePassExecutor.shutdown();
     }
 
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil;
+import org.dataconservancy.pass.deposit.provider.support.SpillBuffer;
+
+import java.util.Map;
+
+/**
+ * Package options understood by the DSpace METS package provider, in addition to those defined by {@code
+ * PackageOptions}.  Like the standard options, they are supplied in the {@code options} of a repository's assembler
+ * configuration, and their values may be supplied as the enum constant or its name.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public interface DspacePackageOptions {
+
+    /**
+     * Selects the strategy used to mint the identifiers of elements in the METS document.  Every strategy produces
+     * identifiers that are unique within a document.
+     */
+    interface MetsIdentifiers {
+
+        String KEY = "dspace-mets-identifiers";
+
+        enum OPTS {
+            /**
+             * A per-document prefix followed by a counter; the default
+             */
+            SEQUENTIAL,
+
+            /**
+             * Random identifiers drawn from a {@code ThreadLocalRandom}
+             */
+            RANDOM,
+
+            /**
+             * Identifiers drawn from {@code UUID.randomUUID()}, as minted by earlier versions of this provider
+             */
+            UUID,
+
+            /**
+             * A short counter, unique only within its document; the default of the {@link MetsProfile.OPTS#COMPACT
+             * compact profile}
+             */
+            COMPACT
+        }
+
+    }
+
+    /**
+     * Selects the writer used to compose {@code mets.xml}.  Both writers produce equivalent METS documents.
+     */
+    interface MetsWriter {
+
+        String KEY = "dspace-mets-writer";
+
+        enum OPTS {
+            /**
+             * Builds the METS document in memory using the mets-api DOM, then serializes it; the default
+             */
+            DOM,
+
+            /**
+             * Retains a compact model of the files and submission, and writes the METS document as a stream of XML
+             * events
+             */
+            STREAMING
+        }
+
+    }
+
+    /**
+     * Selects the namespaces declared on the root of each descriptive metadata record embedded in {@code mets.xml}.
+     * Both settings produce documents with the same elements and attributes.
+     */
+    interface MetsNamespaces {
+
+        String KEY = "dspace-mets-namespaces";
+
+        enum OPTS {
+            /**
+             * Every namespace known to the writer, and {@code xsi}, whether or not the record uses them; the default
+             */
+            ALL,
+
+            /**
+             * Only the namespaces used by the elements and attributes of the record, which shrinks {@code mets.xml}
+             */
+            MINIMAL,
+
+            /**
+             * No namespaces are declared by the records; every namespace is declared once, on the METS root.  The
+             * default of the {@link MetsProfile.OPTS#COMPACT compact profile}
+             */
+            ROOT
+        }
+
+    }
+
+    /**
+     * Selects the profile of {@code mets.xml}, which supplies the defaults of the {@link MetsIdentifiers} and {@link
+     * MetsNamespaces} options, and whether the document is indented.  Options that are supplied explicitly take
+     * precedence over the profile.  For example, a repository selects the compact profile in {@code
+     * repositories.json} with:
+     * <pre>
+     * "assembler": {
+     *   "specification": "http://purl.org/net/sword/package/METSDSpaceSIP",
+     *   "beanName": "dspaceMetsAssembler",
+     *   "options": {
+     *     "dspace-mets-profile": "compact",
+     *     ...
+     *   }
+     * }
+     * </pre>
+     */
+    interface MetsProfile {
+
+        String KEY = "dspace-mets-profile";
+
+        enum OPTS {
+            /**
+             * Sequential identifiers, every namespace declared on each record, and an indented document; the default
+             */
+            STANDARD,
+
+            /**
+             * Short, document-scoped, identifiers, namespaces declared once on the METS root, and no indentation;
+             * intended for packages of many files, whose {@code mets.xml} must be parsed in full on ingest
+             */
+            COMPACT
+        }
+
+        /**
+         * Resolves the profile from the supplied package options.
+         *
+         * @param options the package options
+         * @return the profile, defaulting to {@link OPTS#STANDARD}
+         */
+        static OPTS of(Map<String, Object> options) {
+            return option(options, KEY, OPTS.class, OPTS.STANDARD);
+        }
+
+    }
+
+    /**
+     * Selects the position of {@code mets.xml} in the package.  Placing it first lets consumers read the METS document
+     * without seeking past the content of the package, at the cost of reading each custodial resource twice: once to
+     * compute the sizes and checksums recorded in {@code mets.xml}, and again to write it to the package.  Only zip
+     * archives support placing {@code mets.xml} first; other archives place it last.
+     */
+    interface MetsPosition {
+
+        String KEY = "dspace-mets-position";
+
+        enum OPTS {
+            /**
+             * After the custodial content, whose sizes and checksums are computed as it is written; the default
+             */
+            LAST,
+
+            /**
+             * Before the custodial content, whose sizes and checksums are computed in a pre-pass
+             */
+            FIRST
+        }
+
+        /**
+         * Resolves the position from the supplied package options.
+         *
+         * @param options the package options
+         * @return the position, defaulting to {@link OPTS#LAST}
+         */
+        static OPTS of(Map<String, Object> options) {
+            return option(options, KEY, OPTS.class, OPTS.LAST);
+        }
+
+    }
+
+    /**
+     * Selects the compression method of each custodial entry of a zip package: deflated, or stored uncompressed.
+     * Content that is already compressed, like PDFs, JPEGs and archives, gains little from deflation but costs CPU.
+     * Storing an entry requires its CRC and size before it is written, so this option takes effect only when {@code
+     * mets.xml} is placed {@link MetsPosition.OPTS#FIRST first}, whose pre-pass computes them; otherwise every entry is
+     * deflated.  {@code mets.xml} itself is always deflated.
+     */
+    interface ZipEntryCompression {
+
+        String KEY = "dspace-zip-entry-compression";
+
+        enum OPTS {
+            /**
+             * Every entry is deflated; the default
+             */
+            DEFLATED,
+
+            /**
+             * Every custodial entry is stored
+             */
+            STORED,
+
+            /**
+             * Entries whose detected mime type is a compressed format are stored, and the rest deflated
+             */
+            MIME_TYPE,
+
+            /**
+             * As {@link #MIME_TYPE}, and entries whose leading bytes deflate poorly are also stored
+             */
+            PROBE
+        }
+
+    }
+
+    /**
+     * The number of bytes of {@code mets.xml} held on the heap before it is spilled to a temporary file.  The value may
+     * be a number, or a string like {@code "512k"}; see {@link PackageOptionsUtil#bytesOption(Map, String, long)}.
+     */
+    interface MetsSpillThreshold {
+
+        String KEY = "dspace-mets-spill-threshold";
+
+        long DEFAULT = SpillBuffer.DEFAULT_THRESHOLD;
+
+    }
+
+    /**
+     * Resolves the value of an enumerated option from the supplied package options.  The value may be present as the
+     * enum constant, or as a {@code String} naming the constant (ignoring case), as is the case for options parsed from
+     * JSON repository configuration.
+     *
+     * @param options the package options
+     * @param key the key of the option
+     * @param type the type of the option value
+     * @param defaultValue returned when the option is not present
+     * @param <T> the type of the option value
+     * @return the value of the option, or {@code defaultValue} if the option is not present
+     * @throws IllegalArgumentException if the option is present but cannot be resolved to a constant of {@code type}
+     */
+    static <T extends Enum<T>> T option(Map<String, Object> options, String key, Class<T> type, T defaultValue) {
+        return PackageOptionsUtil.enumOption(options, key, type, defaultValue);
+    }
+
+}
@@ -18,11 +18,59 @@
 
 package edu.jhu.library.pass.deposit.provider.j10p;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.dataconservancy.pass.deposit.provider.support.CustodialContentCache;
+import org.dataconservancy.pass.deposit.provider.support.CustodialPrefetcher;
+import org.dataconservancy.pass.deposit.provider.support.CustodialResourceResolver;
+import org.dataconservancy.pass.deposit.provider.support.HttpCustodialResolver;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetsAssembler.SPEC_DSPACE_METS;
 
 @Configuration
 @ComponentScan
 public class JscholarshipPackageProviderAutoConfiguration {
 
+    /**
+     * The value of the {@code provider} tag on the metrics recorded by DSpace METS package providers
+     */
+    static final String PROVIDER_NAME = "jscholarship";
+
+    /**
+     * Creates the factory for DSpace METS package providers.  If a {@code MeterRegistry} bean is present, the
+     * providers record their metrics to it, as does the pool of document builders shared by the METS writers;
+     * otherwise metrics are not recorded.  Custodial resources are read through the {@link CustodialContentCache} and
+     * the {@link HttpCustodialResolver}, when they are configured by the environment; both are shared with the other
+     * providers, and the cache reports its metrics to the registry.  So does the {@link CustodialPrefetcher} reading
+     * custodial resources ahead of the archiver, whose memory budget is also shared.
+     *
+     * @param domWriterFactory creates the writers of {@code mets.xml}
+     * @param meterRegistry the meter registry, if present
+     * @param environment supplies the properties configuring how custodial resources are read
+     * @return the package provider factory
+     */
+    @Bean
+    DspaceMetsPackageProviderFactory dspaceMetsPackageProviderFactory(
+            DspaceMetadataDomWriterFactory domWriterFactory,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            Environment environment) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        CustodialResourceResolver resolver = CustodialResourceResolver.configure(environment::getProperty, registry);
+        CustodialPrefetcher prefetcher = CustodialPrefetcher.configure(environment::getProperty);
+        if (registry == null) {
+            return new DspaceMetsPackageProviderFactory(domWriterFactory, PackageProviderMetrics.noop(), resolver,
+                    prefetcher);
+        }
+        domWriterFactory.builderPool().bindTo(registry, Tags.of(PackageProviderMetrics.PROVIDER_TAG, PROVIDER_NAME));
+        prefetcher.bindTo(registry);
+        return new DspaceMetsPackageProviderFactory(domWriterFactory,
+                new PackageProviderMetrics(registry, PROVIDER_NAME, SPEC_DSPACE_METS), resolver, prefetcher);
+    }
+
 }
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.tika.Tika;
+import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
+import org.dataconservancy.pass.deposit.assembler.shared.ChecksumImpl;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.assembler.shared.PackageProvider.SupplementalResource;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.provider.support.Digests;
+import org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics;
+import org.dataconservancy.pass.deposit.provider.support.PipedPackageOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.ZipEntryCompression;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.option;
+
+/**
+ * A zip {@link PackageStream} whose first entry is {@code mets.xml}.
+ * <p>
+ * METS records the size and checksum of each custodial file, which are only known once the file has been read.  The
+ * default {@code ArchivingPackageStream} learns them while streaming the files into the package, so {@code mets.xml}
+ * is necessarily the last entry of the zip, and consumers must seek past the content to find it.  This stream instead
+ * reads every custodial resource in a pre-pass, in parallel, computing its size, checksums and mime type.  Local files
+ * are read using a {@link FileChannel}.  The provider then composes {@code mets.xml}, which is written first, and the
+ * content of each custodial resource is streamed into the package after it, a second time.  Content is never held in
+ * memory; the cost is reading each resource twice, which for resources resolved from remote locations means
+ * retrieving them twice.
+ * </p>
+ * <p>
+ * If the content of a resource changes between the pre-pass and the write, so that its length or CRC-32 differs from
+ * that computed by the pre-pass, the package is failed rather than described incorrectly: the stream returned by
+ * {@link #open()} throws an {@code IOException}.
+ * </p>
+ * <p>
+ * Because the pre-pass computes the CRC of each resource, custodial entries may be stored uncompressed rather than
+ * deflated, as selected by the {@link ZipEntryCompression} option.  The size, bytes saved, and CPU time of each entry
+ * are recorded by the provider's {@link PackageProviderMetrics}.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class MetsFirstPackageStream implements PackageStream {
+
+    private static final String WRITER_THREAD_NAME = "dspace-mets-first-writer";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of leading bytes of each resource offered to Tika when detecting its mime type
+     */
+    private static final int DETECT_PREFIX_SIZE = 64 * 1024;
+
+    private static final Tika TIKA = new Tika();
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The {@code method} tags of the entries recorded by {@link PackageProviderMetrics#entry(String, long, long, long)}
+     */
+    private static final String STORED = "stored";
+
+    private static final String DEFLATED = "deflated";
+
+    private final DepositSubmission submission;
+
+    private final List<DepositFileResource> custodialResources;
+
+    private final MetadataBuilder metadataBuilder;
+
+    private final ResourceBuilderFactory rbf;
+
+    private final Map<String, Object> packageOptions;
+
+    private final DspaceMetsPackageProvider packageProvider;
+
+    private final ExecutorService prePassExecutor;
+
+    /**
+     * The resources of the package, available once the pre-pass has completed
+     */
+    private volatile List<Resource> resources = Collections.emptyList();
+
+    MetsFirstPackageStream(DepositSubmission submission, List<DepositFileResource> custodialResources,
+                           MetadataBuilder metadataBuilder, ResourceBuilderFactory rbf,
+                           Map<String, Object> packageOptions, DspaceMetsPackageProvider packageProvider,
+                           ExecutorService prePassExecutor) {
+        this.submission = submission;
+        this.custodialResources = custodialResources;
+        this.metadataBuilder = metadataBuilder;
+        this.rbf = rbf;
+        this.packageOptions = packageOptions;
+        this.packageProvider = packageProvider;
+        this.prePassExecutor = prePassExecutor;
+    }
+
+    /**
+     * Starts writing the package on a new thread, and answers the stream of its bytes.  Errors encountered while
+     * writing the package are thrown by the returned stream when its end is reached.
+     *
+     * @return the bytes of the package
+     */
+    @Override
+    public InputStream open() {
+        return PipedPackageOutput.open(WRITER_THREAD_NAME, BUFFER_SIZE, this::writePackage);
+    }
+
+    /**
+     * Writes the package, and answers the content of the named entry, which is read from the package as it is written.
+     * As {@code mets.xml} is the first entry, it is available as soon as the pre-pass has completed.  Closing the
+     * returned stream closes the package.
+     *
+     * @param packageResource the name of an entry of the package, e.g. {@code mets.xml} or {@code data/article.pdf}
+     * @return the content of the entry
+     * @throws IllegalArgumentException if the package has no entry named {@code packageResource}
+     */
+    @Override
+    public InputStream open(String packageResource) {
+        ZipInputStream zipIn = new ZipInputStream(open());
+        try {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                if (entry.getName().equals(packageResource)) {
+                    return zipIn;
+                }
+            }
+        } catch (IOException e) {
+            IOUtils.closeQuietly(zipIn);
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        IOUtils.closeQuietly(zipIn);
+        throw new IllegalArgumentException("Package has no resource named '" + packageResource + "'");
+    }
+
+    @Override
+    public Iterator<Resource> resources() {
+        return resources.iterator();
+    }
+
+    @Override
+    public Metadata metadata() {
+        return metadataBuilder.build();
+    }
+
+    private void writePackage(OutputStream out) throws IOException {
+        packageProvider.start(submission, custodialResources, packageOptions);
+        List<Entry> entries = describe(custodialResources);
+        List<Resource> described = new ArrayList<>(entries.size());
+        entries.forEach(entry -> described.add(entry.resource));
+        resources = Collections.unmodifiableList(described);
+        List<SupplementalResource> supplemental = packageProvider.finish(submission, described);
+        PackageProviderMetrics metrics = packageProvider.metrics();
+
+        // the zip is closed only once it is complete, so a failure leaves it incomplete
+        ZipOutputStream zipOut = new ZipOutputStream(out);
+        for (SupplementalResource resource : supplemental) {
+            zipOut.putNextEntry(new ZipEntry(resource.getPackagePath()));
+            try (InputStream in = resource.getInputStream()) {
+                copy(in, zipOut);
+            }
+            zipOut.closeEntry();
+        }
+
+        for (int i = 0; i < custodialResources.size(); i++) {
+            Entry entry = entries.get(i);
+            Resource resource = entry.resource;
+            ZipEntry zipEntry = new ZipEntry(resource.name());
+            if (entry.stored) {
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(resource.sizeBytes());
+                zipEntry.setCompressedSize(resource.sizeBytes());
+                zipEntry.setCrc(entry.crc);
+            }
+
+            long cpuStart = cpuTime();
+            zipOut.putNextEntry(zipEntry);
+            CRC32 crc = new CRC32();
+            long written;
+            try (InputStream in = new CheckedInputStream(custodialResources.get(i).getInputStream(), crc)) {
+                written = copy(in, zipOut);
+            }
+            if (written != resource.sizeBytes() || crc.getValue() != entry.crc) {
+                throw new IOException(String.format("Content of %s changed after it was described in %s: " +
+                                "expected %s bytes with CRC %x, but read %s bytes with CRC %x", resource.name(),
+                        DspaceMetsPackageProvider.METS_XML, resource.sizeBytes(), entry.crc, written, crc.getValue()));
+            }
+            zipOut.closeEntry();
+            metrics.entry(entry.stored ? STORED : DEFLATED, written, zipEntry.getCompressedSize(),
+                    cpuStart < 0 ? -1 : cpuTime() - cpuStart);
+        }
+        zipOut.close();
+    }
+
+    /**
+     * Reads each custodial resource on the pre-pass executor, answering their descriptions in the same order.
+     */
+    private List<Entry> describe(List<DepositFileResource> custodialResources) throws IOException {
+        Collection<PackageOptions.Checksum.OPTS> algorithms = PackageOptionsUtil.checksumAlgorithms(packageOptions);
+        ZipEntryCompressionPolicy policy = new ZipEntryCompressionPolicy(option(packageOptions,
+                ZipEntryCompression.KEY, ZipEntryCompression.OPTS.class, ZipEntryCompression.OPTS.DEFLATED));
+        List<Future<Entry>> pending = new ArrayList<>(custodialResources.size());
+        custodialResources.forEach(custodialResource ->
+                pending.add(prePassExecutor.submit(() -> describe(custodialResource, algorithms, policy))));
+
+        List<Entry> described = new ArrayList<>(custodialResources.size());
+        try {
+            for (Future<Entry> entry : pending) {
+                described.add(entry.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.forEach(resource -> resource.cancel(true));
+            throw new IOException("Interrupted while describing custodial resources", e);
+        } catch (ExecutionException e) {
+            pending.forEach(resource -> resource.cancel(true));
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+        return described;
+    }
+
+    private Entry describe(DepositFileResource custodialResource, Collection<PackageOptions.Checksum.OPTS> algorithms,
+                           ZipEntryCompressionPolicy policy) throws IOException {
+        List<MessageDigest> digests = new ArrayList<>(algorithms.size());
+        for (PackageOptions.Checksum.OPTS algorithm : algorithms) {
+            digests.add(Digests.newDigest(algorithm));
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        byte[] prefix = new byte[DETECT_PREFIX_SIZE];
+        int prefixLength = 0;
+        long size = 0;
+
+        Path file = localFile(custodialResource);
+        try (FileChannel channel = (file != null) ? FileChannel.open(file, StandardOpenOption.READ) : null;
+             InputStream in = (file != null) ? null : custodialResource.getInputStream()) {
+            int read;
+            while ((read = (channel != null) ? channel.read(buf) : readInto(in, buf)) != -1) {
+                buf.flip();
+                if (prefixLength < prefix.length) {
+                    int n = Math.min(read, prefix.length - prefixLength);
+                    System.arraycopy(buf.array(), 0, prefix, prefixLength, n);
+                    prefixLength += n;
+                }
+                for (MessageDigest digest : digests) {
+                    digest.update(buf.array(), 0, read);
+                }
+                crc.update(buf.array(), 0, read);
+                size += read;
+                buf.clear();
+            }
+        }
+
+        String packagePath = packageProvider.packagePath(custodialResource);
+        ResourceBuilder builder = rbf.newInstance();
+        builder.name(packagePath);
+        builder.sizeBytes(size);
+        String mimeType = TIKA.detect(Arrays.copyOf(prefix, prefixLength), packagePath);
+        builder.mimeType(mimeType);
+        Iterator<PackageOptions.Checksum.OPTS> algorithm = algorithms.iterator();
+        for (MessageDigest digest : digests) {
+            byte[] value = digest.digest();
+            builder.checksum(new ChecksumImpl(algorithm.next(), value, Base64.getEncoder().encodeToString(value),
+                    Digests.hex(value)));
+        }
+        return new Entry(builder.build(), crc.getValue(), policy.store(mimeType, prefix, prefixLength));
+    }
+
+    /**
+     * Answers the location of the resource on the local filesystem, or {@code null} if it must be read as a stream.
+     */
+    private static Path localFile(DepositFileResource custodialResource) {
+        try {
+            File file = custodialResource.getFile();
+            return file.isFile() ? file.toPath() : null;
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The CPU time of the current thread, in nanoseconds, or {@code -1} if it cannot be measured.
+     */
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static int readInto(InputStream in, ByteBuffer buf) throws IOException {
+        return in.read(buf.array(), 0, buf.capacity());
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        long count = 0;
+        int read;
+        while ((read = in.read(buf)) != -1) {
+            out.write(buf, 0, read);
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * A custodial resource described by the pre-pass, with the CRC and compression method of its zip entry
+     */
+    private static class Entry {
+
+        private final Resource resource;
+
+        private final long crc;
+
+        private final boolean stored;
+
+        private Entry(Resource resource, long crc, boolean stored) {
+            this.resource = resource;
+            this.crc = crc;
+            this.stored = stored;
+        }
+
+    }
+
+}
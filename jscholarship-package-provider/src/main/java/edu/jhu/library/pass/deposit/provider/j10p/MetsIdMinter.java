@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsIdentifiers;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsProfile;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.option;
+
+/**
+ * Mints the identifiers used to identify and link between elements of a single METS document.
+ * <p>
+ * A minter is used by one {@link DspaceMetadataDomWriter}, and therefore by one thread, for the lifetime of a
+ * document.  Identifiers minted by an instance must be unique among the identifiers minted by that instance, and
+ * should be valid {@code xsd:ID} values.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ * @see DspacePackageOptions.MetsIdentifiers
+ */
+@FunctionalInterface
+public interface MetsIdMinter {
+
+    /**
+     * Mints a unique, opaque, string identifier.
+     *
+     * @return an identifier
+     */
+    String mintId();
+
+    /**
+     * Creates a minter that appends a counter to a prefix chosen at random for each document.  Minting does not draw
+     * from any shared source of randomness, and uniqueness within a document is guaranteed by the counter.
+     *
+     * @return a new minter, to be used for a single document
+     */
+    static MetsIdMinter sequential() {
+        String prefix = "M" + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36) + "-";
+        long[] counter = new long[1];
+        return () -> prefix + (++counter[0]);
+    }
+
+    /**
+     * Creates a minter that draws 122 random bits per identifier from the calling thread's {@link ThreadLocalRandom},
+     * formatted as a version 4 UUID.  The identifier is prefixed with an underscore, because a UUID may begin with a
+     * digit, which is not permitted by {@code xsd:ID}.
+     *
+     * @return a new minter
+     */
+    static MetsIdMinter random() {
+        return () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long msb = (random.nextLong() & 0xffffffffffff0fffL) | 0x0000000000004000L;
+            long lsb = (random.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+            return "_" + new UUID(msb, lsb).toString();
+        };
+    }
+
+    /**
+     * Creates a minter that uses {@link UUID#randomUUID()}.  Each identifier draws from the JVM-wide {@code
+     * SecureRandom}, which is contended when many documents are written concurrently.  Retained for compatibility
+     * with the identifiers minted by earlier versions of this provider, which may begin with a digit.
+     *
+     * @return a new minter
+     */
+    static MetsIdMinter uuid() {
+        return () -> UUID.randomUUID().toString();
+    }
+
+    /**
+     * Creates a minter of the shortest identifiers: a counter in base 36, prefixed with a letter.  The identifiers are
+     * unique only within a document.
+     *
+     * @return a new minter, to be used for a single document
+     */
+    static MetsIdMinter compact() {
+        long[] counter = new long[1];
+        return () -> "M" + Long.toString(++counter[0], 36);
+    }
+
+    /**
+     * Creates the minter selected by the {@link MetsIdentifiers} package option, defaulting to {@link #sequential()},
+     * or to {@link #compact()} under the {@link MetsProfile.OPTS#COMPACT compact profile}.
+     *
+     * @param packageOptions the package options
+     * @return a new minter, to be used for a single document
+     */
+    static MetsIdMinter forOptions(Map<String, Object> packageOptions) {
+        MetsIdentifiers.OPTS defaultIdentifiers = MetsProfile.of(packageOptions) == MetsProfile.OPTS.COMPACT ?
+                MetsIdentifiers.OPTS.COMPACT : MetsIdentifiers.OPTS.SEQUENTIAL;
+        switch (option(packageOptions, MetsIdentifiers.KEY, MetsIdentifiers.OPTS.class, defaultIdentifiers)) {
+            case RANDOM:
+                return random();
+            case UUID:
+                return uuid();
+            case COMPACT:
+                return compact();
+            default:
+                return sequential();
+        }
+    }
+
+}
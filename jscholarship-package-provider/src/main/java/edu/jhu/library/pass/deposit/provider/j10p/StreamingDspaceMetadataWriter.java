@@ -0,0 +1,453 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetadataDomWriter.CONTENT_USE;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetadataDomWriter.LOCTYPE_URL;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetadataDomWriter.METS_DSPACE_LABEL;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetadataDomWriter.METS_DSPACE_PROFILE;
+import static edu.jhu.library.pass.deposit.provider.j10p.MetsMdType.DC;
+import static edu.jhu.library.pass.deposit.provider.j10p.MetsMdType.OTHER;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_CHECKSUM;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_CHECKSUM_TYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_DIV;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_DMDID;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_DMDSEC;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FILE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FILEGRP;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FILEID;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FILESEC;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FLOCAT;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FPTR;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_GROUPID;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_ID;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_LABEL;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_LOCTYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_MDTYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_MDWRAP;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_MIMETYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_NS;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_OTHERMDTYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_OTHERMDTYPE_TYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_PROFILE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_SIZE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_STRUCTMAP;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_USE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_XMLDATA;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.PREFIX_TO_NS_MAP;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_HREF;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_NS;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_PREFIX;
+import static javax.xml.XMLConstants.XMLNS_ATTRIBUTE;
+
+/**
+ * Writes a DSpace METS SIP document equivalent to that of {@link DspaceMetadataDomWriter}, without building the
+ * METS document in memory.
+ * <p>
+ * {@code DspaceMetadataDomWriter} builds the entire METS tree using the mets-api DOM before serializing it, so that
+ * for large packages both the tree and its serialized form are held on the heap at once.  This writer retains only a
+ * compact record of each resource and the descriptive metadata of the submission, and emits the {@code <dmdSec>},
+ * {@code <fileSec>} and {@code <structMap>} as XML events directly to the output stream when {@link
+ * #write(OutputStream)} is invoked.  The document is never indented.
+ * </p>
+ * <p>
+ * The descriptive metadata records embedded in each {@code <dmdSec>} are small, and are composed by a {@code
+ * DspaceMetadataDomWriter} so that their content is identical to those written by the DOM writer.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ * @see DspacePackageOptions.MetsWriter
+ */
+class StreamingDspaceMetadataWriter implements DspaceMetadataWriter {
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private MetsIdMinter idMinter;
+
+    /**
+     * Composes the descriptive metadata records; its METS document is never populated or written
+     */
+    private final DspaceMetadataDomWriter records;
+
+    private String metsId;
+
+    private String fileSecId;
+
+    private String fileGrpId;
+
+    private final List<FileEntry> files = new ArrayList<>();
+
+    private final List<DmdEntry> dmdSecs = new ArrayList<>();
+
+    private String structMapId;
+
+    private String divId;
+
+    private DspacePackageOptions.MetsNamespaces.OPTS namespaces = DspacePackageOptions.MetsNamespaces.OPTS.ALL;
+
+    StreamingDspaceMetadataWriter(DocumentBuilderFactory dbf, MetsIdMinter idMinter) {
+        this(new DocumentBuilderPool(dbf, 1), idMinter);
+    }
+
+    StreamingDspaceMetadataWriter(DocumentBuilderPool builders, MetsIdMinter idMinter) {
+        this.idMinter = idMinter;
+        this.records = new DspaceMetadataDomWriter(builders, idMinter);
+        mintIds();
+    }
+
+    @Override
+    public void setNamespaces(DspacePackageOptions.MetsNamespaces.OPTS namespaces) {
+        this.namespaces = namespaces;
+        records.setNamespaces(namespaces);
+    }
+
+    @Override
+    public void reset(MetsIdMinter idMinter) {
+        this.idMinter = idMinter;
+        this.records.reset(idMinter);
+        this.files.clear();
+        this.dmdSecs.clear();
+        this.structMapId = null;
+        this.divId = null;
+        this.namespaces = DspacePackageOptions.MetsNamespaces.OPTS.ALL;
+        mintIds();
+    }
+
+    private void mintIds() {
+        this.metsId = idMinter.mintId();
+        this.fileSecId = idMinter.mintId();
+        this.fileGrpId = idMinter.mintId();
+    }
+
+    @Override
+    public void addResource(PackageStream.Resource resource) {
+        FileEntry file = new FileEntry();
+        file.id = idMinter.mintId();
+        file.flocatId = idMinter.mintId();
+        file.href = resource.name();
+
+        if (resource.checksum() != null) {
+            file.checksum = resource.checksum().asHex();
+            file.checksumType = resource.checksum().algorithm().name();
+        }
+
+        file.size = resource.sizeBytes();
+
+        if (resource.mimeType() != null && resource.mimeType().trim().length() > 0) {
+            file.mimeType = resource.mimeType();
+        }
+
+        files.add(file);
+    }
+
+    @Override
+    public void addSubmission(DepositSubmission submission) {
+        if (files.isEmpty()) {
+            throw new IllegalStateException("No <fileGrp USE=\"" + CONTENT_USE + "\"> element was found, or was" +
+                    " empty.  Resources must be added before submissions.  Has addResource(Resource) been called?");
+        }
+
+        dmdSecs.add(new DmdEntry(DC.getType(), null, records.createDublinCoreMetadataDCMES(submission)));
+
+        if (submission.getMetadata().getArticleMetadata().getEmbargoLiftDate() != null) {
+            dmdSecs.add(new DmdEntry(OTHER.getType(), METS_OTHERMDTYPE_TYPE,
+                    records.createDimMetadataForEmbargo(submission)));
+        }
+
+        structMapId = idMinter.mintId();
+        divId = idMinter.mintId();
+    }
+
+    @Override
+    public void write(OutputStream out) {
+        try {
+            XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+
+            writer.writeStartElement("", "mets", METS_NS);
+            writer.writeDefaultNamespace(METS_NS);
+            writer.writeNamespace(XLINK_PREFIX, XLINK_NS);
+            if (namespaces == DspacePackageOptions.MetsNamespaces.OPTS.ROOT) {
+                for (Map.Entry<String, String> declaration : PREFIX_TO_NS_MAP.entrySet()) {
+                    if (!declaration.getKey().equals(XLINK_PREFIX)) {
+                        writer.writeNamespace(declaration.getKey(), declaration.getValue());
+                    }
+                }
+            }
+            writer.writeAttribute(METS_ID, metsId);
+            writer.writeAttribute(METS_PROFILE, METS_DSPACE_PROFILE);
+            writer.writeAttribute(METS_LABEL, METS_DSPACE_LABEL);
+
+            writeDmdSecs(writer);
+            writeFileSec(writer);
+            writeStructMap(writer);
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private void writeDmdSecs(XMLStreamWriter writer) throws XMLStreamException {
+        for (DmdEntry dmdSec : dmdSecs) {
+            writer.writeStartElement("", METS_DMDSEC, METS_NS);
+            writer.writeAttribute(METS_ID, dmdSec.id);
+            writer.writeAttribute(METS_GROUPID, dmdSec.groupId);
+
+            writer.writeStartElement("", METS_MDWRAP, METS_NS);
+            writer.writeAttribute(METS_ID, dmdSec.mdWrapId);
+            writer.writeAttribute(METS_MDTYPE, dmdSec.mdType);
+            if (dmdSec.otherMdType != null) {
+                writer.writeAttribute(METS_OTHERMDTYPE, dmdSec.otherMdType);
+            }
+
+            writer.writeStartElement("", METS_XMLDATA, METS_NS);
+            writeNode(writer, dmdSec.record);
+            writer.writeEndElement();
+
+            writer.writeEndElement();
+            writer.writeEndElement();
+        }
+    }
+
+    private void writeFileSec(XMLStreamWriter writer) throws XMLStreamException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        writer.writeStartElement("", METS_FILESEC, METS_NS);
+        writer.writeAttribute(METS_ID, fileSecId);
+
+        writer.writeStartElement("", METS_FILEGRP, METS_NS);
+        writer.writeAttribute(METS_ID, fileGrpId);
+        writer.writeAttribute(METS_USE, CONTENT_USE);
+
+        for (FileEntry file : files) {
+            writer.writeStartElement("", METS_FILE, METS_NS);
+            writer.writeAttribute(METS_ID, file.id);
+            if (file.checksum != null) {
+                writer.writeAttribute(METS_CHECKSUM, file.checksum);
+                writer.writeAttribute(METS_CHECKSUM_TYPE, file.checksumType);
+            }
+            if (file.size > -1) {
+                writer.writeAttribute(METS_SIZE, String.valueOf(file.size));
+            }
+            if (file.mimeType != null) {
+                writer.writeAttribute(METS_MIMETYPE, file.mimeType);
+            }
+
+            writer.writeEmptyElement("", METS_FLOCAT, METS_NS);
+            writer.writeAttribute(METS_ID, file.flocatId);
+            writer.writeAttribute(METS_LOCTYPE, LOCTYPE_URL);
+            writer.writeAttribute(XLINK_PREFIX, XLINK_NS, XLINK_HREF, file.href);
+
+            writer.writeEndElement();
+        }
+
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    private void writeStructMap(XMLStreamWriter writer) throws XMLStreamException {
+        if (structMapId == null) {
+            return;
+        }
+
+        writer.writeStartElement("", METS_STRUCTMAP, METS_NS);
+        writer.writeAttribute(METS_ID, structMapId);
+        writer.writeAttribute(METS_LABEL, "DSpace CONTENT bundle structure");
+
+        writer.writeStartElement("", METS_DIV, METS_NS);
+        writer.writeAttribute(METS_ID, divId);
+        writer.writeAttribute(METS_LABEL, "DSpace Item Div");
+        StringBuilder dmdIds = new StringBuilder();
+        for (DmdEntry dmdSec : dmdSecs) {
+            if (dmdIds.length() > 0) {
+                dmdIds.append(" ");
+            }
+            dmdIds.append(dmdSec.id);
+        }
+        writer.writeAttribute(METS_DMDID, dmdIds.toString());
+
+        for (FileEntry file : files) {
+            writer.writeEmptyElement("", METS_FPTR, METS_NS);
+            writer.writeAttribute(METS_ID, file.fptrId);
+            writer.writeAttribute(METS_FILEID, file.id);
+        }
+
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    /**
+     * Writes a DOM node, and its descendants, as XML events.  Namespace declarations present on an element as {@code
+     * xmlns} attributes are preserved, and a declaration is added wherever an element or attribute uses a namespace
+     * that is not bound in scope.
+     *
+     * @param writer the writer
+     * @param node the node to write
+     * @throws XMLStreamException if the node cannot be written
+     */
+    private static void writeNode(XMLStreamWriter writer, Node node) throws XMLStreamException {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                writeElement(writer, (Element) node);
+                break;
+            case Node.TEXT_NODE:
+                writer.writeCharacters(node.getNodeValue());
+                break;
+            case Node.CDATA_SECTION_NODE:
+                writer.writeCData(node.getNodeValue());
+                break;
+            case Node.COMMENT_NODE:
+                writer.writeComment(node.getNodeValue());
+                break;
+            default:
+                // processing instructions and entity references do not occur in metadata records
+                break;
+        }
+    }
+
+    private static void writeElement(XMLStreamWriter writer, Element element) throws XMLStreamException {
+        String prefix = element.getPrefix() == null ? "" : element.getPrefix();
+        String ns = element.getNamespaceURI() == null ? "" : element.getNamespaceURI();
+        String localName = element.getLocalName() == null ? element.getNodeName() : element.getLocalName();
+
+        // resolved before the element is started, as starting the element brings its own prefix into scope
+        boolean declareNs = !ns.equals(writer.getNamespaceContext().getNamespaceURI(prefix));
+
+        writer.writeStartElement(prefix, localName, ns);
+
+        NamedNodeMap attributes = element.getAttributes();
+        List<Attr> plainAttributes = new ArrayList<>(attributes.getLength());
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            String name = attr.getName();
+            if (name.equals(XMLNS_ATTRIBUTE)) {
+                declare(writer, "", attr.getValue());
+                declareNs &= !prefix.isEmpty();
+            } else if (name.startsWith(XMLNS_ATTRIBUTE + ":")) {
+                String declaredPrefix = name.substring(XMLNS_ATTRIBUTE.length() + 1);
+                declare(writer, declaredPrefix, attr.getValue());
+                declareNs &= !prefix.equals(declaredPrefix);
+            } else {
+                plainAttributes.add(attr);
+            }
+        }
+
+        if (declareNs) {
+            declare(writer, prefix, ns);
+        }
+
+        for (Attr attr : plainAttributes) {
+            if (attr.getNamespaceURI() == null || attr.getNamespaceURI().isEmpty()) {
+                writer.writeAttribute(attr.getName(), attr.getValue());
+            } else {
+                if (!attr.getNamespaceURI().equals(writer.getNamespaceContext().getNamespaceURI(attr.getPrefix()))) {
+                    declare(writer, attr.getPrefix(), attr.getNamespaceURI());
+                }
+                writer.writeAttribute(attr.getPrefix(), attr.getNamespaceURI(), attr.getLocalName(),
+                        attr.getValue());
+            }
+        }
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            writeNode(writer, child);
+        }
+
+        writer.writeEndElement();
+    }
+
+    /**
+     * Declares the binding of {@code prefix} to {@code ns} on the current element.
+     */
+    private static void declare(XMLStreamWriter writer, String prefix, String ns) throws XMLStreamException {
+        if (prefix.isEmpty()) {
+            writer.writeDefaultNamespace(ns);
+        } else {
+            writer.writeNamespace(prefix, ns);
+        }
+    }
+
+    /**
+     * The portion of a {@code <file>}, its {@code <FLocat>}, and {@code <fptr>} retained until the document is
+     * written
+     */
+    private class FileEntry {
+
+        private final String fptrId = idMinter.mintId();
+
+        private String id;
+
+        private String flocatId;
+
+        private String href;
+
+        private String checksum;
+
+        private String checksumType;
+
+        private long size;
+
+        private String mimeType;
+
+    }
+
+    /**
+     * A {@code <dmdSec>} and the descriptive metadata record it wraps
+     */
+    private class DmdEntry {
+
+        private final String id = idMinter.mintId();
+
+        private final String groupId = idMinter.mintId();
+
+        private final String mdWrapId = idMinter.mintId();
+
+        private final String mdType;
+
+        private final String otherMdType;
+
+        private final Element record;
+
+        private DmdEntry(String mdType, String otherMdType, Element record) {
+            this.mdType = mdType;
+            this.otherMdType = otherMdType;
+            this.record = record;
+        }
+
+    }
+
+}
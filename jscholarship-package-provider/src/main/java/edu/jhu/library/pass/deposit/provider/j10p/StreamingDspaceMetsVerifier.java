@@ -0,0 +1,219 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil;
+import org.dataconservancy.pass.deposit.provider.support.StreamingPackageVerifier;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetadataDomWriter.CONTENT_USE;
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetsPackageProvider.METS_XML;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_CHECKSUM;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_CHECKSUM_TYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FILE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FILEGRP;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FLOCAT;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_NS;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_SIZE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_USE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_HREF;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_NS;
+
+/**
+ * Verifies DSpace METS packages in a single pass, without extracting them: each {@code <file>} of the {@code CONTENT}
+ * file group of {@code mets.xml} must locate an entry of the package with the size and checksum it records, and each
+ * entry other than {@code mets.xml} must be located by a {@code <file>}.
+ * <p>
+ * Entries are digested with the preferred checksum algorithm of the package options the package was assembled with,
+ * which is the algorithm recorded in {@code mets.xml}; {@code mets.xml} is parsed as it is read, wherever it appears
+ * in the package.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingDspaceMetsVerifier extends StreamingPackageVerifier {
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        // mets.xml is read from the package, and must not resolve anything outside of it
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @param packageOptions the package options the packages were assembled with, supplying the checksum algorithm
+     */
+    public StreamingDspaceMetsVerifier(Map<String, Object> packageOptions) {
+        super(PackageOptionsUtil.checksumAlgorithms(packageOptions).subList(0, 1));
+    }
+
+    @Override
+    protected Verification newVerification() {
+        return new MetsVerification();
+    }
+
+    /**
+     * Collects the {@code <file>} elements of {@code mets.xml}, and verifies the package against them
+     */
+    private static class MetsVerification implements Verification {
+
+        private final List<MetsFile> files = new ArrayList<>();
+
+        private boolean metsRead;
+
+        @Override
+        public boolean isDescriptor(String name) {
+            return METS_XML.equals(name);
+        }
+
+        @Override
+        public void descriptor(String name, InputStream in, List<String> problems) {
+            metsRead = true;
+            XMLStreamReader reader = null;
+            try {
+                reader = INPUT_FACTORY.createXMLStreamReader(in);
+                boolean content = false;
+                MetsFile file = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT && METS_NS.equals(reader.getNamespaceURI())) {
+                        String element = reader.getLocalName();
+                        if (METS_FILEGRP.equals(element)) {
+                            content = CONTENT_USE.equals(reader.getAttributeValue(null, METS_USE));
+                        } else if (content && METS_FILE.equals(element)) {
+                            file = new MetsFile(reader.getAttributeValue(null, METS_CHECKSUM),
+                                    reader.getAttributeValue(null, METS_CHECKSUM_TYPE),
+                                    reader.getAttributeValue(null, METS_SIZE));
+                            files.add(file);
+                        } else if (file != null && METS_FLOCAT.equals(element)) {
+                            file.href = reader.getAttributeValue(XLINK_NS, XLINK_HREF);
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && METS_NS.equals(reader.getNamespaceURI())) {
+                        if (METS_FILEGRP.equals(reader.getLocalName())) {
+                            content = false;
+                        } else if (METS_FILE.equals(reader.getLocalName())) {
+                            file = null;
+                        }
+                    }
+                }
+            } catch (XMLStreamException e) {
+                problems.add(METS_XML + " cannot be parsed: " + e.getMessage());
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (XMLStreamException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void verify(Map<String, Entry> entries, List<String> problems) {
+            if (!metsRead) {
+                problems.add("Package has no " + METS_XML);
+                return;
+            }
+
+            Set<String> located = new HashSet<>();
+            for (MetsFile file : files) {
+                if (file.href == null) {
+                    problems.add(METS_XML + " has a <file> without a location");
+                    continue;
+                }
+                located.add(file.href);
+
+                Entry entry = entries.get(file.href);
+                if (entry == null) {
+                    problems.add(METS_XML + " locates '" + file.href + "', which is not in the package");
+                    continue;
+                }
+
+                if (file.size != null && !file.size.equals(String.valueOf(entry.length()))) {
+                    problems.add("'" + file.href + "' is " + entry.length() + " bytes, but " + METS_XML +
+                            " records " + file.size);
+                }
+
+                if (file.checksum == null) {
+                    continue;
+                }
+                PackageOptions.Checksum.OPTS algorithm = algorithm(file.checksumType);
+                String checksum = (algorithm == null) ? null : entry.checksum(algorithm);
+                if (checksum == null) {
+                    problems.add("'" + file.href + "' was not digested with " + file.checksumType + ", the " +
+                            "algorithm recorded by " + METS_XML);
+                } else if (!checksum.equalsIgnoreCase(file.checksum)) {
+                    problems.add("'" + file.href + "' has " + file.checksumType + " checksum " + checksum + ", but " +
+                            METS_XML + " records " + file.checksum);
+                }
+            }
+
+            for (String name : entries.keySet()) {
+                if (!METS_XML.equals(name) && !located.contains(name)) {
+                    problems.add("'" + name + "' is not located by " + METS_XML);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Answers the checksum algorithm named by a {@code CHECKSUMTYPE}, or {@code null} if it names none
+     */
+    private static PackageOptions.Checksum.OPTS algorithm(String checksumType) {
+        for (PackageOptions.Checksum.OPTS algorithm : PackageOptions.Checksum.OPTS.values()) {
+            if (algorithm.name().equals(checksumType)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A {@code <file>} of {@code mets.xml}
+     */
+    private static class MetsFile {
+
+        private final String checksum;
+
+        private final String checksumType;
+
+        private final String size;
+
+        private String href;
+
+        private MetsFile(String checksum, String checksumType, String size) {
+            this.checksum = checksum;
+            this.checksumType = checksumType;
+            this.size = size;
+        }
+
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package edu.jhu.library.pass.deposit.provider.j10p;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -65,6 +66,15 @@ class XMLConstants {
         }
     };
 
+    /**
+     * The inverse of {@link #NS_TO_PREFIX_MAP}
+     */
+    static final Map<String, String> PREFIX_TO_NS_MAP = Collections.unmodifiableMap(new HashMap<String, String>() {
+        {
+            NS_TO_PREFIX_MAP.forEach((ns, prefix) -> put(prefix, ns));
+        }
+    });
+
     /**
      * XML Schema Instance Namespace
      */
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.ZipEntryCompression;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Decides whether a custodial entry of a zip package is stored or deflated, according to the {@link
+ * ZipEntryCompression} option.  Entries are stored when their mime type is a compressed format, or, when probing,
+ * when deflating a sample of their content saves less than {@link #MIN_SAVING} of its size.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class ZipEntryCompressionPolicy {
+
+    /**
+     * The minimum fraction of a probed sample that deflation must save for the entry to be deflated
+     */
+    static final double MIN_SAVING = 0.1;
+
+    /**
+     * Samples shorter than this are not probed; the entry is deflated
+     */
+    static final int MIN_PROBE_LENGTH = 4 * 1024;
+
+    /**
+     * Mime types of formats whose content is already compressed
+     */
+    private static final Set<String> COMPRESSED_TYPES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "application/pdf",
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/java-archive",
+            "application/epub+zip",
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "image/webp",
+            "image/jp2",
+            "audio/mpeg",
+            "audio/mp4",
+            "audio/ogg",
+            "video/mp4",
+            "video/mpeg",
+            "video/quicktime",
+            "video/webm")));
+
+    /**
+     * Prefixes of mime types of zip-based document formats
+     */
+    private static final String[] COMPRESSED_TYPE_PREFIXES = {
+            "application/vnd.openxmlformats-officedocument.",
+            "application/vnd.oasis.opendocument."
+    };
+
+    private final ZipEntryCompression.OPTS mode;
+
+    ZipEntryCompressionPolicy(ZipEntryCompression.OPTS mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Answers whether the entry should be stored rather than deflated.
+     *
+     * @param mimeType the detected mime type of the entry, may be {@code null}
+     * @param sample the leading bytes of the entry
+     * @param sampleLength the number of bytes of {@code sample} that are content
+     * @return {@code true} if the entry should be stored
+     */
+    boolean store(String mimeType, byte[] sample, int sampleLength) {
+        switch (mode) {
+            case STORED:
+                return true;
+            case MIME_TYPE:
+                return isCompressedType(mimeType);
+            case PROBE:
+                return isCompressedType(mimeType) || !deflates(sample, sampleLength);
+            default:
+                return false;
+        }
+    }
+
+    static boolean isCompressedType(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        // ignore parameters, e.g. "; charset=..."
+        int params = mimeType.indexOf(';');
+        String type = (params < 0 ? mimeType : mimeType.substring(0, params)).trim().toLowerCase();
+        if (COMPRESSED_TYPES.contains(type)) {
+            return true;
+        }
+        for (String prefix : COMPRESSED_TYPE_PREFIXES) {
+            if (type.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deflates the sample at the fastest level, answering whether it saves at least {@link #MIN_SAVING} of its size.
+     * Samples shorter than {@link #MIN_PROBE_LENGTH} are presumed to deflate.
+     */
+    static boolean deflates(byte[] sample, int sampleLength) {
+        if (sampleLength < MIN_PROBE_LENGTH) {
+            return true;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, sampleLength);
+            deflater.finish();
+            byte[] out = new byte[8 * 1024];
+            long deflated = 0;
+            while (!deflater.finished()) {
+                deflated += deflater.deflate(out);
+            }
+            return deflated <= sampleLength * (1 - MIN_SAVING);
+        } finally {
+            deflater.end();
+        }
+    }
+
+}
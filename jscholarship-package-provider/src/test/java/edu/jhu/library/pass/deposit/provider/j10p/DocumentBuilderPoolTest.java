@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderImpl;
+import org.dataconservancy.pass.deposit.builder.fs.FilesystemModelBuilder;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static submissions.SubmissionResourceUtil.lookupStream;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DocumentBuilderPoolTest {
+
+    private static final int THREADS = 16;
+
+    private DocumentBuilderFactory dbf;
+
+    @Before
+    public void setUp() throws Exception {
+        dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+    }
+
+    @Test
+    public void releasedBuilderIsReused() throws Exception {
+        DocumentBuilderPool underTest = new DocumentBuilderPool(dbf, 1);
+
+        DocumentBuilder builder = underTest.borrow();
+        underTest.release(builder);
+
+        assertSame(builder, underTest.borrow());
+        assertEquals(1, underTest.created());
+        assertEquals(1, underTest.active());
+        assertEquals(0, underTest.idle());
+    }
+
+    @Test
+    public void idleBuildersAreBounded() throws Exception {
+        DocumentBuilderPool underTest = new DocumentBuilderPool(dbf, 2);
+
+        List<DocumentBuilder> borrowed = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            borrowed.add(underTest.borrow());
+        }
+        assertEquals(5, underTest.created());
+        assertEquals(5, underTest.active());
+
+        borrowed.forEach(underTest::release);
+        assertEquals(0, underTest.active());
+        assertEquals(2, underTest.idle());
+    }
+
+    @Test
+    public void noIdleBuildersRetained() throws Exception {
+        DocumentBuilderPool underTest = new DocumentBuilderPool(dbf, 0);
+
+        DocumentBuilder builder = underTest.borrow();
+        underTest.release(builder);
+
+        assertNotSame(builder, underTest.borrow());
+        assertEquals(0, underTest.idle());
+    }
+
+    @Test
+    public void metersReportPool() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DocumentBuilderPool underTest = new DocumentBuilderPool(dbf, 2);
+        underTest.bindTo(registry);
+
+        DocumentBuilder builder = underTest.borrow();
+        assertEquals(1, registry.get(DocumentBuilderPool.ACTIVE_GAUGE).gauge().value(), 0);
+        underTest.release(builder);
+
+        assertEquals(0, registry.get(DocumentBuilderPool.ACTIVE_GAUGE).gauge().value(), 0);
+        assertEquals(1, registry.get(DocumentBuilderPool.IDLE_GAUGE).gauge().value(), 0);
+        assertEquals(1, registry.get(DocumentBuilderPool.CREATED_COUNTER).functionCounter().count(), 0);
+    }
+
+    /**
+     * A builder must never be on loan to more than one thread at a time.
+     */
+    @Test
+    public void buildersAreLentToOneThreadAtATime() throws Exception {
+        DocumentBuilderPool underTest = new DocumentBuilderPool(dbf, 4);
+        Set<DocumentBuilder> onLoan = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+        runConcurrently(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                DocumentBuilder builder = underTest.borrow();
+                assertTrue("Builder lent to more than one thread", onLoan.add(builder));
+                builder.newDocument();
+                assertTrue(onLoan.remove(builder));
+                underTest.release(builder);
+            }
+            return null;
+        });
+
+        assertEquals(0, underTest.active());
+        assertTrue(underTest.idle() <= 4);
+    }
+
+    /**
+     * Writers sharing the pool of a factory, used concurrently, must write exactly the document written by a writer
+     * used alone.
+     */
+    @Test
+    public void concurrentWritersProduceIdenticalDocuments() throws Exception {
+        DepositSubmission submission = new FilesystemModelBuilder()
+                .build(lookupStream(URI.create("fake:submission13")), emptyMap());
+        List<PackageStream.Resource> resources = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ResourceBuilderImpl builder = new ResourceBuilderImpl();
+            builder.name("data/file-" + i + ".pdf");
+            builder.sizeBytes(1024L * i);
+            builder.mimeType("application/pdf");
+            resources.add(builder.build());
+        }
+
+        DspaceMetadataDomWriterFactory factory = new DspaceMetadataDomWriterFactory(dbf);
+        Callable<byte[]> write = () -> {
+            long[] counter = new long[1];
+            DspaceMetadataDomWriter writer = factory.newInstance(() -> "ID-" + (++counter[0]));
+            resources.forEach(writer::addResource);
+            writer.addSubmission(submission);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.write(out);
+            return out.toByteArray();
+        };
+
+        byte[] expected = write.call();
+        for (byte[] actual : runConcurrently(() -> {
+            List<byte[]> written = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                written.add(write.call());
+            }
+            return written;
+        })) {
+            assertArrayEquals(expected, actual);
+        }
+
+        assertEquals(0, factory.builderPool().active());
+    }
+
+    /**
+     * Runs the task on {@link #THREADS} threads at once, answering the combined results and rethrowing the first
+     * failure.
+     */
+    private static <T> List<T> runConcurrently(Callable<List<T>> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<T>>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(task));
+            }
+            List<T> results = new ArrayList<>();
+            for (Future<List<T>> future : futures) {
+                List<T> result = future.get();
+                if (result != null) {
+                    results.addAll(result);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -25,6 +25,7 @@ import org.dataconservancy.pass.deposit.DepositTestUtil;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.assembler.shared.ChecksumImpl;
+import org.dataconservancy.pass.deposit.builder.fs.FilesystemModelBuilder;
 import org.dataconservancy.pass.deposit.model.DepositMetadata;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
 import org.dataconservancy.pass.deposit.model.JournalPublicationType;
@@ -53,15 +54,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DCTERMS_NS;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DCTERMS_NS_PREFIX;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DCT_ABSTRACT;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DCT_BIBLIOCITATION;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DC_CONTRIBUTOR;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DC_NS;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DC_NS_PREFIX;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DC_TITLE;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_DESCRIPTION;
@@ -74,6 +79,7 @@ import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_MDSCHE
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_MDSCHEMA_DC;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_MDSCHEMA_LOCAL;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_NS;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_NS_PREFIX;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_PROVENANCE;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.DIM_QUALIFIER;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_CHECKSUM;
@@ -102,6 +108,7 @@ import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_USE;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_XMLDATA;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_HREF;
 import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_NS;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XSI_NS_PREFIX;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -110,6 +117,7 @@ import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static submissions.SubmissionResourceUtil.lookupStream;
 
 /**
  * Unit tests most of the nuances of the {@link DspaceMetadataDomWriter}.
@@ -279,6 +287,44 @@ public class DspaceMetadataDomWriterTest {
                 rootNovelPrefix.getAttribute("xmlns:" + novelPrefix));
     }
 
+    /**
+     * When only the used namespaces are declared, the root of a record declares the prefixes used by its elements and
+     * attributes, and nothing else.  By default, every namespace is declared.
+     */
+    @Test
+    public void testMinimalNamespaces() throws Exception {
+        DepositSubmission submission = new FilesystemModelBuilder()
+                .build(lookupStream(URI.create("fake:submission13")), Collections.emptyMap());
+        submission.getMetadata().getArticleMetadata().setEmbargoLiftDate(ZonedDateTime.now().plusDays(10));
+
+        Element allDc = underTest.createDublinCoreMetadataDCMES(submission);
+        assertTrue(allDc.hasAttribute("xmlns:" + XSI_NS_PREFIX));
+        assertTrue(allDc.hasAttribute("xmlns:" + DIM_NS_PREFIX));
+
+        underTest.setNamespaces(DspacePackageOptions.MetsNamespaces.OPTS.MINIMAL);
+
+        Element minimalDc = underTest.createDublinCoreMetadataDCMES(submission);
+        assertEquals(new HashSet<>(Arrays.asList("xmlns:" + DC_NS_PREFIX, "xmlns:" + DCTERMS_NS_PREFIX)),
+                attributeNames(minimalDc));
+        assertEquals(DC_NS, minimalDc.getAttribute("xmlns:" + DC_NS_PREFIX));
+        assertEquals(DCTERMS_NS, minimalDc.getAttribute("xmlns:" + DCTERMS_NS_PREFIX));
+
+        // every element of the dim record shares the prefix of its root
+        assertEquals(0, attributeNames(underTest.createDimMetadataForEmbargo(submission)).stream()
+                .filter(name -> name.startsWith("xmlns")).count());
+
+        underTest.reset(MetsIdMinter.sequential());
+        assertTrue(underTest.createDublinCoreMetadataDCMES(submission).hasAttribute("xmlns:" + XSI_NS_PREFIX));
+    }
+
+    private static Set<String> attributeNames(Element element) {
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < element.getAttributes().getLength(); i++) {
+            names.add(element.getAttributes().item(i).getNodeName());
+        }
+        return names;
+    }
+
     /**
      * Adding a package resource to the DOM should include the addition of a {@code File} and {@code FLocat} element,
      * complete with attributes encoding the properties of the resource.  The checksum used will be the primary checksum
@@ -389,6 +435,36 @@ public class DspaceMetadataDomWriterTest {
         assertEquals(name4, ((Element)file5.getFirstChild()).getAttributeNS(XLINK_NS, XLINK_HREF));
     }
 
+    /**
+     * Many resources should share a single {@code <fileGrp>}, and the writer's index of files should agree with the
+     * document order of the {@code <file>} elements.
+     */
+    @Test
+    public void testAddManyResourcesSingleFileGrp() throws Exception {
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            PackageStream.Resource resource = mock(PackageStream.Resource.class);
+            when(resource.name()).thenReturn("resource" + i);
+            underTest.addResource(resource);
+        }
+
+        List<String> fileIds = underTest.getFileIdsByUse(DspaceMetadataDomWriter.CONTENT_USE);
+        assertEquals(count, fileIds.size());
+
+        Document result = DspaceDepositTestUtil.writeAndParseResults(dbf, underTest);
+
+        assertEquals(1, result.getElementsByTagNameNS(METS_NS, METS_FILESEC).getLength());
+        assertEquals(1, result.getElementsByTagNameNS(METS_NS, METS_FILEGRP).getLength());
+
+        NodeList files = result.getElementsByTagNameNS(METS_NS, METS_FILE);
+        assertEquals(count, files.getLength());
+        for (int i = 0; i < count; i++) {
+            Element file = (Element) files.item(i);
+            assertEquals(fileIds.get(i), file.getAttribute(METS_ID));
+            assertEquals("resource" + i, underTest.getFileById(fileIds.get(i)).getFLocats().get(0).getHref());
+        }
+    }
+
     /**
      * When a resource is added to the METS document, only the first checksum is taken
      * @throws Exception
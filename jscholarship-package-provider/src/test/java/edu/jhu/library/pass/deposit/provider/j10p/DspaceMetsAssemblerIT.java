@@ -29,8 +29,12 @@ import org.w3c.dom.Element;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -140,4 +144,46 @@ public class DspaceMetsAssemblerIT extends BaseDspaceMetsAssemblerIT {
                 });
     }
 
+    /**
+     * Insures that the size and checksums of the package describe the bytes of the package as they were read.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPackageMetadataDescribesBytesRead() throws Exception {
+        PackageStream stream = assemblerUnderTest().assemble(submission, getOptions());
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        long length;
+        try (InputStream in = new DigestInputStream(new DigestInputStream(stream.open(), sha256), md5)) {
+            length = IOUtils.copyLarge(in, new NullOutputStream());
+        }
+
+        PackageStream.Metadata metadata = stream.metadata();
+        assertEquals(length, metadata.sizeBytes());
+        Map<Checksum.OPTS, String> checksums = metadata.checksums().stream()
+                .collect(Collectors.toMap(PackageStream.Checksum::algorithm, PackageStream.Checksum::asHex));
+        assertEquals(2, checksums.size());
+        assertEquals(hex(sha256.digest()), checksums.get(Checksum.OPTS.SHA256));
+        assertEquals(hex(md5.digest()), checksums.get(Checksum.OPTS.MD5));
+    }
+
+    /**
+     * Insures that an assembled package passes the streaming verifier, as it is read from the package stream.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStreamingVerification() throws Exception {
+        PackageStream stream = assemblerUnderTest().assemble(submission, getOptions());
+
+        List<String> problems = new StreamingDspaceMetsVerifier(getOptions()).verify(stream);
+
+        assertTrue(String.join("; ", problems), problems.isEmpty());
+    }
+
+    private static String hex(byte[] bytes) {
+        return String.format("%0" + (bytes.length * 2) + "x", new BigInteger(1, bytes));
+    }
+
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream.Resource;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.MetsSpillThreshold;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Insures custodial resources are added to the METS document as they are written, and only once.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DspaceMetsPackageProviderTest {
+
+    private DspaceMetadataWriter metsWriter;
+
+    private DepositSubmission submission;
+
+    private DspaceMetadataDomWriterFactory writerFactory;
+
+    private DspaceMetsPackageProvider underTest;
+
+    @Before
+    public void setUp() {
+        metsWriter = mock(DspaceMetadataWriter.class);
+        writerFactory = mock(DspaceMetadataDomWriterFactory.class);
+        when(writerFactory.newWriter(any())).thenReturn(metsWriter);
+        submission = mock(DepositSubmission.class);
+        underTest = new DspaceMetsPackageProvider(writerFactory);
+    }
+
+    @After
+    public void tearDown() {
+        underTest.close();
+    }
+
+    @Test
+    public void resourcesAddedAsTheyAreWritten() {
+        Resource first = mock(Resource.class);
+        Resource second = mock(Resource.class);
+        underTest.start(submission, Collections.emptyList(), Collections.emptyMap());
+
+        underTest.resourceWritten(first);
+        verify(metsWriter).addResource(first);
+        underTest.resourceWritten(second);
+        verify(metsWriter).addResource(second);
+
+        underTest.finish(submission, Arrays.asList(first, second));
+
+        InOrder inOrder = inOrder(metsWriter);
+        inOrder.verify(metsWriter).addResource(first);
+        inOrder.verify(metsWriter).addResource(second);
+        inOrder.verify(metsWriter).addSubmission(submission);
+        inOrder.verify(metsWriter).write(any(OutputStream.class));
+    }
+
+    @Test
+    public void unreportedResourcesAddedOnFinish() {
+        Resource reported = mock(Resource.class);
+        Resource unreported = mock(Resource.class);
+        underTest.start(submission, Collections.emptyList(), Collections.emptyMap());
+
+        underTest.resourceWritten(reported);
+        underTest.finish(submission, Arrays.asList(reported, unreported));
+
+        verify(metsWriter, times(1)).addResource(reported);
+        verify(metsWriter, times(1)).addResource(unreported);
+        InOrder inOrder = inOrder(metsWriter);
+        inOrder.verify(metsWriter).addResource(unreported);
+        inOrder.verify(metsWriter).addSubmission(submission);
+        inOrder.verify(metsWriter).write(any(OutputStream.class));
+    }
+
+    @Test
+    public void resourcesOutsideOfAssemblyIgnored() {
+        Resource early = mock(Resource.class);
+        Resource custodial = mock(Resource.class);
+        Resource supplemental = mock(Resource.class);
+
+        underTest.resourceWritten(early);
+        underTest.start(submission, Collections.emptyList(), Collections.emptyMap());
+        underTest.resourceWritten(custodial);
+        underTest.finish(submission, Collections.singletonList(custodial));
+        underTest.resourceWritten(supplemental);
+
+        verify(metsWriter, never()).addResource(early);
+        verify(metsWriter, times(1)).addResource(custodial);
+        verify(metsWriter, never()).addResource(supplemental);
+    }
+
+    /**
+     * A package stream closed while mets.xml is being written must not recycle the writer until it has been written,
+     * so that another package cannot take a writer that is still in use.
+     */
+    @Test
+    public void writerRecycledOnlyOnceWritten() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        doAnswer(inv -> {
+            writing.countDown();
+            closed.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(metsWriter).write(any(OutputStream.class));
+        underTest.start(submission, Collections.emptyList(), Collections.emptyMap());
+
+        ExecutorService archiver = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> finished = archiver.submit(() -> underTest.finish(submission, Collections.emptyList()));
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+            underTest.close();
+            verify(writerFactory, never()).recycle(any());
+
+            closed.countDown();
+            try {
+                finished.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                // the buffer of mets.xml may have been released by close
+            }
+            verify(writerFactory, times(1)).recycle(metsWriter);
+
+            // the writer of a closed provider is not used again
+            underTest.resourceWritten(mock(Resource.class));
+            verify(metsWriter, never()).addResource(any());
+        } finally {
+            archiver.shutdownNow();
+        }
+    }
+
+    @Test
+    public void writerRecycledOnClose() {
+        underTest.start(submission, Collections.emptyList(), Collections.emptyMap());
+        underTest.finish(submission, Collections.emptyList());
+        underTest.close();
+        verify(writerFactory, times(1)).recycle(metsWriter);
+
+        try {
+            underTest.finish(submission, Collections.emptyList());
+            fail("Expected a closed provider to refuse to write mets.xml");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * A package stream closed after the writer of mets.xml was acquired, but before its buffer was allocated, must not
+     * allocate a buffer that would never be released.
+     */
+    @Test
+    public void noBufferAllocatedOnceClosed() throws Exception {
+        CountDownLatch adding = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        doAnswer(inv -> {
+            adding.countDown();
+            closed.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(metsWriter).addSubmission(any());
+        doAnswer(inv -> {
+            ((OutputStream) inv.getArgument(0)).write(new byte[] { 'm', 'e', 't', 's' });
+            return null;
+        }).when(metsWriter).write(any(OutputStream.class));
+        Set<String> spilled = spillFiles();
+        underTest.start(submission, Collections.emptyList(),
+                Collections.singletonMap(MetsSpillThreshold.KEY, "0"));
+
+        ExecutorService archiver = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> finished = archiver.submit(() -> underTest.finish(submission, Collections.emptyList()));
+            assertTrue(adding.await(10, TimeUnit.SECONDS));
+
+            underTest.close();
+            closed.countDown();
+            try {
+                finished.get(10, TimeUnit.SECONDS);
+                fail("Expected a closed provider to refuse to write mets.xml");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+
+            verify(metsWriter, never()).write(any(OutputStream.class));
+            verify(writerFactory, times(1)).recycle(metsWriter);
+            assertEquals(spilled, spillFiles());
+        } finally {
+            archiver.shutdownNow();
+        }
+    }
+
+    private static Set<String> spillFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir"))
+                .list((dir, name) -> name.startsWith("spill-") && name.endsWith(".tmp"));
+        return names == null ? Collections.emptySet() : new HashSet<>(Arrays.asList(names));
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetsPackageProvider.METS_XML;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the {@link DspaceMetsAssemblerIT} tests against a package whose {@code mets.xml} is the first entry of the zip,
+ * written after a pre-pass over the custodial resources; see {@link DspacePackageOptions.MetsPosition}.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class MetsFirstDspaceMetsAssemblerIT extends DspaceMetsAssemblerIT {
+
+    @Override
+    protected Map<String, Object> getOptions() {
+        Map<String, Object> options = super.getOptions();
+        options.put(DspacePackageOptions.MetsPosition.KEY, "first");
+        return options;
+    }
+
+    @Test
+    public void testMetsIsFirstEntry() throws Exception {
+        PackageStream stream = assemblerUnderTest().assemble(submission, getOptions());
+        int entries = 0;
+        try (InputStream in = stream.open(); ZipInputStream zipIn = new ZipInputStream(in)) {
+            ZipEntry first = zipIn.getNextEntry();
+            assertNotNull(first);
+            assertEquals(METS_XML, first.getName());
+            while (zipIn.getNextEntry() != null) {
+                entries++;
+            }
+        }
+
+        assertEquals(custodialResources.size(), entries);
+        assertTrue(stream.resources().hasNext());
+    }
+
+    @Test
+    public void testOpenPackageResource() throws Exception {
+        PackageStream stream = assemblerUnderTest().assemble(submission, getOptions());
+
+        try (InputStream metsIn = stream.open(METS_XML)) {
+            String mets = IOUtils.toString(metsIn, "UTF-8");
+            assertTrue(mets.contains(XMLConstants.METS_FLOCAT));
+        }
+
+        try {
+            stream.open("data/no-such-resource");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class MetsIdMinterTest {
+
+    /**
+     * The ASCII subset of an xsd:NCName, which is the lexical space of xsd:ID
+     */
+    private static final Pattern NCNAME = Pattern.compile("[A-Za-z_][A-Za-z0-9._-]*");
+
+    private static final int COUNT = 100_000;
+
+    @Test
+    public void sequentialIdsAreUniqueAndValid() throws Exception {
+        assertUniqueAndValid(MetsIdMinter.sequential());
+    }
+
+    @Test
+    public void randomIdsAreUniqueAndValid() throws Exception {
+        assertUniqueAndValid(MetsIdMinter.random());
+    }
+
+    @Test
+    public void compactIdsAreUniqueAndValid() throws Exception {
+        assertUniqueAndValid(MetsIdMinter.compact());
+    }
+
+    /**
+     * The compact profile defaults to compact identifiers, unless identifiers are selected explicitly.
+     */
+    @Test
+    public void compactProfileSelectsCompactIds() throws Exception {
+        HashMap<String, Object> options = new HashMap<>();
+        options.put(DspacePackageOptions.MetsProfile.KEY, "compact");
+        assertEquals("M1", MetsIdMinter.forOptions(options).mintId());
+
+        options.put(DspacePackageOptions.MetsIdentifiers.KEY, DspacePackageOptions.MetsIdentifiers.OPTS.RANDOM);
+        assertTrue(MetsIdMinter.forOptions(options).mintId().startsWith("_"));
+    }
+
+    /**
+     * Documents minted by different sequential minters should not share identifiers.
+     */
+    @Test
+    public void sequentialPrefixIsPerDocument() throws Exception {
+        assertNotEquals(MetsIdMinter.sequential().mintId(), MetsIdMinter.sequential().mintId());
+    }
+
+    @Test
+    public void selectedByPackageOption() throws Exception {
+        assertTrue(MetsIdMinter.forOptions(new HashMap<>()).mintId().startsWith("M"));
+        assertTrue(MetsIdMinter.forOptions(new HashMap<String, Object>() {
+            {
+                put(DspacePackageOptions.MetsIdentifiers.KEY, DspacePackageOptions.MetsIdentifiers.OPTS.RANDOM);
+            }
+        }).mintId().startsWith("_"));
+        assertEquals(36, MetsIdMinter.forOptions(new HashMap<String, Object>() {
+            {
+                put(DspacePackageOptions.MetsIdentifiers.KEY, "uuid");
+            }
+        }).mintId().length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPackageOption() throws Exception {
+        MetsIdMinter.forOptions(new HashMap<String, Object>() {
+            {
+                put(DspacePackageOptions.MetsIdentifiers.KEY, "moo");
+            }
+        });
+    }
+
+    /**
+     * Every ID attribute in a document written with the default minter must be unique and valid.
+     */
+    @Test
+    public void writerIdsAreUniqueAndValid() throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        DspaceMetadataDomWriter underTest = new DspaceMetadataDomWriterFactory(dbf).newInstance(new HashMap<>());
+
+        for (int i = 0; i < 100; i++) {
+            PackageStream.Resource resource = mock(PackageStream.Resource.class);
+            when(resource.name()).thenReturn("resource" + i);
+            underTest.addResource(resource);
+        }
+
+        Document result = DspaceDepositTestUtil.writeAndParseResults(dbf, underTest);
+        NodeList elements = result.getElementsByTagName("*");
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < elements.getLength(); i++) {
+            Element element = (Element) elements.item(i);
+            if (element.hasAttribute(METS_ID)) {
+                String id = element.getAttribute(METS_ID);
+                assertTrue("Invalid xsd:ID '" + id + "'", NCNAME.matcher(id).matches());
+                assertTrue("Duplicate ID '" + id + "'", ids.add(id));
+            }
+        }
+
+        // at least the mets, fileSec, fileGrp, and a file and FLocat per resource
+        assertTrue(ids.size() >= 3 + 2 * 100);
+    }
+
+    private static void assertUniqueAndValid(MetsIdMinter minter) {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < COUNT; i++) {
+            String id = minter.mintId();
+            assertTrue("Invalid xsd:ID '" + id + "'", NCNAME.matcher(id).matches());
+            assertTrue("Duplicate ID '" + id + "'", ids.add(id));
+        }
+    }
+
+}
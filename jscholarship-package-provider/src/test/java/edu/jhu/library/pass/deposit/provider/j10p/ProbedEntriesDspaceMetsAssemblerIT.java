@@ -0,0 +1,36 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import java.util.Map;
+
+/**
+ * Runs the {@link MetsFirstDspaceMetsAssemblerIT} tests against a package whose custodial entries are stored or
+ * deflated according to their mime type and a probe of their content; see {@link
+ * DspacePackageOptions.ZipEntryCompression}.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ProbedEntriesDspaceMetsAssemblerIT extends MetsFirstDspaceMetsAssemblerIT {
+
+    @Override
+    protected Map<String, Object> getOptions() {
+        Map<String, Object> options = super.getOptions();
+        options.put(DspacePackageOptions.ZipEntryCompression.KEY, "probe");
+        return options;
+    }
+
+}
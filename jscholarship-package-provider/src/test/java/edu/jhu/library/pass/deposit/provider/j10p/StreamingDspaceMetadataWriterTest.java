@@ -0,0 +1,433 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import au.edu.apsr.mtk.base.METS;
+import au.edu.apsr.mtk.base.METSWrapper;
+import au.edu.apsr.mtk.ch.METSReader;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.builder.fs.FilesystemModelBuilder;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_CHECKSUM;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_CHECKSUM_TYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_DIV;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_DMDID;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_DMDSEC;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FILE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FILEID;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_FPTR;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_ID;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_LOCTYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_MDTYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_MDWRAP;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_MIMETYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_NS;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_OTHERMDTYPE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_SIZE;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.METS_XMLDATA;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_HREF;
+import static edu.jhu.library.pass.deposit.provider.j10p.XMLConstants.XLINK_NS;
+import static java.util.Collections.emptyMap;
+import static org.dataconservancy.pass.deposit.DepositTestUtil.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static submissions.SubmissionResourceUtil.lookupStream;
+
+/**
+ * Insures the {@link StreamingDspaceMetadataWriter} writes METS documents equivalent to those written by the {@link
+ * DspaceMetadataDomWriter}: the same files, descriptive metadata and structure, differing only in identifiers.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingDspaceMetadataWriterTest {
+
+    private static final URI SUBMISSION_RESOURCE = URI.create("fake:submission13");
+
+    private DocumentBuilderFactory dbf;
+
+    private DepositSubmission submission;
+
+    private List<PackageStream.Resource> resources;
+
+    @Before
+    public void setUp() throws Exception {
+        dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        submission = new FilesystemModelBuilder().build(lookupStream(SUBMISSION_RESOURCE), emptyMap());
+
+        resources = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            PackageStream.Checksum checksum = mock(PackageStream.Checksum.class);
+            when(checksum.algorithm()).thenReturn(Checksum.OPTS.MD5);
+            when(checksum.asHex()).thenReturn("abcdef" + i);
+            PackageStream.Resource resource = mock(PackageStream.Resource.class);
+            when(resource.name()).thenReturn("data/file " + i + " & <more>.txt");
+            when(resource.sizeBytes()).thenReturn((i % 3 == 0) ? -1L : 1024L * i);
+            when(resource.mimeType()).thenReturn((i % 2 == 0) ? "text/plain" : null);
+            when(resource.checksum()).thenReturn((i % 4 == 0) ? null : checksum);
+            resources.add(resource);
+        }
+    }
+
+    @Test
+    public void equivalentToDomWriter() throws Exception {
+        assertEquivalent(write(new DspaceMetadataDomWriter(dbf)),
+                write(new StreamingDspaceMetadataWriter(dbf, MetsIdMinter.sequential())));
+    }
+
+    @Test
+    public void equivalentToDomWriterWithEmbargo() throws Exception {
+        submission.getMetadata().getArticleMetadata().setEmbargoLiftDate(ZonedDateTime.now().plusYears(1));
+
+        Document expected = write(new DspaceMetadataDomWriter(dbf));
+        Document actual = write(new StreamingDspaceMetadataWriter(dbf, MetsIdMinter.sequential()));
+
+        assertEquals(2, actual.getElementsByTagNameNS(METS_NS, METS_DMDSEC).getLength());
+        assertEquivalent(expected, actual);
+    }
+
+    /**
+     * Declaring only the namespaces used by each record must not change the content of the document, only its size
+     */
+    @Test
+    public void equivalentWithMinimalNamespaces() throws Exception {
+        submission.getMetadata().getArticleMetadata().setEmbargoLiftDate(ZonedDateTime.now().plusYears(1));
+
+        DspaceMetadataWriter all = new StreamingDspaceMetadataWriter(dbf, MetsIdMinter.sequential());
+        DspaceMetadataWriter domMinimal = new DspaceMetadataDomWriter(dbf);
+        domMinimal.setNamespaces(DspacePackageOptions.MetsNamespaces.OPTS.MINIMAL);
+        DspaceMetadataWriter streamingMinimal = new StreamingDspaceMetadataWriter(dbf, MetsIdMinter.sequential());
+        streamingMinimal.setNamespaces(DspacePackageOptions.MetsNamespaces.OPTS.MINIMAL);
+
+        byte[] allBytes = writeBytes(all, resources);
+        byte[] domMinimalBytes = writeBytes(domMinimal, resources);
+        byte[] streamingMinimalBytes = writeBytes(streamingMinimal, resources);
+
+        Document expected = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(allBytes));
+        assertEquivalent(expected, dbf.newDocumentBuilder().parse(new ByteArrayInputStream(domMinimalBytes)));
+        assertEquivalent(expected, dbf.newDocumentBuilder().parse(new ByteArrayInputStream(streamingMinimalBytes)));
+        assertTrue(streamingMinimalBytes.length < allBytes.length);
+    }
+
+    /**
+     * Both writers, under the compact profile, write a document equivalent to the standard document that is smaller,
+     * is not indented, and declares namespaces only on the METS root and the unprefixed root of each record.
+     */
+    @Test
+    public void compactProfile() throws Exception {
+        DspaceMetadataDomWriterFactory factory = new DspaceMetadataDomWriterFactory(dbf);
+        byte[] standard = writeBytes(factory.newWriter(new HashMap<>()), resources);
+        Document expected = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(standard));
+
+        for (DspacePackageOptions.MetsWriter.OPTS writer : DspacePackageOptions.MetsWriter.OPTS.values()) {
+            Map<String, Object> options = new HashMap<>();
+            options.put(DspacePackageOptions.MetsProfile.KEY, "compact");
+            options.put(DspacePackageOptions.MetsWriter.KEY, writer);
+
+            byte[] compact = writeBytes(factory.newWriter(options), resources);
+            Document actual = dbf.newDocumentBuilder().parse(new ByteArrayInputStream(compact));
+
+            assertEquivalent(expected, actual);
+            assertTrue(writer + " is not smaller", compact.length < standard.length);
+            assertTrue(writer + " is indented", !new String(compact, "UTF-8").contains(">\n"));
+            assertTrue(actual.getDocumentElement().getAttribute(METS_ID).matches("M[0-9a-z]+"));
+
+            List<Element> elements = asList(actual.getElementsByTagName("*"));
+            for (Element element : elements.subList(1, elements.size())) {
+                for (int i = 0; i < element.getAttributes().getLength(); i++) {
+                    Node attr = element.getAttributes().item(i);
+                    assertTrue(writer + " declared '" + attr.getNodeName() + "' on " + element.getTagName(),
+                            !attr.getNodeName().startsWith("xmlns:"));
+                }
+            }
+        }
+    }
+
+    /**
+     * The streamed document must be readable by mets-api, as it is by the package verifier
+     */
+    @Test
+    public void readableByMetsApi() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DspaceMetadataWriter underTest = new StreamingDspaceMetadataWriter(dbf, MetsIdMinter.sequential());
+        resources.forEach(underTest::addResource);
+        underTest.addSubmission(submission);
+        underTest.write(out);
+
+        METSReader metsReader = new METSReader();
+        metsReader.mapToDOM(new ByteArrayInputStream(out.toByteArray()));
+        METS mets = new METSWrapper(metsReader.getMETSDocument()).getMETSObject();
+        assertEquals(1, mets.getFileSec().getFileGrpByUse("CONTENT").size());
+        assertEquals(resources.size(), mets.getFileSec().getFileGrpByUse("CONTENT").get(0).getFiles().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void submissionBeforeResources() throws Exception {
+        new StreamingDspaceMetadataWriter(dbf, MetsIdMinter.sequential()).addSubmission(submission);
+    }
+
+    @Test
+    public void selectedByPackageOption() throws Exception {
+        DspaceMetadataDomWriterFactory factory = new DspaceMetadataDomWriterFactory(dbf);
+        assertEquals(DspaceMetadataDomWriter.class, factory.newWriter(new HashMap<>()).getClass());
+        assertEquals(StreamingDspaceMetadataWriter.class, factory.newWriter(new HashMap<String, Object>() {
+            {
+                put(DspacePackageOptions.MetsWriter.KEY, DspacePackageOptions.MetsWriter.OPTS.STREAMING);
+            }
+        }).getClass());
+        assertEquals(StreamingDspaceMetadataWriter.class, factory.newWriter(new HashMap<String, Object>() {
+            {
+                put(DspacePackageOptions.MetsWriter.KEY, "streaming");
+            }
+        }).getClass());
+    }
+
+    /**
+     * A writer that is reset must write exactly the document written by a new writer: nothing composed before the
+     * reset, including the embargo record, may leak into the next document.
+     */
+    @Test
+    public void resetWriterMatchesNewWriter() throws Exception {
+        assertResetMatchesNew(minter -> new DspaceMetadataDomWriter(dbf, minter));
+        assertResetMatchesNew(minter -> new StreamingDspaceMetadataWriter(dbf, minter));
+    }
+
+    @Test
+    public void recycledWritersAreReused() throws Exception {
+        DspaceMetadataDomWriterFactory factory = new DspaceMetadataDomWriterFactory(dbf);
+        Map<String, Object> streaming = new HashMap<String, Object>() {
+            {
+                put(DspacePackageOptions.MetsWriter.KEY, DspacePackageOptions.MetsWriter.OPTS.STREAMING);
+            }
+        };
+
+        DspaceMetadataWriter dom = factory.newWriter(new HashMap<>());
+        factory.recycle(dom);
+        assertEquals(1, factory.idleDomWriters());
+        assertEquals(0, factory.idleStreamingWriters());
+
+        DspaceMetadataWriter streamingWriter = factory.newWriter(streaming);
+        assertNotSame(dom, streamingWriter);
+        factory.recycle(streamingWriter);
+        assertEquals(1, factory.idleDomWriters());
+        assertEquals(1, factory.idleStreamingWriters());
+
+        assertSame(streamingWriter, factory.newWriter(streaming));
+        assertSame(dom, factory.newWriter(new HashMap<>()));
+        assertEquals(0, factory.idleDomWriters());
+        assertEquals(0, factory.idleStreamingWriters());
+    }
+
+    /**
+     * Writers recycled between threads must compose each document from only what was added since they were handed
+     * out: each thread alternates between two lists of resources, and compares every document with the one written by
+     * a new writer.
+     */
+    @Test
+    public void recycledWritersDoNotLeakBetweenThreads() throws Exception {
+        DspaceMetadataDomWriterFactory factory = new DspaceMetadataDomWriterFactory(dbf);
+        List<List<PackageStream.Resource>> inputs = Arrays.asList(resources, resources.subList(0, 2));
+        List<byte[]> expected = new ArrayList<>();
+        for (List<PackageStream.Resource> input : inputs) {
+            expected.add(writeBytes(new DspaceMetadataDomWriter(dbf, counter()), input));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        DspaceMetadataWriter writer = factory.newWriter(new HashMap<>());
+                        writer.reset(counter());
+                        assertArrayEquals(expected.get(i % 2), writeBytes(writer, inputs.get(i % 2)));
+                        factory.recycle(writer);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(factory.idleDomWriters() <= DspaceMetadataDomWriterFactory.MAX_IDLE_WRITERS);
+        assertEquals(0, factory.idleStreamingWriters());
+    }
+
+    private byte[] writeBytes(DspaceMetadataWriter writer, List<PackageStream.Resource> input) {
+        input.forEach(writer::addResource);
+        writer.addSubmission(submission);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        return out.toByteArray();
+    }
+
+    private void assertResetMatchesNew(Function<MetsIdMinter, DspaceMetadataWriter> writers) throws Exception {
+        DspaceMetadataWriter reused = writers.apply(counter());
+        submission.getMetadata().getArticleMetadata().setEmbargoLiftDate(ZonedDateTime.now().plusYears(1));
+        write(reused);
+
+        submission.getMetadata().getArticleMetadata().setEmbargoLiftDate(null);
+        resources = resources.subList(0, 3);
+        reused.reset(counter());
+
+        assertEquals(toString(write(writers.apply(counter()))), toString(write(reused)));
+        setUp();
+    }
+
+    private static MetsIdMinter counter() {
+        long[] counter = new long[1];
+        return () -> "ID-" + (++counter[0]);
+    }
+
+    private static String toString(Document doc) throws Exception {
+        StringWriter out = new StringWriter();
+        TransformerFactory.newInstance().newTransformer().transform(new DOMSource(doc), new StreamResult(out));
+        return out.toString();
+    }
+
+    private Document write(DspaceMetadataWriter writer) throws Exception {
+        resources.forEach(writer::addResource);
+        writer.addSubmission(submission);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        return dbf.newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static void assertEquivalent(Document expected, Document actual) {
+        // <file> and <FLocat> attributes, in order
+        assertEquals(describeFiles(expected), describeFiles(actual));
+
+        // <dmdSec> types and their records
+        List<Element> expectedDmdSecs = asList(expected.getElementsByTagNameNS(METS_NS, METS_DMDSEC));
+        List<Element> actualDmdSecs = asList(actual.getElementsByTagNameNS(METS_NS, METS_DMDSEC));
+        assertEquals(expectedDmdSecs.size(), actualDmdSecs.size());
+        for (int i = 0; i < expectedDmdSecs.size(); i++) {
+            Element expectedMdWrap = child(expectedDmdSecs.get(i), METS_MDWRAP);
+            Element actualMdWrap = child(actualDmdSecs.get(i), METS_MDWRAP);
+            assertEquals(expectedMdWrap.getAttribute(METS_MDTYPE), actualMdWrap.getAttribute(METS_MDTYPE));
+            assertEquals(expectedMdWrap.getAttribute(METS_OTHERMDTYPE), actualMdWrap.getAttribute(METS_OTHERMDTYPE));
+            assertEquals(describe(child(expectedMdWrap, METS_XMLDATA)), describe(child(actualMdWrap, METS_XMLDATA)));
+        }
+
+        // the <structMap> links every <dmdSec>, and every <file> in order
+        assertEquals(describeStructMap(expected), describeStructMap(actual));
+    }
+
+    private static List<String> describeFiles(Document mets) {
+        return asList(mets.getElementsByTagNameNS(METS_NS, METS_FILE)).stream().map(file -> {
+            Element flocat = (Element) file.getElementsByTagNameNS(METS_NS, "FLocat").item(0);
+            return String.join("|", file.getAttribute(METS_CHECKSUM), file.getAttribute(METS_CHECKSUM_TYPE),
+                    file.getAttribute(METS_SIZE), file.getAttribute(METS_MIMETYPE),
+                    flocat.getAttribute(METS_LOCTYPE), flocat.getAttributeNS(XLINK_NS, XLINK_HREF));
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * Describes the {@code <div>} of the structMap in terms of the {@code MDTYPE} of the linked {@code <dmdSec>}s and
+     * the {@code href} of the linked {@code <file>}s
+     */
+    private static List<String> describeStructMap(Document mets) {
+        Map<String, String> mdTypeByDmdId = new HashMap<>();
+        asList(mets.getElementsByTagNameNS(METS_NS, METS_DMDSEC)).forEach(dmdSec ->
+                mdTypeByDmdId.put(dmdSec.getAttribute(METS_ID), child(dmdSec, METS_MDWRAP).getAttribute(METS_MDTYPE)));
+
+        Map<String, String> hrefByFileId = new HashMap<>();
+        asList(mets.getElementsByTagNameNS(METS_NS, METS_FILE)).forEach(file -> hrefByFileId.put(
+                file.getAttribute(METS_ID), ((Element) file.getElementsByTagNameNS(METS_NS, "FLocat").item(0))
+                        .getAttributeNS(XLINK_NS, XLINK_HREF)));
+
+        List<Element> divs = asList(mets.getElementsByTagNameNS(METS_NS, METS_DIV));
+        assertEquals(1, divs.size());
+
+        List<String> description = new ArrayList<>();
+        for (String dmdId : divs.get(0).getAttribute(METS_DMDID).split(" ")) {
+            assertTrue(mdTypeByDmdId.containsKey(dmdId));
+            description.add(mdTypeByDmdId.get(dmdId));
+        }
+        asList(divs.get(0).getElementsByTagNameNS(METS_NS, METS_FPTR)).forEach(fptr -> {
+            assertTrue(hrefByFileId.containsKey(fptr.getAttribute(METS_FILEID)));
+            description.add(hrefByFileId.get(fptr.getAttribute(METS_FILEID)));
+        });
+        return description;
+    }
+
+    /**
+     * Describes an element and its descendants by their expanded names, attributes and text, ignoring namespace
+     * declarations and whitespace-only text
+     */
+    private static String describe(Node node) {
+        StringBuilder description = new StringBuilder();
+        if (node.getNodeType() == Node.ELEMENT_NODE) {
+            Element element = (Element) node;
+            description.append("{").append(element.getNamespaceURI()).append("}").append(element.getLocalName());
+            for (int i = 0; i < element.getAttributes().getLength(); i++) {
+                Node attr = element.getAttributes().item(i);
+                if (!"http://www.w3.org/2000/xmlns/".equals(attr.getNamespaceURI())) {
+                    description.append(" @").append(attr.getLocalName()).append("=").append(attr.getNodeValue());
+                }
+            }
+            description.append("[");
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                description.append(describe(child));
+            }
+            description.append("]");
+        } else if (node.getNodeType() == Node.TEXT_NODE && !node.getNodeValue().trim().isEmpty()) {
+            description.append(node.getNodeValue());
+        }
+        return description.toString();
+    }
+
+    private static Element child(Element parent, String localName) {
+        return (Element) parent.getElementsByTagNameNS(METS_NS, localName).item(0);
+    }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import java.util.Map;
+
+/**
+ * Runs the {@link DspaceMetsAssemblerIT} tests against a package whose {@code mets.xml} is written by the {@link
+ * StreamingDspaceMetadataWriter}.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingDspaceMetsAssemblerIT extends DspaceMetsAssemblerIT {
+
+    @Override
+    protected Map<String, Object> getOptions() {
+        Map<String, Object> options = super.getOptions();
+        options.put(DspacePackageOptions.MetsWriter.KEY, DspacePackageOptions.MetsWriter.OPTS.STREAMING);
+        return options;
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static edu.jhu.library.pass.deposit.provider.j10p.DspaceMetsPackageProvider.METS_XML;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingDspaceMetsVerifierTest {
+
+    private static final String PDF = "data/manuscript.pdf";
+
+    private static final String TXT = "data/readme.txt";
+
+    private static final byte[] PDF_CONTENT = "%PDF-1.4 manuscript".getBytes(UTF_8);
+
+    private static final byte[] TXT_CONTENT = "read me".getBytes(UTF_8);
+
+    private final StreamingDspaceMetsVerifier underTest = new StreamingDspaceMetsVerifier(
+            Collections.singletonMap(Checksum.KEY, asList(Checksum.OPTS.SHA256, Checksum.OPTS.MD5)));
+
+    @Test
+    public void metsLast() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(PDF, PDF_CONTENT);
+        entries.put(TXT, TXT_CONTENT);
+        entries.put(METS_XML, mets(file(PDF, PDF_CONTENT), file(TXT, TXT_CONTENT)));
+
+        assertTrue(verify(entries).isEmpty());
+    }
+
+    @Test
+    public void metsFirst() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(METS_XML, mets(file(PDF, PDF_CONTENT), file(TXT, TXT_CONTENT)));
+        entries.put(PDF, PDF_CONTENT);
+        entries.put(TXT, TXT_CONTENT);
+
+        assertTrue(verify(entries).isEmpty());
+    }
+
+    @Test
+    public void sizeAndChecksumMismatch() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(PDF, "%PDF-1.4 truncated".getBytes(UTF_8));
+        entries.put(METS_XML, mets(file(PDF, PDF_CONTENT)));
+
+        List<String> problems = verify(entries);
+
+        assertEquals(2, problems.size());
+        assertTrue(problems.get(0).contains(String.valueOf(PDF_CONTENT.length)));
+        assertTrue(problems.get(1).contains(sha256(PDF_CONTENT)));
+    }
+
+    @Test
+    public void missingAndUnlocatedEntries() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(TXT, TXT_CONTENT);
+        entries.put(METS_XML, mets(file(PDF, PDF_CONTENT)));
+
+        List<String> problems = verify(entries);
+
+        assertEquals(2, problems.size());
+        assertTrue(problems.get(0).contains(PDF));
+        assertTrue(problems.get(1).contains(TXT));
+    }
+
+    @Test
+    public void unexpectedChecksumType() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(PDF, PDF_CONTENT);
+        entries.put(METS_XML, mets(file(PDF, PDF_CONTENT).replace("SHA256", "SHA512")));
+
+        List<String> problems = verify(entries);
+
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains("SHA512"));
+    }
+
+    @Test
+    public void noMets() throws Exception {
+        List<String> problems = verify(Collections.singletonMap(PDF, PDF_CONTENT));
+
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains(METS_XML));
+    }
+
+    @Test
+    public void malformedMets() throws Exception {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(METS_XML, "<mets".getBytes(UTF_8));
+
+        List<String> problems = verify(entries);
+
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains(METS_XML));
+    }
+
+    private List<String> verify(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putArchiveEntry(new ZipArchiveEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeArchiveEntry();
+            }
+        }
+        return underTest.verify(new ByteArrayInputStream(zip.toByteArray()));
+    }
+
+    private static String file(String href, byte[] content) throws Exception {
+        return "<file ID=\"" + href.hashCode() + "\" CHECKSUM=\"" + sha256(content) + "\" CHECKSUMTYPE=\"SHA256\" " +
+                "SIZE=\"" + content.length + "\"><FLocat LOCTYPE=\"URL\" xlink:href=\"" + href + "\"/></file>";
+    }
+
+    private static byte[] mets(String... files) {
+        return ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<mets xmlns=\"http://www.loc.gov/METS/\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">" +
+                "<fileSec><fileGrp USE=\"CONTENT\">" + String.join("", files) + "</fileGrp></fileSec>" +
+                "</mets>").getBytes(UTF_8);
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+}
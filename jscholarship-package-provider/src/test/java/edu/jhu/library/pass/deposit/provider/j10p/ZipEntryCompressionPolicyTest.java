@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import edu.jhu.library.pass.deposit.provider.j10p.DspacePackageOptions.ZipEntryCompression;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ZipEntryCompressionPolicyTest {
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    @Test
+    public void compressedTypes() {
+        assertTrue(ZipEntryCompressionPolicy.isCompressedType("application/pdf"));
+        assertTrue(ZipEntryCompressionPolicy.isCompressedType("image/jpeg"));
+        assertTrue(ZipEntryCompressionPolicy.isCompressedType("Application/ZIP"));
+        assertTrue(ZipEntryCompressionPolicy.isCompressedType("image/png; charset=binary"));
+        assertTrue(ZipEntryCompressionPolicy.isCompressedType(
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document"));
+
+        assertFalse(ZipEntryCompressionPolicy.isCompressedType("text/plain"));
+        assertFalse(ZipEntryCompressionPolicy.isCompressedType("image/tiff"));
+        assertFalse(ZipEntryCompressionPolicy.isCompressedType("application/xml"));
+        assertFalse(ZipEntryCompressionPolicy.isCompressedType(null));
+    }
+
+    @Test
+    public void probe() {
+        assertFalse(ZipEntryCompressionPolicy.deflates(random(), SAMPLE_SIZE));
+        assertTrue(ZipEntryCompressionPolicy.deflates(text(), SAMPLE_SIZE));
+
+        // short samples are presumed to deflate
+        assertTrue(ZipEntryCompressionPolicy.deflates(random(), ZipEntryCompressionPolicy.MIN_PROBE_LENGTH - 1));
+    }
+
+    @Test
+    public void modes() {
+        ZipEntryCompressionPolicy deflated = new ZipEntryCompressionPolicy(ZipEntryCompression.OPTS.DEFLATED);
+        assertFalse(deflated.store("image/jpeg", random(), SAMPLE_SIZE));
+
+        ZipEntryCompressionPolicy stored = new ZipEntryCompressionPolicy(ZipEntryCompression.OPTS.STORED);
+        assertTrue(stored.store("text/plain", text(), SAMPLE_SIZE));
+
+        ZipEntryCompressionPolicy mimeType = new ZipEntryCompressionPolicy(ZipEntryCompression.OPTS.MIME_TYPE);
+        assertTrue(mimeType.store("image/jpeg", text(), SAMPLE_SIZE));
+        assertFalse(mimeType.store("application/octet-stream", random(), SAMPLE_SIZE));
+
+        ZipEntryCompressionPolicy probe = new ZipEntryCompressionPolicy(ZipEntryCompression.OPTS.PROBE);
+        assertTrue(probe.store("image/jpeg", text(), SAMPLE_SIZE));
+        assertTrue(probe.store("application/octet-stream", random(), SAMPLE_SIZE));
+        assertFalse(probe.store("application/octet-stream", text(), SAMPLE_SIZE));
+    }
+
+    private static byte[] random() {
+        byte[] sample = new byte[SAMPLE_SIZE];
+        new Random(SAMPLE_SIZE).nextBytes(sample);
+        return sample;
+    }
+
+    private static byte[] text() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < SAMPLE_SIZE) {
+            text.append("The quick brown fox jumps over the lazy dog. ");
+        }
+        return text.substring(0, SAMPLE_SIZE).getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
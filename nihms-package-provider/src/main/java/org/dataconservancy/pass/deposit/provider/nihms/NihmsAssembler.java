@@ -17,6 +17,7 @@
 package org.dataconservancy.pass.deposit.provider.nihms;
 
 import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Compression;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
 import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
 import org.dataconservancy.pass.deposit.assembler.shared.ArchivingPackageStream;
@@ -25,17 +26,33 @@ import org.dataconservancy.pass.deposit.assembler.shared.Extension;
 import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderFactory;
 import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.provider.support.CompressingPackageStream;
+import org.dataconservancy.pass.deposit.provider.support.CompressingPackageStream.Compressor;
+import org.dataconservancy.pass.deposit.provider.support.CustodialPrefetcher;
+import org.dataconservancy.pass.deposit.provider.support.DigestingPackageStream;
+import org.dataconservancy.pass.deposit.provider.support.ParallelBzip2OutputStream;
+import org.dataconservancy.pass.deposit.provider.support.ParallelGzipOutputStream;
+import org.dataconservancy.pass.deposit.provider.support.ReleasingPackageStream;
+import org.dataconservancy.pass.deposit.provider.support.SharedCustodialContent;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.net.URI;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
 
 import static org.dataconservancy.pass.deposit.assembler.shared.AssemblerSupport.buildMetadata;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsPackageOptions.Bzip2Threads;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsPackageOptions.GzipBlockSize;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsPackageOptions.GzipThreads;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.bytesOption;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.intOption;
 
 @Component
 public class NihmsAssembler extends AbstractAssembler {
@@ -57,13 +74,18 @@ public class NihmsAssembler extends AbstractAssembler {
 
     private static final String PACKAGE_FILE_NAME = "%s_%s_%s";
 
+    private static final String COMPRESSOR_THREAD_NAME = "nihms-package-compressor";
+
     private NihmsPackageProviderFactory packageProviderFactory;
 
+    private MetadataBuilderFactory metadataBuilderFactory;
+
     @Autowired
     public NihmsAssembler(MetadataBuilderFactory mbf,
                           ResourceBuilderFactory rbf,
                           NihmsPackageProviderFactory packageProviderFactory) {
         super(mbf, rbf);
+        this.metadataBuilderFactory = mbf;
         this.packageProviderFactory = packageProviderFactory;
     }
 
@@ -75,7 +97,55 @@ public class NihmsAssembler extends AbstractAssembler {
         buildMetadata(mb, options);
         namePackage(submission, mb);
         NihmsPackageProvider packageProvider = this.packageProviderFactory.newInstance();
-        return new ArchivingPackageStream(submission, custodialResources, mb, rbf, options, packageProvider);
+        // content is read through the cache, if configured, and fetched once for every package of a fan-out assembly
+        custodialResources = SharedCustodialContent.share(packageProviderFactory.resolved(custodialResources), options);
+        // the next custodial resources are fetched while the current one is archived, if the options enable read-ahead
+        CustodialPrefetcher.ReadAhead readAhead = packageProviderFactory.prefetcher().readAhead(custodialResources,
+                options);
+        custodialResources = readAhead.resources();
+
+        PackageStream.Metadata md = mb.build();
+        Compressor compressor = md.compressed() ? parallelCompressor(md.compression(), options) : null;
+        if (compressor != null) {
+            // archive without compression, and compress the archive in parallel; mb describes the compressed package
+            Map<String, Object> archiveOptions = new HashMap<>(options);
+            archiveOptions.put(Compression.KEY, Compression.OPTS.NONE);
+            MetadataBuilder archiveMb = metadataBuilderFactory.newInstance();
+            buildMetadata(archiveMb, archiveOptions);
+            PackageStream archive = new ArchivingPackageStream(submission, custodialResources, archiveMb, rbf,
+                    archiveOptions, packageProvider);
+            PackageStream compressed = new CompressingPackageStream(archive, mb, COMPRESSOR_THREAD_NAME, compressor);
+            return new ReleasingPackageStream(new DigestingPackageStream(compressed, mb, options), packageProvider,
+                    readAhead);
+        }
+
+        // the package is digested, and its length counted, as it is read: mb describes the package once it is read
+        PackageStream archive = new ArchivingPackageStream(submission, custodialResources, mb, rbf, options,
+                packageProvider);
+        return new ReleasingPackageStream(new DigestingPackageStream(archive, mb, options), packageProvider,
+                readAhead);
+    }
+
+    /**
+     * Answers the compressor used to compress the package in parallel, or {@code null} if the package is compressed
+     * by a single thread as it is archived.
+     */
+    private Compressor parallelCompressor(Compression.OPTS compression, Map<String, Object> options) {
+        ForkJoinPool pool = packageProviderFactory.compressionPool();
+        switch (compression) {
+            case GZIP: {
+                int threads = intOption(options, GzipThreads.KEY, GzipThreads.DEFAULT);
+                int blockSize = (int) bytesOption(options, GzipBlockSize.KEY, GzipBlockSize.DEFAULT);
+                return threads > 1 ? out -> new ParallelGzipOutputStream(out, pool, threads, blockSize,
+                        Deflater.DEFAULT_COMPRESSION) : null;
+            }
+            case BZIP2: {
+                int threads = intOption(options, Bzip2Threads.KEY, Bzip2Threads.DEFAULT);
+                return threads > 1 ? out -> new ParallelBzip2OutputStream(out, pool, threads) : null;
+            }
+            default:
+                return null;
+        }
     }
 
     static void namePackage(DepositSubmission submission, MetadataBuilder mb) {
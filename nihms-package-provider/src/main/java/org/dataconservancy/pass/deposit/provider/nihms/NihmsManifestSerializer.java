@@ -16,14 +16,14 @@
 
 package org.dataconservancy.pass.deposit.provider.nihms;
 
-import org.dataconservancy.pass.deposit.assembler.shared.SizedStream;
 import org.dataconservancy.pass.deposit.model.DepositFile;
 import org.dataconservancy.pass.deposit.model.DepositFileType;
 import org.dataconservancy.pass.deposit.model.DepositManifest;
 
-import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -54,9 +54,9 @@ public class NihmsManifestSerializer implements StreamingSerializer {
     }
 
 
-    public SizedStream serialize(){
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        PrintWriter writer = new PrintWriter(os);
+    @Override
+    public void serialize(OutputStream out) {
+        PrintWriter writer = new PrintWriter(out);
 
         DepositFileLabelMaker labelMaker = new DepositFileLabelMaker();
         for (DepositFile file : manifest.getFiles() ){
@@ -77,9 +77,7 @@ public class NihmsManifestSerializer implements StreamingSerializer {
             includeBulkMetadataInManifest(writer, labelMaker);
         }
 
-        writer.close();
-
-        return NihmsAssemblerUtil.asSizedStream(os);
+        writer.flush();
     }
 
     protected static void includeBulkMetadataInManifest(PrintWriter writer, DepositFileLabelMaker labelMaker) {
@@ -109,28 +107,13 @@ public class NihmsManifestSerializer implements StreamingSerializer {
         /**
          * The label types required by the NIHMS Bulk Submission Specifications for Funding Agencies, July 2017
          */
-        private final DepositFileType[] requiredLabelTypes = {
+        private final Set<DepositFileType> requiredTypes = EnumSet.of(
                 DepositFileType.figure,
                 DepositFileType.table,
                 DepositFileType.supplement
-        };
-
-        private final Set<DepositFileType> requiredTypes = new HashSet<>(Arrays.asList(requiredLabelTypes));
-
-        private Map<DepositFileType, Set<String>> usedFileLabels = createLabelMap();
+        );
 
-        /**
-         * An initialization method to populate a Map which tracks used labels for any file type
-         *
-         * @return the label Map
-         */
-        private Map<DepositFileType, Set<String>> createLabelMap() {
-            Map<DepositFileType, Set<String>> labelMap = new HashMap<>();
-            for (DepositFileType fileType : Arrays.asList(DepositFileType.values())) {
-                labelMap.put(fileType, new HashSet<>());
-            }
-            return labelMap;
-        }
+        private final Map<DepositFileType, TypeLabels> usedFileLabels = new EnumMap<>(DepositFileType.class);
 
         /**
          * Return a unique label for a {@code DepositFile}. If the label is not required, we make sure that any
@@ -142,19 +125,13 @@ public class NihmsManifestSerializer implements StreamingSerializer {
          */
         String getTypeUniqueLabel(DepositFileType type, String description) {
 
-            String label;
+            //tabs are used to separate fields in the manifest, so we can't have them in our string.  a description
+            //consisting only of whitespace trims to the empty string.
+            String label = (description == null) ? "" : description.replace('\t', ' ').trim();
             boolean missing = false;
 
-            //first see if we have any content in the supplied description/label
-            if (description == null || description.replaceAll("\\s", "").length() == 0) {
-                description = "";
-            }
-
-            //tabs are used to separate fields in the manifest, so we can't have them in our string
-            label = description.replaceAll("\t", " ").trim();
-
             //if the label is content-less, we can return it if not required, but must construct one if required
-            if (label.length() == 0) {
+            if (label.isEmpty()) {
                 if (requiredTypes.contains(type)) {
                     label = type.toString();//we require a label for these files, let's build one
                     missing = true;
@@ -163,24 +140,47 @@ public class NihmsManifestSerializer implements StreamingSerializer {
                 }
             }
 
+            TypeLabels labels = usedFileLabels.computeIfAbsent(type, t -> new TypeLabels());
+
             //we have a string as a candidate. if it is required and the initial label was empty,
             //we start with <type>-1 as a first try
             //otherwise, just use the supplied label.
             String firstTry = missing ? label + "-1" : label;
-            if (!usedFileLabels.get(type).contains(firstTry)) {
-                usedFileLabels.get(type).add(firstTry);
+            if (labels.used.add(firstTry)) {
                 return firstTry;
             }
 
             //uh-oh, our first try is already used, let's generate a free one
-            int i = missing ? 2 : 1;//optimization :-)
-            while (usedFileLabels.get(type).contains(label + "-" + Integer.toString(i))) {
+            return labels.nextFree(label, missing ? 2 : 1);
+        }
+    }
+
+    /**
+     * The labels used by the files of a single type.  For each base label, the suffix following the last suffix found
+     * to be in use is remembered, so that allocating a label for many files sharing the same base label does not
+     * probe every suffix in use by earlier files.
+     */
+    private static class TypeLabels {
+
+        private final Set<String> used = new HashSet<>();
+
+        private final Map<String, Integer> nextSuffix = new HashMap<>();
+
+        /**
+         * Answers the first free {@code <label>-<n>} with {@code n >= first}, and marks it used.  Every suffix below
+         * the remembered suffix for {@code label} is known to be in use, because labels are never released.
+         */
+        private String nextFree(String label, int first) {
+            int i = Math.max(first, nextSuffix.getOrDefault(label, first));
+            String candidate = label + "-" + i;
+            while (!used.add(candidate)) {
                 i++;
+                candidate = label + "-" + i;
             }
-            label = label + "-" + Integer.toString(i);
-            usedFileLabels.get(type).add(label);
-            return label;
+            nextSuffix.put(label, i + 1);
+            return candidate;
         }
+
     }
 
 }
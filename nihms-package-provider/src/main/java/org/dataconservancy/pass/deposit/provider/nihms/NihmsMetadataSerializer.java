@@ -22,12 +22,12 @@ import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.naming.NameCoder;
 import com.thoughtworks.xstream.io.xml.DomDriver;
 import com.thoughtworks.xstream.io.xml.XmlFriendlyNameCoder;
-import org.dataconservancy.pass.deposit.assembler.shared.SizedStream;
 import org.dataconservancy.pass.deposit.model.DepositMetadata;
 
-import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -37,129 +37,144 @@ import java.util.List;
  */
 public class NihmsMetadataSerializer implements StreamingSerializer {
 
+    /**
+     * The name of the root element of the bulk metadata document
+     */
+    static final String ROOT_ELEMENT = "nihms-submit";
+
     private DepositMetadata metadata;
 
     public NihmsMetadataSerializer(DepositMetadata metadata){
         this.metadata = metadata;
     }
 
-    public SizedStream serialize() {
-        XStream xstream = new XStream(new DomDriver("UTF-8", new XmlFriendlyNameCoder("_-", "_")));
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
+    @Override
+    public void serialize(OutputStream out) {
+        XStream xstream = new XStream(new DomDriver("UTF-8", nameCoder()));
         xstream.registerConverter(new MetadataConverter());
-        xstream.alias("nihms-submit", DepositMetadata.class);
-        xstream.toXML(metadata, os);
-
-        return NihmsAssemblerUtil.asSizedStream(os);
+        xstream.alias(ROOT_ELEMENT, DepositMetadata.class);
+        xstream.toXML(metadata, out);
     }
 
-    private class MetadataConverter implements Converter {
-        @SuppressWarnings("rawtypes")
-        public boolean canConvert(Class clazz) {
-            return DepositMetadata.class == clazz;
-        }
-
-        public void marshal(Object value, HierarchicalStreamWriter writer,
-                            MarshallingContext context) {
-            DepositMetadata metadata = (DepositMetadata) value;
-
-            //process manuscript element (except, strangely, for title, which we do after journal)
-            DepositMetadata.Manuscript manuscript = metadata.getManuscriptMetadata();
-            DepositMetadata.Article article = metadata.getArticleMetadata();
-            if (manuscript != null) {
-                writer.startNode("manuscript");
-                if(manuscript.getNihmsId() != null) {
-                    writer.addAttribute("id", manuscript.getNihmsId());
-                }
+    /**
+     * Writes the children of the {@code <nihms-submit>} element for the supplied metadata.  The caller is responsible
+     * for starting and ending the root element.
+     * <p>
+     * Package-private so that it may be shared by serializers that do not use XStream to drive the writer.
+     * </p>
+     *
+     * @param metadata the metadata to write
+     * @param writer the writer receiving the metadata
+     */
+    static void writeMetadata(DepositMetadata metadata, HierarchicalStreamWriter writer) {
+        //process manuscript element (except, strangely, for title, which we do after journal)
+        DepositMetadata.Manuscript manuscript = metadata.getManuscriptMetadata();
+        DepositMetadata.Article article = metadata.getArticleMetadata();
+        if (manuscript != null) {
+            writer.startNode("manuscript");
+            if(manuscript.getNihmsId() != null) {
+                writer.addAttribute("id", manuscript.getNihmsId());
+            }
 
-                //primitive types
-                writer.addAttribute("publisher_pdf", booleanConvert(manuscript.isPublisherPdf()));
-                writer.addAttribute("show_publisher_pdf", booleanConvert(manuscript.isShowPublisherPdf()));
-                if (metadata.getArticleMetadata() != null && metadata.getArticleMetadata().getEmbargoLiftDate() != null) {
-                    // TODO: resolve the calculation of the embargo offset
-                }
+            //primitive types
+            writer.addAttribute("publisher_pdf", booleanConvert(manuscript.isPublisherPdf()));
+            writer.addAttribute("show_publisher_pdf", booleanConvert(manuscript.isShowPublisherPdf()));
+            if (metadata.getArticleMetadata() != null && metadata.getArticleMetadata().getEmbargoLiftDate() != null) {
+                // TODO: resolve the calculation of the embargo offset
+            }
 
-                if (manuscript.getManuscriptUrl() != null) {
-                    writer.addAttribute("href", manuscript.getManuscriptUrl().toString());
-                }
-                if (article != null && article.getDoi() != null) {
-                    // DOI may not include UTI's scheme or host, only path
-                    String path = article.getDoi().getPath();
-                    if (path.startsWith("/")) {
-                        path = path.substring(1);
-                    }
-                    writer.addAttribute("doi", path);
+            if (manuscript.getManuscriptUrl() != null) {
+                writer.addAttribute("href", manuscript.getManuscriptUrl().toString());
+            }
+            if (article != null && article.getDoi() != null) {
+                // DOI may not include UTI's scheme or host, only path
+                String path = article.getDoi().getPath();
+                if (path.startsWith("/")) {
+                    path = path.substring(1);
                 }
-
-                writer.endNode(); //end manuscript
+                writer.addAttribute("doi", path);
             }
 
-            //process journal
-            DepositMetadata.Journal journal = metadata.getJournalMetadata();
-            if (journal != null) {
-                writer.startNode("journal-meta");
-                if (journal.getJournalId() != null) {
-                    writer.startNode("journal-id");
-                    if (journal.getJournalType() != null) {
-                        writer.addAttribute("journal-id-type", journal.getJournalType());
-                    }
-                    writer.setValue(journal.getJournalId());
-                    writer.endNode();
-                }
+            writer.endNode(); //end manuscript
+        }
 
-                journal.getIssnPubTypes().values().forEach(issnPubType -> {
-                    writer.startNode("issn");
-                    writer.addAttribute("pub-type", issnPubType.pubType.name().toLowerCase());
-                    writer.setValue(issnPubType.issn);
-                    writer.endNode();
-                });
-
-                if (journal.getJournalTitle() != null) {
-                    writer.startNode("journal-title");
-                    writer.setValue(journal.getJournalTitle());
-                    writer.endNode();
+        //process journal
+        DepositMetadata.Journal journal = metadata.getJournalMetadata();
+        if (journal != null) {
+            writer.startNode("journal-meta");
+            if (journal.getJournalId() != null) {
+                writer.startNode("journal-id");
+                if (journal.getJournalType() != null) {
+                    writer.addAttribute("journal-id-type", journal.getJournalType());
                 }
-                writer.endNode(); //end journal-meta
+                writer.setValue(journal.getJournalId());
+                writer.endNode();
             }
 
-            //now process full manuscript title
-            if (manuscript != null && manuscript.getTitle() != null) {
-                writer.startNode("title");
-                writer.setValue(manuscript.getTitle());
+            journal.getIssnPubTypes().values().forEach(issnPubType -> {
+                writer.startNode("issn");
+                writer.addAttribute("pub-type", issnPubType.pubType.name().toLowerCase());
+                writer.setValue(issnPubType.issn);
+                writer.endNode();
+            });
+
+            if (journal.getJournalTitle() != null) {
+                writer.startNode("journal-title");
+                writer.setValue(journal.getJournalTitle());
                 writer.endNode();
             }
+            writer.endNode(); //end journal-meta
+        }
+
+        //now process full manuscript title
+        if (manuscript != null && manuscript.getTitle() != null) {
+            writer.startNode("title");
+            writer.setValue(manuscript.getTitle());
+            writer.endNode();
+        }
 
-            //process contacts
-            List<DepositMetadata.Person> persons = metadata.getPersons();
-            if (persons != null && persons.size() > 0) {
-                writer.startNode("contacts");
-                for (DepositMetadata.Person person : persons){
-                    // There should be exactly one corresponding PI per deposit.
-                    if (person.getType() == DepositMetadata.PERSON_TYPE.submitter) {
-                        writer.startNode("person");
-                        if (person.getFirstName() != null) {
-                            writer.addAttribute("fname", person.getFirstName());
-                        }
-                        if (person.getMiddleName() != null) {
-                            writer.addAttribute("mname", person.getMiddleName());
-                        }
-                        if (person.getLastName() != null) {
-                            writer.addAttribute("lname", person.getLastName());
-                        }
-                        if (person.getEmail() != null) {
-                            writer.addAttribute("email", person.getEmail());
-                        }
-                        //primitive types
-                        writer.addAttribute("corrpi", booleanConvert(true));
-                        writer.addAttribute("pi", booleanConvert(true));
-                        // Searching for another Person who matches this one and who is an AUTHOR
-                        // would be difficult due to name variations, so do not output that attribute.
-                        writer.endNode(); // end person
-                        break; // Make sure we only write one person to the metadata
+        //process contacts
+        List<DepositMetadata.Person> persons = metadata.getPersons();
+        if (persons != null && persons.size() > 0) {
+            writer.startNode("contacts");
+            for (DepositMetadata.Person person : persons){
+                // There should be exactly one corresponding PI per deposit.
+                if (person.getType() == DepositMetadata.PERSON_TYPE.submitter) {
+                    writer.startNode("person");
+                    if (person.getFirstName() != null) {
+                        writer.addAttribute("fname", person.getFirstName());
                     }
+                    if (person.getMiddleName() != null) {
+                        writer.addAttribute("mname", person.getMiddleName());
+                    }
+                    if (person.getLastName() != null) {
+                        writer.addAttribute("lname", person.getLastName());
+                    }
+                    if (person.getEmail() != null) {
+                        writer.addAttribute("email", person.getEmail());
+                    }
+                    //primitive types
+                    writer.addAttribute("corrpi", booleanConvert(true));
+                    writer.addAttribute("pi", booleanConvert(true));
+                    // Searching for another Person who matches this one and who is an AUTHOR
+                    // would be difficult due to name variations, so do not output that attribute.
+                    writer.endNode(); // end person
+                    break; // Make sure we only write one person to the metadata
                 }
-                writer.endNode(); //end contacts
             }
+            writer.endNode(); //end contacts
+        }
+    }
+
+    private class MetadataConverter implements Converter {
+        @SuppressWarnings("rawtypes")
+        public boolean canConvert(Class clazz) {
+            return DepositMetadata.class == clazz;
+        }
+
+        public void marshal(Object value, HierarchicalStreamWriter writer,
+                            MarshallingContext context) {
+            writeMetadata((DepositMetadata) value, writer);
         }
 
         public Object  unmarshal(HierarchicalStreamReader reader,
@@ -168,12 +183,23 @@ public class NihmsMetadataSerializer implements StreamingSerializer {
         }
     }
 
+    /**
+     * Answers a new coder for element and attribute names.  Every serializer of bulk metadata encodes names with the
+     * same coder so that their output is identical.  The coder caches encoded names internally and is not safe for use
+     * by multiple threads, so a new instance is returned on each invocation.
+     *
+     * @return a new name coder
+     */
+    static NameCoder nameCoder() {
+        return new XmlFriendlyNameCoder("_-", "_");
+    }
+
     /**
      * Method to convert boolean into yes or no
      * @param  b the boolean to convert
      * @return yes if true, no if false
      */
-    String booleanConvert(boolean b){
+    static String booleanConvert(boolean b){
         return(b?"yes":"no");
     }
 
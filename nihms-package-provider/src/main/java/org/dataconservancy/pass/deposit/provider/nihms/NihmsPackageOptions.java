@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil;
+import org.dataconservancy.pass.deposit.provider.support.ParallelGzipOutputStream;
+import org.dataconservancy.pass.deposit.provider.support.SpillBuffer;
+
+import java.util.Map;
+
+/**
+ * Package options understood by the NIHMS package provider, in addition to those defined by {@code PackageOptions}.
+ * Like the standard options, they are supplied in the {@code options} of a repository's assembler configuration, and
+ * their values may be supplied as the enum constant or its name.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public interface NihmsPackageOptions {
+
+    /**
+     * Selects the serializer used to produce {@code bulk_meta.xml}.  Both serializers produce identical output.
+     */
+    interface MetadataSerializer {
+
+        String KEY = "nihms-metadata-serializer";
+
+        enum OPTS {
+            /**
+             * Serializes metadata with a new {@code XStream} instance per submission; the default
+             */
+            XSTREAM,
+
+            /**
+             * Serializes metadata by emitting XML events directly to the output
+             */
+            STREAMING
+        }
+
+    }
+
+    /**
+     * The number of bytes of {@code manifest.txt} or {@code bulk_meta.xml} held on the heap before it is spilled to a
+     * temporary file.  The value may be a number, or a string like {@code "512k"}; see {@link
+     * PackageOptionsUtil#bytesOption(Map, String, long)}.
+     */
+    interface SpillThreshold {
+
+        String KEY = "nihms-spill-threshold";
+
+        long DEFAULT = SpillBuffer.DEFAULT_THRESHOLD;
+
+    }
+
+    /**
+     * Selects when {@code manifest.txt} and {@code bulk_meta.xml} are serialized.  Both depend only on the submission,
+     * so they may be serialized while the custodial resources are streamed into the package.
+     */
+    interface SupplementalSerialization {
+
+        String KEY = "nihms-supplemental-serialization";
+
+        enum OPTS {
+            /**
+             * Serializes the supplemental resources in {@code finish()}, after the custodial resources have been
+             * written; the default
+             */
+            FINISH,
+
+            /**
+             * Begins serializing the supplemental resources in {@code start()} on a bounded executor shared by the
+             * providers, and collects them in {@code finish()}
+             */
+            ASYNC
+        }
+
+    }
+
+    /**
+     * The number of threads compressing each {@code GZIP} package.  When greater than one, the package is archived
+     * uncompressed, and compressed in blocks, in parallel, by a {@code ParallelGzipOutputStream} on a {@code
+     * ForkJoinPool} shared by the providers.  The package remains a single, standard, gzip stream.  The value may be a
+     * number, or a string containing a number.
+     */
+    interface GzipThreads {
+
+        String KEY = "nihms-gzip-threads";
+
+        /**
+         * Packages are compressed by a single thread, as the archive is written
+         */
+        int DEFAULT = 1;
+
+    }
+
+    /**
+     * The number of bytes of the archive in each block compressed in parallel, when {@link GzipThreads} is greater than
+     * one.  The value may be a number, or a string like {@code "256k"}, of at least 32 KiB; see {@link
+     * PackageOptionsUtil#bytesOption(Map, String, long)}.
+     */
+    interface GzipBlockSize {
+
+        String KEY = "nihms-gzip-block-size";
+
+        long DEFAULT = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE;
+
+    }
+
+    /**
+     * The number of threads compressing each {@code BZIP2} package.  When greater than one, the package is archived
+     * uncompressed, and compressed in blocks of 900,000 bytes, in parallel, by a {@code ParallelBzip2OutputStream} on
+     * the pool shared by the providers.  The package is a sequence of bzip2 streams, one per block, which {@code
+     * bunzip2} decompresses as one.  The value may be a number, or a string containing a number.
+     */
+    interface Bzip2Threads {
+
+        String KEY = "nihms-bzip2-threads";
+
+        /**
+         * Packages are compressed by a single thread, as the archive is written
+         */
+        int DEFAULT = 1;
+
+    }
+
+    /**
+     * Resolves the value of an enumerated option from the supplied package options.  The value may be present as the
+     * enum constant, or as a {@code String} naming the constant (ignoring case), as is the case for options parsed from
+     * JSON repository configuration.
+     *
+     * @param options the package options
+     * @param key the key of the option
+     * @param type the type of the option value
+     * @param defaultValue returned when the option is not present
+     * @param <T> the type of the option value
+     * @return the value of the option, or {@code defaultValue} if the option is not present
+     * @throws IllegalArgumentException if the option is present but cannot be resolved to a constant of {@code type}
+     */
+    static <T extends Enum<T>> T option(Map<String, Object> options, String key, Class<T> type, T defaultValue) {
+        return PackageOptionsUtil.enumOption(options, key, type, defaultValue);
+    }
+
+}
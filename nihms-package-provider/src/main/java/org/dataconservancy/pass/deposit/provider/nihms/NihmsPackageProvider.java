@@ -21,10 +21,17 @@ import org.dataconservancy.pass.deposit.assembler.shared.PackageProvider;
 import org.dataconservancy.pass.deposit.assembler.shared.SizedStream;
 import org.dataconservancy.pass.deposit.model.DepositFileType;
 import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.provider.nihms.NihmsPackageOptions.MetadataSerializer;
+import org.dataconservancy.pass.deposit.provider.nihms.NihmsPackageOptions.SpillThreshold;
+import org.dataconservancy.pass.deposit.provider.nihms.NihmsPackageOptions.SupplementalSerialization;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.Phase;
+import org.dataconservancy.pass.deposit.provider.support.SpillBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -33,14 +40,28 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static org.dataconservancy.pass.deposit.provider.nihms.NihmsManifestSerializer.MANIFEST_ENTRY_NAME;
 import static org.dataconservancy.pass.deposit.provider.nihms.NihmsManifestSerializer.METADATA_ENTRY_NAME;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsPackageOptions.option;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.bytesOption;
 
 /**
+ * Supplies the NIHMS manifest and bulk metadata to the package.  They are buffered by {@link SpillBuffer}s, which are
+ * released when the provider is closed.  Each phase of assembly is recorded by the supplied {@link
+ * PackageProviderMetrics}.
+ * <p>
+ * If the {@link SupplementalSerialization} package option is {@code ASYNC}, and the provider was created with an
+ * executor, the supplemental resources are serialized on the executor while the custodial resources are streamed.
+ * Otherwise they are serialized in {@link #finish(DepositSubmission, List)}.
+ * </p>
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
-public class NihmsPackageProvider implements PackageProvider {
+public class NihmsPackageProvider implements PackageProvider, Closeable {
 
     static final String REMEDIATED_FILE_PREFIX = "SUBMISSION-";
 
@@ -48,7 +69,47 @@ public class NihmsPackageProvider implements PackageProvider {
 
     private NihmsManifestSerializer manifestSerializer;
 
-    private NihmsMetadataSerializer metadataSerializer;
+    private StreamingSerializer metadataSerializer;
+
+    private long spillThreshold = SpillThreshold.DEFAULT;
+
+    private List<SpillBuffer> buffers = new ArrayList<>(2);
+
+    private final PackageProviderMetrics metrics;
+
+    private final Executor executor;
+
+    private long custodialStart;
+
+    private volatile CompletableFuture<Serialized> serialized;
+
+    private boolean closed;
+
+    /**
+     * Incremented by each {@link #start start} and {@link #close close}, so that a serialization begun for one package
+     * cannot allocate buffers for, or return its results to, another
+     */
+    private long generation;
+
+    public NihmsPackageProvider() {
+        this(PackageProviderMetrics.noop());
+    }
+
+    public NihmsPackageProvider(PackageProviderMetrics metrics) {
+        this(metrics, null);
+    }
+
+    /**
+     * Creates a provider that may serialize its supplemental resources using the supplied executor.
+     *
+     * @param metrics records the phases of assembly
+     * @param executor serializes the supplemental resources when requested by the {@link SupplementalSerialization}
+     *                 package option, may be {@code null}
+     */
+    public NihmsPackageProvider(PackageProviderMetrics metrics, Executor executor) {
+        this.metrics = metrics;
+        this.executor = executor;
+    }
 
     /**
      * Given a file name and type, returns a file name that can safely be used in a NIHMS deposit
@@ -73,8 +134,48 @@ public class NihmsPackageProvider implements PackageProvider {
     @Override
     public void start(DepositSubmission submission, List<DepositFileResource> custodialResources,
                       Map<String, Object> packageOptions) {
-        manifestSerializer = new NihmsManifestSerializer(submission.getManifest());
-        metadataSerializer = new NihmsMetadataSerializer(submission.getMetadata());
+        metrics.record(Phase.START, () -> {
+            long generation;
+            synchronized (this) {
+                // the provider may be started again, when its package stream is opened again
+                closed = false;
+                generation = ++this.generation;
+            }
+            manifestSerializer = new NihmsManifestSerializer(submission.getManifest());
+            metadataSerializer = newMetadataSerializer(submission, packageOptions);
+            spillThreshold = bytesOption(packageOptions, SpillThreshold.KEY, SpillThreshold.DEFAULT);
+            serialized = null;
+            if (executor != null && option(packageOptions, SupplementalSerialization.KEY,
+                    SupplementalSerialization.OPTS.class, SupplementalSerialization.OPTS.FINISH)
+                    == SupplementalSerialization.OPTS.ASYNC) {
+                StreamingSerializer manifest = manifestSerializer;
+                StreamingSerializer metadata = metadataSerializer;
+                serialized = CompletableFuture.supplyAsync(() -> serialize(manifest, metadata, generation), executor);
+            }
+        });
+        metrics.resources(custodialResources.size());
+        custodialStart = metrics.start();
+    }
+
+    /**
+     * Answers the serializer for {@code bulk_meta.xml} selected by the {@link NihmsPackageOptions.MetadataSerializer}
+     * package option.
+     *
+     * @param submission the submission being packaged
+     * @param packageOptions the package options
+     * @return the metadata serializer
+     */
+    static StreamingSerializer newMetadataSerializer(DepositSubmission submission, Map<String, Object> packageOptions) {
+        MetadataSerializer.OPTS serializer = option(packageOptions, MetadataSerializer.KEY,
+                MetadataSerializer.OPTS.class, MetadataSerializer.OPTS.XSTREAM);
+        LOG.trace("Serializing NIHMS metadata with the {} serializer", serializer);
+
+        switch (serializer) {
+            case STREAMING:
+                return new StreamingNihmsMetadataSerializer(submission.getMetadata());
+            default:
+                return new NihmsMetadataSerializer(submission.getMetadata());
+        }
     }
 
     /**
@@ -91,30 +192,126 @@ public class NihmsPackageProvider implements PackageProvider {
      */
     @Override
     public String packagePath(DepositFileResource custodialResource) {
-        String candidateName;
-        if (custodialResource.getDepositFile() != null && custodialResource.getDepositFile().getName() != null) {
-            candidateName = custodialResource.getDepositFile().getName();
-        } else {
-            candidateName = custodialResource.getFilename();
-        }
-
-        String packagePath = getNonCollidingFilename(candidateName,
-                custodialResource.getDepositFile().getType());
-        LOG.trace("Pathed {} as {}", custodialResource, packagePath);
-        return packagePath;
+        return metrics.record(Phase.PACKAGE_PATH, () -> {
+            String candidateName;
+            if (custodialResource.getDepositFile() != null && custodialResource.getDepositFile().getName() != null) {
+                candidateName = custodialResource.getDepositFile().getName();
+            } else {
+                candidateName = custodialResource.getFilename();
+            }
+
+            String packagePath = getNonCollidingFilename(candidateName,
+                    custodialResource.getDepositFile().getType());
+            LOG.trace("Pathed {} as {}", custodialResource, packagePath);
+            return packagePath;
+        });
     }
 
     @Override
     public List<SupplementalResource> finish(DepositSubmission submission, List<PackageStream.Resource> packageResources) {
-        ArrayList<SupplementalResource> supplementalResources = new ArrayList<>(2);
-        SizedStream manifestStream = manifestSerializer.serialize();
-        SizedStream metadataStream = metadataSerializer.serialize();
-        supplementalResources.add(new NihmsSupplementalResource(MANIFEST_ENTRY_NAME, MANIFEST_ENTRY_NAME,
-                manifestStream.getLength(), manifestStream.getInputStream(), "NIHMS Manifest"));
-        supplementalResources.add(new NihmsSupplementalResource(METADATA_ENTRY_NAME, METADATA_ENTRY_NAME,
-                metadataStream.getLength(), metadataStream.getInputStream(), "NIMS Metadata"));
-
-        return supplementalResources;
+        metrics.stop(Phase.CUSTODIAL, custodialStart);
+
+        return metrics.record(Phase.FINISH, () -> {
+            Serialized result = (serialized == null) ?
+                    serialize(manifestSerializer, metadataSerializer, currentGeneration()) : collect(serialized);
+            SizedStream manifestStream = result.manifest;
+            SizedStream metadataStream = result.metadata;
+
+            List<SupplementalResource> supplementalResources = new ArrayList<>(2);
+            supplementalResources.add(new NihmsSupplementalResource(MANIFEST_ENTRY_NAME, MANIFEST_ENTRY_NAME,
+                    manifestStream.getLength(), manifestStream.getInputStream(), "NIHMS Manifest"));
+            supplementalResources.add(new NihmsSupplementalResource(METADATA_ENTRY_NAME, METADATA_ENTRY_NAME,
+                    metadataStream.getLength(), metadataStream.getInputStream(), "NIMS Metadata"));
+            metrics.supplementalBytes(MANIFEST_ENTRY_NAME, manifestStream.getLength());
+            metrics.supplementalBytes(METADATA_ENTRY_NAME, metadataStream.getLength());
+
+            return supplementalResources;
+        });
+    }
+
+    /**
+     * Releases the buffers holding the supplemental resources, deleting any temporary files.  Invoked when the package
+     * stream is closed, after the supplemental resources have been written to the package.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        generation++;
+        if (serialized != null) {
+            // a serialization that is already running is not interrupted; it releases its own buffers when it finds
+            // that the provider has been closed
+            serialized.cancel(false);
+        }
+        buffers.forEach(SpillBuffer::close);
+        buffers.clear();
+    }
+
+    /**
+     * Serializes the supplemental resources of the package started as {@code generation}.  If the provider is closed,
+     * or started again, while serializing, the buffers allocated by this serialization are released, and an {@code
+     * IllegalStateException} is thrown.
+     */
+    private Serialized serialize(StreamingSerializer manifest, StreamingSerializer metadata, long generation) {
+        List<SpillBuffer> allocated = new ArrayList<>(2);
+        boolean current = false;
+        try {
+            Serialized result = new Serialized();
+            result.manifest = manifest.serialize(newBuffer(generation, allocated));
+            result.metadata = metadata.serialize(newBuffer(generation, allocated));
+            synchronized (this) {
+                current = !closed && generation == this.generation;
+            }
+            if (!current) {
+                throw new IllegalStateException("The package provider has been closed.");
+            }
+            return result;
+        } finally {
+            if (!current) {
+                release(allocated);
+            }
+        }
+    }
+
+    private synchronized void release(List<SpillBuffer> allocated) {
+        allocated.forEach(SpillBuffer::close);
+        buffers.removeAll(allocated);
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private static Serialized collect(CompletableFuture<Serialized> serialized) {
+        try {
+            return serialized.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    private synchronized SpillBuffer newBuffer(long generation, List<SpillBuffer> allocated) {
+        if (closed || generation != this.generation) {
+            throw new IllegalStateException("The package provider has been closed.");
+        }
+        SpillBuffer buffer = new SpillBuffer(spillThreshold);
+        buffers.add(buffer);
+        allocated.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * The serialized supplemental resources
+     */
+    private static class Serialized {
+
+        private SizedStream manifest;
+
+        private SizedStream metadata;
+
     }
 
     private class NihmsSupplementalResource implements SupplementalResource {
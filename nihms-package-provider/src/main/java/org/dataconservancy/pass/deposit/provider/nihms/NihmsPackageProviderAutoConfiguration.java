@@ -18,11 +18,53 @@
 
 package org.dataconservancy.pass.deposit.provider.nihms;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dataconservancy.pass.deposit.provider.support.CustodialContentCache;
+import org.dataconservancy.pass.deposit.provider.support.CustodialPrefetcher;
+import org.dataconservancy.pass.deposit.provider.support.CustodialResourceResolver;
+import org.dataconservancy.pass.deposit.provider.support.HttpCustodialResolver;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler.SPEC_NIHMS_NATIVE_2017_07;
 
 @Configuration
 @ComponentScan
 public class NihmsPackageProviderAutoConfiguration {
 
+    /**
+     * The value of the {@code provider} tag on the metrics recorded by NIHMS package providers
+     */
+    static final String PROVIDER_NAME = "nihms";
+
+    /**
+     * Creates the factory for NIHMS package providers.  If a {@code MeterRegistry} bean is present, the providers
+     * record their metrics to it; otherwise metrics are not recorded.  Custodial resources are read through the
+     * {@link CustodialContentCache} and the {@link HttpCustodialResolver}, when they are configured by the environment;
+     * both are shared with the other providers, and the cache reports its metrics to the registry.  So does the
+     * {@link CustodialPrefetcher} reading custodial resources ahead of the archiver, whose memory budget is also
+     * shared.
+     *
+     * @param meterRegistry the meter registry, if present
+     * @param environment supplies the properties configuring how custodial resources are read
+     * @return the package provider factory
+     */
+    @Bean
+    NihmsPackageProviderFactory nihmsPackageProviderFactory(ObjectProvider<MeterRegistry> meterRegistry,
+                                                            Environment environment) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        CustodialResourceResolver resolver = CustodialResourceResolver.configure(environment::getProperty, registry);
+        CustodialPrefetcher prefetcher = CustodialPrefetcher.configure(environment::getProperty);
+        if (registry == null) {
+            return new NihmsPackageProviderFactory(PackageProviderMetrics.noop(), resolver, prefetcher);
+        }
+        prefetcher.bindTo(registry);
+        return new NihmsPackageProviderFactory(
+                new PackageProviderMetrics(registry, PROVIDER_NAME, SPEC_NIHMS_NATIVE_2017_07), resolver, prefetcher);
+    }
+
 }
@@ -15,16 +15,100 @@
  */
 package org.dataconservancy.pass.deposit.provider.nihms;
 
-import org.springframework.stereotype.Component;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.provider.support.CustodialPrefetcher;
+import org.dataconservancy.pass.deposit.provider.support.CustodialResourceResolver;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics;
+import org.dataconservancy.pass.deposit.provider.support.ProviderExecutors;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
+ * Creates {@link NihmsPackageProvider}s that share the same metrics, and the same bounded executor used to serialize
+ * supplemental resources asynchronously.  The factory also owns the pool compressing packages in parallel, and reads
+ * custodial resources through the {@link CustodialResourceResolver}, if one is configured, and ahead of the archiver
+ * through the {@link CustodialPrefetcher}.
+ * Configured by {@link NihmsPackageProviderAutoConfiguration}, which closes the factory, its executor and its pool,
+ * with the application context.
+ *
  * @author Elliot Metsger (emetsger@jhu.edu)
  */
-@Component
-class NihmsPackageProviderFactory {
+class NihmsPackageProviderFactory implements AutoCloseable {
+
+    private static final String EXECUTOR_NAME = "nihms-supplemental";
+
+    private static final int EXECUTOR_QUEUE_CAPACITY = 256;
+
+    private final PackageProviderMetrics metrics;
+
+    private final CustodialResourceResolver resolver;
+
+    private final CustodialPrefetcher prefetcher;
+
+    private final ExecutorService executor = ProviderExecutors.newBoundedExecutor(EXECUTOR_NAME,
+            Runtime.getRuntime().availableProcessors(), EXECUTOR_QUEUE_CAPACITY);
+
+    private final ForkJoinPool compressionPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    NihmsPackageProviderFactory() {
+        this(PackageProviderMetrics.noop());
+    }
+
+    NihmsPackageProviderFactory(PackageProviderMetrics metrics) {
+        this(metrics, null);
+    }
+
+    NihmsPackageProviderFactory(PackageProviderMetrics metrics, CustodialResourceResolver resolver) {
+        this(metrics, resolver, CustodialPrefetcher.open(CustodialPrefetcher.DEFAULT_GLOBAL_MAX_BYTES));
+    }
+
+    NihmsPackageProviderFactory(PackageProviderMetrics metrics, CustodialResourceResolver resolver,
+                                CustodialPrefetcher prefetcher) {
+        this.metrics = metrics;
+        this.resolver = resolver;
+        this.prefetcher = prefetcher;
+    }
 
     NihmsPackageProvider newInstance() {
-        return new NihmsPackageProvider();
+        return new NihmsPackageProvider(metrics, executor);
+    }
+
+    /**
+     * The pool compressing packages when {@link NihmsPackageOptions.GzipThreads} or {@link
+     * NihmsPackageOptions.Bzip2Threads} is greater than one.
+     *
+     * @return the compression pool
+     */
+    ForkJoinPool compressionPool() {
+        return compressionPool;
+    }
+
+    /**
+     * The prefetcher reading custodial resources ahead of the archiver, when a package enables read-ahead.
+     *
+     * @return the prefetcher
+     */
+    CustodialPrefetcher prefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Answers the custodial resources of a package read through the configured {@link CustodialResourceResolver}, or
+     * the resources as they are if none is configured.
+     *
+     * @param resources the custodial resources
+     * @return the resources to assemble into the package
+     */
+    List<DepositFileResource> resolved(List<DepositFileResource> resources) {
+        return resolver == null ? resources : resolver.resolve(resources);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        compressionPool.shutdown();
     }
 
 }
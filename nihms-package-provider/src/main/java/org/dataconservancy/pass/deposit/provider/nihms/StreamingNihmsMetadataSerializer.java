@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+import org.dataconservancy.pass.deposit.model.DepositMetadata;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsMetadataSerializer.ROOT_ELEMENT;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsMetadataSerializer.nameCoder;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsMetadataSerializer.writeMetadata;
+
+/**
+ * Serializes NIHMS bulk metadata by emitting XML events directly to the output, without constructing an
+ * {@code XStream} instance.
+ * <p>
+ * {@link NihmsMetadataSerializer} builds a new {@code XStream} for every submission, which pays for the construction
+ * of its converter and mapper chains and the introspection of the metadata class, only to invoke a hand-written
+ * converter.  This serializer drives the same event writer that {@code XStream} would have used, with the same name
+ * coder and encoding, so the bytes it produces are identical to those produced by {@link NihmsMetadataSerializer}.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ * @see NihmsPackageOptions.MetadataSerializer
+ */
+public class StreamingNihmsMetadataSerializer implements StreamingSerializer {
+
+    private DepositMetadata metadata;
+
+    public StreamingNihmsMetadataSerializer(DepositMetadata metadata) {
+        this.metadata = metadata;
+    }
+
+    @Override
+    public void serialize(OutputStream out) {
+        Writer encoder = new OutputStreamWriter(out, UTF_8);
+        PrettyPrintWriter writer = new PrettyPrintWriter(encoder, nameCoder());
+
+        writer.startNode(ROOT_ELEMENT);
+        writeMetadata(metadata, writer);
+        writer.endNode();
+        writer.flush();
+    }
+
+}
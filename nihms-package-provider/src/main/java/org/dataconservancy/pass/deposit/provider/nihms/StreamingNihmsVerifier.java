@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import org.dataconservancy.pass.deposit.model.DepositFileType;
+import org.dataconservancy.pass.deposit.provider.support.StreamingPackageVerifier;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler.BULK_META_FILENAME;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler.MANIFEST_FILENAME;
+
+/**
+ * Verifies NIHMS packages in a single pass, without extracting them: each line of {@code manifest.txt} must name a
+ * file of a known type that is present in the package, each file other than {@code manifest.txt} must be named by the
+ * manifest, and {@code bulk_meta.xml} must be well-formed.
+ * <p>
+ * The manifest records neither sizes nor checksums, so entries are not digested, and a package is verified about as
+ * fast as it can be decompressed.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingNihmsVerifier extends StreamingPackageVerifier {
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        // bulk_meta.xml is read from the package, and must not resolve anything outside of it
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    public StreamingNihmsVerifier() {
+        super(Collections.emptyList());
+    }
+
+    @Override
+    protected Verification newVerification() {
+        return new ManifestVerification();
+    }
+
+    /**
+     * Collects the file names of {@code manifest.txt}, and verifies the package against them
+     */
+    private static class ManifestVerification implements Verification {
+
+        private final Set<String> manifested = new LinkedHashSet<>();
+
+        private boolean manifestRead;
+
+        @Override
+        public boolean isDescriptor(String name) {
+            return MANIFEST_FILENAME.equals(name) || BULK_META_FILENAME.equals(name);
+        }
+
+        @Override
+        public void descriptor(String name, InputStream in, List<String> problems) throws IOException {
+            if (BULK_META_FILENAME.equals(name)) {
+                wellFormed(in, problems);
+                return;
+            }
+
+            manifestRead = true;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8));
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                // {file_type}<tab>{label}<tab>{file_name}
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 3 || fields[2].isEmpty()) {
+                    problems.add(MANIFEST_FILENAME + " line " + lineNumber + " is not a file type, label and name " +
+                            "separated by tabs: '" + line + "'");
+                    continue;
+                }
+                try {
+                    DepositFileType.valueOf(fields[0]);
+                } catch (IllegalArgumentException e) {
+                    problems.add(MANIFEST_FILENAME + " line " + lineNumber + " has an unknown file type '" +
+                            fields[0] + "'");
+                }
+                manifested.add(fields[2]);
+            }
+        }
+
+        @Override
+        public void verify(Map<String, Entry> entries, List<String> problems) {
+            if (!entries.containsKey(BULK_META_FILENAME)) {
+                problems.add("Package has no " + BULK_META_FILENAME);
+            }
+            if (!manifestRead) {
+                problems.add("Package has no " + MANIFEST_FILENAME);
+                return;
+            }
+
+            for (String name : manifested) {
+                if (!entries.containsKey(name)) {
+                    problems.add(MANIFEST_FILENAME + " names '" + name + "', which is not in the package");
+                }
+            }
+
+            for (String name : entries.keySet()) {
+                if (!MANIFEST_FILENAME.equals(name) && !manifested.contains(name)) {
+                    problems.add("'" + name + "' is not named by " + MANIFEST_FILENAME);
+                }
+            }
+        }
+
+        private static void wellFormed(InputStream in, List<String> problems) {
+            XMLStreamReader reader = null;
+            try {
+                reader = INPUT_FACTORY.createXMLStreamReader(in);
+                while (reader.hasNext()) {
+                    reader.next();
+                }
+            } catch (XMLStreamException e) {
+                problems.add(BULK_META_FILENAME + " is not well-formed: " + e.getMessage());
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (XMLStreamException e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+
+    }
+
+}
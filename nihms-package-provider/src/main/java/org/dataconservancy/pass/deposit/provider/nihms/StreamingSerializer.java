@@ -1,5 +1,5 @@
 /*
- * Copyright 2018 Johns Hopkins University
+ * Copyright 2019 Johns Hopkins University
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -13,15 +13,47 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package org.dataconservancy.pass.deposit.provider.nihms;
 
 import org.dataconservancy.pass.deposit.assembler.shared.SizedStream;
+import org.dataconservancy.pass.deposit.provider.support.SpillBuffer;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 interface StreamingSerializer {
 
-    SizedStream serialize() throws IOException;
+    /**
+     * Writes the serialization to the supplied stream.  The stream is flushed, but not closed.
+     *
+     * @param out the output stream
+     * @throws IOException if the serialization cannot be written
+     */
+    void serialize(OutputStream out) throws IOException;
+
+    /**
+     * Serializes to a buffer that spills to disk above the default threshold.
+     *
+     * @return the serialization
+     */
+    default SizedStream serialize() {
+        return serialize(new SpillBuffer(SpillBuffer.DEFAULT_THRESHOLD));
+    }
+
+    /**
+     * Serializes to the supplied buffer, which is returned for reading.  The caller is responsible for closing the
+     * buffer.
+     *
+     * @param buffer the buffer receiving the serialization
+     * @return the buffer
+     */
+    default SizedStream serialize(SpillBuffer buffer) {
+        try (OutputStream out = buffer.getOutputStream()) {
+            serialize(out);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        return buffer;
+    }
 
 }
@@ -18,7 +18,9 @@ package org.dataconservancy.pass.deposit.provider.nihms;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
+import org.apache.commons.io.output.NullOutputStream;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Compression;
 import org.dataconservancy.pass.deposit.assembler.PackageOptions.Spec;
 import org.dataconservancy.pass.deposit.assembler.PackageStream;
@@ -38,6 +40,9 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -95,6 +100,42 @@ public class NihmsAssemblerIT extends BaseAssemblerIT {
         assertTrue(extractedPackageDir.exists());
     }
 
+    /**
+     * Insures that the size and checksum of the package describe the bytes of the package as they were read.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPackageMetadataDescribesBytesRead() throws Exception {
+        PackageStream stream = assemblerUnderTest().assemble(submission, getOptions());
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        long length;
+        try (InputStream in = new DigestInputStream(stream.open(), md5)) {
+            length = IOUtils.copyLarge(in, new NullOutputStream());
+        }
+
+        PackageStream.Metadata metadata = stream.metadata();
+        assertEquals(length, metadata.sizeBytes());
+        assertEquals(1, metadata.checksums().size());
+        PackageStream.Checksum checksum = metadata.checksums().iterator().next();
+        assertEquals(Checksum.OPTS.MD5, checksum.algorithm());
+        assertEquals(String.format("%032x", new BigInteger(1, md5.digest())), checksum.asHex());
+    }
+
+    /**
+     * Insures that an assembled package passes the streaming verifier, as it is read from the package stream.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testStreamingVerification() throws Exception {
+        PackageStream stream = assemblerUnderTest().assemble(submission, getOptions());
+
+        List<String> problems = new StreamingNihmsVerifier().verify(stream);
+
+        assertTrue(String.join("; ", problems), problems.isEmpty());
+    }
+
     @Override
     protected AbstractAssembler assemblerUnderTest() {
         NihmsPackageProviderFactory packageProviderFactory = new NihmsPackageProviderFactory();
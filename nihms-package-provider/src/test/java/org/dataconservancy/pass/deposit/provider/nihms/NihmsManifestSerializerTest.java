@@ -141,6 +141,26 @@ public class NihmsManifestSerializerTest {
 
 
     }
-    
+
+    /**
+     * Many files sharing the same label, or missing a label, receive consecutive suffixes, skipping suffixes that were
+     * supplied as labels.
+     */
+    @Test
+    public void labelMakerManySameLabels() {
+        NihmsManifestSerializer underTest = new NihmsManifestSerializer(null);
+        NihmsManifestSerializer.DepositFileLabelMaker labelMaker = underTest.new DepositFileLabelMaker();
+
+        assertEquals("Figure-500", labelMaker.getTypeUniqueLabel(DepositFileType.figure, "Figure-500"));
+        assertEquals("Figure", labelMaker.getTypeUniqueLabel(DepositFileType.figure, "Figure"));
+        for (int i = 1; i < 10000; i++) {
+            int expected = (i < 500) ? i : i + 1;
+            assertEquals("Figure-" + expected, labelMaker.getTypeUniqueLabel(DepositFileType.figure, "Figure"));
+        }
+
+        for (int i = 1; i <= 10000; i++) {
+            assertEquals("figure-" + i, labelMaker.getTypeUniqueLabel(DepositFileType.figure, ""));
+        }
+    }
+
 }
-    
@@ -15,12 +15,30 @@
  */
 package org.dataconservancy.pass.deposit.provider.nihms;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageProvider.SupplementalResource;
 import org.dataconservancy.pass.deposit.model.DepositFileType;
+import org.dataconservancy.pass.deposit.model.DepositManifest;
+import org.dataconservancy.pass.deposit.model.DepositMetadata;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler.SPEC_NIHMS_NATIVE_2017_07;
 import static org.dataconservancy.pass.deposit.provider.nihms.NihmsPackageProvider.getNonCollidingFilename;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Elliot Metsger (emetsger@jhu.edu)
@@ -48,4 +66,148 @@ public class NihmsPackageProviderTest {
         assertTrue("Actual metadata name was changed.", nameIn.contentEquals(nameOut));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void metricsRecorded() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        NihmsPackageProvider underTest = new NihmsPackageProvider(
+                new PackageProviderMetrics(registry, "nihms", SPEC_NIHMS_NATIVE_2017_07));
+
+        DepositSubmission submission = submission();
+        underTest.start(submission, Collections.emptyList(), Collections.emptyMap());
+        List<SupplementalResource> resources = underTest.finish(submission, Collections.emptyList());
+        underTest.close();
+
+        for (String phase : new String[] {"start", "custodial", "finish"}) {
+            assertEquals(1, registry.get(PackageProviderMetrics.PHASE_TIMER)
+                    .tags(PackageProviderMetrics.SPEC_TAG, SPEC_NIHMS_NATIVE_2017_07)
+                    .tags(PackageProviderMetrics.PHASE_TAG, phase)
+                    .timer().count());
+        }
+        assertEquals(0, registry.get(PackageProviderMetrics.RESOURCES_SUMMARY).summary().totalAmount(), 0);
+        for (SupplementalResource resource : resources) {
+            assertEquals(resource.contentLength(), registry.get(PackageProviderMetrics.SUPPLEMENTAL_BYTES_SUMMARY)
+                    .tags(PackageProviderMetrics.RESOURCE_TAG, resource.getPackagePath())
+                    .summary().totalAmount(), 0);
+        }
+    }
+
+    /**
+     * Supplemental resources serialized asynchronously are identical to those serialized in finish().
+     */
+    @Test
+    public void asyncSupplementalResourcesIdentical() throws Exception {
+        DepositSubmission submission = submission();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            NihmsPackageProvider sync = new NihmsPackageProvider();
+            sync.start(submission, Collections.emptyList(), Collections.emptyMap());
+            List<SupplementalResource> expected = sync.finish(submission, Collections.emptyList());
+
+            NihmsPackageProvider async = new NihmsPackageProvider(PackageProviderMetrics.noop(), executor);
+            async.start(submission, Collections.emptyList(),
+                    Collections.singletonMap(NihmsPackageOptions.SupplementalSerialization.KEY,
+                            NihmsPackageOptions.SupplementalSerialization.OPTS.ASYNC));
+            List<SupplementalResource> actual = async.finish(submission, Collections.emptyList());
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPackagePath(), actual.get(i).getPackagePath());
+                assertEquals(expected.get(i).contentLength(), actual.get(i).contentLength());
+                assertEquals(IOUtils.toString(expected.get(i).getInputStream(), "UTF-8"),
+                        IOUtils.toString(actual.get(i).getInputStream(), "UTF-8"));
+            }
+
+            sync.close();
+            async.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Supplemental resources spilled to disk must be readable, with their exact length, until the provider is closed.
+     */
+    @Test
+    public void spilledSupplementalResourcesReleasedOnClose() throws Exception {
+        DepositSubmission submission = submission();
+        NihmsPackageProvider underTest = new NihmsPackageProvider();
+        underTest.start(submission, Collections.emptyList(),
+                Collections.singletonMap(NihmsPackageOptions.SpillThreshold.KEY, "0"));
+        List<SupplementalResource> resources = underTest.finish(submission, Collections.emptyList());
+
+        assertEquals(2, resources.size());
+        List<InputStream> streams = new ArrayList<>();
+        for (SupplementalResource resource : resources) {
+            InputStream in = resource.getInputStream();
+            assertEquals(resource.contentLength(), IOUtils.toByteArray(in).length);
+            streams.add(in);
+        }
+
+        underTest.close();
+
+        for (InputStream in : streams) {
+            try {
+                in.read();
+                fail("Expected the spilled resource to be released.");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * A provider may be started again once closed, as it is when its package stream is opened again.
+     */
+    @Test
+    public void startedAgainAfterClose() throws Exception {
+        DepositSubmission submission = submission();
+        NihmsPackageProvider underTest = new NihmsPackageProvider();
+
+        for (int i = 0; i < 2; i++) {
+            underTest.start(submission, Collections.emptyList(), Collections.emptyMap());
+            List<SupplementalResource> resources = underTest.finish(submission, Collections.emptyList());
+            assertEquals(2, resources.size());
+            assertTrue(IOUtils.toByteArray(resources.get(0).getInputStream()).length > 0);
+            underTest.close();
+        }
+    }
+
+    /**
+     * A serialization that runs after the provider was closed fails, and neither allocates buffers for, nor releases
+     * the buffers of, the package the provider was started for next.
+     */
+    @Test
+    public void staleSerializationIsolated() throws Exception {
+        DepositSubmission submission = submission();
+        List<Runnable> tasks = new ArrayList<>();
+        NihmsPackageProvider underTest = new NihmsPackageProvider(PackageProviderMetrics.noop(), tasks::add);
+
+        underTest.start(submission, Collections.emptyList(),
+                Collections.singletonMap(NihmsPackageOptions.SupplementalSerialization.KEY,
+                        NihmsPackageOptions.SupplementalSerialization.OPTS.ASYNC));
+        assertEquals(1, tasks.size());
+        underTest.close();
+
+        underTest.start(submission, Collections.emptyList(), Collections.emptyMap());
+        List<SupplementalResource> resources = underTest.finish(submission, Collections.emptyList());
+
+        // the serialization of the closed package runs late
+        tasks.get(0).run();
+
+        for (SupplementalResource resource : resources) {
+            assertEquals(resource.contentLength(), IOUtils.toByteArray(resource.getInputStream()).length);
+        }
+        underTest.close();
+    }
+
+    private static DepositSubmission submission() {
+        DepositManifest manifest = new DepositManifest();
+        manifest.setFiles(new ArrayList<>());
+        DepositSubmission submission = new DepositSubmission();
+        submission.setManifest(manifest);
+        submission.setMetadata(new DepositMetadata());
+        return submission;
+    }
+
+}
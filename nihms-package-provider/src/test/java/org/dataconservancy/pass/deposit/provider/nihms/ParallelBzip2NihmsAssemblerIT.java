@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Archive;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Compression;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+
+import java.util.Map;
+
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler.SPEC_NIHMS_NATIVE_2017_07;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the {@link NihmsAssemblerIT} tests against a tar.bz2 package compressed in parallel blocks; the package must
+ * remain readable as an ordinary tar.bz2.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelBzip2NihmsAssemblerIT extends NihmsAssemblerIT {
+
+    @Override
+    protected Map<String, Object> getOptions() {
+        Map<String, Object> options = super.getOptions();
+        options.put(Compression.KEY, Compression.OPTS.BZIP2);
+        options.put(NihmsPackageOptions.Bzip2Threads.KEY, "4");
+        return options;
+    }
+
+    @Override
+    protected void verifyStreamMetadata(PackageStream.Metadata metadata) {
+        assertEquals(Compression.OPTS.BZIP2, metadata.compression());
+        assertEquals(Archive.OPTS.TAR, metadata.archive());
+        assertTrue(metadata.archived());
+        assertEquals(SPEC_NIHMS_NATIVE_2017_07, metadata.spec());
+        assertTrue(metadata.name().endsWith(".tar.bz2"));
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.shared.SizedStream;
+import org.dataconservancy.pass.deposit.model.DepositMetadata;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.model.JournalPublicationType;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Insures the {@link StreamingNihmsMetadataSerializer} produces output byte-for-byte identical to the {@link
+ * NihmsMetadataSerializer}.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingNihmsMetadataSerializerTest {
+
+    @Test
+    public void identicalOutputForCompleteMetadata() throws Exception {
+        assertIdentical(metadata("Manuscript Title", "Dairy Cow Monthly", "Elsie"));
+    }
+
+    /**
+     * Characters that must be escaped, whitespace, control characters, and characters outside of ASCII must be written
+     * identically in both element content and attribute values.
+     */
+    @Test
+    public void identicalOutputForSpecialCharacters() throws Exception {
+        String special = "Cows & <Goats> say \"moo\" 'baa'\tand\nthen\r\u0007 café ☃";
+        assertIdentical(metadata(special, special, special));
+    }
+
+    @Test
+    public void identicalOutputForEmptyValues() throws Exception {
+        assertIdentical(metadata("", "", ""));
+    }
+
+    @Test
+    public void identicalOutputForSparseMetadata() throws Exception {
+        DepositMetadata md = new DepositMetadata();
+        assertIdentical(md);
+
+        md.setManuscriptMetadata(new DepositMetadata.Manuscript());
+        assertIdentical(md);
+
+        DepositMetadata.Journal journal = new DepositMetadata.Journal();
+        journal.setIssnPubTypes(new HashMap<>());
+        md.setJournalMetadata(journal);
+        assertIdentical(md);
+
+        md.setPersons(new ArrayList<>());
+        assertIdentical(md);
+    }
+
+    @Test
+    public void selectedByPackageOption() throws Exception {
+        DepositMetadata md = metadata("Manuscript Title", "Dairy Cow Monthly", "Elsie");
+        DepositSubmission submission = new DepositSubmission();
+        submission.setMetadata(md);
+
+        assertEquals(NihmsMetadataSerializer.class, NihmsPackageProvider.newMetadataSerializer(submission,
+                new HashMap<>()).getClass());
+        assertEquals(StreamingNihmsMetadataSerializer.class, NihmsPackageProvider.newMetadataSerializer(submission,
+                new HashMap<String, Object>() {
+                    {
+                        put(NihmsPackageOptions.MetadataSerializer.KEY,
+                                NihmsPackageOptions.MetadataSerializer.OPTS.STREAMING);
+                    }
+                }).getClass());
+        assertEquals(StreamingNihmsMetadataSerializer.class, NihmsPackageProvider.newMetadataSerializer(submission,
+                new HashMap<String, Object>() {
+                    {
+                        put(NihmsPackageOptions.MetadataSerializer.KEY, "streaming");
+                    }
+                }).getClass());
+    }
+
+    private static void assertIdentical(DepositMetadata md) throws Exception {
+        byte[] expected = bytes(new NihmsMetadataSerializer(md).serialize());
+        byte[] actual = bytes(new StreamingNihmsMetadataSerializer(md).serialize());
+        assertEquals(new String(expected, "UTF-8"), new String(actual, "UTF-8"));
+        assertArrayEquals(expected, actual);
+    }
+
+    private static byte[] bytes(SizedStream sizedStream) throws Exception {
+        byte[] bytes = IOUtils.toByteArray(sizedStream.getInputStream());
+        assertEquals(sizedStream.getLength(), bytes.length);
+        return bytes;
+    }
+
+    private static DepositMetadata metadata(String title, String journalTitle, String firstName) throws Exception {
+        DepositMetadata metadata = new DepositMetadata();
+
+        DepositMetadata.Journal journal = new DepositMetadata.Journal();
+        journal.setJournalId("FJ001");
+        journal.setJournalType("nlm-ta");
+        journal.setJournalTitle(journalTitle);
+        journal.setIssnPubTypes(new LinkedHashMap<String, DepositMetadata.IssnPubType>() {
+            {
+                put("1234-5678", new DepositMetadata.IssnPubType("1234-5678", JournalPublicationType.EPUB));
+                put("8765-4321", new DepositMetadata.IssnPubType("8765-4321", JournalPublicationType.PPUB));
+            }
+        });
+
+        DepositMetadata.Manuscript manuscript = new DepositMetadata.Manuscript();
+        manuscript.setManuscriptUrl(new URL("http://farm.com/Cows?a=b&c=d"));
+        manuscript.setNihmsId("00001");
+        manuscript.setPublisherPdf(true);
+        manuscript.setShowPublisherPdf(false);
+        manuscript.setTitle(title);
+
+        DepositMetadata.Article article = new DepositMetadata.Article();
+        article.setDoi(URI.create("https://doi.org/10.1234/smh0000001"));
+
+        List<DepositMetadata.Person> persons = new ArrayList<>();
+        DepositMetadata.Person author = new DepositMetadata.Person();
+        author.setType(DepositMetadata.PERSON_TYPE.author);
+        author.setFirstName("Bessie");
+        author.setLastName("Cow");
+        persons.add(author);
+
+        DepositMetadata.Person submitter = new DepositMetadata.Person();
+        submitter.setType(DepositMetadata.PERSON_TYPE.submitter);
+        submitter.setEmail("person@farm.com");
+        submitter.setFirstName(firstName);
+        submitter.setMiddleName("The");
+        submitter.setLastName("Cow");
+        persons.add(submitter);
+
+        metadata.setJournalMetadata(journal);
+        metadata.setManuscriptMetadata(manuscript);
+        metadata.setArticleMetadata(article);
+        metadata.setPersons(persons);
+
+        return metadata;
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler.BULK_META_FILENAME;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler.MANIFEST_FILENAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingNihmsVerifierTest {
+
+    private static final String MANIFEST = "manuscript\t\tmanuscript.pdf\n" +
+            "figure\tFigure 1\tfigure1.tif\n" +
+            "bulksub_meta_xml\tSubmission Metadata\tbulk_meta.xml";
+
+    private static final String BULK_META = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><nihms-submit/>";
+
+    private final StreamingNihmsVerifier underTest = new StreamingNihmsVerifier();
+
+    @Test
+    public void verified() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("manuscript.pdf", "%PDF-1.4");
+        entries.put("figure1.tif", "II*");
+        entries.put(MANIFEST_FILENAME, MANIFEST);
+        entries.put(BULK_META_FILENAME, BULK_META);
+
+        assertTrue(verify(entries).isEmpty());
+    }
+
+    @Test
+    public void missingAndUnnamedFiles() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("manuscript.pdf", "%PDF-1.4");
+        entries.put("table1.csv", "a,b");
+        entries.put(MANIFEST_FILENAME, MANIFEST);
+        entries.put(BULK_META_FILENAME, BULK_META);
+
+        List<String> problems = verify(entries);
+
+        assertEquals(2, problems.size());
+        assertTrue(problems.get(0).contains("figure1.tif"));
+        assertTrue(problems.get(1).contains("table1.csv"));
+    }
+
+    @Test
+    public void malformedManifestAndMetadata() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("manuscript.pdf", "%PDF-1.4");
+        entries.put(MANIFEST_FILENAME, "manuscript\t\tmanuscript.pdf\nposter\t\tposter.pdf\nbulk_meta.xml");
+        entries.put(BULK_META_FILENAME, "<nihms-submit>");
+
+        List<String> problems = verify(entries);
+
+        assertEquals(5, problems.size());
+        assertTrue(problems.get(0).contains("poster"));
+        assertTrue(problems.get(1).contains("line 3"));
+        assertTrue(problems.get(2).contains(BULK_META_FILENAME));
+        assertTrue(problems.get(3).contains("poster.pdf"));
+        // the malformed line did not name bulk_meta.xml
+        assertTrue(problems.get(4).contains(BULK_META_FILENAME));
+    }
+
+    @Test
+    public void noManifestOrMetadata() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("manuscript.pdf", "%PDF-1.4");
+
+        List<String> problems = verify(entries);
+
+        assertEquals(2, problems.size());
+        assertTrue(problems.get(0).contains(BULK_META_FILENAME));
+        assertTrue(problems.get(1).contains(MANIFEST_FILENAME));
+    }
+
+    private List<String> verify(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream tarGz = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(new GzipCompressorOutputStream(tarGz))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                byte[] content = entry.getValue().getBytes(UTF_8);
+                TarArchiveEntry tarEntry = new TarArchiveEntry(entry.getKey());
+                tarEntry.setSize(content.length);
+                out.putArchiveEntry(tarEntry);
+                out.write(content);
+                out.closeArchiveEntry();
+            }
+        }
+        return underTest.verify(new ByteArrayInputStream(tarGz.toByteArray()));
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.resources;
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.submission;
+
+/**
+ * Measures the cost of building the METS document for packages of increasing size.
+ * <p>
+ * {@code build} adds {@code files} resources and the submission to a new {@link DspaceMetadataDomWriter}.  In
+ * addition to the invocation rate, the {@code files} counter reports the number of resources processed per second.
+ * Adding a resource should be a constant-time operation, so the {@code files} rate should remain flat as the number
+ * of files grows; a rate that falls as {@code files} increases indicates per-resource work proportional to the size
+ * of the document.  {@code write} serializes a document built once per trial, measuring serialization alone.
+ * </p>
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar DspaceMetadataDomWriterBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DspaceMetadataDomWriterBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000", "50000"})
+    public int files;
+
+    private DocumentBuilderFactory dbf;
+
+    private List<PackageStream.Resource> resources;
+
+    private DepositSubmission submission;
+
+    private DspaceMetadataDomWriter built;
+
+    /**
+     * Counts the resources added to the METS document, reported by JMH as a rate alongside the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class FileCounter {
+
+        public long files;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            files = 0;
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        resources = resources(files);
+        submission = submission(3);
+        built = build(new FileCounter());
+    }
+
+    /**
+     * Builds the METS document in memory.
+     */
+    @Benchmark
+    public DspaceMetadataDomWriter build(FileCounter counter) {
+        DspaceMetadataDomWriter writer = new DspaceMetadataDomWriter(dbf);
+        resources.forEach(writer::addResource);
+        writer.addSubmission(submission);
+        counter.files += resources.size();
+        return writer;
+    }
+
+    /**
+     * Builds the METS document and serializes it.
+     */
+    @Benchmark
+    public void buildAndWrite(FileCounter counter) {
+        build(counter).write(new NullOutputStream());
+    }
+
+    /**
+     * Serializes a METS document that has already been built.
+     */
+    @Benchmark
+    public void write() {
+        built.write(new NullOutputStream());
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.provider.benchmarks.AbstractAssemblerBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Compares the latency of assembling DSpace METS packages with {@code mets.xml} as the last entry of the zip, the
+ * default, and as the first entry, which requires a pre-pass over the custodial files; see {@link
+ * DspacePackageOptions.MetsPosition}.
+ * <p>
+ * {@code assemble} reads the complete package.  {@code readMets} reads the package only until {@code mets.xml} has been
+ * read, as a consumer interested in the METS document would, and closes it.
+ * </p>
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar DspaceMetsPositionBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DspaceMetsPositionBenchmark extends AbstractAssemblerBenchmark {
+
+    @Param({"LAST", "FIRST"})
+    public DspacePackageOptions.MetsPosition.OPTS position;
+
+    /**
+     * Reads the package until {@code mets.xml} has been read.
+     *
+     * @return the number of bytes in {@code mets.xml}
+     */
+    @Benchmark
+    public long readMets() throws IOException {
+        try (InputStream in = packageStream().open(); ZipInputStream zipIn = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zipIn.getNextEntry()) != null) {
+                if (DspaceMetsPackageProvider.METS_XML.equals(entry.getName())) {
+                    return IOUtils.copyLarge(zipIn, new NullOutputStream());
+                }
+            }
+        }
+        throw new IllegalStateException("Package is missing " + DspaceMetsPackageProvider.METS_XML);
+    }
+
+    @Override
+    protected AbstractAssembler assembler() {
+        DspaceMetadataDomWriterFactory metsWriterFactory =
+                new DspaceMetadataDomWriterFactory(DocumentBuilderFactory.newInstance());
+        return new DspaceMetsAssembler(mbf, rbf, new DspaceMetsPackageProviderFactory(metsWriterFactory));
+    }
+
+    @Override
+    protected Map<String, Object> packageOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PackageOptions.Spec.KEY, DspaceMetsAssembler.SPEC_DSPACE_METS);
+        options.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.ZIP);
+        options.put(PackageOptions.Compression.KEY, PackageOptions.Compression.OPTS.ZIP);
+        options.put(PackageOptions.Checksum.KEY, singletonList(PackageOptions.Checksum.OPTS.SHA256));
+        options.put(DspacePackageOptions.MetsPosition.KEY, position);
+        return options;
+    }
+
+}
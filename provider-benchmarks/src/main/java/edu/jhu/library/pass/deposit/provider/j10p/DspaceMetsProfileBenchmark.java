@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.resources;
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.submission;
+
+/**
+ * Compares the size of {@code mets.xml}, and the time taken to compose and serialize it, under the standard and
+ * compact {@link DspacePackageOptions.MetsProfile profiles}, for both writers.
+ * <p>
+ * {@code compose} adds {@code files} resources and the submission to a writer obtained from the factory, and writes
+ * the document.  {@code serialize} writes a document composed once per trial, measuring serialization alone.  The
+ * {@code metsBytes} counter reports the size of the document written by the last invocation.
+ * </p>
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar DspaceMetsProfileBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DspaceMetsProfileBenchmark {
+
+    @Param({"STANDARD", "COMPACT"})
+    public DspacePackageOptions.MetsProfile.OPTS profile;
+
+    @Param({"DOM", "STREAMING"})
+    public DspacePackageOptions.MetsWriter.OPTS writer;
+
+    @Param({"100", "10000"})
+    public int files;
+
+    private DspaceMetadataDomWriterFactory factory;
+
+    private Map<String, Object> packageOptions;
+
+    private List<PackageStream.Resource> resources;
+
+    private DepositSubmission submission;
+
+    private DspaceMetadataWriter composed;
+
+    /**
+     * Reports the size of {@code mets.xml} alongside the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class MetsSize {
+
+        public long metsBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            metsBytes = 0;
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        factory = new DspaceMetadataDomWriterFactory(dbf);
+        packageOptions = new HashMap<>();
+        packageOptions.put(DspacePackageOptions.MetsProfile.KEY, profile);
+        packageOptions.put(DspacePackageOptions.MetsWriter.KEY, writer);
+        resources = resources(files);
+        submission = submission(3);
+        composed = factory.newWriter(packageOptions);
+        resources.forEach(composed::addResource);
+        composed.addSubmission(submission);
+    }
+
+    /**
+     * Composes the METS document and writes it, recycling the writer as the package provider does.
+     */
+    @Benchmark
+    public long compose(MetsSize size) {
+        DspaceMetadataWriter metsWriter = factory.newWriter(packageOptions);
+        resources.forEach(metsWriter::addResource);
+        metsWriter.addSubmission(submission);
+        size.metsBytes = write(metsWriter);
+        factory.recycle(metsWriter);
+        return size.metsBytes;
+    }
+
+    /**
+     * Writes a METS document that has already been composed.
+     */
+    @Benchmark
+    public long serialize(MetsSize size) {
+        size.metsBytes = write(composed);
+        return size.metsBytes;
+    }
+
+    private static long write(DspaceMetadataWriter metsWriter) {
+        CountingOutputStream out = new CountingOutputStream(new NullOutputStream());
+        metsWriter.write(out);
+        return out.getByteCount();
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.resources;
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.submission;
+
+/**
+ * Compares the METS identifier strategies, alone and when building a METS document, on one thread and on several
+ * threads concurrently, as when assemblies run in parallel on the deposit worker pool.
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar MetsIdMinterBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetsIdMinterBenchmark {
+
+    @Param({"UUID", "RANDOM", "SEQUENTIAL", "COMPACT"})
+    public DspacePackageOptions.MetsIdentifiers.OPTS strategy;
+
+    private Map<String, Object> packageOptions;
+
+    private DocumentBuilderFactory dbf;
+
+    private List<PackageStream.Resource> resources;
+
+    private DepositSubmission submission;
+
+    /**
+     * Each benchmark thread mints from its own minter, as each assembly thread writes its own document.
+     */
+    @State(Scope.Thread)
+    public static class Minter {
+
+        MetsIdMinter minter;
+
+        @Setup(Level.Iteration)
+        public void setUp(MetsIdMinterBenchmark benchmark) {
+            minter = MetsIdMinter.forOptions(benchmark.packageOptions);
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        packageOptions = new HashMap<>();
+        packageOptions.put(DspacePackageOptions.MetsIdentifiers.KEY, strategy);
+        dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        resources = resources(100);
+        submission = submission(3);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String mint(Minter minter) {
+        return minter.minter.mintId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String mintConcurrently(Minter minter) {
+        return minter.minter.mintId();
+    }
+
+    /**
+     * Builds a METS document describing 100 files, which mints a little over 300 identifiers.
+     */
+    @Benchmark
+    @Threads(1)
+    public DspaceMetadataDomWriter build() {
+        return build(new DspaceMetadataDomWriter(dbf, MetsIdMinter.forOptions(packageOptions)));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public DspaceMetadataDomWriter buildConcurrently() {
+        return build(new DspaceMetadataDomWriter(dbf, MetsIdMinter.forOptions(packageOptions)));
+    }
+
+    private DspaceMetadataDomWriter build(DspaceMetadataDomWriter writer) {
+        resources.forEach(writer::addResource);
+        writer.addSubmission(submission);
+        return writer;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.provider.benchmarks.AbstractAssemblerBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Compares the throughput of verifying a DSpace METS package with {@link StreamingDspaceMetsVerifier} against that of
+ * reading every entry of the package, which is the least any verification of its content must do.
+ * <p>
+ * The package is assembled once per trial, and verified from memory.  {@code assemble} is inherited, and gives the
+ * cost of assembling the package for comparison.
+ * </p>
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar StreamingDspaceMetsVerifierBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingDspaceMetsVerifierBenchmark extends AbstractAssemblerBenchmark {
+
+    private byte[] packageBytes;
+
+    private StreamingDspaceMetsVerifier verifier;
+
+    /**
+     * Assembles the package to be verified, after the trial's submission has been created by {@link #setUp()}.
+     */
+    @Setup(Level.Trial)
+    public void assemblePackage() throws IOException {
+        try (InputStream in = packageStream().open()) {
+            packageBytes = IOUtils.toByteArray(in);
+        }
+        verifier = new StreamingDspaceMetsVerifier(packageOptions());
+        List<String> problems = verifier.verify(new ByteArrayInputStream(packageBytes));
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("Package was not verified: " + problems);
+        }
+    }
+
+    /**
+     * Reads every entry of the package, without digesting or parsing anything.
+     *
+     * @return the number of bytes in the entries of the package
+     */
+    @Benchmark
+    public long decompress() throws IOException {
+        long bytes = 0;
+        byte[] buf = new byte[64 * 1024];
+        try (ZipArchiveInputStream zipIn = new ZipArchiveInputStream(new ByteArrayInputStream(packageBytes))) {
+            while (zipIn.getNextZipEntry() != null) {
+                int n;
+                while ((n = zipIn.read(buf, 0, buf.length)) != -1) {
+                    bytes += n;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Verifies the package against its {@code mets.xml}.
+     *
+     * @return the number of problems found, which is expected to be zero
+     */
+    @Benchmark
+    public int verify() throws IOException {
+        return verifier.verify(new ByteArrayInputStream(packageBytes)).size();
+    }
+
+    @Override
+    protected AbstractAssembler assembler() {
+        DspaceMetadataDomWriterFactory metsWriterFactory =
+                new DspaceMetadataDomWriterFactory(DocumentBuilderFactory.newInstance());
+        return new DspaceMetsAssembler(mbf, rbf, new DspaceMetsPackageProviderFactory(metsWriterFactory));
+    }
+
+    @Override
+    protected Map<String, Object> packageOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PackageOptions.Spec.KEY, DspaceMetsAssembler.SPEC_DSPACE_METS);
+        options.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.ZIP);
+        options.put(PackageOptions.Compression.KEY, PackageOptions.Compression.OPTS.ZIP);
+        options.put(PackageOptions.Checksum.KEY, singletonList(PackageOptions.Checksum.OPTS.SHA256));
+        return options;
+    }
+
+}
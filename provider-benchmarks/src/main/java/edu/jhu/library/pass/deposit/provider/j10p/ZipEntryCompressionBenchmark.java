@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.jhu.library.pass.deposit.provider.j10p;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.provider.benchmarks.AbstractAssemblerBenchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Compares the assembly of DSpace METS packages whose custodial entries are deflated, stored, or chosen by mime type
+ * or probe; see {@link DspacePackageOptions.ZipEntryCompression}.  Every package places {@code mets.xml} first, which
+ * the option requires.  The custodial files of the fixture are named as PDFs, so the mime type policy stores them.
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar ZipEntryCompressionBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ZipEntryCompressionBenchmark extends AbstractAssemblerBenchmark {
+
+    @Param({"DEFLATED", "STORED", "MIME_TYPE", "PROBE"})
+    public DspacePackageOptions.ZipEntryCompression.OPTS compression;
+
+    @Override
+    protected AbstractAssembler assembler() {
+        DspaceMetadataDomWriterFactory metsWriterFactory =
+                new DspaceMetadataDomWriterFactory(DocumentBuilderFactory.newInstance());
+        return new DspaceMetsAssembler(mbf, rbf, new DspaceMetsPackageProviderFactory(metsWriterFactory));
+    }
+
+    @Override
+    protected Map<String, Object> packageOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PackageOptions.Spec.KEY, DspaceMetsAssembler.SPEC_DSPACE_METS);
+        options.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.ZIP);
+        options.put(PackageOptions.Compression.KEY, PackageOptions.Compression.OPTS.ZIP);
+        options.put(PackageOptions.Checksum.KEY, singletonList(PackageOptions.Checksum.OPTS.SHA256));
+        options.put(DspacePackageOptions.MetsPosition.KEY, DspacePackageOptions.MetsPosition.OPTS.FIRST);
+        options.put(DspacePackageOptions.ZipEntryCompression.KEY, compression);
+        return options;
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderFactory;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.submissionWithFiles;
+
+/**
+ * Measures the assembly of complete packages, from the resolution of custodial content to the last byte of the
+ * archive, for submissions of increasing size.
+ * <p>
+ * Custodial files are written to a temporary directory once per trial, and resolved by the assembler from {@code
+ * file:} locations, so the results include reading the content from the local filesystem but no network.  Each
+ * invocation reads the package stream to the end, and discards it.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public abstract class AbstractAssemblerBenchmark {
+
+    /**
+     * The size, in bytes, of each custodial file
+     */
+    private static final int FILE_SIZE = 4 * 1024;
+
+    @Param({"1", "100", "10000"})
+    public int files;
+
+    protected MetadataBuilderFactory mbf;
+
+    protected ResourceBuilderFactory rbf;
+
+    private Path directory;
+
+    private DepositSubmission submission;
+
+    private AbstractAssembler assembler;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mbf = new MetadataBuilderFactory();
+        rbf = new ResourceBuilderFactory();
+        directory = Files.createTempDirectory(getClass().getSimpleName());
+        submission = submissionWithFiles(files, FILE_SIZE, directory);
+        assembler = assembler();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    /**
+     * Assembles the package, and reads it to the end.
+     *
+     * @return the number of bytes in the package
+     */
+    @Benchmark
+    public long assemble() throws IOException {
+        try (InputStream in = packageStream().open()) {
+            return IOUtils.copyLarge(in, new NullOutputStream());
+        }
+    }
+
+    /**
+     * Assembles the package of the trial's submission, without opening it.
+     *
+     * @return the package stream
+     */
+    protected PackageStream packageStream() {
+        return assembler.assemble(submission, packageOptions());
+    }
+
+    /**
+     * The assembler under test, invoked once per trial after the factories are created.
+     *
+     * @return the assembler
+     */
+    protected abstract AbstractAssembler assembler();
+
+    /**
+     * The package options supplied to each assembly.
+     *
+     * @return the package options
+     */
+    protected abstract Map<String, Object> packageOptions();
+
+}
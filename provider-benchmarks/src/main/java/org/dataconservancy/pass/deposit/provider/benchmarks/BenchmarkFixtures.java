@@ -0,0 +1,217 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.benchmarks;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.ChecksumImpl;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderImpl;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.dataconservancy.pass.deposit.model.DepositFileType;
+import org.dataconservancy.pass.deposit.model.DepositManifest;
+import org.dataconservancy.pass.deposit.model.DepositMetadata;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic, deterministic inputs shared by the benchmarks.  Fixtures are built once per trial, so that benchmarks
+ * measure the providers rather than the construction of their inputs.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class BenchmarkFixtures {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final byte[][] WORDS = Arrays.stream(("the of and to in a is that for it as with was on by " +
+            "manuscript article journal author submission deposit repository package metadata file figure table " +
+            "supplement abstract results methods discussion protein cell patients study analysis data 2018 0.05")
+            .split(" ")).map(word -> word.getBytes(StandardCharsets.US_ASCII)).toArray(byte[][]::new);
+
+    private BenchmarkFixtures() {
+        // utility class
+    }
+
+    /**
+     * Creates {@code count} package resources, each with a distinct name, a size, a mime type, and an MD5 checksum.
+     *
+     * @param count the number of resources to create
+     * @return the resources, in order
+     */
+    public static List<PackageStream.Resource> resources(int count) {
+        List<PackageStream.Resource> resources = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ResourceBuilderImpl builder = new ResourceBuilderImpl();
+            byte[] digest = digest(i);
+            builder.name(String.format("data/file-%06d.pdf", i));
+            builder.sizeBytes(1024L * (i + 1));
+            builder.mimeType("application/pdf");
+            builder.checksum(new ChecksumImpl(Checksum.OPTS.MD5, digest, null, hex(digest)));
+            resources.add(builder.build());
+        }
+        return resources;
+    }
+
+    /**
+     * Creates a submission with the metadata required by both providers: a manuscript title, an article, a journal,
+     * and {@code authors} authors plus a submitter.
+     *
+     * @param authors the number of authors on the submission
+     * @return the submission
+     */
+    public static DepositSubmission submission(int authors) {
+        DepositMetadata.Manuscript manuscript = new DepositMetadata.Manuscript();
+        manuscript.setTitle("Synthetic Manuscript Title");
+        manuscript.setMsAbstract("A synthetic abstract for benchmarking.");
+
+        DepositMetadata.Article article = new DepositMetadata.Article();
+        article.setDoi(URI.create("https://doi.org/10.1234/benchmark"));
+
+        DepositMetadata.Journal journal = new DepositMetadata.Journal();
+        journal.setJournalTitle("Journal of Benchmarks");
+        journal.setJournalId("JOB");
+        journal.setJournalType("nlm-ta");
+
+        List<DepositMetadata.Person> persons = new ArrayList<>();
+        for (int i = 0; i < authors; i++) {
+            DepositMetadata.Person author = new DepositMetadata.Person();
+            author.setType(DepositMetadata.PERSON_TYPE.author);
+            author.setFirstName("First" + i);
+            author.setLastName("Last" + i);
+            persons.add(author);
+        }
+
+        DepositMetadata.Person submitter = new DepositMetadata.Person();
+        submitter.setType(DepositMetadata.PERSON_TYPE.submitter);
+        submitter.setFirstName("Submitting");
+        submitter.setLastName("Person");
+        submitter.setEmail("submitter@example.org");
+        persons.add(submitter);
+
+        DepositMetadata metadata = new DepositMetadata();
+        metadata.setManuscriptMetadata(manuscript);
+        metadata.setArticleMetadata(article);
+        metadata.setJournalMetadata(journal);
+        metadata.setPersons(persons);
+
+        DepositSubmission submission = new DepositSubmission();
+        submission.setId("benchmark-submission");
+        submission.setName("Benchmark Submission");
+        submission.setMetadata(metadata);
+        return submission;
+    }
+
+    /**
+     * Creates {@code count} deposit files, each with a distinct name.  The first file is the manuscript, and the
+     * remainder are supplements.  The files have no location.
+     *
+     * @param count the number of files to create
+     * @return the files, in order
+     */
+    public static List<DepositFile> depositFiles(int count) {
+        List<DepositFile> files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DepositFile file = new DepositFile();
+            file.setName(String.format("file-%06d.pdf", i));
+            if (i == 0) {
+                file.setType(DepositFileType.manuscript);
+                file.setLabel("Manuscript");
+            } else {
+                file.setType(DepositFileType.supplement);
+                file.setLabel("Supplement " + i);
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Creates a submission as {@link #submission(int)}, with the {@link #depositFiles(int) deposit files} written to
+     * {@code directory} as its custodial content.  Each file contains {@code size} bytes.
+     *
+     * @param count the number of custodial files
+     * @param size the size of each file, in bytes
+     * @param directory the directory the files are written to
+     * @return the submission
+     * @throws IOException if the files cannot be written
+     */
+    public static DepositSubmission submissionWithFiles(int count, int size, Path directory) throws IOException {
+        List<DepositFile> files = depositFiles(count);
+        byte[] content = new byte[size];
+        for (int i = 0; i < count; i++) {
+            Arrays.fill(content, (byte) ('a' + (i % 26)));
+            DepositFile file = files.get(i);
+            file.setLocation(Files.write(directory.resolve(file.getName()), content).toUri().toString());
+        }
+
+        DepositManifest manifest = new DepositManifest();
+        manifest.setFiles(files);
+
+        DepositSubmission submission = submission(3);
+        submission.setFiles(files);
+        submission.setManifest(manifest);
+        return submission;
+    }
+
+    /**
+     * Creates {@code size} bytes of ASCII text: words drawn from a small vocabulary by a seeded generator, so the text
+     * compresses about as well as prose, and is the same on every run.
+     *
+     * @param size the number of bytes of text
+     * @return the text
+     */
+    public static byte[] text(int size) {
+        Random random = new Random(size);
+        byte[] text = new byte[size];
+        for (int i = 0; i < size; ) {
+            byte[] word = WORDS[random.nextInt(WORDS.length)];
+            for (int j = 0; j < word.length && i < size; j++) {
+                text[i++] = word[j];
+            }
+            if (i < size) {
+                text[i++] = (byte) (random.nextInt(12) == 0 ? '\n' : ' ');
+            }
+        }
+        return text;
+    }
+
+    private static byte[] digest(int seed) {
+        byte[] digest = new byte[16];
+        for (int i = 0; i < digest.length; i++) {
+            digest[i] = (byte) (seed >>> ((i % 4) * 8) ^ i);
+        }
+        return digest;
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+}
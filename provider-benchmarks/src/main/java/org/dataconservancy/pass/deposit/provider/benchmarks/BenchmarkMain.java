@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.benchmarks;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks with the JMH command line, enabling the {@code gc} profiler so that every result reports its
+ * allocation rate ({@code gc.alloc.rate.norm} is the number of bytes allocated per operation) alongside its
+ * throughput.  If a profiler is requested with {@code -prof}, the gc profiler is not added.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class BenchmarkMain {
+
+    private BenchmarkMain() {
+        // main class
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-prof")) {
+            jmhArgs.add("-prof");
+            jmhArgs.add("gc");
+        }
+        Main.main(jmhArgs.toArray(new String[0]));
+    }
+
+}
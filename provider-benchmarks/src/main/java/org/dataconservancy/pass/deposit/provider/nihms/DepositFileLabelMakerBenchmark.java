@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import org.dataconservancy.pass.deposit.model.DepositFileType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the allocation of manifest labels for {@code files} figures that all share the same {@code label}.  An
+ * empty label is replaced by a label derived from the file type, so both cases allocate a suffix for every file but
+ * the first.
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar DepositFileLabelMakerBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DepositFileLabelMakerBenchmark {
+
+    @Param({"100", "10000"})
+    public int files;
+
+    @Param({"", "Figure"})
+    public String label;
+
+    private final NihmsManifestSerializer serializer = new NihmsManifestSerializer(null);
+
+    @Benchmark
+    public void sameLabel(Blackhole blackhole) {
+        NihmsManifestSerializer.DepositFileLabelMaker labelMaker = serializer.new DepositFileLabelMaker();
+        for (int i = 0; i < files; i++) {
+            blackhole.consume(labelMaker.getTypeUniqueLabel(DepositFileType.figure, label));
+        }
+    }
+
+}
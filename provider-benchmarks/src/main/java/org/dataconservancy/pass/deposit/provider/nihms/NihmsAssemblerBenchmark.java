@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.shared.AbstractAssembler;
+import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderFactory;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
+import org.dataconservancy.pass.deposit.provider.benchmarks.AbstractAssemblerBenchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler.SPEC_NIHMS_NATIVE_2017_07;
+
+/**
+ * Measures the assembly of complete NIHMS packages: a gzipped tar containing the custodial files, {@code
+ * manifest.txt} and {@code bulk_meta.xml}.  Packages are compressed by {@code gzipThreads} threads; see {@link
+ * NihmsPackageOptions.GzipThreads}.
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar NihmsAssemblerBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class NihmsAssemblerBenchmark extends AbstractAssemblerBenchmark {
+
+    @Param({"1", "4"})
+    public int gzipThreads;
+
+    @Override
+    protected AbstractAssembler assembler() {
+        return newAssembler(mbf, rbf);
+    }
+
+    /**
+     * Creates a NIHMS assembler with its own provider factory, for benchmarks outside of this package.
+     *
+     * @param mbf the metadata builder factory
+     * @param rbf the resource builder factory
+     * @return the assembler
+     */
+    public static NihmsAssembler newAssembler(MetadataBuilderFactory mbf, ResourceBuilderFactory rbf) {
+        return new NihmsAssembler(mbf, rbf, new NihmsPackageProviderFactory());
+    }
+
+    @Override
+    protected Map<String, Object> packageOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PackageOptions.Spec.KEY, SPEC_NIHMS_NATIVE_2017_07);
+        options.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.TAR);
+        options.put(PackageOptions.Compression.KEY, PackageOptions.Compression.OPTS.GZIP);
+        options.put(PackageOptions.Checksum.KEY, singletonList(PackageOptions.Checksum.OPTS.SHA256));
+        options.put(NihmsPackageOptions.GzipThreads.KEY, gzipThreads);
+        return options;
+    }
+
+}
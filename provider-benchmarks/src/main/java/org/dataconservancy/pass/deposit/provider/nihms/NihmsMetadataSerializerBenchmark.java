@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.nihms;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.model.DepositMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.submission;
+
+/**
+ * Measures the serialization of {@code bulk_meta.xml} by each of the metadata serializers, for submissions with an
+ * increasing number of authors.
+ * <p>
+ * {@code toStream} measures the serializer alone, writing to a discarding stream.  {@code toBuffer} serializes as
+ * {@link NihmsPackageProvider#finish} does, into a buffer whose content is retained until the package is written.
+ * </p>
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar NihmsMetadataSerializerBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NihmsMetadataSerializerBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int authors;
+
+    @Param({"XSTREAM", "STREAMING"})
+    public NihmsPackageOptions.MetadataSerializer.OPTS serializer;
+
+    private DepositMetadata metadata;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        metadata = submission(authors).getMetadata();
+    }
+
+    @Benchmark
+    public void toStream() throws IOException {
+        newSerializer().serialize(new NullOutputStream());
+    }
+
+    @Benchmark
+    public long toBuffer() {
+        return newSerializer().serialize().getLength();
+    }
+
+    private StreamingSerializer newSerializer() {
+        if (serializer == NihmsPackageOptions.MetadataSerializer.OPTS.STREAMING) {
+            return new StreamingNihmsMetadataSerializer(metadata);
+        }
+        return new NihmsMetadataSerializer(metadata);
+    }
+
+}
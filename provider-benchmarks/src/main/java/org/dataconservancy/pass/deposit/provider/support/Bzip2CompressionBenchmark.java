@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.text;
+
+/**
+ * Compares the wall-clock time and compression ratio of the serial {@code BZip2CompressorOutputStream}, used when
+ * {@code NihmsPackageOptions.Bzip2Threads} is one, with the {@link ParallelBzip2OutputStream} used when it is greater
+ * than one.  The {@code compressedBytes} and {@code ratio} counters report the size of the output of the last
+ * invocation, and its ratio to the size of the input.
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar Bzip2CompressionBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class Bzip2CompressionBenchmark {
+
+    /**
+     * The number of bytes compressed by each invocation
+     */
+    private static final int INPUT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The number of compressing threads; one selects the serial compressor
+     */
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private byte[] input;
+
+    private ForkJoinPool pool;
+
+    /**
+     * Reports the compressed size alongside the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CompressedSize {
+
+        public long compressedBytes;
+
+        public double ratio;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            compressedBytes = 0;
+            ratio = 0;
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        input = text(INPUT_SIZE);
+        pool = (threads > 1) ? new ForkJoinPool(threads) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long compress(CompressedSize size) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(new NullOutputStream());
+        try (OutputStream out = (pool == null) ?
+                new BZip2CompressorOutputStream(counter, BZip2CompressorOutputStream.MAX_BLOCKSIZE) :
+                new ParallelBzip2OutputStream(counter, pool, threads)) {
+            out.write(input);
+        }
+        size.compressedBytes = counter.getByteCount();
+        size.ratio = (double) size.compressedBytes / INPUT_SIZE;
+        return size.compressedBytes;
+    }
+
+}
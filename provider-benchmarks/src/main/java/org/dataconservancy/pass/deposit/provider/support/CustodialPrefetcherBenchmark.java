@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderFactory;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler;
+import org.dataconservancy.pass.deposit.provider.nihms.NihmsAssemblerBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.submissionWithFiles;
+
+/**
+ * Measures assembling a NIHMS tar.gz whose custodial files are fetched over HTTP, with and without reading the next
+ * files ahead of the archiver.
+ * <p>
+ * Files are served from the loopback interface by a server that waits {@link #LATENCY_MILLIS} before answering each
+ * request, as a remote repository would, so that without read-ahead the archiver waits on every file, and with
+ * read-ahead that wait overlaps with archiving and compressing the files before it.
+ * </p>
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar CustodialPrefetcherBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CustodialPrefetcherBenchmark {
+
+    /**
+     * The time the server waits before answering each request
+     */
+    private static final long LATENCY_MILLIS = 25;
+
+    /**
+     * The size, in bytes, of each custodial file
+     */
+    private static final int FILE_SIZE = 512 * 1024;
+
+    private static final int FILES = 20;
+
+    @Param({"0", "1", "4"})
+    public int depth;
+
+    private Path directory;
+
+    private HttpServer server;
+
+    private ExecutorService serverThreads;
+
+    private DepositSubmission submission;
+
+    private NihmsAssembler assembler;
+
+    private Map<String, Object> options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory(getClass().getSimpleName());
+        submission = submissionWithFiles(FILES, FILE_SIZE, directory);
+
+        serverThreads = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverThreads);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Path file = directory.resolve(exchange.getRequestURI().getPath().substring(1));
+            exchange.sendResponseHeaders(200, Files.size(file));
+            try (OutputStream out = exchange.getResponseBody()) {
+                Files.copy(file, out);
+            }
+        });
+        server.start();
+        for (DepositFile file : submission.getFiles()) {
+            file.setLocation("http://localhost:" + server.getAddress().getPort() + "/" + file.getName());
+        }
+
+        assembler = NihmsAssemblerBenchmark.newAssembler(new MetadataBuilderFactory(), new ResourceBuilderFactory());
+        options = new HashMap<>();
+        options.put(PackageOptions.Spec.KEY, NihmsAssembler.SPEC_NIHMS_NATIVE_2017_07);
+        options.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.TAR);
+        options.put(PackageOptions.Compression.KEY, PackageOptions.Compression.OPTS.GZIP);
+        options.put(PackageOptions.Checksum.KEY, Arrays.asList(PackageOptions.Checksum.OPTS.SHA256));
+        options.put(CustodialPrefetcher.DEPTH_KEY, depth);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    /**
+     * Assembles the package, and reads it to the end.
+     *
+     * @return the number of bytes in the package
+     */
+    @Benchmark
+    public long assemble() throws Exception {
+        PackageStream packageStream = assembler.assemble(submission, options);
+        try (InputStream in = packageStream.open()) {
+            return IOUtils.copyLarge(in, new NullOutputStream());
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.jhu.library.pass.deposit.provider.j10p.DspaceMetsAssembler;
+import edu.jhu.library.pass.deposit.provider.j10p.DspaceMetsAssemblerBenchmark;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.MetadataBuilderFactory;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.dataconservancy.pass.deposit.provider.nihms.NihmsAssembler;
+import org.dataconservancy.pass.deposit.provider.nihms.NihmsAssemblerBenchmark;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.dataconservancy.pass.deposit.provider.benchmarks.BenchmarkFixtures.submissionWithFiles;
+
+/**
+ * Compares assembling a submission into a NIHMS tar.gz and a DSpace METS zip separately, with each assembler fetching
+ * the custodial files, and with a {@link FanOutAssembler}, which fetches each file once.  In both modes the two
+ * packages are read concurrently, to the end.
+ * <p>
+ * Custodial files are served over HTTP from the loopback interface, so that fetching them costs a request and a copy,
+ * as it does from a repository.  The {@code servedBytes} counter reports the number of bytes served to the last
+ * invocation.
+ * </p>
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar FanOutAssemblerBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FanOutAssemblerBenchmark {
+
+    /**
+     * The size, in bytes, of each custodial file
+     */
+    private static final int FILE_SIZE = 1024 * 1024;
+
+    @Param({"SEPARATE", "FAN_OUT"})
+    public String mode;
+
+    @Param({"1", "10"})
+    public int files;
+
+    private Path directory;
+
+    private HttpServer server;
+
+    private final AtomicLong servedBytes = new AtomicLong();
+
+    private ExecutorService readers;
+
+    private DepositSubmission submission;
+
+    private List<FanOutAssembler.Target> targets;
+
+    /**
+     * Reports the bytes served alongside the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Served {
+
+        public long servedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            servedBytes = 0;
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory(getClass().getSimpleName());
+        submission = submissionWithFiles(files, FILE_SIZE, directory);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            Path file = directory.resolve(exchange.getRequestURI().getPath().substring(1));
+            exchange.sendResponseHeaders(200, Files.size(file));
+            try (OutputStream out = exchange.getResponseBody()) {
+                servedBytes.addAndGet(Files.copy(file, out));
+            }
+        });
+        server.start();
+        for (DepositFile file : submission.getFiles()) {
+            file.setLocation("http://localhost:" + server.getAddress().getPort() + "/" + file.getName());
+        }
+
+        MetadataBuilderFactory mbf = new MetadataBuilderFactory();
+        ResourceBuilderFactory rbf = new ResourceBuilderFactory();
+        targets = Arrays.asList(
+                new FanOutAssembler.Target(NihmsAssemblerBenchmark.newAssembler(mbf, rbf), nihmsOptions()),
+                new FanOutAssembler.Target(DspaceMetsAssemblerBenchmark.newAssembler(mbf, rbf), dspaceOptions()));
+        readers = Executors.newFixedThreadPool(targets.size());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        readers.shutdownNow();
+        server.stop(0);
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    /**
+     * Assembles both packages, and reads them to the end, concurrently.
+     *
+     * @return the number of bytes in the packages
+     */
+    @Benchmark
+    public long assemble(Served served) throws Exception {
+        long before = servedBytes.get();
+        long length;
+        if ("SEPARATE".equals(mode)) {
+            List<PackageStream> packageStreams = new ArrayList<>();
+            for (FanOutAssembler.Target target : targets) {
+                packageStreams.add(target.assembler().assemble(submission, target.options()));
+            }
+            length = readAll(packageStreams);
+        } else {
+            try (FanOutAssembler.Packages packages = new FanOutAssembler().assemble(submission, targets)) {
+                length = readAll(packages.packageStreams());
+            }
+        }
+        served.servedBytes = servedBytes.get() - before;
+        return length;
+    }
+
+    private long readAll(List<PackageStream> packageStreams) throws InterruptedException, ExecutionException {
+        List<Future<Long>> reads = new ArrayList<>();
+        for (PackageStream packageStream : packageStreams) {
+            reads.add(readers.submit(() -> {
+                try (InputStream in = packageStream.open()) {
+                    return IOUtils.copyLarge(in, new NullOutputStream());
+                }
+            }));
+        }
+        long length = 0;
+        for (Future<Long> read : reads) {
+            length += read.get();
+        }
+        return length;
+    }
+
+    private static Map<String, Object> nihmsOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PackageOptions.Spec.KEY, NihmsAssembler.SPEC_NIHMS_NATIVE_2017_07);
+        options.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.TAR);
+        options.put(PackageOptions.Compression.KEY, PackageOptions.Compression.OPTS.GZIP);
+        options.put(PackageOptions.Checksum.KEY, Arrays.asList(PackageOptions.Checksum.OPTS.SHA256));
+        return options;
+    }
+
+    private static Map<String, Object> dspaceOptions() {
+        Map<String, Object> options = new HashMap<>();
+        options.put(PackageOptions.Spec.KEY, DspaceMetsAssembler.SPEC_DSPACE_METS);
+        options.put(PackageOptions.Archive.KEY, PackageOptions.Archive.OPTS.ZIP);
+        options.put(PackageOptions.Compression.KEY, PackageOptions.Compression.OPTS.ZIP);
+        options.put(PackageOptions.Checksum.KEY,
+                Arrays.asList(PackageOptions.Checksum.OPTS.SHA512, PackageOptions.Checksum.OPTS.MD5));
+        return options;
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares fetching custodial files over a {@code HttpURLConnection} per file with fetching them through the {@link
+ * HttpCustodialResolver}, which reuses pooled connections and fetches large files in parallel ranges.
+ * <p>
+ * Files are served over HTTP from the loopback interface by a server that stands in for a remote repository: each
+ * request waits {@link #LATENCY_MILLIS} before it is answered, and each response is throttled to {@link
+ * #BYTES_PER_SECOND}, so that a single connection cannot saturate the link.  The {@code requests} counter reports the
+ * number of requests served to the last invocation.
+ * </p>
+ * <p>
+ * Run with {@code java -jar provider-benchmarks/target/benchmarks.jar HttpCustodialResolverBenchmark}
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class HttpCustodialResolverBenchmark {
+
+    /**
+     * The time the server waits before answering each request
+     */
+    private static final long LATENCY_MILLIS = 20;
+
+    /**
+     * The rate at which the server writes each response
+     */
+    private static final long BYTES_PER_SECOND = 64L * 1024 * 1024;
+
+    private static final int WRITE_SIZE = 64 * 1024;
+
+    private static final long RANGED_THRESHOLD = 16L * 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final int PARALLELISM = 4;
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    @Param({"URL_CONNECTION", "POOLED"})
+    public String mode;
+
+    /**
+     * The number of custodial files, and the size of each in megabytes
+     */
+    @Param({"32x1", "2x64"})
+    public String files;
+
+    private byte[] content;
+
+    private HttpServer server;
+
+    private ExecutorService serverThreads;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private List<String> locations;
+
+    private CustodialOrigin origin;
+
+    /**
+     * Reports the requests served alongside the primary result.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Served {
+
+        public long requests;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requests = 0;
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] shape = files.split("x");
+        content = new byte[Integer.parseInt(shape[1]) * 1024 * 1024];
+        new Random(1).nextBytes(content);
+
+        serverThreads = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(serverThreads);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            sleep(TimeUnit.MILLISECONDS.toNanos(LATENCY_MILLIS));
+            int start = 0;
+            int end = content.length - 1;
+            int status = 200;
+            exchange.getResponseHeaders().add("ETag", "\"benchmark\"");
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher != null && matcher.matches()) {
+                start = Integer.parseInt(matcher.group(1));
+                end = Math.min(Integer.parseInt(matcher.group(2)), content.length - 1);
+                status = 206;
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" +
+                        content.length);
+            }
+            exchange.sendResponseHeaders(status, end - start + 1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int offset = start; offset <= end; offset += WRITE_SIZE) {
+                    int length = Math.min(WRITE_SIZE, end - offset + 1);
+                    out.write(content, offset, length);
+                    sleep(TimeUnit.SECONDS.toNanos(length) / BYTES_PER_SECOND);
+                }
+            } catch (IOException e) {
+                // the client closed the response after reading what it needed
+            }
+        });
+        server.start();
+
+        locations = new ArrayList<>();
+        for (int i = 0; i < Integer.parseInt(shape[0]); i++) {
+            locations.add("http://localhost:" + server.getAddress().getPort() + "/file-" + i);
+        }
+
+        origin = "POOLED".equals(mode) ? new HttpCustodialResolver(RANGED_THRESHOLD, CHUNK_SIZE, PARALLELISM,
+                HttpCustodialResolver.DEFAULT_RANGED_MAX_BYTES) :
+                CustodialOrigin.URL_CONNECTION;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    /**
+     * Fetches each custodial file, and reads it to the end, in turn, as an archiver does.
+     *
+     * @return the number of bytes read
+     */
+    @Benchmark
+    public long fetch(Served served) throws IOException {
+        long before = requests.get();
+        long length = 0;
+        for (String location : locations) {
+            try (InputStream in = origin.fetch(location, null, null).content()) {
+                length += IOUtils.copyLarge(in, new NullOutputStream());
+            }
+        }
+        served.requests = requests.get() - before;
+        return length;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A number of bytes that may be buffered, reserved before bytes are read, and released once they are consumed.
+ * Reservations never wait: a reservation the budget cannot cover fails, and the caller buffers less.  Instances are
+ * thread-safe.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class ByteBudget {
+
+    private final long max;
+
+    private final AtomicLong remaining;
+
+    ByteBudget(long max) {
+        this.max = max;
+        this.remaining = new AtomicLong(max);
+    }
+
+    /**
+     * @param bytes the number of bytes to reserve
+     * @return {@code true} if the bytes were reserved, {@code false} if the budget cannot cover them
+     */
+    boolean reserve(long bytes) {
+        long available;
+        do {
+            available = remaining.get();
+            if (available < bytes) {
+                return false;
+            }
+        } while (!remaining.compareAndSet(available, available - bytes));
+        return true;
+    }
+
+    void release(long bytes) {
+        remaining.addAndGet(bytes);
+    }
+
+    /**
+     * @return the number of bytes reserved and not yet released
+     */
+    long reserved() {
+        return max - remaining.get();
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * A {@link PackageStream} that compresses the bytes of an uncompressed archive, typically with a {@link
+ * ParallelGzipOutputStream} or a {@link ParallelBzip2OutputStream}.  The archive is opened, and compressed, on a
+ * dedicated thread when this stream is opened.
+ * <p>
+ * The metadata of the package is built by the supplied {@link MetadataBuilder}, which describes the compressed
+ * package, while the archive is typically assembled with its compression disabled.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CompressingPackageStream implements PackageStream {
+
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final PackageStream archive;
+
+    private final MetadataBuilder metadata;
+
+    private final String threadName;
+
+    private final Compressor compressor;
+
+    /**
+     * @param archive the uncompressed archive
+     * @param metadata builds the metadata of the compressed package
+     * @param threadName the name of the thread compressing the archive
+     * @param compressor wraps the package output in a compressing stream
+     */
+    public CompressingPackageStream(PackageStream archive, MetadataBuilder metadata, String threadName,
+                                    Compressor compressor) {
+        this.archive = archive;
+        this.metadata = metadata;
+        this.threadName = threadName;
+        this.compressor = compressor;
+    }
+
+    @Override
+    public InputStream open() {
+        return PipedPackageOutput.open(threadName, PIPE_SIZE, out -> {
+            try (InputStream in = archive.open();
+                 OutputStream compressedOut = compressor.compress(out)) {
+                IOUtils.copyLarge(in, compressedOut);
+            }
+        });
+    }
+
+    @Override
+    public InputStream open(String packageResource) {
+        return archive.open(packageResource);
+    }
+
+    @Override
+    public Iterator<Resource> resources() {
+        return archive.resources();
+    }
+
+    @Override
+    public Metadata metadata() {
+        return metadata.build();
+    }
+
+    /**
+     * Wraps the output of the package in a compressing stream.  Closing the compressing stream must finish the
+     * compressed output, and close the package output.
+     */
+    @FunctionalInterface
+    public interface Compressor {
+
+        OutputStream compress(OutputStream out) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,615 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum.OPTS.SHA256;
+
+/**
+ * A content-addressed cache, on the local disk, of custodial resources fetched over HTTP, such as Fedora binaries.
+ * <p>
+ * Content is stored once per SHA-256 digest, however many locations it was fetched from, and the cache holds at most
+ * {@code maxBytes} of content, evicting the least recently used content first.  Each location is indexed with the
+ * digest of its content and the {@code ETag} and {@code Last-Modified} validators of the response that supplied it.
+ * A cached location is revalidated with a conditional request each time it is read: a {@code 304 Not Modified}
+ * response is a hit, and the content is read from the cache; any other response is a miss.  Responses without
+ * validators are never cached.
+ * </p>
+ * <p>
+ * The cache is populated as a miss is read: content is written to a temporary file, and moved into the cache
+ * atomically once it has been read to the end.  Content that is not read to the end is discarded, so the cache never
+ * holds partial content.  The index is kept on disk beside the content, so the cache survives a restart.
+ * </p>
+ * <p>
+ * Custodial resources are read through the cache by {@link #resolve(List)}, and fetched from a {@link
+ * CustodialOrigin}.  Caches are obtained by {@link #open(Path, long, CustodialOrigin)}, which answers one instance per
+ * directory, shared by every provider in the process.  Hits, misses, evictions and the bytes held are reported to a
+ * {@link MeterRegistry} the cache is bound to.  Instances are thread-safe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CustodialContentCache implements CustodialResourceResolver, MeterBinder {
+
+    /**
+     * The property naming the directory of the cache; when it is empty, custodial resources are not cached
+     */
+    public static final String DIRECTORY_PROPERTY = "pass.deposit.provider.cache.directory";
+
+    /**
+     * The property limiting the bytes of content held by the cache, as a number, or a string like {@code "512m"}
+     */
+    public static final String MAX_BYTES_PROPERTY = "pass.deposit.provider.cache.max-bytes";
+
+    public static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+    static final String HITS_COUNTER = "deposit.provider.cache.hits";
+
+    static final String MISSES_COUNTER = "deposit.provider.cache.misses";
+
+    static final String EVICTIONS_COUNTER = "deposit.provider.cache.evictions";
+
+    static final String BYTES_GAUGE = "deposit.provider.cache.bytes";
+
+    private static final Logger LOG = LoggerFactory.getLogger(CustodialContentCache.class);
+
+    private static final Map<Path, CustodialContentCache> CACHES = new ConcurrentHashMap<>();
+
+    private static final String CONTENT_DIR = "content";
+
+    private static final String INDEX_DIR = "index";
+
+    private static final String TMP_DIR = "tmp";
+
+    private static final String INDEX_SUFFIX = ".properties";
+
+    private static final String LOCATION = "location";
+
+    private static final String ETAG = "etag";
+
+    private static final String LAST_MODIFIED = "last-modified";
+
+    private static final String DIGEST = "digest";
+
+    private static final String LENGTH = "length";
+
+    private final Path contentDir;
+
+    private final Path indexDir;
+
+    private final Path tmpDir;
+
+    private final long maxBytes;
+
+    private final CustodialOrigin origin;
+
+    // guarded by this; digests of the content held, least recently used first, mapped to their lengths
+    private final LinkedHashMap<String, Long> content = new LinkedHashMap<>(16, 0.75f, true);
+
+    // guarded by this
+    private final Map<String, Entry> index = new HashMap<>();
+
+    // guarded by this
+    private long bytes;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache in {@code directory}, loading the content and index left by a previous instance.  Prefer
+     * {@link #open(Path, long, CustodialOrigin)}, so that one instance manages each directory.
+     *
+     * @param directory the directory of the cache, created if it does not exist
+     * @param maxBytes the maximum number of bytes of content held
+     * @param origin fetches content that is not cached, and revalidates content that is
+     * @throws UncheckedIOException if the directory cannot be created or read
+     */
+    CustodialContentCache(Path directory, long maxBytes, CustodialOrigin origin) {
+        this.contentDir = directory.resolve(CONTENT_DIR);
+        this.indexDir = directory.resolve(INDEX_DIR);
+        this.tmpDir = directory.resolve(TMP_DIR);
+        this.maxBytes = maxBytes;
+        this.origin = origin;
+        try {
+            Files.createDirectories(contentDir);
+            Files.createDirectories(indexDir);
+            Files.createDirectories(tmpDir);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open the custodial content cache " + directory + ": " +
+                    e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Answers the cache in {@code directory}, creating it if this process has not yet opened it.  The {@code maxBytes}
+     * and {@code origin} of the first caller apply.
+     *
+     * @param directory the directory of the cache
+     * @param maxBytes the maximum number of bytes of content held
+     * @param origin fetches content that is not cached, and revalidates content that is
+     * @return the cache
+     */
+    public static CustodialContentCache open(Path directory, long maxBytes, CustodialOrigin origin) {
+        return CACHES.computeIfAbsent(directory.toAbsolutePath().normalize(),
+                dir -> new CustodialContentCache(dir, maxBytes, origin));
+    }
+
+    /**
+     * Answers the cache configured by the {@link #DIRECTORY_PROPERTY} and {@link #MAX_BYTES_PROPERTY} properties, or
+     * {@code null} if no directory is configured.
+     *
+     * @param properties resolves the value of a configuration property by name, answering {@code null} if it is absent
+     * @param origin fetches content that is not cached, and revalidates content that is
+     * @return the cache, or {@code null}
+     */
+    public static CustodialContentCache configure(Function<String, String> properties, CustodialOrigin origin) {
+        Map<String, Object> values = PackageOptionsUtil.properties(properties, DIRECTORY_PROPERTY, MAX_BYTES_PROPERTY);
+        if (!values.containsKey(DIRECTORY_PROPERTY)) {
+            return null;
+        }
+        return open(new File(values.get(DIRECTORY_PROPERTY).toString()).toPath(),
+                PackageOptionsUtil.bytesOption(values, MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES), origin);
+    }
+
+    /**
+     * Answers custodial resources read through this cache.  Resources are identified by the location of their {@code
+     * DepositFile}; resources that are not located by an {@code http} or {@code https} URL are returned as they are.
+     *
+     * @param resources the custodial resources of a package
+     * @return the cached resources, in the same order
+     */
+    @Override
+    public List<DepositFileResource> resolve(List<DepositFileResource> resources) {
+        List<DepositFileResource> cached = new ArrayList<>(resources.size());
+        for (DepositFileResource resource : resources) {
+            String location = resource.getDepositFile() != null ? resource.getDepositFile().getLocation() : null;
+            if (location == null || !(location.startsWith("http://") || location.startsWith("https://"))) {
+                cached.add(resource);
+                continue;
+            }
+            cached.add(new DepositFileResource(resource.getDepositFile(), new CachedResource(location, resource)));
+        }
+        return cached;
+    }
+
+    /**
+     * Opens the content of {@code location}, from the cache if the origin validates the cached content, otherwise
+     * from the origin.
+     *
+     * @param location the URL of the content
+     * @return the content
+     * @throws IOException if the content cannot be fetched
+     */
+    InputStream open(String location) throws IOException {
+        return open(location, true);
+    }
+
+    private InputStream open(String location, boolean revalidate) throws IOException {
+        Entry cached = null;
+        if (revalidate) {
+            synchronized (this) {
+                cached = index.get(location);
+            }
+        }
+
+        CustodialOrigin.Fetched fetched = (cached == null) ? origin.fetch(location, null, null) :
+                origin.fetch(location, cached.etag, cached.lastModified);
+        if (!fetched.modified()) {
+            InputStream in = read(cached);
+            if (in != null) {
+                hits.incrementAndGet();
+                return in;
+            }
+            // evicted since it was revalidated
+            return open(location, false);
+        }
+
+        misses.incrementAndGet();
+        if (fetched.etag() == null && fetched.lastModified() == null) {
+            return fetched.content();
+        }
+        return new PopulatingInputStream(new Entry(location, fetched.etag(), fetched.lastModified(), null, 0),
+                fetched.content());
+    }
+
+    /**
+     * Opens the cached content of an entry, marking it most recently used, or answers {@code null} if it has been
+     * evicted.
+     */
+    private synchronized InputStream read(Entry entry) throws IOException {
+        if (content.get(entry.digest) == null) {
+            return null;
+        }
+        Path file = contentDir.resolve(entry.digest);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        return Files.newInputStream(file);
+    }
+
+    /**
+     * Moves fetched content into the cache, indexes its location, and evicts the least recently used content until
+     * the cache is within its budget.  Content the location was previously indexed with is released.
+     */
+    private synchronized void commit(Entry entry, Path fetched) throws IOException {
+        if (entry.length > maxBytes) {
+            Files.deleteIfExists(fetched);
+            Entry replaced = index.remove(entry.location);
+            if (replaced != null) {
+                Files.deleteIfExists(indexFile(entry.location));
+                release(replaced.digest);
+            }
+            return;
+        }
+
+        Path file = contentDir.resolve(entry.digest);
+        if (content.containsKey(entry.digest)) {
+            // the same content was fetched from another location, or concurrently
+            Files.deleteIfExists(fetched);
+            content.get(entry.digest);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } else {
+            Files.move(fetched, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            content.put(entry.digest, entry.length);
+            bytes += entry.length;
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(LOCATION, entry.location);
+        if (entry.etag != null) {
+            properties.setProperty(ETAG, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            properties.setProperty(LAST_MODIFIED, entry.lastModified);
+        }
+        properties.setProperty(DIGEST, entry.digest);
+        properties.setProperty(LENGTH, String.valueOf(entry.length));
+        Path indexTmp = Files.createTempFile(tmpDir, "index-", INDEX_SUFFIX);
+        try (OutputStream out = Files.newOutputStream(indexTmp)) {
+            properties.store(out, null);
+        }
+        Files.move(indexTmp, indexFile(entry.location), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        Entry replaced = index.put(entry.location, entry);
+        if (replaced != null && !replaced.digest.equals(entry.digest)) {
+            release(replaced.digest);
+        }
+
+        evict();
+    }
+
+    /**
+     * Removes content that is no longer indexed by any location, so that it does not count against the budget.
+     */
+    private void release(String digest) throws IOException {
+        if (index.values().stream().anyMatch(entry -> entry.digest.equals(digest))) {
+            return;
+        }
+        Long length = content.remove(digest);
+        if (length != null) {
+            bytes -= length;
+            Files.deleteIfExists(contentDir.resolve(digest));
+        }
+    }
+
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Long>> eldest = content.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.getValue();
+            evictions.incrementAndGet();
+            Files.deleteIfExists(contentDir.resolve(evicted.getKey()));
+
+            Iterator<Entry> entries = index.values().iterator();
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (entry.digest.equals(evicted.getKey())) {
+                    entries.remove();
+                    Files.deleteIfExists(indexFile(entry.location));
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the index and content left by a previous instance, discarding incomplete fetches, index entries whose
+     * content is missing, and content no longer indexed.
+     */
+    private synchronized void load() throws IOException {
+        try (DirectoryStream<Path> tmp = Files.newDirectoryStream(tmpDir)) {
+            for (Path file : tmp) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        try (DirectoryStream<Path> indexFiles = Files.newDirectoryStream(indexDir)) {
+            for (Path file : indexFiles) {
+                Properties properties = new Properties();
+                try (InputStream in = Files.newInputStream(file)) {
+                    properties.load(in);
+                }
+                Entry entry = new Entry(properties.getProperty(LOCATION), properties.getProperty(ETAG),
+                        properties.getProperty(LAST_MODIFIED), properties.getProperty(DIGEST),
+                        Long.parseLong(properties.getProperty(LENGTH, "0")));
+                if (entry.location == null || entry.digest == null ||
+                        !Files.exists(contentDir.resolve(entry.digest))) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                index.put(entry.location, entry);
+            }
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> contentFiles = Files.newDirectoryStream(contentDir)) {
+            contentFiles.forEach(files::add);
+        }
+        files.sort((one, two) -> {
+            try {
+                return Files.getLastModifiedTime(one).compareTo(Files.getLastModifiedTime(two));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        for (Path file : files) {
+            String digest = file.getFileName().toString();
+            if (index.values().stream().noneMatch(entry -> entry.digest.equals(digest))) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            long length = Files.size(file);
+            content.put(digest, length);
+            bytes += length;
+        }
+
+        LOG.debug("Loaded {} locations and {} bytes of content into the custodial content cache", index.size(),
+                bytes);
+        evict();
+    }
+
+    private Path indexFile(String location) {
+        byte[] digest = Digests.newDigest(SHA256).digest(location.getBytes(StandardCharsets.UTF_8));
+        return indexDir.resolve(Digests.hex(digest) + INDEX_SUFFIX);
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(HITS_COUNTER, this, CustodialContentCache::hits)
+                .description("Custodial resources read from the cache")
+                .register(registry);
+        FunctionCounter.builder(MISSES_COUNTER, this, CustodialContentCache::misses)
+                .description("Custodial resources fetched from their origin")
+                .register(registry);
+        FunctionCounter.builder(EVICTIONS_COUNTER, this, CustodialContentCache::evictions)
+                .description("Custodial content evicted from the cache")
+                .register(registry);
+        Gauge.builder(BYTES_GAUGE, this, CustodialContentCache::bytes)
+                .description("Bytes of custodial content held by the cache")
+                .register(registry);
+    }
+
+    /**
+     * A cached location: the validators of the response that supplied its content, and the digest of the content
+     */
+    private static class Entry {
+
+        private final String location;
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final String digest;
+
+        private final long length;
+
+        private Entry(String location, String etag, String lastModified, String digest, long length) {
+            this.location = location;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.length = length;
+        }
+
+    }
+
+    /**
+     * Reads content from its origin, copying it to a temporary file which is committed to the cache when the content
+     * has been read to the end, and deleted otherwise.
+     */
+    private class PopulatingInputStream extends InputStream {
+
+        private final Entry response;
+
+        private final InputStream origin;
+
+        private final Path fetched;
+
+        private final OutputStream out;
+
+        private final MessageDigest digest = Digests.newDigest(SHA256);
+
+        private long length;
+
+        private boolean done;
+
+        private PopulatingInputStream(Entry response, InputStream origin) throws IOException {
+            this.response = response;
+            this.origin = origin;
+            this.fetched = Files.createTempFile(tmpDir, "fetch-", ".tmp");
+            this.out = Files.newOutputStream(fetched);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = origin.read(b, off, len);
+            if (n > 0) {
+                out.write(b, off, n);
+                digest.update(b, off, n);
+                length += n;
+            } else if (n < 0 && !done) {
+                done = true;
+                out.close();
+                try {
+                    commit(new Entry(response.location, response.etag, response.lastModified,
+                            Digests.hex(digest.digest()), length), fetched);
+                } catch (IOException e) {
+                    // the content has been read, the cache is merely not populated
+                    LOG.warn("Unable to cache {}: {}", response.location, e.getMessage(), e);
+                    Files.deleteIfExists(fetched);
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                origin.close();
+            } finally {
+                if (!done) {
+                    done = true;
+                    out.close();
+                    Files.deleteIfExists(fetched);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * A resource whose content is read through the cache, and whose other properties are those of its origin.  It is
+     * never resolved to a file, so that its content is always read as a stream.
+     */
+    private class CachedResource extends AbstractResource {
+
+        private final String location;
+
+        private final DepositFileResource origin;
+
+        private CachedResource(String location, DepositFileResource origin) {
+            this.location = location;
+            this.origin = origin;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return open(location);
+        }
+
+        @Override
+        public String getDescription() {
+            return "Cached " + origin.getDescription();
+        }
+
+        @Override
+        public String getFilename() {
+            return origin.getFilename();
+        }
+
+        @Override
+        public boolean exists() {
+            return origin.exists();
+        }
+
+        @Override
+        public URL getURL() throws IOException {
+            return origin.getURL();
+        }
+
+        @Override
+        public URI getURI() throws IOException {
+            return origin.getURI();
+        }
+
+        @Override
+        public File getFile() throws IOException {
+            throw new FileNotFoundException(getDescription() + " is not resolved to a file");
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return origin.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return origin.lastModified();
+        }
+
+    }
+
+}
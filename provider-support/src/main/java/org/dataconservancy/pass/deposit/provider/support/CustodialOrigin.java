@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fetches the content of custodial resources located by {@code http} or {@code https} URLs.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public interface CustodialOrigin {
+
+    /**
+     * Fetches content over a {@code HttpURLConnection} per request, as a Spring {@code UrlResource} does
+     */
+    CustodialOrigin URL_CONNECTION = new UrlConnectionOrigin();
+
+    /**
+     * Fetches the content of {@code location}.  If either validator is supplied, the request is conditional, and the
+     * content is not fetched if it has not been modified.
+     *
+     * @param location the URL of the content
+     * @param etag the {@code ETag} of content already held, or {@code null}
+     * @param lastModified the {@code Last-Modified} date of content already held, or {@code null}
+     * @return the content, or a result that is not {@link Fetched#modified() modified}
+     * @throws IOException if the content cannot be fetched, or the origin answers with a status other than {@code 200
+     *                     OK} or {@code 304 Not Modified}
+     */
+    Fetched fetch(String location, String etag, String lastModified) throws IOException;
+
+    /**
+     * The result of a fetch: the content and its validators, or an indication that the content was not modified.
+     */
+    class Fetched {
+
+        private static final Fetched NOT_MODIFIED = new Fetched(false, null, null, null);
+
+        private final boolean modified;
+
+        private final String etag;
+
+        private final String lastModified;
+
+        private final InputStream content;
+
+        private Fetched(boolean modified, String etag, String lastModified, InputStream content) {
+            this.modified = modified;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+
+        /**
+         * @param etag the {@code ETag} of the content, or {@code null}
+         * @param lastModified the {@code Last-Modified} date of the content, or {@code null}
+         * @param content the content, which must be closed by the caller
+         * @return the result of a fetch that answered the content
+         */
+        public static Fetched content(String etag, String lastModified, InputStream content) {
+            return new Fetched(true, etag, lastModified, content);
+        }
+
+        /**
+         * @return the result of a conditional fetch whose content has not been modified
+         */
+        public static Fetched notModified() {
+            return NOT_MODIFIED;
+        }
+
+        public boolean modified() {
+            return modified;
+        }
+
+        public String etag() {
+            return etag;
+        }
+
+        public String lastModified() {
+            return lastModified;
+        }
+
+        public InputStream content() {
+            return content;
+        }
+
+    }
+
+}
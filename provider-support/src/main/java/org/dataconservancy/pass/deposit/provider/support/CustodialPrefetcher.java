@@ -0,0 +1,585 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Reads custodial resources ahead of the archiver, so that fetching the next resources of a package overlaps with
+ * archiving the current one.
+ * <p>
+ * When the archiver opens custodial resource {@code N} of a package, the resources {@code N + 1} through {@code N +
+ * depth} are opened on a bounded I/O executor, and their first bytes are read into memory.  When the archiver opens a
+ * prefetched resource it reads the buffered bytes, and then the remainder of the already open stream.  The depth is
+ * supplied by the {@link #DEPTH_KEY} package option; a depth of zero, the default, disables read-ahead.
+ * </p>
+ * <p>
+ * Buffered bytes are limited per package, by the {@link #MAX_BYTES_KEY} package option, and across every package in
+ * the process, by the {@code globalMaxBytes} of the prefetcher.  A prefetch stops buffering when either budget is
+ * spent, so read-ahead never waits for memory; it merely hides less latency.  Bytes are returned to the budgets as the
+ * archiver reads them, or when the package is closed.  A resource is prefetched at most once; it is read from its
+ * origin every other time it is opened.
+ * </p>
+ * <p>
+ * Prefetchers are obtained by {@link #open(long)}, which answers one instance per global budget, shared by every
+ * provider in the process.  The proportion of prefetched resources that were ready when the archiver opened them, and
+ * the time the archiver waited for those that were not, are reported to a {@link MeterRegistry} the prefetcher is
+ * bound to.  Instances are thread-safe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CustodialPrefetcher implements MeterBinder {
+
+    /**
+     * The package option whose value is the number of custodial resources read ahead of the archiver
+     */
+    public static final String DEPTH_KEY = "prefetch-depth";
+
+    /**
+     * The package option limiting the bytes buffered by read-ahead for a package, as a number, or a string like {@code
+     * "32m"}
+     */
+    public static final String MAX_BYTES_KEY = "prefetch-max-bytes";
+
+    /**
+     * The property limiting the bytes buffered by read-ahead across every package in the process, as a number, or a
+     * string like {@code "256m"}
+     */
+    public static final String GLOBAL_MAX_BYTES_PROPERTY = "pass.deposit.provider.prefetch.max-bytes";
+
+    public static final int DEFAULT_DEPTH = 0;
+
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    public static final long DEFAULT_GLOBAL_MAX_BYTES = 256L * 1024 * 1024;
+
+    static final String HITS_COUNTER = "deposit.provider.prefetch.hits";
+
+    static final String MISSES_COUNTER = "deposit.provider.prefetch.misses";
+
+    static final String STALL_TIMER = "deposit.provider.prefetch.stall";
+
+    static final String BYTES_GAUGE = "deposit.provider.prefetch.bytes";
+
+    private static final Logger LOG = LoggerFactory.getLogger(CustodialPrefetcher.class);
+
+    private static final Map<Long, CustodialPrefetcher> PREFETCHERS = new ConcurrentHashMap<>();
+
+    private static final String EXECUTOR_NAME = "custodial-prefetch";
+
+    private static final int EXECUTOR_QUEUE_CAPACITY = 256;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final ExecutorService executor;
+
+    private final ByteBudget budget;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong stalls = new AtomicLong();
+
+    private final AtomicLong stallNanos = new AtomicLong();
+
+    /**
+     * Creates a prefetcher with its own executor and global budget.  Prefer {@link #open(long)}, so that providers
+     * share them.
+     *
+     * @param globalMaxBytes the maximum number of bytes buffered across every package
+     */
+    CustodialPrefetcher(long globalMaxBytes) {
+        this.budget = new ByteBudget(globalMaxBytes);
+        this.executor = ProviderExecutors.newBoundedExecutor(EXECUTOR_NAME,
+                4 * Runtime.getRuntime().availableProcessors(), EXECUTOR_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Answers the prefetcher with the supplied global budget, creating it if this process has not yet opened it.
+     *
+     * @param globalMaxBytes the maximum number of bytes buffered across every package
+     * @return the prefetcher
+     */
+    public static CustodialPrefetcher open(long globalMaxBytes) {
+        return PREFETCHERS.computeIfAbsent(globalMaxBytes, CustodialPrefetcher::new);
+    }
+
+    /**
+     * Answers the prefetcher configured by the {@link #GLOBAL_MAX_BYTES_PROPERTY} property.
+     *
+     * @param properties resolves the value of a configuration property by name, answering {@code null} if it is absent
+     * @return the prefetcher
+     */
+    public static CustodialPrefetcher configure(Function<String, String> properties) {
+        return open(PackageOptionsUtil.bytesOption(PackageOptionsUtil.properties(properties,
+                GLOBAL_MAX_BYTES_PROPERTY), GLOBAL_MAX_BYTES_PROPERTY, DEFAULT_GLOBAL_MAX_BYTES));
+    }
+
+    /**
+     * Answers the read-ahead of a package's custodial resources, as configured by the {@link #DEPTH_KEY} and {@link
+     * #MAX_BYTES_KEY} package options.  The package must close the read-ahead once it has been written, to release
+     * whatever remains buffered.
+     *
+     * @param resources the custodial resources of the package, in the order they are archived
+     * @param options the package options
+     * @return the read-ahead, whose resources are to be assembled into the package
+     */
+    public ReadAhead readAhead(List<DepositFileResource> resources, Map<String, Object> options) {
+        int depth = PackageOptionsUtil.intOption(options, DEPTH_KEY, DEFAULT_DEPTH);
+        long maxBytes = PackageOptionsUtil.bytesOption(options, MAX_BYTES_KEY, DEFAULT_MAX_BYTES);
+        return new ReadAhead(resources, depth, maxBytes);
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long stalls() {
+        return stalls.get();
+    }
+
+    double stallNanos() {
+        return stallNanos.get();
+    }
+
+    long bytes() {
+        return budget.reserved();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(HITS_COUNTER, this, CustodialPrefetcher::hits)
+                .description("Custodial resources that had been read ahead when the archiver opened them")
+                .register(registry);
+        FunctionCounter.builder(MISSES_COUNTER, this, CustodialPrefetcher::misses)
+                .description("Custodial resources that had not been read ahead when the archiver opened them")
+                .register(registry);
+        FunctionTimer.builder(STALL_TIMER, this, CustodialPrefetcher::stalls, CustodialPrefetcher::stallNanos,
+                TimeUnit.NANOSECONDS)
+                .description("Time the archiver waited for custodial resources being read ahead")
+                .register(registry);
+        Gauge.builder(BYTES_GAUGE, this, CustodialPrefetcher::bytes)
+                .description("Bytes of custodial content buffered by read-ahead")
+                .register(registry);
+    }
+
+    /**
+     * The read-ahead of one package's custodial resources.  Closing it stops its prefetches, and releases the bytes
+     * they buffered that the archiver has not read.
+     */
+    public class ReadAhead implements Closeable {
+
+        private final List<DepositFileResource> resources;
+
+        private final List<Prefetch> prefetches;
+
+        private final int depth;
+
+        private final ByteBudget packageBudget;
+
+        private ReadAhead(List<DepositFileResource> resources, int depth, long maxBytes) {
+            this.depth = depth;
+            this.packageBudget = new ByteBudget(maxBytes);
+            if (depth == 0 || resources.size() < 2) {
+                this.resources = resources;
+                this.prefetches = Collections.emptyList();
+                return;
+            }
+            this.prefetches = new ArrayList<>(resources.size());
+            List<DepositFileResource> prefetched = new ArrayList<>(resources.size());
+            for (DepositFileResource resource : resources) {
+                Prefetch prefetch = new Prefetch(prefetches.size(), resource);
+                prefetches.add(prefetch);
+                prefetched.add(new DepositFileResource(resource.getDepositFile(), prefetch));
+            }
+            this.resources = prefetched;
+        }
+
+        /**
+         * @return the custodial resources of the package, read ahead of the archiver, in the same order
+         */
+        public List<DepositFileResource> resources() {
+            return resources;
+        }
+
+        @Override
+        public void close() {
+            prefetches.forEach(Prefetch::close);
+        }
+
+        private boolean reserve(long bytes) {
+            if (!budget.reserve(bytes)) {
+                return false;
+            }
+            if (!packageBudget.reserve(bytes)) {
+                budget.release(bytes);
+                return false;
+            }
+            return true;
+        }
+
+        private void release(long bytes) {
+            packageBudget.release(bytes);
+            budget.release(bytes);
+        }
+
+        /**
+         * Starts prefetching the resources following the resource at {@code index}.
+         */
+        private void readAhead(int index) {
+            for (int i = index + 1; i <= index + depth && i < prefetches.size(); i++) {
+                prefetches.get(i).schedule();
+            }
+        }
+
+        /**
+         * A custodial resource that may be read ahead.  It is never resolved to a file, so that its content is always
+         * read as a stream.
+         */
+        private class Prefetch extends AbstractResource {
+
+            private final int index;
+
+            private final DepositFileResource origin;
+
+            // guarded by this
+            private State state = State.IDLE;
+
+            // guarded by this
+            private Future<?> future;
+
+            // guarded by this; the bytes buffered by a completed prefetch, and the stream supplying the remainder
+            private Deque<byte[]> blocks;
+
+            // guarded by this
+            private InputStream tail;
+
+            // guarded by this; an IOException or RuntimeException
+            private Exception failure;
+
+            private Prefetch(int index, DepositFileResource origin) {
+                this.index = index;
+                this.origin = origin;
+            }
+
+            private synchronized void schedule() {
+                if (state == State.IDLE) {
+                    state = State.SCHEDULED;
+                    future = executor.submit(this::prefetch);
+                }
+            }
+
+            /**
+             * Opens the resource, and buffers its bytes while the budgets allow.  Runs on the executor.  A failure,
+             * checked or not, releases whatever was buffered, and is answered to the archiver when it opens the
+             * resource.
+             */
+            private void prefetch() {
+                Deque<byte[]> read = new ArrayDeque<>();
+                InputStream in = null;
+                Exception failed = null;
+                try {
+                    in = origin.getInputStream();
+                    boolean more = true;
+                    while (more && isScheduled() && reserve(BLOCK_SIZE)) {
+                        byte[] block = new byte[BLOCK_SIZE];
+                        int n;
+                        try {
+                            n = IOUtils.read(in, block);
+                        } catch (IOException | RuntimeException e) {
+                            release(BLOCK_SIZE);
+                            throw e;
+                        }
+                        if (n < BLOCK_SIZE) {
+                            release(BLOCK_SIZE - n);
+                            block = Arrays.copyOf(block, n);
+                            more = false;
+                        }
+                        if (n > 0) {
+                            read.add(block);
+                        }
+                    }
+                    if (!more) {
+                        in.close();
+                        in = null;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // the archiver fails as it would have reading the resource itself
+                    failed = e;
+                    discard(read, in);
+                    read = new ArrayDeque<>();
+                    in = null;
+                }
+
+                synchronized (this) {
+                    if (state == State.SCHEDULED) {
+                        blocks = read;
+                        tail = in;
+                        failure = failed;
+                        return;
+                    }
+                }
+                // closed while prefetching
+                discard(read, in);
+            }
+
+            private synchronized boolean isScheduled() {
+                return state == State.SCHEDULED;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                readAhead(index);
+
+                Future<?> prefetched;
+                synchronized (this) {
+                    if (state != State.SCHEDULED) {
+                        if (state == State.IDLE) {
+                            state = State.CONSUMED;
+                            misses.incrementAndGet();
+                        }
+                        return origin.getInputStream();
+                    }
+                    prefetched = future;
+                }
+
+                if (prefetched.isDone()) {
+                    hits.incrementAndGet();
+                } else {
+                    misses.incrementAndGet();
+                    long start = System.nanoTime();
+                    try {
+                        prefetched.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted reading ahead " + origin.getDescription());
+                    } catch (ExecutionException e) {
+                        throw new IOException("Unable to read ahead " + origin.getDescription() + ": " +
+                                e.getCause().getMessage(), e.getCause());
+                    } finally {
+                        stalls.incrementAndGet();
+                        stallNanos.addAndGet(System.nanoTime() - start);
+                    }
+                }
+
+                synchronized (this) {
+                    if (state != State.SCHEDULED) {
+                        throw new IOException("Unable to read " + origin.getDescription() + ": the package is closed");
+                    }
+                    state = State.CONSUMED;
+                    if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    }
+                    if (failure != null) {
+                        throw (RuntimeException) failure;
+                    }
+                    return new PrefetchedInputStream(blocks, tail);
+                }
+            }
+
+            private void close() {
+                Deque<byte[]> buffered;
+                InputStream open;
+                synchronized (this) {
+                    boolean prefetched = state == State.SCHEDULED && blocks != null;
+                    state = State.CLOSED;
+                    if (!prefetched) {
+                        // never prefetched, consumed, or still prefetching, in which case the prefetch discards
+                        return;
+                    }
+                    buffered = blocks;
+                    open = tail;
+                    blocks = null;
+                    tail = null;
+                }
+                discard(buffered, open);
+            }
+
+            private void discard(Deque<byte[]> buffered, InputStream open) {
+                buffered.forEach(block -> release(block.length));
+                if (open != null) {
+                    try {
+                        open.close();
+                    } catch (IOException e) {
+                        LOG.debug("Unable to close {}: {}", origin.getDescription(), e.getMessage(), e);
+                    }
+                }
+            }
+
+            @Override
+            public String getDescription() {
+                return "Prefetched " + origin.getDescription();
+            }
+
+            @Override
+            public String getFilename() {
+                return origin.getFilename();
+            }
+
+            @Override
+            public boolean exists() {
+                return origin.exists();
+            }
+
+            @Override
+            public URL getURL() throws IOException {
+                return origin.getURL();
+            }
+
+            @Override
+            public URI getURI() throws IOException {
+                return origin.getURI();
+            }
+
+            @Override
+            public File getFile() throws IOException {
+                throw new FileNotFoundException(getDescription() + " is not resolved to a file");
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                return origin.contentLength();
+            }
+
+            @Override
+            public long lastModified() throws IOException {
+                return origin.lastModified();
+            }
+
+        }
+
+        /**
+         * Reads the buffered bytes of a prefetched resource, releasing each block to the budgets as it is read, and
+         * then the remainder of the resource.
+         */
+        private class PrefetchedInputStream extends InputStream {
+
+            private final Deque<byte[]> blocks;
+
+            private final InputStream tail;
+
+            private int position;
+
+            private PrefetchedInputStream(Deque<byte[]> blocks, InputStream tail) {
+                this.blocks = blocks;
+                this.tail = tail;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int n = read(b, 0, 1);
+                return n < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                byte[] block = blocks.peek();
+                if (block == null) {
+                    return tail == null ? -1 : tail.read(b, off, len);
+                }
+                int n = Math.min(len, block.length - position);
+                System.arraycopy(block, position, b, off, n);
+                position += n;
+                if (position == block.length) {
+                    blocks.poll();
+                    position = 0;
+                    release(block.length);
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                byte[] block;
+                while ((block = blocks.poll()) != null) {
+                    release(block.length);
+                }
+                if (tail != null) {
+                    tail.close();
+                }
+            }
+
+        }
+
+    }
+
+    private enum State {
+
+        /**
+         * Not yet prefetched, or opened by the archiver
+         */
+        IDLE,
+
+        /**
+         * Prefetching, or prefetched and waiting for the archiver
+         */
+        SCHEDULED,
+
+        /**
+         * Opened by the archiver
+         */
+        CONSUMED,
+
+        /**
+         * The package has been closed
+         */
+        CLOSED
+
+    }
+
+}
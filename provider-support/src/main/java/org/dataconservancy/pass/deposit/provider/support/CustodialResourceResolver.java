@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Answers how the custodial resources of a package are read: through the {@link CustodialContentCache}, over the
+ * connections of the {@link HttpCustodialResolver}, both, or neither, as configured.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public interface CustodialResourceResolver {
+
+    /**
+     * Answers the custodial resources of a package, wrapped so that they are read by this resolver.  Resources this
+     * resolver does not read are returned as they are.
+     *
+     * @param resources the custodial resources of a package
+     * @return the resources to assemble into the package, in the same order
+     */
+    List<DepositFileResource> resolve(List<DepositFileResource> resources);
+
+    /**
+     * Answers the resolver configured by the {@link CustodialContentCache} and {@link HttpCustodialResolver}
+     * properties, or {@code null} if custodial resources are read as they are.  When both are configured, the cache
+     * fetches content over the connections of the {@code HttpCustodialResolver}.
+     *
+     * @param properties resolves the value of a configuration property by name, answering {@code null} if it is absent
+     * @param registry the registry the cache reports its metrics to, may be {@code null}
+     * @return the resolver, or {@code null}
+     */
+    static CustodialResourceResolver configure(Function<String, String> properties, MeterRegistry registry) {
+        HttpCustodialResolver http = HttpCustodialResolver.configure(properties);
+        CustodialContentCache cache = CustodialContentCache.configure(properties,
+                http != null ? http : CustodialOrigin.URL_CONNECTION);
+        if (cache == null) {
+            return http;
+        }
+        if (registry != null) {
+            cache.bindTo(registry);
+        }
+        return cache;
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.shared.ChecksumImpl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link PackageStream} that digests the package, and counts its bytes, as they are read, so that transports need
+ * not read the package again to verify it.
+ * <p>
+ * When the stream returned by {@link #open()} has been read to the end, the length of the package, and a checksum for
+ * each algorithm of the {@link PackageOptions.Checksum#KEY} package option (MD5 when the option is absent), are
+ * added to the metadata of the package.  They are present in the {@link #metadata() metadata} from then on, as its
+ * {@code sizeBytes()} and {@code checksums()}.  Only the first complete read of the package is recorded; a package
+ * that is not read to the end is not described.
+ * </p>
+ * <p>
+ * The metadata builder is not synchronized: the archiving streams this stream wraps update it as they write the
+ * package, and this stream updates it as the reader reaches the end of the package.  The {@link #metadata() metadata}
+ * describes the package once the stream returned by {@link #open()} has been read to the end, by the thread that read
+ * it, or by a thread that has synchronized with it.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DigestingPackageStream implements PackageStream {
+
+    private final PackageStream delegate;
+
+    private final MetadataBuilder metadata;
+
+    private final List<PackageOptions.Checksum.OPTS> algorithms;
+
+    private final AtomicBoolean recorded = new AtomicBoolean();
+
+    /**
+     * @param delegate the package stream
+     * @param metadata builds the metadata of the package, to which its length and checksums are added
+     * @param packageOptions the package options, supplying the checksum algorithms
+     */
+    public DigestingPackageStream(PackageStream delegate, MetadataBuilder metadata,
+                                  Map<String, Object> packageOptions) {
+        this.delegate = delegate;
+        this.metadata = metadata;
+        this.algorithms = PackageOptionsUtil.checksumAlgorithms(packageOptions);
+    }
+
+    @Override
+    public InputStream open() {
+        return new DigestingInputStream(delegate.open());
+    }
+
+    @Override
+    public InputStream open(String packageResource) {
+        return delegate.open(packageResource);
+    }
+
+    @Override
+    public Iterator<Resource> resources() {
+        return delegate.resources();
+    }
+
+    @Override
+    public Metadata metadata() {
+        return metadata.build();
+    }
+
+    private void record(long length, List<MessageDigest> digests) {
+        if (!recorded.compareAndSet(false, true)) {
+            return;
+        }
+        metadata.sizeBytes(length);
+        Iterator<PackageOptions.Checksum.OPTS> algorithm = algorithms.iterator();
+        for (MessageDigest digest : digests) {
+            byte[] value = digest.digest();
+            metadata.checksum(new ChecksumImpl(algorithm.next(), value, Base64.getEncoder().encodeToString(value),
+                    Digests.hex(value)));
+        }
+    }
+
+    /**
+     * Updates the digests, and the length, with each byte read from the package
+     */
+    private class DigestingInputStream extends InputStream {
+
+        private final InputStream in;
+
+        private final List<MessageDigest> digests = new ArrayList<>(algorithms.size());
+
+        private long length;
+
+        private boolean done;
+
+        private DigestingInputStream(InputStream in) {
+            this.in = in;
+            for (PackageOptions.Checksum.OPTS algorithm : algorithms) {
+                digests.add(Digests.newDigest(algorithm));
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                for (MessageDigest digest : digests) {
+                    digest.update(b, off, n);
+                }
+                length += n;
+            } else if (n < 0 && !done) {
+                done = true;
+                record(length, digests);
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+}
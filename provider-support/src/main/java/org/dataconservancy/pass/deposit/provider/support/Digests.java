@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Creates message digests for the checksum algorithms of {@link PackageOptions.Checksum}, and encodes their values.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class Digests {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Digests() {
+        // utility class
+    }
+
+    /**
+     * Answers a new digest for the supplied checksum algorithm.
+     *
+     * @param algorithm the checksum algorithm
+     * @return a new digest
+     * @throws RuntimeException if the JDK does not provide the algorithm
+     */
+    public static MessageDigest newDigest(PackageOptions.Checksum.OPTS algorithm) {
+        // e.g. SHA256 is known to the JDK as SHA-256
+        String name = algorithm.name().startsWith("SHA") ? "SHA-" + algorithm.name().substring(3) : algorithm.name();
+        try {
+            return MessageDigest.getInstance(name);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Encodes the value of a digest as lower-case hexadecimal.
+     *
+     * @param bytes the value of a digest
+     * @return the hexadecimal encoding of {@code bytes}
+     */
+    public static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+}
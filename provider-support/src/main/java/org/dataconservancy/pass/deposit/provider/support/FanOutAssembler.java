@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.Assembler;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles one submission into several packages, for example a NIHMS tar.gz and a DSpace METS zip, fetching each
+ * custodial file once.
+ * <p>
+ * Each {@link Target} pairs an assembler with its package options.  The packages share a {@link
+ * SharedCustodialContent}, supplied to each assembler in its options: content is fetched from its origin by whichever
+ * package reads it first, and spooled for the others.  The packages may be read concurrently, each at its own pace, or
+ * one after another.  Assemblers that do not support {@code SharedCustodialContent} fetch their content as usual.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class FanOutAssembler {
+
+    private final Path spoolDirectory;
+
+    /**
+     * Spools shared content to the default temporary-file directory.
+     */
+    public FanOutAssembler() {
+        this(null);
+    }
+
+    /**
+     * @param spoolDirectory the directory shared content is spooled to, or {@code null} for the default
+     *                       temporary-file directory
+     */
+    public FanOutAssembler(Path spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    /**
+     * Assembles the submission into a package for each target.  The packages are not opened.
+     *
+     * @param submission the submission
+     * @param targets the assemblers and options of the packages
+     * @return the packages, in the order of their targets, which must be closed once they have been read
+     */
+    public Packages assemble(DepositSubmission submission, List<Target> targets) {
+        SharedCustodialContent content = new SharedCustodialContent(spoolDirectory);
+        try {
+            List<PackageStream> packageStreams = new ArrayList<>(targets.size());
+            for (Target target : targets) {
+                Map<String, Object> options = new HashMap<>(target.options());
+                options.put(SharedCustodialContent.KEY, content);
+                packageStreams.add(target.assembler().assemble(submission, options));
+            }
+            return new Packages(packageStreams, content);
+        } catch (RuntimeException e) {
+            content.close();
+            throw e;
+        }
+    }
+
+    /**
+     * An assembler, and the options of the package it assembles.
+     */
+    public static class Target {
+
+        private final Assembler assembler;
+
+        private final Map<String, Object> options;
+
+        /**
+         * @param assembler assembles the package
+         * @param options the package options
+         */
+        public Target(Assembler assembler, Map<String, Object> options) {
+            this.assembler = assembler;
+            this.options = options;
+        }
+
+        public Assembler assembler() {
+            return assembler;
+        }
+
+        public Map<String, Object> options() {
+            return options;
+        }
+
+    }
+
+    /**
+     * The packages of a submission, which share its custodial content.  Closing the packages deletes the content
+     * spooled for them.
+     */
+    public static class Packages implements AutoCloseable {
+
+        private final List<PackageStream> packageStreams;
+
+        private final SharedCustodialContent content;
+
+        private Packages(List<PackageStream> packageStreams, SharedCustodialContent content) {
+            this.packageStreams = Collections.unmodifiableList(packageStreams);
+            this.content = content;
+        }
+
+        /**
+         * The packages, in the order of their targets.
+         *
+         * @return the package streams
+         */
+        public List<PackageStream> packageStreams() {
+            return packageStreams;
+        }
+
+        /**
+         * The number of custodial bytes fetched from their origins for all of the packages.
+         *
+         * @return the number of bytes fetched
+         */
+        public long fetchedBytes() {
+            return content.fetchedBytes();
+        }
+
+        @Override
+        public void close() {
+            content.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import okhttp3.ConnectionPool;
+import okhttp3.JavaNetAuthenticator;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches custodial resources located by {@code http} or {@code https} URLs over a pool of persistent connections,
+ * shared by every provider in the process, rather than over a connection per resource.
+ * <p>
+ * The initial {@code GET} requests only the first chunk of the content.  An origin that does not accept byte ranges
+ * answers with the whole content, which is read as it arrives.  Otherwise the remainder of the content is requested
+ * as ranges, each with an {@code If-Range} validator, so content modified during the download fails the read rather
+ * than splicing two versions; content without a strong {@code ETag} or a {@code Last-Modified} date is requested
+ * again, whole.  The remainder of content no longer than the ranged threshold is read as it arrives, in a single
+ * range.
+ * </p>
+ * <p>
+ * The remainder of content longer than the ranged threshold is fetched in parallel, at most {@code parallelism}
+ * chunks at a time.  Chunks are buffered in memory as they arrive and read in order, so the archiver reads the
+ * content as one stream.  Buffered chunks are limited across every resource by {@code maxBufferedBytes}: when the
+ * budget is spent, a resource stops fetching ahead of the archiver, and its next chunk is read as it arrives, so that
+ * reads never wait for memory.
+ * </p>
+ * <p>
+ * Credentials are supplied by the {@code java.net.Authenticator} of the process, as they are for content fetched over
+ * a {@code HttpURLConnection}.  Resolvers are obtained by {@link #open(long, int, int, long)}, which answers one
+ * instance per configuration.  Instances are thread-safe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class HttpCustodialResolver implements CustodialResourceResolver, CustodialOrigin {
+
+    /**
+     * The property enabling the resolver, {@code true} or {@code false}; custodial resources are fetched over a
+     * connection per resource unless it is {@code true}
+     */
+    public static final String POOLED_PROPERTY = "pass.deposit.provider.http.pooled";
+
+    /**
+     * The property setting the length above which content is fetched in ranges, as a number of bytes, or a string like
+     * {@code "64m"}
+     */
+    public static final String RANGED_THRESHOLD_PROPERTY = "pass.deposit.provider.http.ranged-threshold";
+
+    /**
+     * The property setting the length of each range, as a number of bytes, or a string like {@code "8m"}
+     */
+    public static final String RANGED_CHUNK_SIZE_PROPERTY = "pass.deposit.provider.http.ranged-chunk-size";
+
+    /**
+     * The property setting the number of ranges of a resource fetched at a time
+     */
+    public static final String RANGED_PARALLELISM_PROPERTY = "pass.deposit.provider.http.ranged-parallelism";
+
+    /**
+     * The property limiting the bytes of ranges buffered across every resource in the process, as a number, or a
+     * string like {@code "256m"}
+     */
+    public static final String RANGED_MAX_BYTES_PROPERTY = "pass.deposit.provider.http.ranged-max-bytes";
+
+    public static final long DEFAULT_RANGED_THRESHOLD = 64L * 1024 * 1024;
+
+    public static final long DEFAULT_RANGED_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    public static final int DEFAULT_RANGED_PARALLELISM = 4;
+
+    public static final long DEFAULT_RANGED_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final String EXECUTOR_NAME = "custodial-ranges";
+
+    private static final int EXECUTOR_QUEUE_CAPACITY = 256;
+
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static final Map<String, HttpCustodialResolver> RESOLVERS = new ConcurrentHashMap<>();
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes 0-(\\d+)/(\\d+)");
+
+    private final OkHttpClient client;
+
+    private final ExecutorService rangeExecutor;
+
+    private final long rangedThreshold;
+
+    private final int chunkSize;
+
+    private final int parallelism;
+
+    private final ByteBudget budget;
+
+    /**
+     * Creates a resolver with its own connection pool, executor and budget.  Prefer {@link #open(long, int, int,
+     * long)}, so that providers share them.
+     *
+     * @param rangedThreshold the length above which content is fetched in parallel ranges
+     * @param chunkSize the length of each range
+     * @param parallelism the number of ranges of a resource fetched at a time
+     * @param maxBufferedBytes the maximum number of bytes of ranges buffered across every resource
+     */
+    HttpCustodialResolver(long rangedThreshold, int chunkSize, int parallelism, long maxBufferedBytes) {
+        if (chunkSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Chunk size and parallelism must be positive");
+        }
+        int threads = parallelism * Runtime.getRuntime().availableProcessors();
+        this.client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(threads, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .authenticator(new JavaNetAuthenticator())
+                .build();
+        this.rangeExecutor = ProviderExecutors.newBoundedExecutor(EXECUTOR_NAME, threads, EXECUTOR_QUEUE_CAPACITY);
+        this.rangedThreshold = rangedThreshold;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.budget = new ByteBudget(maxBufferedBytes);
+    }
+
+    /**
+     * Answers the resolver with the supplied configuration, creating it if this process has not yet opened it.
+     *
+     * @param rangedThreshold the length above which content is fetched in parallel ranges
+     * @param chunkSize the length of each range
+     * @param parallelism the number of ranges of a resource fetched at a time
+     * @param maxBufferedBytes the maximum number of bytes of ranges buffered across every resource
+     * @return the resolver
+     */
+    public static HttpCustodialResolver open(long rangedThreshold, int chunkSize, int parallelism,
+                                             long maxBufferedBytes) {
+        return RESOLVERS.computeIfAbsent(rangedThreshold + "/" + chunkSize + "/" + parallelism + "/" + maxBufferedBytes,
+                key -> new HttpCustodialResolver(rangedThreshold, chunkSize, parallelism, maxBufferedBytes));
+    }
+
+    /**
+     * Answers the resolver configured by the {@link #POOLED_PROPERTY} and ranged properties, or {@code null} if it is
+     * not enabled.
+     *
+     * @param properties resolves the value of a configuration property by name, answering {@code null} if it is absent
+     * @return the resolver, or {@code null}
+     */
+    public static HttpCustodialResolver configure(Function<String, String> properties) {
+        Map<String, Object> values = PackageOptionsUtil.properties(properties, POOLED_PROPERTY,
+                RANGED_THRESHOLD_PROPERTY, RANGED_CHUNK_SIZE_PROPERTY, RANGED_PARALLELISM_PROPERTY,
+                RANGED_MAX_BYTES_PROPERTY);
+        if (!Boolean.parseBoolean(String.valueOf(values.get(POOLED_PROPERTY)))) {
+            return null;
+        }
+        long chunkSize = PackageOptionsUtil.bytesOption(values, RANGED_CHUNK_SIZE_PROPERTY, DEFAULT_RANGED_CHUNK_SIZE);
+        if (chunkSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Invalid value '" + values.get(RANGED_CHUNK_SIZE_PROPERTY) +
+                    "' for property '" + RANGED_CHUNK_SIZE_PROPERTY + "'");
+        }
+        return open(PackageOptionsUtil.bytesOption(values, RANGED_THRESHOLD_PROPERTY, DEFAULT_RANGED_THRESHOLD),
+                (int) chunkSize,
+                PackageOptionsUtil.intOption(values, RANGED_PARALLELISM_PROPERTY, DEFAULT_RANGED_PARALLELISM),
+                PackageOptionsUtil.bytesOption(values, RANGED_MAX_BYTES_PROPERTY, DEFAULT_RANGED_MAX_BYTES));
+    }
+
+    /**
+     * Answers custodial resources fetched by this resolver.  Resources are identified by the location of their {@code
+     * DepositFile}; resources that are not located by an {@code http} or {@code https} URL are returned as they are.
+     *
+     * @param resources the custodial resources of a package
+     * @return the resolved resources, in the same order
+     */
+    @Override
+    public List<DepositFileResource> resolve(List<DepositFileResource> resources) {
+        List<DepositFileResource> resolved = new ArrayList<>(resources.size());
+        for (DepositFileResource resource : resources) {
+            String location = resource.getDepositFile() != null ? resource.getDepositFile().getLocation() : null;
+            if (location == null || !(location.startsWith("http://") || location.startsWith("https://"))) {
+                resolved.add(resource);
+                continue;
+            }
+            resolved.add(new DepositFileResource(resource.getDepositFile(), new PooledResource(location, resource)));
+        }
+        return resolved;
+    }
+
+    @Override
+    public Fetched fetch(String location, String etag, String lastModified) throws IOException {
+        return fetch(location, etag, lastModified, true);
+    }
+
+    /**
+     * @return the number of bytes of ranges buffered and not yet read
+     */
+    long bufferedBytes() {
+        return budget.reserved();
+    }
+
+    /**
+     * Fetches the content of {@code location}, requesting only its first chunk if {@code ranged}.
+     */
+    private Fetched fetch(String location, String etag, String lastModified, boolean ranged) throws IOException {
+        Request.Builder request = new Request.Builder().url(location);
+        if (ranged) {
+            request.header("Range", "bytes=0-" + (chunkSize - 1));
+        }
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
+        }
+
+        okhttp3.Response response = client.newCall(request.build()).execute();
+        int status = response.code();
+        if (status == 304 && (etag != null || lastModified != null)) {
+            response.close();
+            return Fetched.notModified();
+        }
+        if (status != 200 && !(ranged && status == 206)) {
+            response.close();
+            throw new IOException("Unable to fetch " + location + ": HTTP status " + status);
+        }
+
+        String responseEtag = response.header("ETag");
+        String responseLastModified = response.header("Last-Modified");
+        ResponseBody body = response.body();
+        if (status == 200) {
+            // the origin answered with the whole content
+            return Fetched.content(responseEtag, responseLastModified, body.byteStream());
+        }
+
+        Matcher contentRange = CONTENT_RANGE.matcher(String.valueOf(response.header("Content-Range")));
+        long length = contentRange.matches() ? Long.parseLong(contentRange.group(2)) : -1;
+        long firstLength = contentRange.matches() ? Long.parseLong(contentRange.group(1)) + 1 : -1;
+        if (length > 0 && firstLength == length) {
+            // the first chunk is the whole content
+            return Fetched.content(responseEtag, responseLastModified, body.byteStream());
+        }
+        String validator = (responseEtag != null && !responseEtag.startsWith("W/")) ? responseEtag :
+                responseLastModified;
+        if (length < 0 || firstLength != chunkSize || validator == null) {
+            // the remainder cannot be requested safely as ranges
+            response.close();
+            return fetch(location, etag, lastModified, false);
+        }
+        return Fetched.content(responseEtag, responseLastModified, new RangedInputStream(location, validator, body,
+                length, length > rangedThreshold ? parallelism : 0));
+    }
+
+    /**
+     * Requests one range of the content of {@code location}, failing unless the origin answers exactly that range of
+     * the same content.
+     */
+    private okhttp3.Response requestRange(String location, String validator, long start, long end, long length)
+            throws IOException {
+        Request request = new Request.Builder().url(location)
+                .header("Range", "bytes=" + start + "-" + end)
+                .header("If-Range", validator)
+                .build();
+        okhttp3.Response response = client.newCall(request).execute();
+        String range = "bytes " + start + "-" + end + "/" + length;
+        if (response.code() != 206 || !range.equals(response.header("Content-Range"))) {
+            response.close();
+            throw new IOException("Unable to fetch " + location + ": expected " + range + ", but the origin " +
+                    "answered HTTP status " + response.code() + " " + response.header("Content-Range") +
+                    "; the content may have been modified during the download");
+        }
+        return response;
+    }
+
+    /**
+     * Fetches one range of the content of {@code location} into memory.
+     */
+    private byte[] fetchRange(String location, String validator, long start, long end, long length)
+            throws IOException {
+        try (okhttp3.Response response = requestRange(location, validator, start, end, length)) {
+            byte[] chunk = response.body().bytes();
+            if (chunk.length != end - start + 1) {
+                throw new IOException("Unable to fetch " + location + ": expected " + (end - start + 1) +
+                        " bytes of " + response.header("Content-Range") + ", but read " + chunk.length);
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Reads content in order from the first chunk of the initial response and from the ranges that follow it.  Up to
+     * {@code ahead} ranges are fetched in parallel ahead of the reader, and buffered, while the budget allows; when
+     * none are buffered, the next range is read as it arrives.
+     */
+    private class RangedInputStream extends InputStream {
+
+        private final String location;
+
+        private final String validator;
+
+        private final long length;
+
+        private final int ahead;
+
+        // ranges fetched ahead of the reader, in order; the bytes of each are reserved from the budget
+        private final Deque<Range> window = new ArrayDeque<>();
+
+        // the response being read as it arrives, if any, and the bytes remaining in it
+        private InputStream streaming;
+
+        private long streamingRemaining;
+
+        // the first byte not yet requested
+        private long nextStart;
+
+        private byte[] chunk;
+
+        private int position;
+
+        private boolean closed;
+
+        private RangedInputStream(String location, String validator, ResponseBody body, long length, int ahead) {
+            this.location = location;
+            this.validator = validator;
+            this.length = length;
+            this.ahead = ahead;
+            this.streaming = body.byteStream();
+            this.streamingRemaining = chunkSize;
+            this.nextStart = chunkSize;
+            fill();
+        }
+
+        /**
+         * Fetches ranges ahead of the reader, until the window is full or the budget is spent.
+         */
+        private void fill() {
+            while (window.size() < ahead && nextStart < length) {
+                long start = nextStart;
+                long end = Math.min(start + chunkSize, length) - 1;
+                if (!budget.reserve(end - start + 1)) {
+                    return;
+                }
+                window.add(new Range(end - start + 1,
+                        rangeExecutor.submit(() -> fetchRange(location, validator, start, end, length))));
+                nextStart = end + 1;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            while (true) {
+                if (streaming != null) {
+                    if (streamingRemaining > 0) {
+                        int n = streaming.read(b, off, (int) Math.min(len, streamingRemaining));
+                        if (n < 0) {
+                            throw new IOException("Unable to fetch " + location + ": a response ended " +
+                                    streamingRemaining + " bytes early, of " + length + " bytes");
+                        }
+                        streamingRemaining -= n;
+                        return n;
+                    }
+                    streaming.close();
+                    streaming = null;
+                }
+
+                if (chunk != null) {
+                    int n = Math.min(len, chunk.length - position);
+                    System.arraycopy(chunk, position, b, off, n);
+                    position += n;
+                    if (position == chunk.length) {
+                        budget.release(chunk.length);
+                        chunk = null;
+                    }
+                    return n;
+                }
+
+                if (window.isEmpty()) {
+                    fill();
+                }
+                Range next = window.poll();
+                if (next != null) {
+                    chunk = take(next);
+                    position = 0;
+                    fill();
+                    continue;
+                }
+                if (nextStart >= length) {
+                    return -1;
+                }
+
+                // nothing is buffered: read the next range, or the remainder if it is not fetched ahead, as it arrives
+                long start = nextStart;
+                long end = (ahead == 0) ? length - 1 : Math.min(start + chunkSize, length) - 1;
+                streaming = requestRange(location, validator, start, end, length).body().byteStream();
+                streamingRemaining = end - start + 1;
+                nextStart = end + 1;
+                fill();
+            }
+        }
+
+        private byte[] take(Range next) throws IOException {
+            try {
+                return next.chunk.get();
+            } catch (InterruptedException e) {
+                budget.release(next.length);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted fetching " + location);
+            } catch (ExecutionException e) {
+                budget.release(next.length);
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to fetch " + location + ": " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Range range : window) {
+                range.chunk.cancel(true);
+                budget.release(range.length);
+            }
+            window.clear();
+            if (chunk != null) {
+                budget.release(chunk.length);
+                chunk = null;
+            }
+            if (streaming != null) {
+                streaming.close();
+                streaming = null;
+            }
+        }
+
+    }
+
+    /**
+     * A range fetched ahead of the reader, and the number of bytes reserved for it
+     */
+    private static class Range {
+
+        private final long length;
+
+        private final Future<byte[]> chunk;
+
+        private Range(long length, Future<byte[]> chunk) {
+            this.length = length;
+            this.chunk = chunk;
+        }
+
+    }
+
+    /**
+     * A resource whose content is fetched by this resolver, and whose other properties are those of its origin.  It is
+     * never resolved to a file, so that its content is always read as a stream.
+     */
+    private class PooledResource extends AbstractResource {
+
+        private final String location;
+
+        private final DepositFileResource origin;
+
+        private PooledResource(String location, DepositFileResource origin) {
+            this.location = location;
+            this.origin = origin;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return fetch(location, null, null).content();
+        }
+
+        @Override
+        public String getDescription() {
+            return "Pooled " + origin.getDescription();
+        }
+
+        @Override
+        public String getFilename() {
+            return origin.getFilename();
+        }
+
+        @Override
+        public boolean exists() {
+            return origin.exists();
+        }
+
+        @Override
+        public URL getURL() throws IOException {
+            return origin.getURL();
+        }
+
+        @Override
+        public URI getURI() throws IOException {
+            return origin.getURI();
+        }
+
+        @Override
+        public File getFile() throws IOException {
+            throw new FileNotFoundException(getDescription() + " is not resolved to a file");
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return origin.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return origin.lastModified();
+        }
+
+    }
+
+}
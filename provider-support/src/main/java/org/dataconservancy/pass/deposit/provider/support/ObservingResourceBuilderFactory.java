@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.Consumer;
+
+/**
+ * Decorates the {@link ResourceBuilder}s of another {@link ResourceBuilderFactory}, so that they report each {@link
+ * PackageStream.Resource} they build to an observer.  A package stream builds the resource describing a custodial file
+ * once the file's content has been written to the package, so the observer learns of each resource as soon as it is
+ * complete, rather than waiting for the list of resources handed to {@code PackageProvider.finish(...)}.
+ * <p>
+ * Every call is forwarded to the builder of the decorated factory, so the resources built are those the decorated
+ * factory would have built.  The observer is invoked on the thread building the resource, and must not throw.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ObservingResourceBuilderFactory extends ResourceBuilderFactory {
+
+    private final ResourceBuilderFactory delegate;
+
+    private final Consumer<PackageStream.Resource> observer;
+
+    public ObservingResourceBuilderFactory(ResourceBuilderFactory delegate, Consumer<PackageStream.Resource> observer) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Resource builder factory must not be null.");
+        }
+        if (observer == null) {
+            throw new IllegalArgumentException("Observer must not be null.");
+        }
+        this.delegate = delegate;
+        this.observer = observer;
+    }
+
+    @Override
+    public ResourceBuilder newInstance() {
+        return (ResourceBuilder) Proxy.newProxyInstance(ResourceBuilder.class.getClassLoader(),
+                new Class<?>[] { ResourceBuilder.class }, new Observing(delegate.newInstance()));
+    }
+
+    /**
+     * Forwards each call to a builder of the decorated factory, reporting the resource answered by {@code build()}.
+     * Calls answering the builder itself, so that they may be chained, answer the decorating builder instead.
+     */
+    private class Observing implements InvocationHandler {
+
+        private final ResourceBuilder builder;
+
+        private Observing(ResourceBuilder builder) {
+            this.builder = builder;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = method.invoke(builder, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result == builder) {
+                return proxy;
+            }
+            if (result instanceof PackageStream.Resource && "build".equals(method.getName())) {
+                observer.accept((PackageStream.Resource) result);
+            }
+            return result;
+        }
+
+    }
+
+}
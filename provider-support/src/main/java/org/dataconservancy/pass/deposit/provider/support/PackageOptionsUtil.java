@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Resolves the values of package options.  Options supplied in a repository's assembler configuration are parsed from
+ * JSON, so values that are enum constants or numbers in Java may be present as their {@code String} forms.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PackageOptionsUtil {
+
+    private PackageOptionsUtil() {
+        // utility class
+    }
+
+    /**
+     * Resolves the value of an enumerated option from the supplied package options.  The value may be present as the
+     * enum constant, or as a {@code String} naming the constant (ignoring case).
+     *
+     * @param options the package options
+     * @param key the key of the option
+     * @param type the type of the option value
+     * @param defaultValue returned when the option is not present
+     * @param <T> the type of the option value
+     * @return the value of the option, or {@code defaultValue} if the option is not present
+     * @throws IllegalArgumentException if the option is present but cannot be resolved to a constant of {@code type}
+     */
+    public static <T extends Enum<T>> T enumOption(Map<String, Object> options, String key, Class<T> type,
+                                                   T defaultValue) {
+        Object value = (options == null) ? null : options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        if (type.isInstance(value)) {
+            return type.cast(value);
+        }
+
+        for (T candidate : type.getEnumConstants()) {
+            if (candidate.name().equalsIgnoreCase(value.toString().trim())) {
+                return candidate;
+            }
+        }
+
+        throw new IllegalArgumentException("Invalid value '" + value + "' for package option '" + key + "'");
+    }
+
+    /**
+     * Resolves the value of an option expressing a number of bytes from the supplied package options.  The value may
+     * be present as a {@code Number}, or as a {@code String} containing a whole number optionally followed by one of
+     * the binary unit suffixes {@code k}, {@code m} or {@code g} (ignoring case), e.g. {@code "512k"}.
+     *
+     * @param options the package options
+     * @param key the key of the option
+     * @param defaultValue returned when the option is not present
+     * @return the value of the option in bytes, or {@code defaultValue} if the option is not present
+     * @throws IllegalArgumentException if the option is present but is not a non-negative number of bytes
+     */
+    public static long bytesOption(Map<String, Object> options, String key, long defaultValue) {
+        Object value = (options == null) ? null : options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        long bytes;
+        if (value instanceof Number) {
+            bytes = ((Number) value).longValue();
+        } else {
+            String candidate = value.toString().trim().toLowerCase();
+            long multiplier = 1;
+            if (candidate.endsWith("k")) {
+                multiplier = 1024L;
+            } else if (candidate.endsWith("m")) {
+                multiplier = 1024L * 1024;
+            } else if (candidate.endsWith("g")) {
+                multiplier = 1024L * 1024 * 1024;
+            }
+            if (multiplier > 1) {
+                candidate = candidate.substring(0, candidate.length() - 1).trim();
+            }
+
+            try {
+                bytes = Math.multiplyExact(Long.parseLong(candidate), multiplier);
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new IllegalArgumentException("Invalid value '" + value + "' for package option '" + key + "'",
+                        e);
+            }
+        }
+
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Invalid value '" + value + "' for package option '" + key + "'");
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Resolves the value of a whole-number option from the supplied package options.  The value may be present as a
+     * {@code Number}, or as a {@code String} containing a whole number.
+     *
+     * @param options the package options
+     * @param key the key of the option
+     * @param defaultValue returned when the option is not present
+     * @return the value of the option, or {@code defaultValue} if the option is not present
+     * @throws IllegalArgumentException if the option is present but is not a non-negative whole number
+     */
+    public static int intOption(Map<String, Object> options, String key, int defaultValue) {
+        Object value = (options == null) ? null : options.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+
+        int number;
+        if (value instanceof Number) {
+            number = ((Number) value).intValue();
+        } else {
+            try {
+                number = Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value '" + value + "' for package option '" + key + "'",
+                        e);
+            }
+        }
+
+        if (number < 0) {
+            throw new IllegalArgumentException("Invalid value '" + value + "' for package option '" + key + "'");
+        }
+
+        return number;
+    }
+
+    /**
+     * Resolves the checksum algorithms of the {@link PackageOptions.Checksum#KEY} option, in order of preference.  Each
+     * value may be present as the enum constant, or as a {@code String} naming the constant (ignoring case).
+     *
+     * @param options the package options
+     * @return the checksum algorithms, or MD5 alone if the option is not present or is empty
+     * @throws IllegalArgumentException if a value cannot be resolved to a checksum algorithm
+     */
+    public static List<PackageOptions.Checksum.OPTS> checksumAlgorithms(Map<String, Object> options) {
+        Object configured = (options == null) ? null : options.get(PackageOptions.Checksum.KEY);
+        if (!(configured instanceof Collection) || ((Collection<?>) configured).isEmpty()) {
+            return Collections.singletonList(PackageOptions.Checksum.OPTS.MD5);
+        }
+
+        List<PackageOptions.Checksum.OPTS> algorithms = new ArrayList<>();
+        for (Object value : (Collection<?>) configured) {
+            algorithms.add(enumOption(Collections.singletonMap(PackageOptions.Checksum.KEY, value),
+                    PackageOptions.Checksum.KEY, PackageOptions.Checksum.OPTS.class, null));
+        }
+        return algorithms;
+    }
+
+    /**
+     * Collects the values of the named configuration properties, so that they may be resolved like package options.
+     * Properties that are absent or empty are omitted, so that the defaults of the resolving methods apply.
+     *
+     * @param properties resolves the value of a property by name, answering {@code null} if it is absent
+     * @param keys the names of the properties
+     * @return the values of the properties that are present
+     */
+    public static Map<String, Object> properties(Function<String, String> properties, String... keys) {
+        Map<String, Object> values = new HashMap<>();
+        for (String key : keys) {
+            String value = properties.apply(key);
+            if (value != null && !value.trim().isEmpty()) {
+                values.put(key, value.trim());
+            }
+        }
+        return values;
+    }
+
+}
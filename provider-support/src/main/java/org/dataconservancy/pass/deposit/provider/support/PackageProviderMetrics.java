@@ -0,0 +1,285 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Records the phases of package assembly performed by a package provider.
+ * <p>
+ * Every meter is tagged with the {@code provider} and the package {@code spec} it assembles.  The following meters are
+ * recorded:
+ * </p>
+ * <dl>
+ *     <dt>{@code deposit.provider.phase}</dt>
+ *     <dd>A timer tagged with the {@code phase}: {@code start}, each {@code package-path} invocation, the {@code
+ *         custodial} phase between {@code start} and {@code finish} while custodial resources are streamed into the
+ *         package, and {@code finish}, which composes and serializes the supplemental resources</dd>
+ *     <dt>{@code deposit.provider.failures}</dt>
+ *     <dd>A counter of phases that threw an exception, tagged with the {@code phase} and the {@code exception}
+ *         class</dd>
+ *     <dt>{@code deposit.provider.resources}</dt>
+ *     <dd>A distribution summary of the number of custodial resources in each package</dd>
+ *     <dt>{@code deposit.provider.supplemental.bytes}</dt>
+ *     <dd>A distribution summary of the size of each supplemental resource, tagged with the {@code resource}
+ *         name</dd>
+ *     <dt>{@code deposit.provider.entry.bytes}</dt>
+ *     <dd>A distribution summary of the uncompressed size of each archive entry written by the provider, tagged with
+ *         the compression {@code method} of the entry, {@code stored} or {@code deflated}</dd>
+ *     <dt>{@code deposit.provider.entry.saved.bytes}</dt>
+ *     <dd>A distribution summary of the bytes saved by compressing each archive entry, tagged with the {@code
+ *         method}; always zero for stored entries</dd>
+ *     <dt>{@code deposit.provider.entry.cpu}</dt>
+ *     <dd>A timer of the CPU time spent writing each archive entry, tagged with the {@code method}; not recorded when
+ *         the JVM cannot measure thread CPU time</dd>
+ * </dl>
+ * <p>
+ * Instances are thread-safe, and are intended to be shared by every provider of a given kind.  When no {@link
+ * MeterRegistry} is available, {@link #noop()} records nothing.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PackageProviderMetrics {
+
+    public static final String PHASE_TIMER = "deposit.provider.phase";
+
+    public static final String FAILURE_COUNTER = "deposit.provider.failures";
+
+    public static final String RESOURCES_SUMMARY = "deposit.provider.resources";
+
+    public static final String SUPPLEMENTAL_BYTES_SUMMARY = "deposit.provider.supplemental.bytes";
+
+    public static final String ENTRY_BYTES_SUMMARY = "deposit.provider.entry.bytes";
+
+    public static final String ENTRY_SAVED_BYTES_SUMMARY = "deposit.provider.entry.saved.bytes";
+
+    public static final String ENTRY_CPU_TIMER = "deposit.provider.entry.cpu";
+
+    public static final String PROVIDER_TAG = "provider";
+
+    public static final String SPEC_TAG = "spec";
+
+    public static final String PHASE_TAG = "phase";
+
+    public static final String EXCEPTION_TAG = "exception";
+
+    public static final String RESOURCE_TAG = "resource";
+
+    public static final String METHOD_TAG = "method";
+
+    /**
+     * The phases of package assembly
+     */
+    public enum Phase {
+
+        START("start"),
+
+        PACKAGE_PATH("package-path"),
+
+        CUSTODIAL("custodial"),
+
+        FINISH("finish");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+
+    }
+
+    private static final PackageProviderMetrics NOOP =
+            new PackageProviderMetrics(new CompositeMeterRegistry(), "none", "none");
+
+    private final MeterRegistry registry;
+
+    private final Tags tags;
+
+    private final Map<Phase, Timer> timers = new EnumMap<>(Phase.class);
+
+    private final DistributionSummary resources;
+
+    /**
+     * Records metrics for a provider to the supplied registry.
+     *
+     * @param registry the registry meters are registered with
+     * @param provider the name of the provider, e.g. {@code nihms}
+     * @param spec the package specification assembled by the provider
+     */
+    public PackageProviderMetrics(MeterRegistry registry, String provider, String spec) {
+        this.registry = registry;
+        this.tags = Tags.of(PROVIDER_TAG, provider, SPEC_TAG, spec);
+
+        for (Phase phase : Phase.values()) {
+            timers.put(phase, Timer.builder(PHASE_TIMER)
+                    .description("Latency of a phase of package assembly")
+                    .tags(tags)
+                    .tag(PHASE_TAG, phase.tag())
+                    .register(registry));
+        }
+
+        this.resources = DistributionSummary.builder(RESOURCES_SUMMARY)
+                .description("Custodial resources per package")
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * Metrics that are not recorded.
+     *
+     * @return metrics that record nothing
+     */
+    public static PackageProviderMetrics noop() {
+        return NOOP;
+    }
+
+    /**
+     * Times the supplied work as the {@code phase}, counting a failure if it throws.
+     *
+     * @param phase the phase of assembly
+     * @param work the work performed by the phase
+     * @param <T> the type of the result
+     * @return the result of the work
+     */
+    public <T> T record(Phase phase, Supplier<T> work) {
+        long start = registry.config().clock().monotonicTime();
+        try {
+            return work.get();
+        } catch (RuntimeException e) {
+            failed(phase, e);
+            throw e;
+        } finally {
+            stop(phase, start);
+        }
+    }
+
+    /**
+     * Times the supplied work as the {@code phase}, counting a failure if it throws.
+     *
+     * @param phase the phase of assembly
+     * @param work the work performed by the phase
+     */
+    public void record(Phase phase, Runnable work) {
+        record(phase, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * A reading of the monotonic clock, used to begin timing a phase that spans several calls.
+     *
+     * @return the current time, in nanoseconds
+     * @see #stop(Phase, long)
+     */
+    public long start() {
+        return registry.config().clock().monotonicTime();
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} as the {@code phase}.
+     *
+     * @param phase the phase of assembly
+     * @param startNanos the time the phase began, as returned by {@link #start()}
+     */
+    public void stop(Phase phase, long startNanos) {
+        timers.get(phase).record(registry.config().clock().monotonicTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the number of custodial resources in a package.
+     *
+     * @param count the number of custodial resources
+     */
+    public void resources(int count) {
+        resources.record(count);
+    }
+
+    /**
+     * Records the size of a supplemental resource.
+     *
+     * @param resource the name of the supplemental resource, e.g. {@code mets.xml}
+     * @param bytes the size of the resource, in bytes
+     */
+    public void supplementalBytes(String resource, long bytes) {
+        DistributionSummary.builder(SUPPLEMENTAL_BYTES_SUMMARY)
+                .description("Size of a supplemental resource")
+                .baseUnit("bytes")
+                .tags(tags)
+                .tag(RESOURCE_TAG, resource)
+                .register(registry)
+                .record(bytes);
+    }
+
+    /**
+     * Records an entry written to an archive by the provider.
+     *
+     * @param method the compression method of the entry, e.g. {@code stored} or {@code deflated}
+     * @param bytes the uncompressed size of the entry, in bytes
+     * @param compressedBytes the size of the entry in the archive, in bytes
+     * @param cpuNanos the CPU time spent writing the entry, in nanoseconds, or a negative number if it is unknown
+     */
+    public void entry(String method, long bytes, long compressedBytes, long cpuNanos) {
+        DistributionSummary.builder(ENTRY_BYTES_SUMMARY)
+                .description("Uncompressed size of an archive entry")
+                .baseUnit("bytes")
+                .tags(tags)
+                .tag(METHOD_TAG, method)
+                .register(registry)
+                .record(bytes);
+        DistributionSummary.builder(ENTRY_SAVED_BYTES_SUMMARY)
+                .description("Bytes saved by compressing an archive entry")
+                .baseUnit("bytes")
+                .tags(tags)
+                .tag(METHOD_TAG, method)
+                .register(registry)
+                .record(Math.max(0, bytes - compressedBytes));
+        if (cpuNanos >= 0) {
+            Timer.builder(ENTRY_CPU_TIMER)
+                    .description("CPU time spent writing an archive entry")
+                    .tags(tags)
+                    .tag(METHOD_TAG, method)
+                    .register(registry)
+                    .record(cpuNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void failed(Phase phase, Exception e) {
+        Counter.builder(FAILURE_COUNTER)
+                .description("Phases of package assembly that failed")
+                .tags(tags)
+                .tag(PHASE_TAG, phase.tag())
+                .tag(EXCEPTION_TAG, e.getClass().getSimpleName())
+                .register(registry)
+                .increment();
+    }
+
+}
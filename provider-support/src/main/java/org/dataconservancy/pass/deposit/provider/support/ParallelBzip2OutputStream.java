@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Compresses its input to a sequence of bzip2 streams using several threads, in the manner of {@code pbzip2}.
+ * <p>
+ * Input is divided into blocks of 900,000 bytes by default, the size of the largest bzip2 block, which are compressed
+ * independently on a {@link ForkJoinPool}.  Each block is compressed to a complete bzip2 stream, and the streams are
+ * concatenated in order.  bzip2 compresses each block independently of the others, so the compression ratio is close
+ * to that of a single compressor.  Concatenated streams are decompressed as one by {@code bunzip2}, and by {@code
+ * BZip2CompressorInputStream} when it is constructed to decompress concatenated streams.
+ * </p>
+ * <p>
+ * At most {@code threads} blocks of a stream are compressed at a time, which caps the share of the pool used by one
+ * stream.  Compressed blocks are written in order as they complete.  Instances are not thread-safe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelBzip2OutputStream extends OutputStream {
+
+    /**
+     * The default size of the blocks compressed in parallel: the size of a bzip2 block at the maximum block size
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 900 * 1000;
+
+    private final OutputStream out;
+
+    private final ForkJoinPool pool;
+
+    private final int threads;
+
+    private final int blockSize;
+
+    private final Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+
+    private int blockLength;
+
+    private boolean submitted;
+
+    private boolean closed;
+
+    /**
+     * Compresses to {@code out} using the default block size.
+     *
+     * @param out receives the bzip2 streams
+     * @param pool compresses the blocks
+     * @param threads the maximum number of blocks of this stream compressed at a time
+     */
+    public ParallelBzip2OutputStream(OutputStream out, ForkJoinPool pool, int threads) {
+        this(out, pool, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out receives the bzip2 streams
+     * @param pool compresses the blocks
+     * @param threads the maximum number of blocks of this stream compressed at a time
+     * @param blockSize the number of bytes of input in each block
+     */
+    public ParallelBzip2OutputStream(OutputStream out, ForkJoinPool pool, int threads, int blockSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be a positive number: " + threads);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be a positive number: " + blockSize);
+        }
+        this.out = out;
+        this.pool = pool;
+        this.threads = threads;
+        this.blockSize = blockSize;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks that have been compressed, and flushes the underlying stream.  Input that has not filled a
+     * block is retained until it does, or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the remaining input, and closes the underlying stream.  Empty input is compressed to a single, empty,
+     * bzip2 stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockLength > 0 || !submitted) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            out.flush();
+        } finally {
+            pending.forEach(task -> task.cancel(true));
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        byte[] input = block;
+        int inputLength = blockLength;
+        pending.add(pool.submit(() -> compress(input, inputLength)));
+        submitted = true;
+
+        if (!closed) {
+            block = new byte[blockSize];
+            blockLength = 0;
+        }
+
+        while (pending.size() >= threads) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pending.poll().join();
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to compress block: " + e.getMessage(), e);
+        }
+        out.write(compressed);
+    }
+
+    /**
+     * Compresses a block to a complete bzip2 stream, using the largest bzip2 block size.
+     */
+    static byte[] compress(byte[] input, int inputLength) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(inputLength / 4 + 64);
+        try (BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(compressed,
+                BZip2CompressorOutputStream.MAX_BLOCKSIZE)) {
+            bzip2.write(input, 0, inputLength);
+        }
+        return compressed.toByteArray();
+    }
+
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses its input to a single gzip member using several threads, in the manner of {@code pigz}.
+ * <p>
+ * Input is divided into blocks, which are deflated independently on a {@link ForkJoinPool}.  Each block is primed
+ * with the last 32 KiB of the block before it as a preset dictionary, so the compression ratio approaches that of a
+ * single deflater.  Every block but the last ends with a sync flush, which aligns it to a byte boundary, so the
+ * compressed blocks concatenate into one deflate stream.  The CRC and length of the input are computed as it is
+ * written, and the stream is framed by a standard gzip header and trailer: the output is readable by {@code gunzip},
+ * {@code GZIPInputStream}, or any other gzip implementation.
+ * </p>
+ * <p>
+ * At most {@code threads} blocks of a stream are compressed at a time, which caps the share of the pool used by one
+ * stream.  Compressed blocks are written in order as they complete.  Instances are not thread-safe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /**
+     * The default size of the blocks compressed in parallel
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * The size of the deflate window, and so of the dictionary carried between blocks
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * A gzip header with no file name, modification time or extra fields, as written by {@code GZIPOutputStream}
+     */
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final OutputStream out;
+
+    private final ForkJoinPool pool;
+
+    private final int threads;
+
+    private final int blockSize;
+
+    private final int level;
+
+    private final CRC32 crc = new CRC32();
+
+    private final Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+
+    private int blockLength;
+
+    private byte[] dictionary;
+
+    private long length;
+
+    private boolean closed;
+
+    /**
+     * Compresses to {@code out} using the default block size and compression level.
+     *
+     * @param out receives the gzip stream
+     * @param pool compresses the blocks
+     * @param threads the maximum number of blocks of this stream compressed at a time
+     * @throws IOException if the gzip header cannot be written
+     */
+    public ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool, int threads) throws IOException {
+        this(out, pool, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param out receives the gzip stream
+     * @param pool compresses the blocks
+     * @param threads the maximum number of blocks of this stream compressed at a time
+     * @param blockSize the number of bytes of input in each block, at least 32 KiB
+     * @param level the deflate compression level
+     * @throws IOException if the gzip header cannot be written
+     */
+    public ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool, int threads, int blockSize, int level)
+            throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be a positive number: " + threads);
+        }
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + " bytes: " +
+                    blockSize);
+        }
+        this.out = out;
+        this.pool = pool;
+        this.threads = threads;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.block = new byte[blockSize];
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submit(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks that have been compressed, and flushes the underlying stream.  Input that has not filled a
+     * block is retained until it does, or the stream is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            writeNext();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the remaining input, writes the gzip trailer, and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            writeInt((int) crc.getValue());
+            writeInt((int) length);
+            out.flush();
+        } finally {
+            pending.forEach(task -> task.cancel(true));
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        byte[] input = block;
+        int inputLength = blockLength;
+        byte[] inputDictionary = dictionary;
+        crc.update(input, 0, inputLength);
+        length += inputLength;
+
+        pending.add(pool.submit(() -> deflate(input, inputLength, inputDictionary, last, level)));
+
+        if (!last) {
+            dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+            block = new byte[blockSize];
+            blockLength = 0;
+        }
+
+        while (pending.size() >= threads) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pending.poll().join();
+        } catch (RuntimeException e) {
+            throw new IOException("Unable to compress block: " + e.getMessage(), e);
+        }
+        out.write(compressed);
+    }
+
+    private void writeInt(int value) throws IOException {
+        // gzip integers are little-endian
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+
+    /**
+     * Deflates a block as raw deflate data.  The last block is finished, marking the end of the deflate stream; every
+     * other block is sync flushed, ending on a byte boundary so the next block may follow it.
+     */
+    static byte[] deflate(byte[] input, int inputLength, byte[] dictionary, boolean last, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input, 0, inputLength);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(inputLength / 2 + 64);
+            byte[] buf = new byte[DICTIONARY_SIZE];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(buf, 0, deflater.deflate(buf));
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buf, 0, buf.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buf, 0, n);
+                } while (n == buf.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes a package on a dedicated thread, answering a stream of the bytes written.  Package streams that produce
+ * their bytes with an {@code OutputStream} use this to satisfy {@code PackageStream.open()}.
+ * <p>
+ * A failure of the writer is thrown as an {@code IOException} by the returned stream when its end is reached, so a
+ * reader never mistakes a partially written package for a complete one.  The writer may close the stream it is given;
+ * the pipe itself is closed only after the outcome of the writer has been recorded.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PipedPackageOutput {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PipedPackageOutput.class);
+
+    /**
+     * Writes the bytes of a package.
+     */
+    @FunctionalInterface
+    public interface Writer {
+
+        /**
+         * @param out receives the bytes of the package
+         * @throws Exception if the package cannot be written
+         */
+        void write(OutputStream out) throws Exception;
+
+    }
+
+    private PipedPackageOutput() {
+        // utility class
+    }
+
+    /**
+     * Starts the writer on a new daemon thread, and answers the stream of the bytes it writes.
+     *
+     * @param threadName the name of the writing thread
+     * @param bufferSize the number of bytes buffered between the writer and the reader
+     * @param writer writes the package
+     * @return the bytes of the package
+     */
+    public static InputStream open(String threadName, int bufferSize, Writer writer) {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        PipedInputStream pipeIn = new PipedInputStream(bufferSize);
+        PipedOutputStream pipeOut;
+        try {
+            pipeOut = new PipedOutputStream(pipeIn);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                writer.write(new FilterOutputStream(pipeOut) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        // closed by the writing thread, once the outcome of the writer is known
+                        flush();
+                    }
+                });
+            } catch (Throwable t) {
+                LOG.debug("Failed writing package on {}: {}", threadName, t.getMessage(), t);
+                failure.set(t);
+            } finally {
+                try {
+                    pipeOut.close();
+                } catch (IOException e) {
+                    LOG.debug("Unable to close package stream on {}: {}", threadName, e.getMessage(), e);
+                }
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        thread.start();
+
+        return new ProxyInputStream(pipeIn) {
+            @Override
+            protected void afterRead(int n) throws IOException {
+                if (n == -1 && failure.get() != null) {
+                    throw new IOException("Unable to write package: " + failure.get().getMessage(), failure.get());
+                }
+            }
+        };
+    }
+
+}
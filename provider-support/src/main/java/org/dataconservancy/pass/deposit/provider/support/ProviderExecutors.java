@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors used by package providers to perform work off of the thread assembling the package.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ProviderExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private ProviderExecutors() {
+        // utility class
+    }
+
+    /**
+     * Creates an executor with at most {@code threads} daemon threads and at most {@code queueCapacity} waiting tasks.
+     * Threads are started on demand, and stop after a minute of idleness.  When the executor is saturated, or has been
+     * shut down, a submitted task is run by the submitting thread, so that a burst of work slows its producers rather
+     * than failing or queuing without bound, and no submitted task is silently discarded.
+     *
+     * @param name prefixes the names of the executor's threads
+     * @param threads the maximum number of threads
+     * @param queueCapacity the maximum number of tasks waiting for a thread
+     * @return the executor, which must be shut down by its owner
+     */
+    public static ExecutorService newBoundedExecutor(String name, int threads, int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemonThreads(name), (task, rejecting) -> task.run());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
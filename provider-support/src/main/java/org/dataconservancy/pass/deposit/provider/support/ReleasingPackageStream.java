@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * A {@link PackageStream} that releases resources when the stream returned by {@link #open()} is closed.
+ * <p>
+ * Package providers may hold resources, like {@link SpillBuffer}s, that are needed only until the package has been
+ * written.  Assemblers wrap the package stream they create in order to release those resources deterministically,
+ * when the caller closes the package, rather than when the provider is collected.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ReleasingPackageStream implements PackageStream {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReleasingPackageStream.class);
+
+    private final PackageStream delegate;
+
+    private final Closeable[] releasables;
+
+    /**
+     * @param delegate the package stream
+     * @param releasables released, in order, when the stream returned by {@link #open()} or {@link #open(String)} is
+     *                    closed
+     */
+    public ReleasingPackageStream(PackageStream delegate, Closeable... releasables) {
+        this.delegate = delegate;
+        this.releasables = releasables;
+    }
+
+    @Override
+    public InputStream open() {
+        return releasing(delegate.open());
+    }
+
+    @Override
+    public InputStream open(String packageResource) {
+        InputStream in;
+        try {
+            in = delegate.open(packageResource);
+        } catch (RuntimeException e) {
+            // e.g. the package has no such resource, but may have been written in looking for it
+            release();
+            throw e;
+        }
+        return releasing(in);
+    }
+
+    @Override
+    public Iterator<Resource> resources() {
+        return delegate.resources();
+    }
+
+    @Override
+    public Metadata metadata() {
+        return delegate.metadata();
+    }
+
+    private InputStream releasing(InputStream in) {
+        return new ProxyInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    release();
+                }
+            }
+        };
+    }
+
+    private void release() {
+        for (Closeable releasable : releasables) {
+            try {
+                releasable.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to release {}: {}", releasable, e.getMessage(), e);
+            }
+        }
+    }
+
+}
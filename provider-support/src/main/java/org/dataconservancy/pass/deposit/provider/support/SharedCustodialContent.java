@@ -0,0 +1,387 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Custodial content shared by the packages of one submission, so that content assembled into several packages is
+ * fetched once.
+ * <p>
+ * Supplied to an assembler as the value of the {@link #KEY} package option.  Assemblers that support sharing pass
+ * their custodial resources through {@link #share(List, Map)}, which replaces each resource that is not a local file
+ * with a resource reading from a spool shared by every package.  The first reader to reach the end of a spool fetches
+ * the next bytes from the origin, and appends them to the spool; every other reader reads the spool at its own pace.
+ * No reader waits on another, except for bytes being fetched, so each package is consumed with independent
+ * backpressure.  Local files are cheap to read again, and are never spooled.
+ * </p>
+ * <p>
+ * Closing the content deletes its spools; it must be closed once every package sharing it has been read.  Instances
+ * are thread-safe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class SharedCustodialContent implements AutoCloseable {
+
+    /**
+     * The package option whose value is the {@code SharedCustodialContent} of the package's submission
+     */
+    public static final String KEY = "shared-custodial-content";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedCustodialContent.class);
+
+    private static final String TMP_FILE_PREFIX = "custodial-";
+
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    private final Map<String, Spool> spools = new ConcurrentHashMap<>();
+
+    private final AtomicLong fetchedBytes = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Spools content to the default temporary-file directory.
+     */
+    public SharedCustodialContent() {
+        this(null);
+    }
+
+    /**
+     * @param directory the directory spools are written to, or {@code null} for the default temporary-file directory
+     */
+    public SharedCustodialContent(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Answers the custodial resources of a package, sharing their content with the other packages of the submission
+     * if the package options contain a {@code SharedCustodialContent}.  Otherwise, the resources are returned as they
+     * are.
+     *
+     * @param resources the custodial resources of the package
+     * @param options the package options
+     * @return the custodial resources to assemble into the package
+     */
+    public static List<DepositFileResource> share(List<DepositFileResource> resources, Map<String, Object> options) {
+        Object content = options.get(KEY);
+        if (!(content instanceof SharedCustodialContent)) {
+            return resources;
+        }
+        return ((SharedCustodialContent) content).share(resources);
+    }
+
+    /**
+     * Answers resources reading the content of the supplied resources from shared spools.  Resources are identified
+     * by the location of their {@code DepositFile}; resources that are local files, or have no location, are returned
+     * as they are.
+     *
+     * @param resources the custodial resources of a package
+     * @return the shared resources, in the same order
+     */
+    public List<DepositFileResource> share(List<DepositFileResource> resources) {
+        if (closed) {
+            throw new IllegalStateException("Shared custodial content has been closed");
+        }
+        List<DepositFileResource> shared = new ArrayList<>(resources.size());
+        for (DepositFileResource resource : resources) {
+            String location = resource.getDepositFile() != null ? resource.getDepositFile().getLocation() : null;
+            if (location == null || isLocalFile(resource)) {
+                shared.add(resource);
+                continue;
+            }
+            Spool spool = spools.computeIfAbsent(location, key -> new Spool(resource));
+            shared.add(new DepositFileResource(resource.getDepositFile(), new SpooledResource(spool)));
+        }
+        return shared;
+    }
+
+    /**
+     * The number of bytes fetched from the origins of the shared resources.  Each byte is fetched once, however many
+     * packages it is assembled into.
+     *
+     * @return the number of bytes fetched
+     */
+    public long fetchedBytes() {
+        return fetchedBytes.get();
+    }
+
+    /**
+     * Deletes the spools.  Packages that have not been read to the end may fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        spools.values().forEach(Spool::close);
+        spools.clear();
+    }
+
+    private static boolean isLocalFile(Resource resource) {
+        try {
+            return resource.getFile() != null;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The content of one origin resource, fetched on demand by the reader that is furthest ahead, and appended to a
+     * temporary file read by the others.
+     */
+    private class Spool {
+
+        private final Resource origin;
+
+        private final Object fetchLock = new Object();
+
+        // guarded by fetchLock
+        private InputStream source;
+
+        // guarded by fetchLock
+        private FileChannel sink;
+
+        // guarded by fetchLock
+        private IOException failure;
+
+        private volatile Path file;
+
+        private volatile long length;
+
+        private volatile boolean complete;
+
+        private Spool(Resource origin) {
+            this.origin = origin;
+        }
+
+        /**
+         * Reads the content at {@code position}, from the spool if it has been fetched, otherwise from the origin.
+         */
+        private int read(SpoolInputStream reader, long position, byte[] b, int off, int len) throws IOException {
+            if (position < length) {
+                return reader.readSpool(position, b, off, (int) Math.min(len, length - position));
+            }
+
+            synchronized (fetchLock) {
+                if (position < length) {
+                    // fetched by another reader while this one waited
+                    return reader.readSpool(position, b, off, (int) Math.min(len, length - position));
+                }
+                if (complete) {
+                    return -1;
+                }
+                if (failure != null) {
+                    throw new IOException("Unable to fetch " + origin.getDescription() + ": " + failure.getMessage(),
+                            failure);
+                }
+                if (closed) {
+                    throw new IOException("Shared custodial content has been closed");
+                }
+
+                try {
+                    if (source == null) {
+                        file = directory == null ? Files.createTempFile(TMP_FILE_PREFIX, TMP_FILE_SUFFIX) :
+                                Files.createTempFile(directory, TMP_FILE_PREFIX, TMP_FILE_SUFFIX);
+                        sink = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                        source = origin.getInputStream();
+                    }
+                    int n = source.read(b, off, len);
+                    if (n < 0) {
+                        complete = true;
+                        closeSource();
+                        return -1;
+                    }
+                    ByteBuffer fetched = ByteBuffer.wrap(b, off, n);
+                    while (fetched.hasRemaining()) {
+                        sink.write(fetched);
+                    }
+                    // publish the bytes only once they are in the spool
+                    length += n;
+                    fetchedBytes.addAndGet(n);
+                    return n;
+                } catch (IOException e) {
+                    failure = e;
+                    closeSource();
+                    throw e;
+                }
+            }
+        }
+
+        private void closeSource() {
+            try {
+                if (source != null) {
+                    source.close();
+                }
+            } catch (IOException e) {
+                LOG.debug("Error closing {}: {}", origin.getDescription(), e.getMessage(), e);
+            }
+            try {
+                if (sink != null) {
+                    sink.close();
+                }
+            } catch (IOException e) {
+                LOG.debug("Error closing spool {}: {}", file, e.getMessage(), e);
+            }
+        }
+
+        private void close() {
+            synchronized (fetchLock) {
+                closeSource();
+                if (file != null) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        LOG.warn("Unable to delete spool {}: {}", file, e.getMessage(), e);
+                    }
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Reads a spool from the beginning, through its own channel.
+     */
+    private static class SpoolInputStream extends InputStream {
+
+        private final Spool spool;
+
+        private FileChannel channel;
+
+        private long position;
+
+        private SpoolInputStream(Spool spool) {
+            this.spool = spool;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = spool.read(this, position, b, off, len);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        private int readSpool(long position, byte[] b, int off, int len) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(spool.file, StandardOpenOption.READ);
+            }
+            return channel.read(ByteBuffer.wrap(b, off, len), position);
+        }
+
+    }
+
+    /**
+     * A resource whose content is read from a spool, and whose other properties are those of its origin.  It is never
+     * resolved to a file, so that its content is always read as a stream.
+     */
+    private static class SpooledResource extends AbstractResource {
+
+        private final Spool spool;
+
+        private SpooledResource(Spool spool) {
+            this.spool = spool;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new SpoolInputStream(spool);
+        }
+
+        @Override
+        public String getDescription() {
+            return "Shared " + spool.origin.getDescription();
+        }
+
+        @Override
+        public String getFilename() {
+            return spool.origin.getFilename();
+        }
+
+        @Override
+        public boolean exists() {
+            return spool.complete || spool.origin.exists();
+        }
+
+        @Override
+        public URL getURL() throws IOException {
+            return spool.origin.getURL();
+        }
+
+        @Override
+        public URI getURI() throws IOException {
+            return spool.origin.getURI();
+        }
+
+        @Override
+        public File getFile() throws IOException {
+            throw new FileNotFoundException(getDescription() + " is not resolved to a file");
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return spool.complete ? spool.length : spool.origin.contentLength();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return spool.origin.lastModified();
+        }
+
+    }
+
+}
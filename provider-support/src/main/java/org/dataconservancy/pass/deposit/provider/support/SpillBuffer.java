@@ -0,0 +1,267 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.dataconservancy.pass.deposit.assembler.shared.SizedStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A buffer that holds its content on the heap until it exceeds a threshold, after which the content is spilled to a
+ * temporary file.
+ * <p>
+ * Content is written to the buffer using the stream returned by {@link #getOutputStream()}.  Once that stream is
+ * closed, the content may be read any number of times as a {@link SizedStream}.  Content held on the heap is read in
+ * place, without copying it into a new array.
+ * </p>
+ * <p>
+ * Closing the buffer releases its content, and deletes the temporary file, if one was created.  Buffers are not
+ * thread-safe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class SpillBuffer implements SizedStream, Closeable {
+
+    /**
+     * The default threshold, in bytes, above which content is spilled to disk
+     */
+    public static final long DEFAULT_THRESHOLD = 1024 * 1024;
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpillBuffer.class);
+
+    private static final String TMP_FILE_PREFIX = "spill-";
+
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+
+    private final long threshold;
+
+    private final Path directory;
+
+    private final SpillingOutputStream out = new SpillingOutputStream();
+
+    private ByteArrayOutputStream heap = new ByteArrayOutputStream();
+
+    private Path file;
+
+    private List<InputStream> fileStreams = new ArrayList<>();
+
+    private long length;
+
+    private boolean written;
+
+    private boolean closed;
+
+    /**
+     * Creates a buffer that spills to the default temporary-file directory.
+     *
+     * @param threshold the number of bytes that may be held on the heap
+     */
+    public SpillBuffer(long threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * Creates a buffer that spills to the supplied directory.
+     *
+     * @param threshold the number of bytes that may be held on the heap
+     * @param directory the directory temporary files are created in, or {@code null} for the default temporary-file
+     *                  directory
+     */
+    public SpillBuffer(long threshold, Path directory) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must be a non-negative number of bytes: " + threshold);
+        }
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    /**
+     * The stream used to write the content of this buffer.  The content may be read after the stream is closed.
+     *
+     * @return the output stream
+     */
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * The number of bytes written to this buffer.
+     *
+     * @return the length of the content, in bytes
+     */
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Opens a new stream over the content of this buffer.  Closing the returned stream does not release the buffer, but
+     * closing the buffer closes any streams it has opened over a temporary file.
+     *
+     * @return a stream over the content
+     * @throws IllegalStateException if the output stream has not been closed, or the buffer has been closed
+     * @throws UncheckedIOException if the temporary file cannot be opened
+     */
+    @Override
+    public InputStream getInputStream() {
+        if (!written) {
+            throw new IllegalStateException("The output stream of the buffer must be closed before it is read.");
+        }
+        if (closed) {
+            throw new IllegalStateException("The buffer has been closed.");
+        }
+
+        if (file == null) {
+            return heap.toInputStream();
+        }
+
+        try {
+            InputStream in = Files.newInputStream(file);
+            fileStreams.add(in);
+            return in;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open spilled buffer " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Whether or not the content of this buffer has been spilled to disk.
+     *
+     * @return true if the content is held in a temporary file
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Releases the content of this buffer, closes any streams open over its temporary file, and deletes the temporary
+     * file, if any.  Closing a closed buffer has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        heap = null;
+
+        if (out.fileOut != null && !written) {
+            try {
+                out.fileOut.close();
+            } catch (IOException e) {
+                LOG.trace("Unable to close the output stream of {}: {}", this, e.getMessage());
+            }
+        }
+
+        fileStreams.forEach(in -> {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOG.trace("Unable to close an input stream of {}: {}", this, e.getMessage());
+            }
+        });
+        fileStreams.clear();
+
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warn("Unable to delete spilled buffer {}, it will be deleted on exit: {}", file, e.getMessage());
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpillBuffer{" + "length=" + length + ", threshold=" + threshold + ", file=" + file + '}';
+    }
+
+    private class SpillingOutputStream extends OutputStream {
+
+        private OutputStream fileOut;
+
+        @Override
+        public void write(int b) throws IOException {
+            target(1).write(b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target(len).write(b, off, len);
+            length += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (fileOut != null) {
+                fileOut.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+            written = true;
+        }
+
+        /**
+         * Answers the stream that {@code len} more bytes should be written to, spilling the heap to disk if the
+         * bytes would exceed the threshold.
+         */
+        private OutputStream target(int len) throws IOException {
+            if (written || closed) {
+                throw new IOException("The buffer output stream has been closed.");
+            }
+
+            if (fileOut != null) {
+                return fileOut;
+            }
+
+            if (length + len <= threshold) {
+                return heap;
+            }
+
+            file = (directory == null)
+                    ? Files.createTempFile(TMP_FILE_PREFIX, TMP_FILE_SUFFIX)
+                    : Files.createTempFile(directory, TMP_FILE_PREFIX, TMP_FILE_SUFFIX);
+            LOG.trace("Spilling buffer of {} bytes to {}", length, file);
+            fileOut = new BufferedOutputStream(Files.newOutputStream(file));
+            heap.writeTo(fileOut);
+            heap = null;
+            return fileOut;
+        }
+
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Verifies a package as it is read, in a single pass over the archive, without extracting it.  Suitable for verifying
+ * packages before they are transported, and for packages received from elsewhere.
+ * <p>
+ * The package may be a zip archive, or a tar archive that is optionally compressed with gzip or bzip2; the format is
+ * detected from the leading bytes of the package.  Each entry of the archive is either a <em>descriptor</em>, like a
+ * METS document or a manifest, which describes the other entries and is parsed as it is read, or content, which is
+ * counted, and digested with each of the algorithms supplied on construction.  Once the archive has been read, the
+ * entries are verified against what the descriptors say of them.  As the descriptors may follow the content they
+ * describe, only the length and digests of each content entry are retained, never its bytes.
+ * </p>
+ * <p>
+ * Subclasses supply the descriptors and the rules of a packaging specification as a {@link Verification}, one for
+ * each package verified, so that instances are thread-safe.
+ * </p>
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public abstract class StreamingPackageVerifier {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final List<PackageOptions.Checksum.OPTS> algorithms;
+
+    /**
+     * @param algorithms the algorithms used to digest each content entry, which may be empty if the specification
+     *                   does not describe entries by their checksums
+     */
+    protected StreamingPackageVerifier(Collection<PackageOptions.Checksum.OPTS> algorithms) {
+        this.algorithms = new ArrayList<>(algorithms);
+    }
+
+    /**
+     * Opens the package, and verifies it.
+     *
+     * @param packageStream the package
+     * @return a description of each problem found with the package, empty if the package was verified
+     * @throws IOException if the package cannot be read, or is not a zip or tar archive
+     */
+    public List<String> verify(PackageStream packageStream) throws IOException {
+        try (InputStream in = packageStream.open()) {
+            return verify(in);
+        }
+    }
+
+    /**
+     * Reads the package to the end, and verifies it.  The supplied stream is not closed.
+     *
+     * @param packageStream the bytes of the package
+     * @return a description of each problem found with the package, empty if the package was verified
+     * @throws IOException if the package cannot be read, or is not a zip or tar archive
+     */
+    public List<String> verify(InputStream packageStream) throws IOException {
+        Verification verification = newVerification();
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        List<String> problems = new ArrayList<>();
+        byte[] buf = new byte[BUFFER_SIZE];
+
+        ArchiveInputStream archive = archive(packageStream);
+        ArchiveEntry archiveEntry;
+        while ((archiveEntry = archive.getNextEntry()) != null) {
+            if (archiveEntry.isDirectory()) {
+                continue;
+            }
+
+            String name = archiveEntry.getName();
+            if (entries.containsKey(name)) {
+                problems.add("Package contains more than one entry named '" + name + "'");
+            }
+
+            if (verification.isDescriptor(name)) {
+                CountingInputStream descriptor = new CountingInputStream(new CloseShieldInputStream(archive));
+                verification.descriptor(name, descriptor, problems);
+                // the descriptor may not have been read to the end; its length is that of the entry
+                while (descriptor.read(buf, 0, buf.length) != -1) {
+                    // drain
+                }
+                entries.put(name, new Entry(name, descriptor.getByteCount(), Collections.emptyMap()));
+                continue;
+            }
+
+            List<MessageDigest> digests = new ArrayList<>(algorithms.size());
+            for (PackageOptions.Checksum.OPTS algorithm : algorithms) {
+                digests.add(Digests.newDigest(algorithm));
+            }
+            long length = 0;
+            int n;
+            while ((n = archive.read(buf, 0, buf.length)) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buf, 0, n);
+                }
+                length += n;
+            }
+
+            Map<PackageOptions.Checksum.OPTS, String> checksums = new EnumMap<>(PackageOptions.Checksum.OPTS.class);
+            for (int i = 0; i < digests.size(); i++) {
+                checksums.put(algorithms.get(i), Digests.hex(digests.get(i).digest()));
+            }
+            entries.put(name, new Entry(name, length, checksums));
+        }
+
+        verification.verify(entries, problems);
+        return problems;
+    }
+
+    /**
+     * Answers the verification of a single package, invoked once for each package verified.
+     *
+     * @return a new verification
+     */
+    protected abstract Verification newVerification();
+
+    /**
+     * Opens the archive of the package, decompressing it first if it is compressed.
+     */
+    private static ArchiveInputStream archive(InputStream packageStream) throws IOException {
+        InputStream in = new BufferedInputStream(new CloseShieldInputStream(packageStream), BUFFER_SIZE);
+        try {
+            String compression = CompressorStreamFactory.detect(in);
+            // packages compressed in parallel are a sequence of bzip2 streams, or of gzip members, read as one
+            CompressorStreamFactory factory = new CompressorStreamFactory(true);
+            in = new BufferedInputStream(factory.createCompressorInputStream(compression, in), BUFFER_SIZE);
+        } catch (CompressorException e) {
+            // not compressed, or compressed as part of the archive, like a zip
+        }
+
+        String format;
+        try {
+            format = ArchiveStreamFactory.detect(in);
+        } catch (ArchiveException e) {
+            throw new IOException("Package is not a zip or tar archive: " + e.getMessage(), e);
+        }
+
+        if (ArchiveStreamFactory.ZIP.equals(format)) {
+            // entries that are stored rather than deflated may be followed by a data descriptor
+            return new ZipArchiveInputStream(in, UTF_8.name(), true, true);
+        }
+        if (ArchiveStreamFactory.TAR.equals(format)) {
+            return new TarArchiveInputStream(in, UTF_8.name());
+        }
+        throw new IOException("Package is not a zip or tar archive, but '" + format + "'");
+    }
+
+    /**
+     * The verification of a single package, which parses its descriptors, and verifies its entries against them.
+     */
+    protected interface Verification {
+
+        /**
+         * Answers whether the named entry of the package is a descriptor, which is supplied to {@link
+         * #descriptor(String, InputStream, List)} rather than being digested.
+         *
+         * @param name the name of the entry
+         * @return true if the entry is a descriptor
+         */
+        boolean isDescriptor(String name);
+
+        /**
+         * Parses a descriptor as it is read from the package.
+         *
+         * @param name the name of the descriptor
+         * @param in the content of the descriptor, which need not be read to the end, or closed
+         * @param problems receives a description of each problem found with the descriptor
+         * @throws IOException if the descriptor cannot be read
+         */
+        void descriptor(String name, InputStream in, List<String> problems) throws IOException;
+
+        /**
+         * Verifies the entries of the package, once the package has been read to the end.
+         *
+         * @param entries the entries of the package, keyed by name, in the order they were read
+         * @param problems receives a description of each problem found with the package
+         */
+        void verify(Map<String, Entry> entries, List<String> problems);
+
+    }
+
+    /**
+     * An entry of a package, as it was read.  Descriptors are not digested.
+     */
+    public static class Entry {
+
+        private final String name;
+
+        private final long length;
+
+        private final Map<PackageOptions.Checksum.OPTS, String> checksums;
+
+        private Entry(String name, long length, Map<PackageOptions.Checksum.OPTS, String> checksums) {
+            this.name = name;
+            this.length = length;
+            this.checksums = checksums;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return the number of bytes read from the entry
+         */
+        public long length() {
+            return length;
+        }
+
+        /**
+         * @param algorithm the checksum algorithm
+         * @return the hex-encoded checksum of the entry, or {@code null} if the entry was not digested with {@code
+         *         algorithm}
+         */
+        public String checksum(PackageOptions.Checksum.OPTS algorithm) {
+            return checksums.get(algorithm);
+        }
+
+    }
+
+}
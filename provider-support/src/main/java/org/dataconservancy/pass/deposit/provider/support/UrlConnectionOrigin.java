@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Fetches content over a {@link HttpURLConnection} per request.  Connections time out if the origin cannot be
+ * reached, or stops sending content, so that an unresponsive origin cannot stall an assembly indefinitely.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+class UrlConnectionOrigin implements CustodialOrigin {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 30 * 1000;
+
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 60 * 1000;
+
+    private final int connectTimeoutMillis;
+
+    private final int readTimeoutMillis;
+
+    UrlConnectionOrigin() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param connectTimeoutMillis the milliseconds allowed to connect to the origin
+     * @param readTimeoutMillis the milliseconds allowed between bytes read from the origin
+     */
+    UrlConnectionOrigin(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public Fetched fetch(String location, String etag, String lastModified) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(location).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && (etag != null || lastModified != null)) {
+            return Fetched.notModified();
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("Unable to fetch " + location + ": HTTP status " + status);
+        }
+
+        return Fetched.content(connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"),
+                connection.getInputStream());
+    }
+
+}
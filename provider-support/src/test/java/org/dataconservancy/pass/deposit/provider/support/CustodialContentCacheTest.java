@@ -0,0 +1,389 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Exercises the cache against a local HTTP server standing in for the repository.  The server answers conditional
+ * requests with {@code 304 Not Modified} when the {@code ETag} of the content matches.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CustodialContentCacheTest {
+
+    private static final long MAX_BYTES = 2600;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Map<String, byte[]> content = new ConcurrentHashMap<>();
+
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+
+    private final AtomicInteger fetched = new AtomicInteger();
+
+    private final AtomicInteger notModified = new AtomicInteger();
+
+    private HttpServer server;
+
+    private Path directory;
+
+    private CustodialContentCache underTest;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = content.get(path);
+            String etag = etags.get(path);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            if (etag != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            fetched.incrementAndGet();
+            if (etag != null) {
+                exchange.getResponseHeaders().add("ETag", etag);
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        directory = tmp.newFolder().toPath();
+        underTest = new CustodialContentCache(directory, MAX_BYTES, CustodialOrigin.URL_CONNECTION);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void hitAfterMiss() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 1000);
+
+        assertArrayEquals(a, read("/a"));
+        assertArrayEquals(a, read("/a"));
+
+        assertEquals(1, fetched.get());
+        assertEquals(1, notModified.get());
+        assertEquals(1, underTest.hits());
+        assertEquals(1, underTest.misses());
+        assertEquals(a.length, underTest.bytes());
+    }
+
+    @Test
+    public void changedContentIsMiss() throws IOException {
+        serve("/a", "\"a1\"", 1000);
+        read("/a");
+
+        byte[] changed = serve("/a", "\"a2\"", 1200);
+        assertArrayEquals(changed, read("/a"));
+        assertEquals(2, fetched.get());
+        assertEquals(0, underTest.hits());
+        assertEquals(2, underTest.misses());
+
+        assertArrayEquals(changed, read("/a"));
+        assertEquals(1, underTest.hits());
+    }
+
+    /**
+     * Content replaced by the changed content of its location no longer counts against the budget
+     */
+    @Test
+    public void replacedContentReleased() throws IOException {
+        serve("/a", "\"a1\"", 1000);
+        read("/a");
+
+        byte[] changed = serve("/a", "\"a2\"", 1200);
+        read("/a");
+        assertEquals(changed.length, underTest.bytes());
+        assertEquals(1, directory.resolve("content").toFile().list().length);
+        assertEquals(0, underTest.evictions());
+
+        serve("/a", "\"a3\"", (int) MAX_BYTES + 1);
+        read("/a");
+        assertEquals(0, underTest.bytes());
+        assertEquals(0, directory.resolve("content").toFile().list().length);
+    }
+
+    /**
+     * Content still indexed by another location is kept when one of its locations changes
+     */
+    @Test
+    public void sharedContentKeptWhenOneLocationChanges() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 1000);
+        content.put("/copy", a);
+        etags.put("/copy", "\"copy\"");
+        read("/a");
+        read("/copy");
+
+        byte[] changed = serve("/a", "\"a2\"", 1200);
+        read("/a");
+        assertEquals(a.length + changed.length, underTest.bytes());
+
+        assertArrayEquals(a, read("/copy"));
+        assertEquals(1, underTest.hits());
+    }
+
+    /**
+     * Content is stored once, however many locations it is fetched from
+     */
+    @Test
+    public void contentAddressed() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 1000);
+        content.put("/copy", a);
+        etags.put("/copy", "\"copy\"");
+
+        read("/a");
+        read("/copy");
+        assertEquals(a.length, underTest.bytes());
+
+        assertArrayEquals(a, read("/copy"));
+        assertEquals(1, underTest.hits());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws IOException {
+        serve("/a", "\"a\"", 1000);
+        serve("/b", "\"b\"", 1000);
+        serve("/c", "\"c\"", 1000);
+
+        read("/a");
+        read("/b");
+        read("/a");
+        read("/c");
+
+        assertEquals(1, underTest.evictions());
+        assertEquals(2000, underTest.bytes());
+
+        int fetches = fetched.get();
+        read("/a");
+        read("/c");
+        assertEquals(fetches, fetched.get());
+        read("/b");
+        assertEquals(fetches + 1, fetched.get());
+    }
+
+    @Test
+    public void contentLargerThanBudgetNotCached() throws IOException {
+        byte[] large = serve("/large", "\"large\"", (int) MAX_BYTES + 1);
+
+        assertArrayEquals(large, read("/large"));
+        assertArrayEquals(large, read("/large"));
+        assertEquals(2, fetched.get());
+        assertEquals(0, underTest.bytes());
+    }
+
+    /**
+     * Content is committed to the cache only when it has been read to the end
+     */
+    @Test
+    public void partialReadNotCached() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 1000);
+        try (InputStream in = underTest.open(url("/a"))) {
+            assertEquals(10, in.read(new byte[10]));
+        }
+        assertEquals(0, underTest.bytes());
+        assertEquals(0, directory.resolve("tmp").toFile().list().length);
+
+        assertArrayEquals(a, read("/a"));
+        assertEquals(2, fetched.get());
+    }
+
+    @Test
+    public void responseWithoutValidatorsNotCached() throws IOException {
+        byte[] a = serve("/a", null, 1000);
+
+        assertArrayEquals(a, read("/a"));
+        assertArrayEquals(a, read("/a"));
+        assertEquals(2, fetched.get());
+        assertEquals(0, underTest.bytes());
+    }
+
+    @Test(expected = IOException.class)
+    public void missingContent() throws IOException {
+        read("/missing");
+    }
+
+    @Test
+    public void cacheSurvivesRestart() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 1000);
+        read("/a");
+
+        CustodialContentCache restarted = new CustodialContentCache(directory, MAX_BYTES,
+                CustodialOrigin.URL_CONNECTION);
+        assertEquals(a.length, restarted.bytes());
+        try (InputStream in = restarted.open(url("/a"))) {
+            assertArrayEquals(a, IOUtils.toByteArray(in));
+        }
+        assertEquals(1, fetched.get());
+        assertEquals(1, restarted.hits());
+    }
+
+    @Test
+    public void onlyHttpResourcesCached() throws IOException {
+        serve("/a", "\"a1\"", 1000);
+        DepositFileResource remote = resource(url("/a"));
+        DepositFileResource local = resource("file:/tmp/manuscript.pdf");
+        DepositFileResource unresolved = resource(null);
+
+        List<DepositFileResource> cached = underTest.resolve(Arrays.asList(remote, local, unresolved));
+
+        assertNotSame(remote, cached.get(0));
+        assertSame(remote.getDepositFile(), cached.get(0).getDepositFile());
+        assertSame(local, cached.get(1));
+        assertSame(unresolved, cached.get(2));
+        try (InputStream in = cached.get(0).getInputStream()) {
+            assertArrayEquals(content.get("/a"), IOUtils.toByteArray(in));
+        }
+        assertEquals(1, underTest.misses());
+    }
+
+    @Test
+    public void metersReportCache() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        underTest.bindTo(registry);
+        serve("/a", "\"a\"", 1000);
+        serve("/b", "\"b\"", 1000);
+        serve("/c", "\"c\"", 1000);
+
+        read("/a");
+        read("/a");
+        read("/b");
+        read("/c");
+
+        assertEquals(1, registry.get(CustodialContentCache.HITS_COUNTER).functionCounter().count(), 0);
+        assertEquals(3, registry.get(CustodialContentCache.MISSES_COUNTER).functionCounter().count(), 0);
+        assertEquals(1, registry.get(CustodialContentCache.EVICTIONS_COUNTER).functionCounter().count(), 0);
+        assertEquals(2000, registry.get(CustodialContentCache.BYTES_GAUGE).gauge().value(), 0);
+    }
+
+    /**
+     * An origin that stops responding fails the read, rather than stalling it
+     */
+    @Test(expected = SocketTimeoutException.class)
+    public void unresponsiveOriginTimesOut() throws IOException {
+        CountDownLatch release = new CountDownLatch(1);
+        server.createContext("/stalled", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        try {
+            new UrlConnectionOrigin(1000, 200).fetch(url("/stalled"), null, null);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void notConfigured() {
+        Map<String, String> properties = new HashMap<>();
+        assertNull(CustodialContentCache.configure(properties::get, CustodialOrigin.URL_CONNECTION));
+        properties.put(CustodialContentCache.DIRECTORY_PROPERTY, " ");
+        properties.put(CustodialContentCache.MAX_BYTES_PROPERTY, "1g");
+        assertNull(CustodialContentCache.configure(properties::get, CustodialOrigin.URL_CONNECTION));
+    }
+
+    @Test
+    public void oneInstancePerDirectory() throws IOException {
+        String configured = tmp.newFolder().getAbsolutePath();
+        Map<String, String> properties = new HashMap<>();
+        properties.put(CustodialContentCache.DIRECTORY_PROPERTY, configured);
+        properties.put(CustodialContentCache.MAX_BYTES_PROPERTY, "512m");
+        CustodialContentCache cache = CustodialContentCache.configure(properties::get, CustodialOrigin.URL_CONNECTION);
+
+        properties.remove(CustodialContentCache.MAX_BYTES_PROPERTY);
+        assertSame(cache, CustodialContentCache.configure(properties::get, CustodialOrigin.URL_CONNECTION));
+    }
+
+    private byte[] serve(String path, String etag, int size) {
+        byte[] body = new byte[size];
+        new Random(path.hashCode() + size).nextBytes(body);
+        content.put(path, body);
+        if (etag == null) {
+            etags.remove(path);
+        } else {
+            etags.put(path, etag);
+        }
+        return body;
+    }
+
+    private byte[] read(String path) throws IOException {
+        try (InputStream in = underTest.open(url(path))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private static DepositFileResource resource(String location) {
+        DepositFile file = new DepositFile();
+        file.setName("manuscript.pdf");
+        file.setLocation(location);
+        return new DepositFileResource(file, new ByteArrayResource(new byte[0]));
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class CustodialPrefetcherTest {
+
+    private static final int SIZE = 100_000;
+
+    private static final long GLOBAL_MAX_BYTES = 1024 * 1024;
+
+    private CustodialPrefetcher underTest;
+
+    private List<CountingResource> origins;
+
+    @Before
+    public void setUp() {
+        underTest = new CustodialPrefetcher(GLOBAL_MAX_BYTES);
+        origins = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            origins.add(new CountingResource(SIZE + i));
+        }
+    }
+
+    @Test
+    public void noReadAheadByDefault() {
+        List<DepositFileResource> resources = resources();
+        assertSame(resources, underTest.readAhead(resources, Collections.emptyMap()).resources());
+    }
+
+    @Test
+    public void nextResourcesReadAhead() throws IOException {
+        CustodialPrefetcher.ReadAhead readAhead = underTest.readAhead(resources(), options(2, null));
+        List<DepositFileResource> resources = readAhead.resources();
+
+        assertArrayEquals(origins.get(0).getByteArray(), read(resources.get(0)));
+        await(() -> underTest.bytes() == 2 * SIZE + 1 + 2);
+        assertEquals(1, origins.get(1).opened.get());
+        assertEquals(1, origins.get(2).opened.get());
+        assertEquals(0, origins.get(3).opened.get());
+
+        for (int i = 1; i < resources.size(); i++) {
+            assertArrayEquals(origins.get(i).getByteArray(), read(resources.get(i)));
+        }
+        for (CountingResource origin : origins) {
+            assertEquals(1, origin.opened.get());
+        }
+        assertEquals(0, underTest.bytes());
+        assertEquals(1, underTest.misses() - underTest.stalls());
+        assertEquals(3, underTest.hits() + underTest.stalls());
+
+        // a resource is read ahead once; it is read from its origin when it is opened again
+        assertArrayEquals(origins.get(1).getByteArray(), read(resources.get(1)));
+        assertEquals(2, origins.get(1).opened.get());
+        readAhead.close();
+    }
+
+    @Test
+    public void bufferLimitedPerPackage() throws IOException {
+        List<DepositFileResource> resources = underTest.readAhead(resources(), options(1, "64k")).resources();
+
+        read(resources.get(0));
+        await(() -> origins.get(1).opened.get() == 1);
+        await(() -> underTest.bytes() == 64 * 1024);
+
+        assertArrayEquals(origins.get(1).getByteArray(), read(resources.get(1)));
+        await(() -> origins.get(2).opened.get() == 1);
+        assertArrayEquals(origins.get(2).getByteArray(), read(resources.get(2)));
+    }
+
+    @Test
+    public void bufferLimitedGlobally() throws IOException {
+        underTest = new CustodialPrefetcher(2 * 64 * 1024);
+        CustodialPrefetcher.ReadAhead firstReadAhead = underTest.readAhead(resources(), options(1, null));
+        CustodialPrefetcher.ReadAhead secondReadAhead = underTest.readAhead(resources(), options(1, null));
+        List<DepositFileResource> first = firstReadAhead.resources();
+        List<DepositFileResource> second = secondReadAhead.resources();
+
+        read(first.get(0));
+        await(() -> underTest.bytes() == SIZE + 1);
+        read(second.get(0));
+        await(() -> origins.get(1).opened.get() == 2);
+
+        // the second package's read-ahead opened the resource, but the global budget left nothing to buffer
+        assertEquals(SIZE + 1, underTest.bytes());
+        assertArrayEquals(origins.get(1).getByteArray(), read(second.get(1)));
+        assertArrayEquals(origins.get(1).getByteArray(), read(first.get(1)));
+
+        firstReadAhead.close();
+        secondReadAhead.close();
+        await(() -> underTest.bytes() == 0);
+    }
+
+    @Test
+    public void closeReleasesBuffers() throws IOException {
+        CustodialPrefetcher.ReadAhead readAhead = underTest.readAhead(resources(), options(3, null));
+        List<DepositFileResource> resources = readAhead.resources();
+
+        read(resources.get(0));
+        await(() -> underTest.bytes() == 3 * SIZE + 1 + 2 + 3);
+
+        readAhead.close();
+        assertEquals(0, underTest.bytes());
+        assertArrayEquals(origins.get(3).getByteArray(), read(resources.get(3)));
+    }
+
+    @Test
+    public void failureReported() throws IOException {
+        origins.set(1, new CountingResource(SIZE) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                opened.incrementAndGet();
+                throw new IOException("Gone");
+            }
+        });
+        CustodialPrefetcher.ReadAhead readAhead = underTest.readAhead(resources(), options(1, null));
+        List<DepositFileResource> resources = readAhead.resources();
+
+        read(resources.get(0));
+        try {
+            read(resources.get(1));
+            fail("Expected the failure reading ahead to be reported");
+        } catch (IOException e) {
+            assertEquals("Gone", e.getMessage());
+        }
+        assertEquals(1, origins.get(1).opened.get());
+        assertArrayEquals(origins.get(2).getByteArray(), read(resources.get(2)));
+
+        readAhead.close();
+        await(() -> underTest.bytes() == 0);
+    }
+
+    /**
+     * An unchecked failure part way through a prefetch closes the origin, releases what was buffered, and is reported
+     * to the archiver
+     */
+    @Test
+    public void uncheckedFailureReleasesBuffers() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean();
+        origins.set(1, new CountingResource(SIZE) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                opened.incrementAndGet();
+                return new InputStream() {
+                    private int remaining = SIZE / 2;
+
+                    @Override
+                    public int read() {
+                        if (remaining-- == 0) {
+                            throw new IllegalStateException("Broken");
+                        }
+                        return 0;
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                };
+            }
+        });
+        CustodialPrefetcher.ReadAhead readAhead = underTest.readAhead(resources(), options(1, null));
+        List<DepositFileResource> resources = readAhead.resources();
+
+        read(resources.get(0));
+        try {
+            read(resources.get(1));
+            fail("Expected the failure reading ahead to be reported");
+        } catch (IllegalStateException e) {
+            assertEquals("Broken", e.getMessage());
+        }
+        assertTrue(closed.get());
+        assertEquals(1, origins.get(1).opened.get());
+
+        readAhead.close();
+        await(() -> underTest.bytes() == 0);
+    }
+
+    @Test
+    public void metersReportReadAhead() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        underTest.bindTo(registry);
+        List<DepositFileResource> resources = underTest.readAhead(resources(), options(1, null)).resources();
+
+        read(resources.get(0));
+        await(() -> underTest.bytes() == SIZE + 1);
+        read(resources.get(1));
+
+        // the second resource is a hit, unless its prefetch was still completing, in which case the archiver stalled
+        double stalls = registry.get(CustodialPrefetcher.STALL_TIMER).functionTimer().count();
+        assertEquals(1, registry.get(CustodialPrefetcher.HITS_COUNTER).functionCounter().count() + stalls, 0);
+        assertEquals(1 + stalls, registry.get(CustodialPrefetcher.MISSES_COUNTER).functionCounter().count(), 0);
+        await(() -> registry.get(CustodialPrefetcher.BYTES_GAUGE).gauge().value() == SIZE + 2);
+    }
+
+    private List<DepositFileResource> resources() {
+        List<DepositFileResource> resources = new ArrayList<>();
+        for (CountingResource origin : origins) {
+            DepositFile file = new DepositFile();
+            file.setName("file-" + resources.size());
+            file.setLocation("http://example.org/fcrepo/rest/files/" + resources.size());
+            resources.add(new DepositFileResource(file, origin));
+        }
+        return resources;
+    }
+
+    private static Map<String, Object> options(int depth, String maxBytes) {
+        Map<String, Object> options = new HashMap<>();
+        options.put(CustodialPrefetcher.DEPTH_KEY, depth);
+        if (maxBytes != null) {
+            options.put(CustodialPrefetcher.MAX_BYTES_KEY, maxBytes);
+        }
+        return options;
+    }
+
+    private static byte[] read(DepositFileResource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting for read-ahead");
+            }
+            Thread.yield();
+        }
+    }
+
+    private static class CountingResource extends ByteArrayResource {
+
+        final AtomicInteger opened = new AtomicInteger();
+
+        CountingResource(int size) {
+            super(content(size));
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            opened.incrementAndGet();
+            return super.getInputStream();
+        }
+
+        private static byte[] content(int size) {
+            byte[] content = new byte[size];
+            new Random(size).nextBytes(content);
+            return content;
+        }
+
+    }
+
+}
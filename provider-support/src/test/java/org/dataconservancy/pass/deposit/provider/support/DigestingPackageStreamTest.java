@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dataconservancy.pass.deposit.assembler.MetadataBuilder;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class DigestingPackageStreamTest {
+
+    private byte[] content;
+
+    private PackageStream delegate;
+
+    private MetadataBuilder mb;
+
+    @Before
+    public void setUp() {
+        content = new byte[256 * 1024 + 17];
+        new Random(1).nextBytes(content);
+        delegate = mock(PackageStream.class);
+        when(delegate.open()).thenAnswer(inv -> new ByteArrayInputStream(content));
+        mb = mock(MetadataBuilder.class);
+    }
+
+    @Test
+    public void lengthAndChecksumsRecordedWhenRead() throws Exception {
+        Map<String, Object> options = Collections.singletonMap(PackageOptions.Checksum.KEY,
+                Arrays.asList(PackageOptions.Checksum.OPTS.SHA512, "md5"));
+        DigestingPackageStream underTest = new DigestingPackageStream(delegate, mb, options);
+
+        try (InputStream in = underTest.open()) {
+            assertEquals(content.length, IOUtils.toByteArray(in).length);
+        }
+
+        verify(mb).sizeBytes(content.length);
+        ArgumentCaptor<PackageStream.Checksum> checksums = ArgumentCaptor.forClass(PackageStream.Checksum.class);
+        verify(mb, times(2)).checksum(checksums.capture());
+        List<PackageStream.Checksum> recorded = checksums.getAllValues();
+        assertEquals(PackageOptions.Checksum.OPTS.SHA512, recorded.get(0).algorithm());
+        assertEquals(hex("SHA-512"), recorded.get(0).asHex());
+        assertEquals(PackageOptions.Checksum.OPTS.MD5, recorded.get(1).algorithm());
+        assertEquals(hex("MD5"), recorded.get(1).asHex());
+    }
+
+    @Test
+    public void md5ByDefault() throws Exception {
+        try (InputStream in = new DigestingPackageStream(delegate, mb, Collections.emptyMap()).open()) {
+            IOUtils.copy(in, new NullOutputStream());
+        }
+
+        ArgumentCaptor<PackageStream.Checksum> checksum = ArgumentCaptor.forClass(PackageStream.Checksum.class);
+        verify(mb).checksum(checksum.capture());
+        assertEquals(PackageOptions.Checksum.OPTS.MD5, checksum.getValue().algorithm());
+        assertEquals(hex("MD5"), checksum.getValue().asHex());
+    }
+
+    @Test
+    public void nothingRecordedUntilReadToTheEnd() throws Exception {
+        DigestingPackageStream underTest = new DigestingPackageStream(delegate, mb, Collections.emptyMap());
+
+        try (InputStream in = underTest.open()) {
+            in.read(new byte[1024]);
+        }
+
+        verify(mb, never()).sizeBytes(anyLong());
+        verify(mb, never()).checksum(any());
+    }
+
+    @Test
+    public void onlyFirstReadRecorded() throws Exception {
+        DigestingPackageStream underTest = new DigestingPackageStream(delegate, mb, Collections.emptyMap());
+
+        for (int i = 0; i < 2; i++) {
+            try (InputStream in = underTest.open()) {
+                while (in.read() != -1) {
+                    // read a byte at a time
+                }
+                in.read();
+            }
+        }
+
+        verify(mb).sizeBytes(content.length);
+        verify(mb).checksum(any());
+    }
+
+    private String hex(String algorithm) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance(algorithm).digest(content)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.Assembler;
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.model.DepositSubmission;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class FanOutAssemblerTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void targetsShareCustodialContent() {
+        DepositSubmission submission = new DepositSubmission();
+        Assembler nihms = mock(Assembler.class);
+        Assembler dspace = mock(Assembler.class);
+        PackageStream nihmsPackage = mock(PackageStream.class);
+        PackageStream dspacePackage = mock(PackageStream.class);
+        when(nihms.assemble(any(), anyMap())).thenReturn(nihmsPackage);
+        when(dspace.assemble(any(), anyMap())).thenReturn(dspacePackage);
+
+        Map<String, Object> nihmsOptions = new HashMap<>();
+        nihmsOptions.put("archive", "TAR");
+        Map<String, Object> dspaceOptions = new HashMap<>();
+        dspaceOptions.put("archive", "ZIP");
+
+        try (FanOutAssembler.Packages packages = new FanOutAssembler().assemble(submission, Arrays.asList(
+                new FanOutAssembler.Target(nihms, nihmsOptions), new FanOutAssembler.Target(dspace, dspaceOptions)))) {
+            assertEquals(Arrays.asList(nihmsPackage, dspacePackage), packages.packageStreams());
+            assertEquals(0, packages.fetchedBytes());
+        }
+
+        ArgumentCaptor<Map<String, Object>> nihmsCaptor = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Map<String, Object>> dspaceCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(nihms).assemble(eq(submission), nihmsCaptor.capture());
+        verify(dspace).assemble(eq(submission), dspaceCaptor.capture());
+
+        Object shared = nihmsCaptor.getValue().get(SharedCustodialContent.KEY);
+        assertTrue(shared instanceof SharedCustodialContent);
+        assertSame(shared, dspaceCaptor.getValue().get(SharedCustodialContent.KEY));
+        assertEquals("TAR", nihmsCaptor.getValue().get("archive"));
+        assertEquals("ZIP", dspaceCaptor.getValue().get("archive"));
+
+        // the options of the targets are not modified
+        assertFalse(nihmsOptions.containsKey(SharedCustodialContent.KEY));
+        assertFalse(dspaceOptions.containsKey(SharedCustodialContent.KEY));
+    }
+
+    @Test
+    public void noTargets() {
+        try (FanOutAssembler.Packages packages =
+                     new FanOutAssembler().assemble(new DepositSubmission(), Collections.emptyList())) {
+            assertTrue(packages.packageStreams().isEmpty());
+        }
+    }
+
+}
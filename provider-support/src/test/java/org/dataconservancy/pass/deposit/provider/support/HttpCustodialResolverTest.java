@@ -0,0 +1,317 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Exercises the resolver against a local HTTP server standing in for the repository.  The server answers {@code Range}
+ * requests without an {@code If-Range} validator, or whose validator matches the current {@code ETag} of the content,
+ * with {@code 206 Partial Content}, and other requests with the whole content.
+ *
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class HttpCustodialResolverTest {
+
+    private static final long RANGED_THRESHOLD = 1000;
+
+    private static final int CHUNK_SIZE = 256;
+
+    private static final int PARALLELISM = 3;
+
+    private static final long MAX_BUFFERED_BYTES = 64 * 1024;
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private final Map<String, byte[]> content = new ConcurrentHashMap<>();
+
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+
+    private final Set<String> withoutRanges = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger whole = new AtomicInteger();
+
+    private final AtomicInteger ranges = new AtomicInteger();
+
+    private HttpServer server;
+
+    private HttpCustodialResolver underTest;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            byte[] body = content.get(path);
+            String etag = etags.get(path);
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            int start = 0;
+            int end = body.length - 1;
+            int status = 200;
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (!withoutRanges.contains(path)) {
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                Matcher matcher = range == null ? null : RANGE.matcher(range);
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                if (matcher != null && matcher.matches() && (ifRange == null || etag.equals(ifRange))) {
+                    start = Integer.parseInt(matcher.group(1));
+                    end = Math.min(Integer.parseInt(matcher.group(2)), body.length - 1);
+                    status = 206;
+                    exchange.getResponseHeaders().add("Content-Range",
+                            "bytes " + start + "-" + end + "/" + body.length);
+                }
+            }
+            (status == 206 ? ranges : whole).incrementAndGet();
+
+            exchange.sendResponseHeaders(status, end - start + 1);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body, start, end - start + 1);
+            } catch (IOException e) {
+                // the client closed the response after reading what it needed
+            }
+        });
+        server.start();
+
+        underTest = new HttpCustodialResolver(RANGED_THRESHOLD, CHUNK_SIZE, PARALLELISM, MAX_BUFFERED_BYTES);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void contentWithinFirstChunkFetchedOnce() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", CHUNK_SIZE - 10);
+
+        assertArrayEquals(a, read("/a"));
+        assertEquals(0, whole.get());
+        assertEquals(1, ranges.get());
+    }
+
+    /**
+     * The remainder of content below the ranged threshold is read in a single range, as it arrives
+     */
+    @Test
+    public void smallContentFetchedInOneRemainingRange() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 900);
+
+        assertArrayEquals(a, read("/a"));
+        assertEquals(0, whole.get());
+        assertEquals(2, ranges.get());
+        assertEquals(0, underTest.bufferedBytes());
+    }
+
+    @Test
+    public void largeContentFetchedInRanges() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 5000);
+
+        assertArrayEquals(a, read("/a"));
+        assertEquals(0, whole.get());
+        // the first chunk is the initial response
+        assertEquals((5000 + CHUNK_SIZE - 1) / CHUNK_SIZE, ranges.get());
+        assertEquals(0, underTest.bufferedBytes());
+    }
+
+    /**
+     * Ranges are buffered only while the budget allows; when it is spent they are read as they arrive
+     */
+    @Test
+    public void bufferedRangesLimitedByBudget() throws IOException {
+        HttpCustodialResolver limited = new HttpCustodialResolver(RANGED_THRESHOLD, CHUNK_SIZE, PARALLELISM,
+                CHUNK_SIZE);
+        byte[] a = serve("/a", "\"a1\"", 5000);
+
+        try (InputStream in = limited.fetch(url("/a"), null, null).content()) {
+            assertEquals(CHUNK_SIZE, limited.bufferedBytes());
+            assertArrayEquals(a, IOUtils.toByteArray(in));
+        }
+        assertEquals((5000 + CHUNK_SIZE - 1) / CHUNK_SIZE, ranges.get());
+        assertEquals(0, limited.bufferedBytes());
+
+        HttpCustodialResolver unbuffered = new HttpCustodialResolver(RANGED_THRESHOLD, CHUNK_SIZE, PARALLELISM, 0);
+        assertArrayEquals(a, IOUtils.toByteArray(unbuffered.fetch(url("/a"), null, null).content()));
+        assertEquals(0, unbuffered.bufferedBytes());
+    }
+
+    @Test
+    public void closingReleasesBufferedRanges() throws IOException {
+        serve("/a", "\"a1\"", 5000);
+
+        try (InputStream in = underTest.fetch(url("/a"), null, null).content()) {
+            assertEquals(PARALLELISM * CHUNK_SIZE, underTest.bufferedBytes());
+            assertEquals(CHUNK_SIZE + 10, IOUtils.read(in, new byte[CHUNK_SIZE + 10]));
+        }
+        assertEquals(0, underTest.bufferedBytes());
+    }
+
+    @Test
+    public void contentModifiedDuringDownloadFails() throws IOException {
+        serve("/a", "\"a1\"", 5000);
+
+        try (InputStream in = underTest.fetch(url("/a"), null, null).content()) {
+            assertEquals(CHUNK_SIZE, IOUtils.read(in, new byte[CHUNK_SIZE]));
+            serve("/a", "\"a2\"", 5000);
+            IOUtils.toByteArray(in);
+            fail("Expected the read to fail once the content was modified");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("modified"));
+        }
+    }
+
+    @Test
+    public void originWithoutRangesFetchedWhole() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 5000);
+        withoutRanges.add("/a");
+
+        assertArrayEquals(a, read("/a"));
+        assertEquals(1, whole.get());
+        assertEquals(0, ranges.get());
+    }
+
+    /**
+     * The remainder of content without a validator cannot be requested safely as ranges, so the content is requested
+     * again, whole
+     */
+    @Test
+    public void contentWithoutValidatorFetchedWhole() throws IOException {
+        byte[] a = serve("/a", "W/\"a1\"", 5000);
+
+        assertArrayEquals(a, read("/a"));
+        assertEquals(1, ranges.get());
+        assertEquals(1, whole.get());
+    }
+
+    @Test
+    public void conditionalFetch() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 500);
+
+        assertFalse(underTest.fetch(url("/a"), "\"a1\"", null).modified());
+
+        CustodialOrigin.Fetched fetched = underTest.fetch(url("/a"), "\"a0\"", null);
+        assertTrue(fetched.modified());
+        assertEquals("\"a1\"", fetched.etag());
+        try (InputStream in = fetched.content()) {
+            assertArrayEquals(a, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void missingContentFails() throws IOException {
+        underTest.fetch(url("/missing"), null, null);
+    }
+
+    @Test
+    public void onlyHttpResourcesResolved() throws IOException {
+        byte[] a = serve("/a", "\"a1\"", 5000);
+        DepositFileResource remote = resource(url("/a"));
+        DepositFileResource local = resource("file:/tmp/manuscript.pdf");
+        DepositFileResource unresolved = resource(null);
+
+        List<DepositFileResource> resolved = underTest.resolve(Arrays.asList(remote, local, unresolved));
+
+        assertNotSame(remote, resolved.get(0));
+        assertSame(remote.getDepositFile(), resolved.get(0).getDepositFile());
+        assertSame(local, resolved.get(1));
+        assertSame(unresolved, resolved.get(2));
+        try (InputStream in = resolved.get(0).getInputStream()) {
+            assertArrayEquals(a, IOUtils.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void configure() {
+        Map<String, String> properties = new HashMap<>();
+        assertNull(HttpCustodialResolver.configure(properties::get));
+        properties.put(HttpCustodialResolver.POOLED_PROPERTY, "false");
+        assertNull(HttpCustodialResolver.configure(properties::get));
+
+        properties.put(HttpCustodialResolver.POOLED_PROPERTY, "true");
+        properties.put(HttpCustodialResolver.RANGED_CHUNK_SIZE_PROPERTY, "1m");
+        properties.put(HttpCustodialResolver.RANGED_MAX_BYTES_PROPERTY, "16m");
+        assertSame(HttpCustodialResolver.open(HttpCustodialResolver.DEFAULT_RANGED_THRESHOLD, 1024 * 1024,
+                HttpCustodialResolver.DEFAULT_RANGED_PARALLELISM, 16 * 1024 * 1024),
+                HttpCustodialResolver.configure(properties::get));
+    }
+
+    private byte[] serve(String path, String etag, int size) {
+        byte[] body = new byte[size];
+        new Random(etag.hashCode() + size).nextBytes(body);
+        content.put(path, body);
+        etags.put(path, etag);
+        return body;
+    }
+
+    private byte[] read(String path) throws IOException {
+        try (InputStream in = underTest.fetch(url(path), null, null).content()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private static DepositFileResource resource(String location) {
+        DepositFile file = new DepositFile();
+        file.setName("manuscript.pdf");
+        file.setLocation(location);
+        return new DepositFileResource(file, new ByteArrayResource(new byte[0]));
+    }
+
+}
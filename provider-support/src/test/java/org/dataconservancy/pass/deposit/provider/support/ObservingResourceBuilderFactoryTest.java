@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.PackageStream;
+import org.dataconservancy.pass.deposit.assembler.ResourceBuilder;
+import org.dataconservancy.pass.deposit.assembler.shared.ResourceBuilderFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ObservingResourceBuilderFactoryTest {
+
+    @Test
+    public void observerReceivesEachBuiltResource() {
+        List<PackageStream.Resource> observed = new ArrayList<>();
+        ObservingResourceBuilderFactory underTest =
+                new ObservingResourceBuilderFactory(new ResourceBuilderFactory(), observed::add);
+
+        ResourceBuilder builder = underTest.newInstance();
+        builder.name("data/one.txt");
+        builder.sizeBytes(1);
+        PackageStream.Resource first = builder.build();
+        assertEquals(1, observed.size());
+        assertSame(first, observed.get(0));
+        assertEquals("data/one.txt", first.name());
+        assertEquals(1, first.sizeBytes());
+
+        builder = underTest.newInstance();
+        builder.name("data/two.txt");
+        PackageStream.Resource second = builder.build();
+        assertEquals(2, observed.size());
+        assertSame(second, observed.get(1));
+    }
+
+    @Test
+    public void nothingObservedUntilBuilt() {
+        List<PackageStream.Resource> observed = new ArrayList<>();
+        new ObservingResourceBuilderFactory(new ResourceBuilderFactory(), observed::add).newInstance()
+                .name("data/one.txt");
+        assertTrue(observed.isEmpty());
+    }
+
+    @Test
+    public void callsForwardedToDecoratedBuilder() {
+        ResourceBuilder decorated = mock(ResourceBuilder.class);
+        PackageStream.Resource resource = mock(PackageStream.Resource.class);
+        when(decorated.name(any())).thenReturn(decorated);
+        when(decorated.build()).thenReturn(resource);
+        ResourceBuilderFactory rbf = mock(ResourceBuilderFactory.class);
+        when(rbf.newInstance()).thenReturn(decorated);
+        List<PackageStream.Resource> observed = new ArrayList<>();
+
+        ResourceBuilder builder = new ObservingResourceBuilderFactory(rbf, observed::add).newInstance();
+        assertSame(builder, builder.name("data/one.txt"));
+        verify(decorated).name("data/one.txt");
+        assertTrue(observed.isEmpty());
+
+        assertSame(resource, builder.build());
+        assertEquals(Collections.singletonList(resource), observed);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullObserver() {
+        new ObservingResourceBuilderFactory(new ResourceBuilderFactory(), null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullResourceBuilderFactory() {
+        new ObservingResourceBuilderFactory(null, resource -> { });
+    }
+
+}
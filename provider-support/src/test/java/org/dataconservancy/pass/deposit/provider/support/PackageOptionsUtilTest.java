@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.singletonMap;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.bytesOption;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.checksumAlgorithms;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.enumOption;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.intOption;
+import static org.dataconservancy.pass.deposit.provider.support.PackageOptionsUtil.properties;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PackageOptionsUtilTest {
+
+    private static final String KEY = "key";
+
+    @Test
+    public void enumOptionValues() {
+        assertEquals(TimeUnit.DAYS, enumOption(null, KEY, TimeUnit.class, TimeUnit.DAYS));
+        assertEquals(TimeUnit.DAYS, enumOption(new HashMap<>(), KEY, TimeUnit.class, TimeUnit.DAYS));
+        assertEquals(TimeUnit.SECONDS, enumOption(options(TimeUnit.SECONDS), KEY, TimeUnit.class, TimeUnit.DAYS));
+        assertEquals(TimeUnit.SECONDS, enumOption(options(" seconds "), KEY, TimeUnit.class, TimeUnit.DAYS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidEnumOption() {
+        enumOption(options("fortnights"), KEY, TimeUnit.class, TimeUnit.DAYS);
+    }
+
+    @Test
+    public void bytesOptionValues() {
+        assertEquals(10, bytesOption(null, KEY, 10));
+        assertEquals(10, bytesOption(Collections.emptyMap(), KEY, 10));
+        assertEquals(2048, bytesOption(options(2048), KEY, 10));
+        assertEquals(2048, bytesOption(options("2048"), KEY, 10));
+        assertEquals(512 * 1024, bytesOption(options("512k"), KEY, 10));
+        assertEquals(2 * 1024 * 1024, bytesOption(options(" 2 M "), KEY, 10));
+        assertEquals(1024L * 1024 * 1024, bytesOption(options("1g"), KEY, 10));
+        assertEquals(0, bytesOption(options("0"), KEY, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeBytesOption() {
+        bytesOption(options(-1), KEY, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBytesOption() {
+        bytesOption(options("lots"), KEY, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overflowingBytesOption() {
+        bytesOption(options(Long.MAX_VALUE + "k"), KEY, 10);
+    }
+
+    @Test
+    public void intOptionValues() {
+        assertEquals(4, intOption(null, KEY, 4));
+        assertEquals(4, intOption(Collections.emptyMap(), KEY, 4));
+        assertEquals(8, intOption(options(8), KEY, 4));
+        assertEquals(8, intOption(options(" 8 "), KEY, 4));
+        assertEquals(0, intOption(options("0"), KEY, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeIntOption() {
+        intOption(options("-2"), KEY, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidIntOption() {
+        intOption(options("many"), KEY, 4);
+    }
+
+    @Test
+    public void checksumAlgorithmValues() {
+        assertEquals(Collections.singletonList(Checksum.OPTS.MD5), checksumAlgorithms(null));
+        assertEquals(Collections.singletonList(Checksum.OPTS.MD5),
+                checksumAlgorithms(singletonMap(Checksum.KEY, Collections.emptyList())));
+        assertEquals(Arrays.asList(Checksum.OPTS.SHA512, Checksum.OPTS.MD5),
+                checksumAlgorithms(singletonMap(Checksum.KEY, Arrays.asList(Checksum.OPTS.SHA512, "md5"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidChecksumAlgorithm() {
+        checksumAlgorithms(singletonMap(Checksum.KEY, Collections.singletonList("crc32")));
+    }
+
+    @Test
+    public void propertiesOmitsAbsentAndEmptyValues() {
+        Map<String, String> configured = new HashMap<>();
+        configured.put("present", " 512m ");
+        configured.put("empty", " ");
+
+        Map<String, Object> values = properties(configured::get, "present", "empty", "absent");
+
+        assertEquals(singletonMap("present", "512m"), values);
+        assertEquals(512 * 1024 * 1024, bytesOption(values, "present", 10));
+        assertEquals(10, bytesOption(values, "empty", 10));
+    }
+
+    private static Map<String, Object> options(Object value) {
+        return singletonMap(KEY, value);
+    }
+
+}
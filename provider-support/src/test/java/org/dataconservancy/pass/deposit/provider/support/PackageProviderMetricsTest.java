@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.Phase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.ENTRY_BYTES_SUMMARY;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.ENTRY_CPU_TIMER;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.ENTRY_SAVED_BYTES_SUMMARY;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.EXCEPTION_TAG;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.FAILURE_COUNTER;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.METHOD_TAG;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.PHASE_TAG;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.PHASE_TIMER;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.PROVIDER_TAG;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.RESOURCES_SUMMARY;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.RESOURCE_TAG;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.SPEC_TAG;
+import static org.dataconservancy.pass.deposit.provider.support.PackageProviderMetrics.SUPPLEMENTAL_BYTES_SUMMARY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PackageProviderMetricsTest {
+
+    private SimpleMeterRegistry registry;
+
+    private PackageProviderMetrics underTest;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        underTest = new PackageProviderMetrics(registry, "cow", "moo");
+    }
+
+    @Test
+    public void recordPhases() {
+        assertEquals("path", underTest.record(Phase.PACKAGE_PATH, () -> "path"));
+        underTest.record(Phase.PACKAGE_PATH, () -> "path");
+        underTest.record(Phase.START, () -> { });
+        underTest.stop(Phase.CUSTODIAL, underTest.start());
+
+        assertEquals(2, timerCount(Phase.PACKAGE_PATH));
+        assertEquals(1, timerCount(Phase.START));
+        assertEquals(1, timerCount(Phase.CUSTODIAL));
+        assertEquals(0, timerCount(Phase.FINISH));
+    }
+
+    @Test
+    public void recordFailure() {
+        try {
+            underTest.record(Phase.FINISH, () -> {
+                throw new IllegalStateException("Expected");
+            });
+            fail("Expected the failure to be rethrown.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(1, timerCount(Phase.FINISH));
+        assertEquals(1, registry.get(FAILURE_COUNTER)
+                .tags(PROVIDER_TAG, "cow", SPEC_TAG, "moo")
+                .tags(PHASE_TAG, Phase.FINISH.tag(), EXCEPTION_TAG, "IllegalStateException")
+                .counter().count(), 0);
+        assertNull(registry.find(FAILURE_COUNTER).tags(PHASE_TAG, Phase.START.tag()).counter());
+    }
+
+    @Test
+    public void recordSizes() {
+        underTest.resources(10);
+        underTest.resources(20);
+        underTest.supplementalBytes("mets.xml", 1024);
+
+        assertEquals(2, registry.get(RESOURCES_SUMMARY).summary().count());
+        assertEquals(30, registry.get(RESOURCES_SUMMARY).summary().totalAmount(), 0);
+        assertEquals(1024, registry.get(SUPPLEMENTAL_BYTES_SUMMARY).tags(RESOURCE_TAG, "mets.xml")
+                .summary().totalAmount(), 0);
+    }
+
+    @Test
+    public void recordEntries() {
+        underTest.entry("deflated", 1000, 400, 2000);
+        underTest.entry("deflated", 1000, 1100, 3000);
+        underTest.entry("stored", 500, 500, -1);
+
+        assertEquals(2000, registry.get(ENTRY_BYTES_SUMMARY).tags(METHOD_TAG, "deflated")
+                .summary().totalAmount(), 0);
+        assertEquals(600, registry.get(ENTRY_SAVED_BYTES_SUMMARY).tags(METHOD_TAG, "deflated")
+                .summary().totalAmount(), 0);
+        assertEquals(2, registry.get(ENTRY_CPU_TIMER).tags(METHOD_TAG, "deflated").timer().count());
+        assertEquals(5000, registry.get(ENTRY_CPU_TIMER).tags(METHOD_TAG, "deflated")
+                .timer().totalTime(TimeUnit.NANOSECONDS), 0);
+
+        assertEquals(500, registry.get(ENTRY_BYTES_SUMMARY).tags(METHOD_TAG, "stored")
+                .summary().totalAmount(), 0);
+        assertEquals(0, registry.get(ENTRY_SAVED_BYTES_SUMMARY).tags(METHOD_TAG, "stored")
+                .summary().totalAmount(), 0);
+        assertNull(registry.find(ENTRY_CPU_TIMER).tags(METHOD_TAG, "stored").timer());
+    }
+
+    @Test
+    public void noopRecordsResults() {
+        assertEquals("path", PackageProviderMetrics.noop().record(Phase.PACKAGE_PATH, () -> "path"));
+    }
+
+    private long timerCount(Phase phase) {
+        return registry.get(PHASE_TIMER)
+                .tags(PROVIDER_TAG, "cow", SPEC_TAG, "moo", PHASE_TAG, phase.tag())
+                .timer().count();
+    }
+
+}
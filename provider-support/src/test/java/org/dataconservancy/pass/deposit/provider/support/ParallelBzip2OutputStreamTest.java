@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelBzip2OutputStreamTest {
+
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        int[] sizes = {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 10 * BLOCK_SIZE + 17};
+        for (int size : sizes) {
+            for (int threads : new int[] {1, 4}) {
+                byte[] random = random(size);
+                assertArrayEquals("random, size " + size, random, bunzip2(bzip2(random, threads)));
+                byte[] text = text(size);
+                assertArrayEquals("text, size " + size, text, bunzip2(bzip2(text, threads)));
+            }
+        }
+    }
+
+    @Test
+    public void outputIndependentOfThreads() throws IOException {
+        byte[] text = text(20 * BLOCK_SIZE);
+        assertArrayEquals(bzip2(text, 1), bzip2(text, 4));
+    }
+
+    /**
+     * Each block is a complete bzip2 stream, which a reader not decompressing concatenated streams stops after
+     */
+    @Test
+    public void streamPerBlock() throws IOException {
+        byte[] text = text(3 * BLOCK_SIZE);
+        try (InputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(bzip2(text, 4)), false)) {
+            assertEquals(BLOCK_SIZE, IOUtils.toByteArray(in).length);
+        }
+    }
+
+    @Test
+    public void defaultBlockSize() throws IOException {
+        byte[] text = text(ParallelBzip2OutputStream.DEFAULT_BLOCK_SIZE * 2 + 1);
+        ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+        try (OutputStream out = new ParallelBzip2OutputStream(bzip2, pool, 4)) {
+            out.write(text);
+        }
+        assertArrayEquals(text, bunzip2(bzip2.toByteArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noThreads() {
+        new ParallelBzip2OutputStream(new ByteArrayOutputStream(), pool, 0);
+    }
+
+    private static byte[] bzip2(byte[] content, int threads) throws IOException {
+        ByteArrayOutputStream bzip2 = new ByteArrayOutputStream();
+        Random random = new Random(content.length);
+        try (OutputStream out = new ParallelBzip2OutputStream(bzip2, pool, threads, BLOCK_SIZE)) {
+            // write in pieces that do not align with blocks
+            int off = 0;
+            while (off < content.length) {
+                int len = Math.min(content.length - off, random.nextInt(BLOCK_SIZE * 2) + 1);
+                out.write(content, off, len);
+                off += len;
+            }
+        }
+        return bzip2.toByteArray();
+    }
+
+    private static byte[] bunzip2(byte[] bzip2) throws IOException {
+        try (InputStream in = new BZip2CompressorInputStream(new ByteArrayInputStream(bzip2), true)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static byte[] random(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] text(int size) {
+        StringBuilder text = new StringBuilder();
+        int line = 0;
+        while (text.length() < size) {
+            text.append("Line ").append(line++).append(": the quick brown fox jumps over the lazy dog\n");
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void createPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        int[] sizes = {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 10 * BLOCK_SIZE + 17};
+        for (int size : sizes) {
+            for (int threads : new int[] {1, 4}) {
+                byte[] random = random(size);
+                assertArrayEquals("random, size " + size, random, gunzip(gzip(random, threads)));
+                byte[] text = text(size);
+                assertArrayEquals("text, size " + size, text, gunzip(gzip(text, threads)));
+            }
+        }
+    }
+
+    /**
+     * Blocks are primed with the preceding input, so the output is independent of the number of threads, and
+     * compresses nearly as well as a single deflater
+     */
+    @Test
+    public void outputIndependentOfThreads() throws IOException {
+        byte[] text = text(20 * BLOCK_SIZE);
+        byte[] serial = gzip(text, 1);
+        assertArrayEquals(serial, gzip(text, 4));
+
+        ByteArrayOutputStream reference = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(reference)) {
+            out.write(text);
+        }
+        assertTrue("Expected " + serial.length + " to be within 10% of " + reference.size(),
+                serial.length < reference.size() * 1.1);
+    }
+
+    @Test
+    public void singleMember() throws IOException {
+        byte[] text = text(5 * BLOCK_SIZE);
+        byte[] gzip = gzip(text, 4);
+
+        assertEquals(0x1f, gzip[0] & 0xff);
+        assertEquals(0x8b, gzip[1] & 0xff);
+        // ISIZE, the length of the input, is the last four bytes of the only member
+        int length = (gzip[gzip.length - 4] & 0xff) | (gzip[gzip.length - 3] & 0xff) << 8 |
+                (gzip[gzip.length - 2] & 0xff) << 16 | (gzip[gzip.length - 1] & 0xff) << 24;
+        assertEquals(text.length, length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blockSmallerThanWindow() throws IOException {
+        new ParallelGzipOutputStream(new ByteArrayOutputStream(), pool, 1, BLOCK_SIZE - 1,
+                Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noThreads() throws IOException {
+        new ParallelGzipOutputStream(new ByteArrayOutputStream(), pool, 0);
+    }
+
+    private static byte[] gzip(byte[] content, int threads) throws IOException {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        Random random = new Random(content.length);
+        try (OutputStream out = new ParallelGzipOutputStream(gzip, pool, threads, BLOCK_SIZE,
+                Deflater.DEFAULT_COMPRESSION)) {
+            // write in pieces that do not align with blocks
+            int off = 0;
+            while (off < content.length) {
+                int len = Math.min(content.length - off, random.nextInt(BLOCK_SIZE * 2) + 1);
+                out.write(content, off, len);
+                off += len;
+            }
+        }
+        return gzip.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static byte[] random(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] text(int size) {
+        StringBuilder text = new StringBuilder();
+        int line = 0;
+        while (text.length() < size) {
+            text.append("Line ").append(line++).append(": the quick brown fox jumps over the lazy dog\n");
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
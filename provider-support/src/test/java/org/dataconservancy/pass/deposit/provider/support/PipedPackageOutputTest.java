@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class PipedPackageOutputTest {
+
+    private static final byte[] CONTENT = "moo".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void readsWrittenBytes() throws IOException {
+        try (InputStream in = PipedPackageOutput.open("test", 1024, out -> {
+            try {
+                out.write(CONTENT);
+            } finally {
+                out.close();
+            }
+        })) {
+            assertEquals("moo", new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * A writer that closes its stream before failing must not appear to have written a complete package
+     */
+    @Test
+    public void failureThrownAtEnd() throws IOException {
+        try (InputStream in = PipedPackageOutput.open("test", 1024, out -> {
+            out.write(CONTENT);
+            out.close();
+            throw new IllegalStateException("Expected");
+        })) {
+            IOUtils.toByteArray(in);
+            fail("Expected the failure of the writer to be thrown");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+}
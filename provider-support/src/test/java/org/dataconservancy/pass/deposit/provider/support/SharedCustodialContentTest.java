@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.IOUtils;
+import org.dataconservancy.pass.deposit.assembler.shared.DepositFileResource;
+import org.dataconservancy.pass.deposit.model.DepositFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class SharedCustodialContentTest {
+
+    private static final String LOCATION = "http://example.org/fcrepo/rest/files/1";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private byte[] content;
+
+    private CountingResource origin;
+
+    @Before
+    public void setUp() {
+        content = new byte[256 * 1024 + 7];
+        new Random(content.length).nextBytes(content);
+        origin = new CountingResource(content);
+    }
+
+    @Test
+    public void originFetchedOnce() throws IOException {
+        try (SharedCustodialContent underTest = new SharedCustodialContent(tmp.getRoot().toPath())) {
+            DepositFileResource first = underTest.share(singletonList(resource(origin))).get(0);
+            DepositFileResource second = underTest.share(singletonList(resource(origin))).get(0);
+            assertNotSame(first, second);
+
+            assertArrayEquals(content, read(first));
+            assertArrayEquals(content, read(second));
+            assertArrayEquals(content, read(first));
+
+            assertEquals(1, origin.opened.get());
+            assertEquals(content.length, underTest.fetchedBytes());
+            assertEquals(content.length, first.contentLength());
+        }
+    }
+
+    /**
+     * Readers interleave, each reading at its own pace; whichever is ahead fetches from the origin
+     */
+    @Test
+    public void concurrentReaders() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (SharedCustodialContent underTest = new SharedCustodialContent(tmp.getRoot().toPath())) {
+            List<Future<byte[]>> reads = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                DepositFileResource shared = underTest.share(singletonList(resource(origin))).get(0);
+                int bufferSize = 512 * (i + 1);
+                reads.add(executor.submit((Callable<byte[]>) () -> readInPieces(shared, bufferSize)));
+            }
+            for (Future<byte[]> read : reads) {
+                assertArrayEquals(content, read.get());
+            }
+            assertEquals(1, origin.opened.get());
+            assertEquals(content.length, underTest.fetchedBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void localFilesNotShared() throws IOException {
+        File file = tmp.newFile();
+        Files.write(file.toPath(), content);
+        DepositFileResource local = resource(new FileSystemResource(file));
+
+        try (SharedCustodialContent underTest = new SharedCustodialContent(tmp.getRoot().toPath())) {
+            assertSame(local, underTest.share(singletonList(local)).get(0));
+        }
+    }
+
+    @Test
+    public void notSharedWithoutOption() throws IOException {
+        List<DepositFileResource> resources = singletonList(resource(origin));
+        assertSame(resources, SharedCustodialContent.share(resources, Collections.emptyMap()));
+    }
+
+    @Test
+    public void sharedWithOption() throws IOException {
+        try (SharedCustodialContent underTest = new SharedCustodialContent(tmp.getRoot().toPath())) {
+            List<DepositFileResource> resources = singletonList(resource(origin));
+            List<DepositFileResource> shared = SharedCustodialContent.share(resources,
+                    Collections.singletonMap(SharedCustodialContent.KEY, underTest));
+            assertNotSame(resources.get(0), shared.get(0));
+            assertArrayEquals(content, read(shared.get(0)));
+        }
+    }
+
+    @Test
+    public void originFailureSeenByEveryReader() throws IOException {
+        CountingResource failing = new CountingResource(content) {
+            @Override
+            public InputStream getInputStream() {
+                opened.incrementAndGet();
+                return new FilterInputStream(new ByteArrayInputStream(content, 0, 1024)) {
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n < 0) {
+                            throw new IOException("Connection reset");
+                        }
+                        return n;
+                    }
+                };
+            }
+        };
+
+        try (SharedCustodialContent underTest = new SharedCustodialContent(tmp.getRoot().toPath())) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    read(underTest.share(singletonList(resource(failing))).get(0));
+                    fail("Expected an IOException");
+                } catch (IOException e) {
+                    assertTrue(e.getMessage().contains("Connection reset"));
+                }
+            }
+            assertEquals(1, failing.opened.get());
+        }
+    }
+
+    @Test
+    public void closeDeletesSpools() throws IOException {
+        SharedCustodialContent underTest = new SharedCustodialContent(tmp.getRoot().toPath());
+        read(underTest.share(singletonList(resource(origin))).get(0));
+        assertEquals(1, tmp.getRoot().list().length);
+
+        underTest.close();
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+
+    private static DepositFileResource resource(Resource resource) throws IOException {
+        DepositFile file = new DepositFile();
+        file.setName("manuscript.pdf");
+        file.setLocation(resource instanceof FileSystemResource ? resource.getURI().toString() : LOCATION);
+        return new DepositFileResource(file, resource);
+    }
+
+    private static byte[] read(DepositFileResource resource) throws IOException {
+        try (InputStream in = resource.getInputStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static byte[] readInPieces(DepositFileResource resource, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[bufferSize];
+        try (InputStream in = resource.getInputStream()) {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+                Thread.yield();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * An origin that counts the number of times it is opened
+     */
+    private static class CountingResource extends ByteArrayResource {
+
+        final AtomicInteger opened = new AtomicInteger();
+
+        CountingResource(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            opened.incrementAndGet();
+            return super.getInputStream();
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class SpillBufferTest {
+
+    private static final byte[] CONTENT = "Cows say moo, goats say baa".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void contentBelowThresholdIsHeldOnHeap() throws Exception {
+        SpillBuffer buffer = write(new SpillBuffer(CONTENT.length, tmp.getRoot().toPath()), CONTENT);
+
+        assertFalse(buffer.isSpilled());
+        assertEquals(0, tmp.getRoot().list().length);
+        assertContent(buffer);
+    }
+
+    @Test
+    public void contentAboveThresholdIsSpilled() throws Exception {
+        SpillBuffer buffer = write(new SpillBuffer(CONTENT.length - 1, tmp.getRoot().toPath()), CONTENT);
+
+        assertTrue(buffer.isSpilled());
+        assertEquals(1, tmp.getRoot().list().length);
+        assertContent(buffer);
+    }
+
+    @Test
+    public void zeroThresholdSpillsSingleBytes() throws Exception {
+        SpillBuffer buffer = new SpillBuffer(0, tmp.getRoot().toPath());
+        try (OutputStream out = buffer.getOutputStream()) {
+            for (byte b : CONTENT) {
+                out.write(b);
+            }
+        }
+
+        assertTrue(buffer.isSpilled());
+        assertContent(buffer);
+    }
+
+    @Test
+    public void contentMayBeReadRepeatedly() throws Exception {
+        SpillBuffer heap = write(new SpillBuffer(1024), CONTENT);
+        SpillBuffer spilled = write(new SpillBuffer(1, tmp.getRoot().toPath()), CONTENT);
+
+        assertContent(heap);
+        assertContent(heap);
+        assertContent(spilled);
+        assertContent(spilled);
+    }
+
+    @Test
+    public void closeDeletesSpilledFile() throws Exception {
+        SpillBuffer buffer = write(new SpillBuffer(1, tmp.getRoot().toPath()), CONTENT);
+        InputStream unclosed = buffer.getInputStream();
+        assertEquals(1, tmp.getRoot().list().length);
+
+        buffer.close();
+        buffer.close();
+
+        assertEquals(0, tmp.getRoot().list().length);
+        try {
+            unclosed.read();
+            fail("Expected the stream over the spilled file to be closed.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void closeBeforeWriteCompletesDeletesSpilledFile() throws Exception {
+        SpillBuffer buffer = new SpillBuffer(1, tmp.getRoot().toPath());
+        buffer.getOutputStream().write(CONTENT);
+        assertEquals(1, tmp.getRoot().list().length);
+
+        buffer.close();
+
+        assertEquals(0, tmp.getRoot().list().length);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readBeforeWriteCompletes() throws Exception {
+        SpillBuffer buffer = new SpillBuffer(1024);
+        buffer.getOutputStream().write(CONTENT);
+        buffer.getInputStream();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readAfterClose() throws Exception {
+        SpillBuffer buffer = write(new SpillBuffer(1024), CONTENT);
+        buffer.close();
+        buffer.getInputStream();
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterOutputClosed() throws Exception {
+        SpillBuffer buffer = write(new SpillBuffer(1024), CONTENT);
+        buffer.getOutputStream().write(CONTENT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThreshold() throws Exception {
+        new SpillBuffer(-1);
+    }
+
+    private static SpillBuffer write(SpillBuffer buffer, byte[] content) throws IOException {
+        try (OutputStream out = buffer.getOutputStream()) {
+            out.write(content);
+        }
+        return buffer;
+    }
+
+    private static void assertContent(SpillBuffer buffer) throws IOException {
+        assertEquals(CONTENT.length, buffer.getLength());
+        try (InputStream in = buffer.getInputStream()) {
+            assertArrayEquals(CONTENT, IOUtils.toByteArray(in));
+        }
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019 Johns Hopkins University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dataconservancy.pass.deposit.provider.support;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.dataconservancy.pass.deposit.assembler.PackageOptions.Checksum;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Elliot Metsger (emetsger@jhu.edu)
+ */
+public class StreamingPackageVerifierTest {
+
+    private static final byte[] CONTENT = "custodial content".getBytes(UTF_8);
+
+    private static final byte[] DESCRIPTOR = "descriptor".getBytes(UTF_8);
+
+    @Test
+    public void zip() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+            write(out, new ZipArchiveEntry("data/"), null);
+            write(out, new ZipArchiveEntry("data/file.txt"), CONTENT);
+            write(out, new ZipArchiveEntry("descriptor.txt"), DESCRIPTOR);
+        }
+
+        assertVerified(zip.toByteArray());
+    }
+
+    @Test
+    public void tar() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTar(tar);
+
+        assertVerified(tar.toByteArray());
+    }
+
+    @Test
+    public void tarGzip() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTar(new GzipCompressorOutputStream(tar));
+
+        assertVerified(tar.toByteArray());
+    }
+
+    @Test
+    public void tarBzip2() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTar(new BZip2CompressorOutputStream(tar));
+
+        assertVerified(tar.toByteArray());
+    }
+
+    /**
+     * A package compressed in parallel is a sequence of bzip2 streams, one per block, every one of which is read
+     */
+    @Test
+    public void tarParallelBzip2() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            writeTar(new ParallelBzip2OutputStream(tar, pool, 2, 1000));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertVerified(tar.toByteArray());
+    }
+
+    /**
+     * Every member of a gzip stream of several members is read
+     */
+    @Test
+    public void tarGzipMembers() throws Exception {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTar(tar);
+        byte[] archive = tar.toByteArray();
+
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        try (OutputStream member = new GzipCompressorOutputStream(members)) {
+            member.write(archive, 0, archive.length / 2);
+        }
+        try (OutputStream member = new GzipCompressorOutputStream(members)) {
+            member.write(archive, archive.length / 2, archive.length - archive.length / 2);
+        }
+
+        assertVerified(members.toByteArray());
+    }
+
+    @Test
+    public void duplicateEntries() throws Exception {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(zip)) {
+            write(out, new ZipArchiveEntry("data/file.txt"), CONTENT);
+            write(out, new ZipArchiveEntry("data/file.txt"), CONTENT);
+        }
+
+        RecordingVerifier underTest = new RecordingVerifier();
+        List<String> problems = underTest.verify(new ByteArrayInputStream(zip.toByteArray()));
+
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains("data/file.txt"));
+    }
+
+    @Test(expected = IOException.class)
+    public void notAnArchive() throws Exception {
+        new RecordingVerifier().verify(new ByteArrayInputStream("not an archive".getBytes(UTF_8)));
+    }
+
+    private static void assertVerified(byte[] packageBytes) throws Exception {
+        RecordingVerifier underTest = new RecordingVerifier();
+
+        List<String> problems = underTest.verify(new ByteArrayInputStream(packageBytes));
+
+        assertTrue(problems.isEmpty());
+        assertEquals(Arrays.asList("data/file.txt", "descriptor.txt"), new ArrayList<>(underTest.entries.keySet()));
+        assertEquals(Arrays.asList("d"), underTest.descriptors);
+
+        StreamingPackageVerifier.Entry file = underTest.entries.get("data/file.txt");
+        assertEquals(CONTENT.length, file.length());
+        assertEquals(hex("SHA-256"), file.checksum(Checksum.OPTS.SHA256));
+        assertEquals(hex("MD5"), file.checksum(Checksum.OPTS.MD5));
+        assertNull(file.checksum(Checksum.OPTS.SHA512));
+
+        StreamingPackageVerifier.Entry descriptor = underTest.entries.get("descriptor.txt");
+        assertEquals(DESCRIPTOR.length, descriptor.length());
+        assertNull(descriptor.checksum(Checksum.OPTS.MD5));
+    }
+
+    private static void writeTar(OutputStream tar) throws IOException {
+        try (TarArchiveOutputStream out = new TarArchiveOutputStream(tar)) {
+            write(out, new TarArchiveEntry("data/"), null);
+            TarArchiveEntry file = new TarArchiveEntry("data/file.txt");
+            file.setSize(CONTENT.length);
+            write(out, file, CONTENT);
+            TarArchiveEntry descriptor = new TarArchiveEntry("descriptor.txt");
+            descriptor.setSize(DESCRIPTOR.length);
+            write(out, descriptor, DESCRIPTOR);
+        }
+    }
+
+    private static void write(ArchiveOutputStream out, ArchiveEntry entry, byte[] content) throws IOException {
+        out.putArchiveEntry(entry);
+        if (content != null) {
+            out.write(content);
+        }
+        out.closeArchiveEntry();
+    }
+
+    private static String hex(String algorithm) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance(algorithm).digest(CONTENT)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Records the entries of the package, and reads the first byte of each descriptor only
+     */
+    private static class RecordingVerifier extends StreamingPackageVerifier {
+
+        private final List<String> descriptors = new ArrayList<>();
+
+        private Map<String, Entry> entries = new LinkedHashMap<>();
+
+        private RecordingVerifier() {
+            super(Arrays.asList(Checksum.OPTS.SHA256, Checksum.OPTS.MD5));
+        }
+
+        @Override
+        protected Verification newVerification() {
+            return new Verification() {
+                @Override
+                public boolean isDescriptor(String name) {
+                    return name.startsWith("descriptor");
+                }
+
+                @Override
+                public void descriptor(String name, InputStream in, List<String> problems) throws IOException {
+                    descriptors.add(String.valueOf((char) in.read()));
+                }
+
+                @Override
+                public void verify(Map<String, Entry> entries, List<String> problems) {
+                    RecordingVerifier.this.entries = entries;
+                }
+            };
+        }
+
+    }
+
+}